@@ -0,0 +1,131 @@
+package wny.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import wny.engine.Simplex;
+import wny.entities.Treenode;
+import wny.entities.Tuple;
+import wny.solver.PreparedQuestion;
+
+/** 
+ * The expansion of a node of the arrangement tree of TREE for the BEST problem: the two children copy the inequalities of the node 
+ * and add the next one, and the feasibility of a child is the LP of its inequalities
+ * The node is at a given depth of the tree on the path of the equal weights, so its LP is feasible as for the nodes which are expanded
+ * @author Zixuan Chen
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BestTreeBenchmark {
+    @Param({"1000"})
+    public int n;
+
+    @Param({"3", "6"})
+    public int m;
+
+    @Param({"uniform", "anti-correlated"})
+    public String distribution;
+
+    @Param({"4", "16", "64"})
+    public int depth;
+
+    private ArrayList<ArrayList<Double>> inequalities;
+    private Treenode node;
+
+    @Setup
+    public void setup() throws Exception {
+        ArrayList<Tuple> tuples = Datasets.parse(Datasets.create(n, m, distribution));
+        PreparedQuestion q = PreparedQuestion.prepare(tuples, Datasets.getExpected(tuples)).get(0);
+        inequalities = new ArrayList<ArrayList<Double>>();
+        for (int i = 0; i < q.getNumCompetitors(); i++) {
+            ArrayList<Double> inequality = new ArrayList<Double>();
+            for (int j = 0; j < m; j++) {
+                inequality.add(q.getInequality(i, j));
+            }
+            inequalities.add(inequality);
+        }
+        if (inequalities.size() <= depth) {
+            throw new IllegalStateException("The question has only " + inequalities.size() + " competitors");
+        }
+        node = new Treenode(0, new ArrayList<ArrayList<Double>>(), new ArrayList<ArrayList<Double>>());
+        for (int i = 0; i < depth; i++) {
+            node.addInequality(inequalities.get(i), wins(inequalities.get(i)));
+            node.next();
+        }
+    }
+
+    @Benchmark
+    public Treenode[] expand() {
+        int i = node.which();
+        Treenode node_right = new Treenode(node);
+        node_right.next();
+        node_right.addInequality(inequalities.get(i), true);
+        Treenode node_left = new Treenode(node);
+        node_left.next();
+        node_left.addInequality(inequalities.get(i), false);
+        return new Treenode[] {node_right, node_left};
+    }
+
+    /** 
+     * The LP of the child on the path, as solved by the java optimizer for every node
+    */
+    @Benchmark
+    public int solve() {
+        Simplex lp = new Simplex();
+        int[] indices = new int[m];
+        double[] ones = new double[m];
+        for (int i = 0; i < m; i++) {
+            indices[i] = lp.addVariable(0.0, 1.0);
+            ones[i] = 1.0;
+        }
+        lp.addRow(indices, ones, "=", 1.0);
+        for (int win = 0; win < 2; win++) {
+            for (ArrayList<Double> inequality : node.getInequalities(win == 0)) {
+                lp.addRow(indices, toArray(inequality), win == 0 ? ">=" : "<=", 0.0);
+            }
+        }
+        ArrayList<Double> next = inequalities.get(node.which());
+        lp.addRow(indices, toArray(next), wins(next) ? ">=" : "<=", 0.0);
+        return lp.solve();
+    }
+
+    /** 
+     * @param inequality An inequality
+     * @return Whether the expected tuple wins the competitor with the equal weights
+    */
+    private boolean wins(ArrayList<Double> inequality) {
+        double score = 0;
+        for (double v : inequality) {
+            score += v;
+        }
+        return score >= 0;
+    }
+
+    /** 
+     * @param inequality An inequality
+     * @return The coefficients of the inequality
+    */
+    private double[] toArray(ArrayList<Double> inequality) {
+        double[] coefficients = new double[m];
+        for (int j = 0; j < m; j++) {
+            coefficients[j] = inequality.get(j);
+        }
+        return coefficients;
+    }
+}
\ No newline at end of file
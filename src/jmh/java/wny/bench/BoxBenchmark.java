@@ -0,0 +1,61 @@
+package wny.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import wny.entities.Box;
+
+/** 
+ * The measures of a box, which are computed from its bounds
+ * @author Zixuan Chen
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BoxBenchmark {
+    @Param({"3", "6", "12"})
+    public int m;
+
+    private Box box;
+
+    @Setup
+    public void setup() {
+        Random r = new Random(Datasets.SEED);
+        box = new Box(1);
+        for (int i = 0; i < m; i++) {
+            double lower = r.nextDouble() / m;
+            box.addBound(String.valueOf(lower));
+            box.addBound(String.valueOf(lower + r.nextDouble() / m));
+        }
+    }
+
+    @Benchmark
+    public double getPerimeter() {
+        return box.getPerimeter();
+    }
+
+    @Benchmark
+    public double getVolume() {
+        return box.getVolume();
+    }
+
+    @Benchmark
+    public double[] getBounds() {
+        return box.getBounds();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,70 @@
+package wny.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+import wny.data.Generator;
+import wny.entities.Tuple;
+import wny.util.DatabaseParser;
+
+/** 
+ * The synthetic data of the benchmarks, which is generated with a fixed seed, so every run measures the same tuples
+ * @author Zixuan Chen
+*/
+public class Datasets {
+    public static final long SEED = 20230601L;
+
+    /** 
+     * @param num_tuple The number of tuples
+     * @param num_attribute The number of attributes
+     * @param distribution The distribution of the data. The options are uniform, correlated and anti-correlated
+     * @return The file of the data, which is deleted when the benchmark ends
+    */
+    public static File create(int num_tuple, int num_attribute, String distribution) throws IOException {
+        File file = File.createTempFile("wny-bench-", ".csv");
+        file.deleteOnExit();
+        // The generator compares the distributions by identity
+        new Generator(num_tuple, num_attribute, file.getPath(), SEED).create(distribution.intern());
+        return file;
+    }
+
+    /** 
+     * @param file The file of the data
+     * @return All tuples of the data
+    */
+    public static ArrayList<Tuple> parse(File file) throws IOException {
+        return new DatabaseParser(null).parse_file(file).get(0).tuples;
+    }
+
+    /** 
+     * The expected tuple is the tuple with the median sum of values, so about half of the tuples are its competitors
+     * @param tuples All tuples
+     * @return The expected tuples of the benchmarks
+    */
+    public static ArrayList<Tuple> getExpected(ArrayList<Tuple> tuples) {
+        ArrayList<Tuple> sorted = new ArrayList<Tuple>(tuples);
+        Collections.sort(sorted, new Comparator<Tuple>() {
+            public int compare(Tuple a, Tuple b) {
+                return Double.compare(sum(a), sum(b));
+            }
+        });
+        ArrayList<Tuple> expected_tuples = new ArrayList<Tuple>();
+        expected_tuples.add(sorted.get(sorted.size() / 2));
+        return expected_tuples;
+    }
+
+    /** 
+     * @param t A tuple
+     * @return The sum of the values of the tuple
+    */
+    private static double sum(Tuple t) {
+        double s = 0;
+        for (int i = 1; i < t.values.length; i++) {
+            s += Double.parseDouble(t.values[i]);
+        }
+        return s;
+    }
+}
\ No newline at end of file
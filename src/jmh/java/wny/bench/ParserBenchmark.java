@@ -0,0 +1,53 @@
+package wny.bench;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import wny.entities.Relation;
+import wny.util.DatabaseParser;
+
+/** 
+ * The parsing of a relation from a CSV file
+ * @author Zixuan Chen
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ParserBenchmark {
+    @Param({"10000", "100000"})
+    public int n;
+
+    @Param({"3", "6"})
+    public int m;
+
+    @Param({"uniform", "correlated", "anti-correlated"})
+    public String distribution;
+
+    private File file;
+
+    @Setup
+    public void setup() throws Exception {
+        file = Datasets.create(n, m, distribution);
+    }
+
+    @Benchmark
+    public List<Relation> parse_file() throws Exception {
+        return new DatabaseParser(null).parse_file(file);
+    }
+}
\ No newline at end of file
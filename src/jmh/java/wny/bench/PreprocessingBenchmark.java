@@ -0,0 +1,90 @@
+package wny.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import wny.entities.Tuple;
+import wny.solver.JavaOptimizer;
+import wny.solver.PreparedQuestion;
+import wny.solver.Solver;
+
+/** 
+ * The preprocessing of a why-not-yet question: the dominance tests, the inequalities of the competitors and the clustering
+ * @author Zixuan Chen
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PreprocessingBenchmark {
+    @Param({"1000", "10000"})
+    public int n;
+
+    @Param({"3", "6"})
+    public int m;
+
+    @Param({"uniform", "correlated", "anti-correlated"})
+    public String distribution;
+
+    @Param({"0.1"})
+    public double clustered;
+
+    private ArrayList<Tuple> tuples;
+    private ArrayList<Tuple> expected_tuples;
+    private List<PreparedQuestion> prepared;
+    private Solver solver;
+
+    @Setup
+    public void setup() throws Exception {
+        tuples = Datasets.parse(Datasets.create(n, m, distribution));
+        expected_tuples = Datasets.getExpected(tuples);
+        prepared = PreparedQuestion.prepare(tuples, expected_tuples);
+    }
+
+    /** 
+     * The clustering replaces the inequalities of the solver, so every invocation clusters a fresh solver
+    */
+    @Setup(Level.Invocation)
+    public void setupSolver() {
+        solver = new JavaOptimizer(tuples, prepared);
+    }
+
+    @Benchmark
+    public void isDominating(Blackhole bh) {
+        Tuple expected_tuple = expected_tuples.get(0);
+        for (Tuple t : tuples) {
+            bh.consume(expected_tuple.isDominating(t));
+        }
+    }
+
+    /** 
+     * The preprocessing of the expected tuples, which was Solver.initialize
+    */
+    @Benchmark
+    public List<PreparedQuestion> prepare() {
+        return PreparedQuestion.prepare(tuples, expected_tuples);
+    }
+
+    @Benchmark
+    public Solver cluster() throws Exception {
+        solver.cluster(clustered);
+        return solver;
+    }
+}
\ No newline at end of file
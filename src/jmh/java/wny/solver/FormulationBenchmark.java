@@ -0,0 +1,89 @@
+package wny.solver;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import wny.bench.Datasets;
+import wny.entities.Tuple;
+import wny.model.Formulation;
+import wny.model.SmtWriter;
+
+/** 
+ * The construction of the solver-neutral model and its lowering to SMT-LIB2, which has the same terms as the formula given to z3
+ * The model is cached by the solver, so every invocation builds it on a fresh solver
+ * It is in the package of the solvers to reach the model without a backend
+ * @author Zixuan Chen
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FormulationBenchmark {
+    @Param({"1000", "10000"})
+    public int n;
+
+    @Param({"3", "6"})
+    public int m;
+
+    @Param({"uniform", "correlated", "anti-correlated"})
+    public String distribution;
+
+    @Param({"satisfiability", "cube"})
+    public String shape;
+
+    private ArrayList<Tuple> tuples;
+    private List<PreparedQuestion> prepared;
+    private int[] topk;
+    private Solver solver;
+
+    @Setup
+    public void setup() throws Exception {
+        tuples = Datasets.parse(Datasets.create(n, m, distribution));
+        prepared = PreparedQuestion.prepare(tuples, Datasets.getExpected(tuples));
+        // Half of the competitors need to lose, so the question is not decided by the dominators
+        topk = new int[] {prepared.get(0).getNumDominators() + prepared.get(0).getNumCompetitors() / 2 + 1};
+    }
+
+    @Setup(Level.Invocation)
+    public void setupSolver() {
+        solver = new JavaOptimizer(tuples, prepared);
+    }
+
+    @Benchmark
+    public Formulation formulate() {
+        return solver.formulate(shape, topk);
+    }
+
+    @Benchmark
+    public Formulation formulate_smt() throws Exception {
+        Formulation f = solver.formulate(shape, topk);
+        new SmtWriter().write(f, new Writer() {
+            public void write(char[] buffer, int offset, int length) {
+            }
+
+            public void flush() {
+            }
+
+            public void close() {
+            }
+        });
+        return f;
+    }
+}
\ No newline at end of file
@@ -1,11 +1,17 @@
 package wny;
 
 import java.io.FileWriter;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import wny.data.Generator;
 import wny.entities.Box;
@@ -14,12 +20,18 @@ import wny.entities.Relation;
 import wny.entities.Tuple;
 import wny.query.Query;
 import wny.util.DatabaseParser;
+import wny.util.Scheduler;
 
 /** 
  * An experiment class which contains experiments in the Why Not Yet? paper.
  * @author Zixuan Chen
 */
 public class Experiment {
+    private static String solver = "gurobi"; // gurobi, z3 solver or java
+    // The independent runs of an experiment are solved one by one as in the paper, or concurrently within a global budget of solver threads set with -Dwny.threads
+    private static Scheduler scheduler = new Scheduler(Integer.getInteger("wny.threads", 1));
+    private static int job_threads = Integer.getInteger("wny.job_threads", 0); // the solver threads of each query, set with -Dwny.job_threads, 0 for the default of the backend
+
     /** 
      * Print the configurations of the experiment
      * @param topk The top-k limits for expected tuples
@@ -28,6 +40,17 @@ public class Experiment {
      * @param num_tuple Number of all tuples in the ranking
     */
     private static void printConfig(int[] topk, int offset, int num_attribute, int num_tuple) {
+        System.out.println(getConfig(topk, offset, num_attribute, num_tuple));
+    }
+
+    /** 
+     * @param topk The top-k limits for expected tuples
+     * @param offset The difference between the expected rank and original rank for the expected tuple
+     * @param num_attribute Number of attributes
+     * @param num_tuple Number of all tuples in the ranking
+     * @return The configurations of the experiment
+    */
+    private static String getConfig(int[] topk, int offset, int num_attribute, int num_tuple) {
         String str = "k: (";
         for (int i = 0; i < topk.length; i++) {
             str += topk[i];
@@ -37,7 +60,81 @@ public class Experiment {
             str += (topk[i] + offset);
         }
         str += ") number of attributes: " + num_attribute + " number of expected tuples: " + topk.length + " number of all tuples: " + num_tuple;
-        System.out.println(str);
+        return str;
+    }
+
+    /** 
+     * Create a query whose solver uses the threads of one job
+    */
+    private static Query newQuery(String solver, String problem, ArrayList<Tuple> tuples,
+    int[] topk, ArrayList<Tuple> expected_tuples, double clustered, boolean precise, int measure) throws Exception {
+        Query q = new Query(solver, problem, tuples, topk, expected_tuples, clustered, precise, measure);
+        q.setThreads(job_threads);
+        return q;
+    }
+
+    /** 
+     * Submit one run of an experiment to the scheduler
+     * @param config The configurations of the run, which are printed when it starts
+     * @param job The run, which returns its measures
+     * @return The future of the measures
+    */
+    private static Future<int[]> submit(final String config, final Callable<int[]> job) {
+        return scheduler.submit(job_threads, new Callable<int[]>() {
+            public int[] call() throws Exception {
+                System.out.println(config);
+                int[] measures = job.call();
+                System.out.println("<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<");
+                return measures;
+            }
+        });
+    }
+
+    /** 
+     * One run of the SAT problem, followed by the BOX problems with the TRIANGLE, PYRAMID and CUBE constraints if it is satisfiable
+     * @param tuples All tuples to rank
+     * @param topk The top-k limits for expected tuples
+     * @param expected_tuples The expected tuples
+     * @return The execution times of the four problems, 0 for the problems which are not solved
+    */
+    private static Callable<int[]> satisfiability_and_boxes(final ArrayList<Tuple> tuples, final int[] topk, final ArrayList<Tuple> expected_tuples) {
+        return new Callable<int[]>() {
+            public int[] call() throws Exception {
+                int[] execution_time = new int[4];
+                Query q = newQuery(solver, "satisfiability", tuples, topk, expected_tuples, 0, true, 1);
+                execution_time[0] = q.run();
+                if (q.getSatisfiability()) {
+                    q = newQuery(solver, "optimization (triangle)", tuples, topk, expected_tuples, 0, true, 1);
+                    execution_time[1] = q.run();
+                    q = newQuery(solver, "optimization (pyramid)", tuples, topk, expected_tuples, 0, true, 1);
+                    execution_time[2] = q.run();
+                    q = newQuery(solver, "optimization (cube)", tuples, topk, expected_tuples, 0, true, 1);
+                    execution_time[3] = q.run();
+                }
+                return execution_time;
+            }
+        };
+    }
+
+    /** 
+     * Wait for the runs of each configuration and write the median of each measure into a column of the result
+     * @param runs The runs of each configuration
+     * @param result The experimental result, where the first row keeps the configurations
+    */
+    private static void collect(ArrayList<ArrayList<Future<int[]>>> runs, int[][] result) throws Exception {
+        for (int c = 0; c < runs.size(); c++) {
+            int num_runs = runs.get(c).size();
+            int[][] measures = new int[result.length - 1][num_runs];
+            for (int j = 0; j < num_runs; j++) {
+                int[] m = runs.get(c).get(j).get();
+                for (int p = 0; p < measures.length; p++) {
+                    measures[p][j] = m[p];
+                }
+            }
+            for (int p = 0; p < measures.length; p++) {
+                result[p + 1][c] = median(measures[p]);
+            }
+        }
     }
 
     /** 
@@ -149,7 +246,6 @@ public class Experiment {
 
         ArrayList<Tuple> relation = database.get(0).tuples;
 
-        String solver = "gurobi";
         int[] topk = {10};
         int num_attribute = 5;
         int num_tuple = relation.size();
@@ -187,58 +283,43 @@ public class Experiment {
     /** 
      * Performance on BEST, corresponding to Sec 6.3 of the paper.
      * Return the BEST results for tuples originally ranked from 2 to 50.
-     * @param binary_search_sat An indicator of whether to use binary search to find the BEST. 
-     * True for our algorithm with binary search. False for the Tree method which combines sampling and brute force.
+     * @param direct An indicator of whether to find the BEST directly. 
+     * True for our algorithm which minimizes the number of winning competitors in one solve. False for the Tree method which combines sampling and brute force.
      * 
     */
-    public static void best(boolean binary_search_sat) throws Exception {
+    public static void best(boolean direct) throws Exception {
         String input_file = "data/stats.csv";
         DatabaseParser db_parser = new DatabaseParser(null);
         List<Relation> database = db_parser.parse_file(input_file);
 
         ArrayList<Tuple> relation = database.get(0).tuples;
 
-        String solver = "gurobi";
-        int[] topk = new int[1];
+        final int[] topk = new int[1];
         int num_attribute = 5;
         int num_tuple = relation.size();
-        ArrayList<Tuple> tuples = getTuples(relation, num_tuple, num_attribute);
+        final ArrayList<Tuple> tuples = getTuples(relation, num_tuple, num_attribute);
 
         int[][] result = new int[50][3];
+        ArrayList<Future<int[]>> runs = new ArrayList<Future<int[]>>();
         for (int i = 1; i < 50; i++) {
-            System.out.println("Tuple" + i);
             result[i][0] = i;
-            ArrayList<Tuple> expected_tuples = new ArrayList<Tuple>();
+            final ArrayList<Tuple> expected_tuples = new ArrayList<Tuple>();
             expected_tuples.add(tuples.get(i));
-            
-            long start, end;
-            if (binary_search_sat) {
-                start = System.currentTimeMillis();
-                Query q;
-                int low = 0;
-                int high = i + 1;
-                while (high - low > 1){
-                    topk[0] = (high + low) / 2;
-                    System.out.println(topk[0]);
-                    q = new Query(solver, "satisfiability", tuples, topk, expected_tuples, 0, true, 1);
+            final String problem = direct ? "best (direct)" : "best";
+            runs.add(submit("Tuple" + i, new Callable<int[]>() {
+                public int[] call() throws Exception {
+                    long start = System.currentTimeMillis();
+                    Query q = newQuery(solver, problem, tuples, topk, expected_tuples, 0, true, 1);
                     q.run();
-                    if (q.getSatisfiability()) {
-                        high = topk[0];
-                    } else {
-                        low = topk[0];
-                    }
+                    long end = System.currentTimeMillis();
+                    return new int[] {q.getBest(), (int) (end - start)};
                 }
-                end = System.currentTimeMillis();
-                result[i][1] = high;
-                result[i][2] = (int) (end - start);
-            } else {
-                start = System.currentTimeMillis();
-                Query q = new Query(solver, "best", tuples, topk, expected_tuples, 0, true, 1);
-                q.run();
-                end = System.currentTimeMillis();
-                result[i][1] = q.getBest();
-                result[i][2] = (int) (end - start);
-            }
+            }));
+        }
+        for (int i = 1; i < 50; i++) {
+            int[] m = runs.get(i - 1).get();
+            result[i][1] = m[0];
+            result[i][2] = m[1];
         }
         write(result, "result/best.csv");
         System.out.println("++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++");
@@ -261,7 +342,6 @@ public class Experiment {
         ArrayList<Tuple> relation = database.get(0).tuples;
 
         // Default configuration
-        String solver = "gurobi";
         String problem = "optimization (cube)";
         int[] topk = {50};
         int num_attribute = 3;
@@ -270,117 +350,79 @@ public class Experiment {
         ArrayList<Tuple> expected_tuples = new ArrayList<Tuple>();
         expected_tuples.add(tuples.get(60));
 
-        Query q;
         int[][] result;
+        ArrayList<ArrayList<Future<int[]>>> runs;
 
         System.out.println("Varying k");
 
         result = new int[5][10];
+        runs = new ArrayList<ArrayList<Future<int[]>>>();
         for (int i = 10; i <= 100; i+= 10) {
             int[] k = new int[1];
             k[0] = i;
 
             result[0][i/10 - 1] = i;
-            int[][] execution_time = new int[4][5];
+            ArrayList<Future<int[]>> configuration = new ArrayList<Future<int[]>>();
             for (int j = 0; j < 5; j++) {
-                printConfig(k, 10 + j, num_attribute, num_tuple);
                 int r = i + 10 + j;
                 expected_tuples = new ArrayList<Tuple>();
                 expected_tuples.add(tuples.get(r - 1));
-            
-                q = new Query(solver, "satisfiability", tuples, k, expected_tuples, 0, true, 1);
-                execution_time[0][j] = q.run();
-                if (q.getSatisfiability()) {
-                    q = new Query(solver, "optimization (triangle)", tuples, k, expected_tuples, 0, true, 1);
-                    execution_time[1][j] = q.run();
-                    q = new Query(solver, "optimization (pyramid)", tuples, k, expected_tuples, 0, true, 1);
-                    execution_time[2][j] = q.run();
-                    q = new Query(solver, "optimization (cube)", tuples, k, expected_tuples, 0, true, 1);
-                    execution_time[3][j] = q.run();
-                }
-                System.out.println("<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<");
+                configuration.add(submit(getConfig(k, 10 + j, num_attribute, num_tuple), satisfiability_and_boxes(tuples, k, expected_tuples)));
             }
-            result[1][i/10 - 1] = median(execution_time[0]);
-            result[2][i/10 - 1] = median(execution_time[1]);
-            result[3][i/10 - 1] = median(execution_time[2]);
-            result[4][i/10 - 1] = median(execution_time[3]);   
+            runs.add(configuration);
         }
+        collect(runs, result);
         write(result, "result/varying_k.csv");
         System.out.println("++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++");
 
         System.out.println("Varying the original rank of the expected tuple");
 
         result = new int[5][5];
+        runs = new ArrayList<ArrayList<Future<int[]>>>();
         for (int i = 1; i <= 21; i+= 5) {
             result[0][(i - 1) / 5] = i;
-            int[][] execution_time = new int[4][5];
+            ArrayList<Future<int[]>> configuration = new ArrayList<Future<int[]>>();
 
             for (int j = 0; j < 5; j++) {
-                printConfig(topk, i + j, num_attribute, num_tuple);
                 int r = topk[0] + i + j;
                 expected_tuples = new ArrayList<Tuple>();
                 expected_tuples.add(tuples.get(r - 1));
-            
-                q = new Query(solver, "satisfiability", tuples, topk, expected_tuples, 0, true, 1);
-                execution_time[0][j] = q.run();
-                if (q.getSatisfiability()) { 
-                    q = new Query(solver, "optimization (triangle)", tuples, topk, expected_tuples, 0, true, 1);
-                    execution_time[1][j] = q.run();
-                    q = new Query(solver, "optimization (pyramid)", tuples, topk, expected_tuples, 0, true, 1);
-                    execution_time[2][j] = q.run();
-                    q = new Query(solver, "optimization (cube)", tuples, topk, expected_tuples, 0, true, 1);
-                    execution_time[3][j] = q.run();
-                }
-                System.out.println("<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<");
+                configuration.add(submit(getConfig(topk, i + j, num_attribute, num_tuple), satisfiability_and_boxes(tuples, topk, expected_tuples)));
             }
-            result[1][(i - 1) / 5] = median(execution_time[0]);
-            result[2][(i - 1) / 5] = median(execution_time[1]);
-            result[3][(i - 1) / 5] = median(execution_time[2]);
-            result[4][(i - 1) / 5] = median(execution_time[3]);
+            runs.add(configuration);
         }
+        collect(runs, result);
         write(result, "result/varying_expected_tuple.csv");
         System.out.println("++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++");
         
         System.out.println("Varying the number of attributes");
 
         result = new int[5][4];
+        runs = new ArrayList<ArrayList<Future<int[]>>>();
         for (int i = 2; i <= 5; i++) {
             result[0][i - 2] = i;
-            int[][] execution_time = new int[4][5];
+            ArrayList<Future<int[]>> configuration = new ArrayList<Future<int[]>>();
 
             for (int j = 0; j < 5; j++) {
-                printConfig(topk, 10 + j, i, num_tuple);
                 ArrayList<Tuple> ts = getTuples(relation, num_tuple, i);
                 int r = topk[0] + 10 + j;
                 expected_tuples = new ArrayList<Tuple>();
                 expected_tuples.add(ts.get(r - 1));
-            
-                q = new Query(solver, "satisfiability", ts, topk, expected_tuples, 0, true, 1);
-                execution_time[0][j] = q.run();
-                if (q.getSatisfiability()) { 
-                    q = new Query(solver, "optimization (triangle)", ts, topk, expected_tuples, 0, true, 1);
-                    execution_time[1][j] = q.run();
-                    q = new Query(solver, "optimization (pyramid)", ts, topk, expected_tuples, 0, true, 1);
-                    execution_time[2][j] = q.run();
-                    q = new Query(solver, "optimization (cube)", ts, topk, expected_tuples, 0, true, 1);
-                    execution_time[3][j] = q.run();
-                }
-                System.out.println("<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<");
+                configuration.add(submit(getConfig(topk, 10 + j, i, num_tuple), satisfiability_and_boxes(ts, topk, expected_tuples)));
             }
-            result[1][i - 2] = median(execution_time[0]);
-            result[2][i - 2] = median(execution_time[1]);
-            result[3][i - 2] = median(execution_time[2]);
-            result[4][i - 2] = median(execution_time[3]);
+            runs.add(configuration);
         }
+        collect(runs, result);
         write(result, "result/varying_num_attribute.csv");
         System.out.println("++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++");
 
         System.out.println("Varying the number of expected tuples");
 
         result = new int[5][5];
+        runs = new ArrayList<ArrayList<Future<int[]>>>();
         for (int i = 1; i <= 5; i++) {
             result[0][i - 1] = i;
-            int[][] execution_time = new int[4][5];
+            ArrayList<Future<int[]>> configuration = new ArrayList<Future<int[]>>();
             
             int[] k = new int[i];
         
@@ -391,26 +433,61 @@ public class Experiment {
                     int r = k[l] + j - 2;
                     expected_tuples.add(tuples.get(r - 1));
                 }
-                printConfig(k, j - 2, num_attribute, num_tuple);
+                configuration.add(submit(getConfig(k, j - 2, num_attribute, num_tuple), satisfiability_and_boxes(tuples, k, expected_tuples)));
+            }
+            runs.add(configuration);
+        }
+        collect(runs, result);
+        write(result, "result/varying_num_expected_tuple.csv");
+        System.out.println("++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++");
+    }
 
+    /** 
+     * Sweeping k for a fixed expected tuple
+     * One query solves k = 10, 20, ..., 100 with the model built once, which is compared with one query for each k as in real_experiment
+    */
+    private static void k_sweep() throws Exception {
+        String input_file = "data/stats.csv";
+        DatabaseParser db_parser = new DatabaseParser(null);
+        List<Relation> database = db_parser.parse_file(input_file);
+
+        ArrayList<Tuple> relation = database.get(0).tuples;
+
+        // Default configuration
+        String[] problems = {"optimization (triangle)", "optimization (pyramid)", "optimization (cube)"};
+        int[] ks = {10, 20, 30, 40, 50, 60, 70, 80, 90, 100};
+        int num_attribute = 3;
+        int num_tuple = relation.size();
+        ArrayList<Tuple> tuples = getTuples(relation, num_tuple, num_attribute);
+        ArrayList<Tuple> expected_tuples = new ArrayList<Tuple>();
+        expected_tuples.add(tuples.get(109));
+
+        Query q;
+        int[][] result = new int[3][3];
+
+        System.out.println("Sweeping k");
+
+        for (int p = 0; p < problems.length; p++) {
+            result[p][0] = p;
+
+            long start = System.currentTimeMillis();
+            q = new Query(solver, problems[p], tuples, ks, expected_tuples, 0, true, 1);
+            q.sweep(ks);
+            long end = System.currentTimeMillis();
+            result[p][1] = (int) (end - start);
+
+            for (int i = 0; i < ks.length; i++) {
+                int[] k = {ks[i]};
                 q = new Query(solver, "satisfiability", tuples, k, expected_tuples, 0, true, 1);
-                execution_time[0][j] = q.run();
-                if (q.getSatisfiability()) { 
-                    q = new Query(solver, "optimization (triangle)", tuples, k, expected_tuples, 0, true, 1);
-                    execution_time[1][j] = q.run();
-                    q = new Query(solver, "optimization (pyramid)", tuples, k, expected_tuples, 0, true, 1);
-                    execution_time[2][j] = q.run();
-                    q = new Query(solver, "optimization (cube)", tuples, k, expected_tuples, 0, true, 1);
-                    execution_time[3][j] = q.run();
+                result[p][2] += q.run();
+                if (q.getSatisfiability()) {
+                    q = new Query(solver, problems[p], tuples, k, expected_tuples, 0, true, 1);
+                    result[p][2] += q.run();
                 }
-                System.out.println("<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<");
             }
-            result[1][i - 1] = median(execution_time[0]);
-            result[2][i - 1] = median(execution_time[1]);
-            result[3][i - 1] = median(execution_time[2]);
-            result[4][i - 1] = median(execution_time[3]);
+            System.out.println("<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<");
         }
-        write(result, "result/varying_num_expected_tuple.csv");
+        write(result, "result/k_sweep.csv");
         System.out.println("++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++");
     }
 
@@ -433,14 +510,10 @@ public class Experiment {
         ArrayList<Tuple> relation = database.get(0).tuples;
 
         // Default configuration
-        String solver = "gurobi";
-        String problem = "optimization (cube)";
-        int[] topk = {50};
+        final String problem = "optimization (cube)";
+        final int[] topk = {50};
         int num_attribute = 3;
-        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
-        ArrayList<Tuple> expected_tuples = new ArrayList<Tuple>();
         
-        Query q;
         int[][] result;
         
         System.out.println("Varying number of tuples of " + distribution + " distribution");
@@ -451,37 +524,38 @@ public class Experiment {
         }
 
         result = new int[6][5];
+        ArrayList<ArrayList<Future<int[]>>> runs = new ArrayList<ArrayList<Future<int[]>>>();
         for (int i = 100; i <= max; i *= 10) {
             result[0][(int)Math.log10(i) - 2] = i;
-            int[][] execution_time = new int[5][5];
-            tuples = getTuples(relation, i, num_attribute);
-            Collections.sort(tuples, Collections.reverseOrder());
+            ArrayList<Future<int[]>> configuration = new ArrayList<Future<int[]>>();
+            final ArrayList<Tuple> ts = getTuples(relation, i, num_attribute);
+            Collections.sort(ts, Collections.reverseOrder());
             for (int j = 0; j < 5; j++) {
-                printConfig(topk, j + 1, num_attribute, i);
                 int r = topk[0] + j + 1;
-                expected_tuples = new ArrayList<Tuple>();
-                expected_tuples.add(tuples.get(r - 1));
-            
-                q = new Query(solver, "satisfiability", tuples, topk, expected_tuples, 0, true, 1);
-                execution_time[0][j] = q.run();
-                if (q.getSatisfiability()) {
-                    q = new Query(solver, problem, tuples, topk, expected_tuples, 0, true, 1);
-                    execution_time[1][j] = q.run();
-                    q = new Query(solver, problem, tuples, topk, expected_tuples, 0.5, true, 1);
-                    execution_time[2][j] = q.run();
-                    q = new Query(solver, problem, tuples, topk, expected_tuples, 0, false, 1);
-                    execution_time[3][j] = q.run();
-                    q = new Query(solver, problem, tuples, topk, expected_tuples, 0.5, false, 1);
-                    execution_time[4][j] = q.run();
-                }
-                System.out.println("<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<");
+                final ArrayList<Tuple> expected = new ArrayList<Tuple>();
+                expected.add(ts.get(r - 1));
+                configuration.add(submit(getConfig(topk, j + 1, num_attribute, i), new Callable<int[]>() {
+                    public int[] call() throws Exception {
+                        int[] execution_time = new int[5];
+                        Query q = newQuery(solver, "satisfiability", ts, topk, expected, 0, true, 1);
+                        execution_time[0] = q.run();
+                        if (q.getSatisfiability()) {
+                            q = newQuery(solver, problem, ts, topk, expected, 0, true, 1);
+                            execution_time[1] = q.run();
+                            q = newQuery(solver, problem, ts, topk, expected, 0.5, true, 1);
+                            execution_time[2] = q.run();
+                            q = newQuery(solver, problem, ts, topk, expected, 0, false, 1);
+                            execution_time[3] = q.run();
+                            q = newQuery(solver, problem, ts, topk, expected, 0.5, false, 1);
+                            execution_time[4] = q.run();
+                        }
+                        return execution_time;
+                    }
+                }));
             }
-            result[1][(int)Math.log10(i) - 2] = median(execution_time[0]);
-            result[2][(int)Math.log10(i) - 2] = median(execution_time[1]);
-            result[3][(int)Math.log10(i) - 2] = median(execution_time[2]);
-            result[4][(int)Math.log10(i) - 2] = median(execution_time[3]);
-            result[5][(int)Math.log10(i) - 2] = median(execution_time[4]);
+            runs.add(configuration);
         }
+        collect(runs, result);
         write(result, "result/techniques_" + distribution + ".csv");
         System.out.println("++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++");
     }
@@ -501,7 +575,6 @@ public class Experiment {
         ArrayList<Tuple> relation = database.get(0).tuples;
 
         // Default configuration
-        String solver = "gurobi";
         String problem = "optimization (cube)";
         int[] topk = {50};
         int num_attribute = 3;
@@ -565,7 +638,7 @@ public class Experiment {
                 expected_tuples = new ArrayList<Tuple>();
                 expected_tuples.add(tuples.get(r - 1));
             
-                q = new Query("gurobi", "satisfiability", tuples, topk, expected_tuples, 0, true, 1);
+                q = new Query(solver, "satisfiability", tuples, topk, expected_tuples, 0, true, 1);
                 q.run();
                 System.out.println("<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<");
             }
@@ -573,6 +646,60 @@ public class Experiment {
         System.out.println("++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++");
     }
 
+    /** 
+     * Comparison of the indicator constraints versus big-M rows in the gurobi optimizer
+     * The big-M of each competitor is the tightest one over the weight constraint, computed from its inequality
+     * @param distribution The distribution of the synthetic data.
+     * 
+    */
+    public static void indicator_vs_big_m(String distribution) throws Exception {
+        String input_file = "data/" + distribution + ".csv";
+        DatabaseParser db_parser = new DatabaseParser(null);
+        List<Relation> database = db_parser.parse_file(input_file);
+
+        ArrayList<Tuple> relation = database.get(0).tuples;
+
+        // Default configuration
+        final String[] problems = {"satisfiability", "optimization (triangle)", "optimization (cube)"};
+        final String[] encodings = {"gurobi", "gurobi big-M"};
+        final int[] topk = {50};
+        int num_attribute = 3;
+        
+        int[][] result;
+        
+        System.out.println("Indicator vs big-M on " + distribution + " distribution");
+
+        result = new int[7][4];
+        ArrayList<ArrayList<Future<int[]>>> runs = new ArrayList<ArrayList<Future<int[]>>>();
+        for (int i = 100; i <= 100000; i *= 10) {
+            result[0][(int)Math.log10(i) - 2] = i;
+            ArrayList<Future<int[]>> configuration = new ArrayList<Future<int[]>>();
+            final ArrayList<Tuple> tuples = getTuples(relation, i, num_attribute);
+            Collections.sort(tuples, Collections.reverseOrder());
+            for (int j = 0; j < 5; j++) {
+                int r = topk[0] + j + 1;
+                final ArrayList<Tuple> expected_tuples = new ArrayList<Tuple>();
+                expected_tuples.add(tuples.get(r - 1));
+                configuration.add(submit(getConfig(topk, j + 1, num_attribute, i), new Callable<int[]>() {
+                    public int[] call() throws Exception {
+                        int[] execution_time = new int[6];
+                        for (int p = 0; p < problems.length; p++) {
+                            for (int e = 0; e < encodings.length; e++) {
+                                Query q = newQuery(encodings[e], problems[p], tuples, topk, expected_tuples, 0, true, 1);
+                                execution_time[p * 2 + e] = q.run();
+                            }
+                        }
+                        return execution_time;
+                    }
+                }));
+            }
+            runs.add(configuration);
+        }
+        collect(runs, result);
+        write(result, "result/big_m_" + distribution + ".csv");
+        System.out.println("++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++");
+    }
+
     /** 
      * Comparison of our algorithm versus a direct encoding using quantifiers, corresponding to Sec 6.6-2 of the paper.
      * Quantifiers are implemented using a Z3 solver.
@@ -613,10 +740,10 @@ public class Experiment {
                     expected_tuples = new ArrayList<Tuple>();
                     expected_tuples.add(tuples.get(r - 1));
                 
-                    q = new Query("gurobi", "satisfiability", tuples, k, expected_tuples, 0, true, 1);
+                    q = new Query(solver, "satisfiability", tuples, k, expected_tuples, 0, true, 1);
                     q.run();
                     if (q.getSatisfiability()) {
-                        q = new Query("gurobi", "optimization (cube)", tuples, k, expected_tuples, 0, true, 1);
+                        q = new Query(solver, "optimization (cube)", tuples, k, expected_tuples, 0, true, 1);
                         int monotonic_time = q.run();
                         double monotonic_perimeter = q.getBox().getPerimeter();
                         q = new Query("z3 solver", "direct optimization (cube)", tuples, k, expected_tuples, 0, true, 1);
@@ -655,53 +782,214 @@ public class Experiment {
 
         // Default configuration
         int n = 100;
-        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
-        ArrayList<Tuple> expected_tuples = new ArrayList<Tuple>();
         
-        Query q;
         double[][] result = new double[4][6];
+        double[][] log_result = new double[4][6];
         
         System.out.println("Perimeter vs volume experiment");
 
+        ArrayList<ArrayList<Future<int[]>>> runs = new ArrayList<ArrayList<Future<int[]>>>();
         for (int m = 2; m <= 5; m++) {
             for (int k = 5; k <= 30; k += 5) {
-                int[] topk = new int[1];
+                final int[] topk = new int[1];
                 topk[0] = k;
 
-                double[] ratio = new double[5];
+                ArrayList<Future<int[]>> configuration = new ArrayList<Future<int[]>>();
                 for (int i = 0; i < 5; i++) {
-                    printConfig(topk, i + 1, m, n);
                     int r = k + i + 1;
-                    tuples = getTuples(relation, n, m);
+                    final ArrayList<Tuple> tuples = getTuples(relation, n, m);
                     Collections.sort(tuples, Collections.reverseOrder());
-                    expected_tuples = new ArrayList<Tuple>();
+                    final ArrayList<Tuple> expected_tuples = new ArrayList<Tuple>();
                     expected_tuples.add(tuples.get(r - 1));
+                    configuration.add(submit(getConfig(topk, i + 1, m, n), new Callable<int[]>() {
+                        public int[] call() throws Exception {
+                            System.out.println("Optimal perimeter");
+                            Query q = newQuery(solver, "optimization (cube)", tuples, topk, expected_tuples, 0, true, 1);
+                            int perimeter_time = q.run();
+                            System.out.println("Optimal volume");
+                            q = newQuery(solver, "optimization (cube)", tuples, topk, expected_tuples, 0, true, 0);
+                            int volume_time = q.run();
+                            System.out.println("Optimal piecewise-linear log volume");
+                            q = newQuery(solver, "optimization (cube)", tuples, topk, expected_tuples, 0, true, 0);
+                            q.setVolumeSegments(16, true);
+                            int log_volume_time = q.run();
+                            return new int[] {perimeter_time, volume_time, log_volume_time};
+                        }
+                    }));
+                }
+                runs.add(configuration);
+            }
+        }
 
-                    System.out.println("Optimal perimeter");
-                    q = new Query("gurobi", "optimization (cube)", tuples, topk, expected_tuples, 0, true, 1);
-                    int perimeter_time = q.run();
-                    System.out.println("Optimal volume");
-                    q = new Query("gurobi", "optimization (cube)", tuples, topk, expected_tuples, 0, true, 0);
-                    int volume_time = q.run();
-                    if (perimeter_time == 0.0) {
-                        ratio[i] = 0.0;
-                    } else {
-                        ratio[i] = (double) volume_time / perimeter_time;
-                    }
+        for (int c = 0; c < runs.size(); c++) {
+            double[] ratio = new double[5];
+            double[] log_ratio = new double[5];
+            for (int i = 0; i < 5; i++) {
+                int[] execution_time = runs.get(c).get(i).get();
+                if (execution_time[0] == 0.0) {
+                    ratio[i] = 0.0;
+                    log_ratio[i] = 0.0;
+                } else {
+                    ratio[i] = (double) execution_time[1] / execution_time[0];
+                    log_ratio[i] = (double) execution_time[2] / execution_time[0];
                 }
-                result[m-2][(k-5)/5] = median(ratio);
             }
+            result[c / 6][c % 6] = median(ratio);
+            log_result[c / 6][c % 6] = median(log_ratio);
         }
         write(result, "result/perimeter_vs_volume.csv");
+        write(log_result, "result/perimeter_vs_log_volume.csv");
+        System.out.println("++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++");
+    }
+    /** 
+     * Run a declarative experiment, whose finished runs are recorded in its journal
+     * The runs in the journal are skipped, so a restarted experiment continues where it stopped, 
+     * and the medians of every cell over its finished runs are written to the output after each run
+     * @param spec The experiment
+    */
+    public static void run(final ExperimentSpec spec) throws Exception {
+        DatabaseParser db_parser = new DatabaseParser(null);
+        List<Relation> database = db_parser.parse_file(spec.dataset);
+
+        ArrayList<Tuple> relation = database.get(0).tuples;
+        int num_tuple = spec.num_tuples > 0 ? Math.min(spec.num_tuples, relation.size()) : relation.size();
+
+        final Journal journal = new Journal(spec.journal);
+        final ArrayList<String> cells = new ArrayList<String>();
+        ArrayList<Future<int[]>> runs = new ArrayList<Future<int[]>>();
+        int skipped = 0;
+
+        System.out.println("Experiment " + spec.name);
+
+        for (int m : spec.attributes) {
+            final ArrayList<Tuple> tuples = getTuples(relation, num_tuple, m);
+            if (spec.sort) {
+                Collections.sort(tuples, Collections.reverseOrder());
+            }
+            for (final String s : spec.solvers) {
+                for (final double c : spec.clustering) {
+                    for (int k : spec.ks) {
+                        final String cell = ExperimentSpec.getCell(s, m, c, k);
+                        synchronized (cells) {
+                            cells.add(cell);
+                        }
+                        final int[] topk = {k};
+                        for (int offset : spec.offsets) {
+                            int r = k + offset;
+                            if (r < 1 || r > tuples.size()) {
+                                System.out.println("No tuple with the original rank " + r);
+                                continue;
+                            }
+                            final ArrayList<Tuple> expected_tuples = new ArrayList<Tuple>();
+                            expected_tuples.add(tuples.get(r - 1));
+                            for (int j = 0; j < spec.repetitions; j++) {
+                                final String run = ExperimentSpec.getRun(cell, offset, j);
+                                if (journal.contains(run)) {
+                                    skipped++;
+                                    continue;
+                                }
+                                runs.add(submit(getConfig(topk, offset, m, num_tuple) + " solver: " + s + " clustering: " + c, new Callable<int[]>() {
+                                    public int[] call() throws Exception {
+                                        int[] execution_time = new int[spec.problems.length];
+                                        for (int p = 0; p < spec.problems.length; p++) {
+                                            Query q = newQuery(s, spec.problems[p], tuples, topk, expected_tuples, c, spec.precise, spec.measure);
+                                            execution_time[p] = q.run();
+                                            if (spec.problems[p] == "satisfiability" && !q.getSatisfiability()) {
+                                                break;
+                                            }
+                                        }
+                                        journal.append(run, execution_time);
+                                        write(spec, cells, journal);
+                                        return execution_time;
+                                    }
+                                }));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        System.out.println(skipped + " runs are in the journal and " + runs.size() + " runs are submitted");
+
+        for (Future<int[]> f : runs) {
+            f.get();
+        }
+        write(spec, cells, journal);
+        journal.close();
         System.out.println("++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++++");
     }
+
+    /** 
+     * Write the medians of every cell over its finished runs, with a header of the problems
+     * The file is replaced at once, so a reader never sees a partial file
+     * @param spec The experiment
+     * @param cells The cells of the grid in order
+     * @param journal The journal of the finished runs
+    */
+    private static synchronized void write(ExperimentSpec spec, ArrayList<String> cells, Journal journal) throws IOException {
+        Map<String, int[]> finished = journal.getRuns();
+        ArrayList<String> grid;
+        synchronized (cells) {
+            grid = new ArrayList<String>(cells);
+        }
+
+        File target = new File(spec.output);
+        if (target.getParentFile() != null) {
+            target.getParentFile().mkdirs();
+        }
+        File temporary = new File(spec.output + ".tmp");
+        FileWriter out = new FileWriter(temporary);
+        out.write("solver,attributes,clustering,k,runs");
+        for (String problem : spec.problems) {
+            out.write("," + problem);
+        }
+        out.write("\n");
+        for (String cell : grid) {
+            ArrayList<int[]> measures = new ArrayList<int[]>();
+            for (Map.Entry<String, int[]> e : finished.entrySet()) {
+                if (e.getKey().startsWith(cell + "|")) {
+                    measures.add(e.getValue());
+                }
+            }
+            if (measures.isEmpty()) {
+                continue;
+            }
+            out.write(cell.replace('|', ',') + "," + measures.size());
+            for (int p = 0; p < spec.problems.length; p++) {
+                int[] a = new int[measures.size()];
+                for (int j = 0; j < a.length; j++) {
+                    a[j] = p < measures.get(j).length ? measures.get(j)[p] : 0;
+                }
+                out.write("," + median(a));
+            }
+            out.write("\n");
+        }
+        out.close();
+        Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** 
+     * Run all experiments of the paper with a solver, or the declarative experiments of the given properties files
+     * @param args The solver, or the properties files
+    */
     public static void main(String args[]) throws Exception 
     {
+        if (args.length > 0 && args[0].endsWith(".properties")) {
+            for (String spec : args) {
+                run(ExperimentSpec.load(spec));
+            }
+            return;
+        }
+        if (args.length > 0) {
+            solver = args[0];
+        }
+
         case_study();
 
         best(false);
 
         real_experiment();
+        k_sweep();
         
         synthetic_experiment_techniques("uniform");
         synthetic_experiment_techniques("correlated");
@@ -710,6 +998,9 @@ public class Experiment {
         clustering("uniform");
 
         indicator_vs_brute_force("uniform");
+        indicator_vs_big_m("uniform");
+        indicator_vs_big_m("correlated");
+        indicator_vs_big_m("anti-correlated");
         monotonic_vs_quantifier();
         perimeter_vs_volume();
     }
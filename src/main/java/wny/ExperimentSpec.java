@@ -0,0 +1,129 @@
+package wny;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Properties;
+
+/** 
+ * A declarative experiment, read from a properties file instead of being hard-coded in the Experiment class
+ * The grid is every combination of the solvers, numbers of attributes, clustering levels and top-k limits, 
+ * and each cell of the grid has one run for each rank offset and repetition
+ * A run solves the problems in order, where the problems after an unsatisfiable SAT problem are skipped as in the paper
+ * <br><br>
+ * The keys are name, dataset, tuples (0 for all), sort (true to rank the tuples by their default score as the synthetic experiments), 
+ * attributes, k, offsets (the original rank of the expected tuple is k + offset), solvers, problems, clustering, repetitions, 
+ * precise, measure, output and journal. A list is separated by commas, and a numeric list can also be a range from:to:step
+ * @author Zixuan Chen
+*/
+public class ExperimentSpec {
+    public String name;
+    public String dataset;
+    public int num_tuples;
+    public boolean sort;
+    public int[] attributes;
+    public int[] ks;
+    public int[] offsets;
+    public String[] solvers;
+    public String[] problems;
+    public double[] clustering;
+    public int repetitions;
+    public boolean precise;
+    public int measure;
+    public String output; // the CSV of the medians of each cell, rewritten after every run
+    public String journal; // the append-only journal of the finished runs
+
+    /** 
+     * @param file_path The properties file of the experiment
+     * @return The experiment
+    */
+    public static ExperimentSpec load(String file_path) throws IOException {
+        Properties p = new Properties();
+        FileReader in = new FileReader(file_path);
+        try {
+            p.load(in);
+        } finally {
+            in.close();
+        }
+
+        ExperimentSpec spec = new ExperimentSpec();
+        spec.name = p.getProperty("name", "experiment");
+        spec.dataset = required(p, "dataset");
+        spec.num_tuples = Integer.parseInt(p.getProperty("tuples", "0"));
+        spec.sort = Boolean.parseBoolean(p.getProperty("sort", "false"));
+        spec.attributes = toInts(required(p, "attributes"));
+        spec.ks = toInts(required(p, "k"));
+        spec.offsets = toInts(p.getProperty("offsets", "10"));
+        spec.solvers = toStrings(p.getProperty("solvers", "gurobi"));
+        spec.problems = toStrings(p.getProperty("problems", "satisfiability,optimization (cube)"));
+        // The query compares the problems by identity, so they are the canonical strings
+        for (int i = 0; i < spec.problems.length; i++) {
+            spec.problems[i] = spec.problems[i].intern();
+        }
+        String[] clustering = toStrings(p.getProperty("clustering", "0"));
+        spec.clustering = new double[clustering.length];
+        for (int i = 0; i < clustering.length; i++) {
+            spec.clustering[i] = Double.parseDouble(clustering[i]);
+        }
+        spec.repetitions = Integer.parseInt(p.getProperty("repetitions", "1"));
+        spec.precise = Boolean.parseBoolean(p.getProperty("precise", "true"));
+        spec.measure = Integer.parseInt(p.getProperty("measure", "1"));
+        spec.output = p.getProperty("output", "result/" + spec.name + ".csv");
+        spec.journal = p.getProperty("journal", "result/" + spec.name + ".journal");
+        return spec;
+    }
+
+    private static String required(Properties p, String key) {
+        String value = p.getProperty(key);
+        if (value == null) {
+            throw new IllegalArgumentException("The experiment has no " + key);
+        }
+        return value;
+    }
+
+    private static String[] toStrings(String list) {
+        String[] values = list.split(",");
+        for (int i = 0; i < values.length; i++) {
+            values[i] = values[i].trim();
+        }
+        return values;
+    }
+
+    /** 
+     * @param list A list of integers or ranges from:to:step
+     * @return The integers
+    */
+    private static int[] toInts(String list) {
+        ArrayList<Integer> values = new ArrayList<Integer>();
+        for (String s : toStrings(list)) {
+            String[] range = s.split(":");
+            if (range.length == 1) {
+                values.add(Integer.parseInt(range[0]));
+            } else {
+                int step = range.length > 2 ? Integer.parseInt(range[2]) : 1;
+                for (int v = Integer.parseInt(range[0]); v <= Integer.parseInt(range[1]); v += step) {
+                    values.add(v);
+                }
+            }
+        }
+        int[] ints = new int[values.size()];
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = values.get(i);
+        }
+        return ints;
+    }
+
+    /** 
+     * @return The key of a cell of the grid
+    */
+    public static String getCell(String solver, int attributes, double clustering, int k) {
+        return solver + "|" + attributes + "|" + clustering + "|" + k;
+    }
+
+    /** 
+     * @return The key of a run of a cell
+    */
+    public static String getRun(String cell, int offset, int repetition) {
+        return cell + "|" + offset + "|" + repetition;
+    }
+}
\ No newline at end of file
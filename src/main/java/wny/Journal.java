@@ -0,0 +1,93 @@
+package wny;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** 
+ * An append-only journal of the finished runs of an experiment, one line per run with its key and measures
+ * Every line is flushed to the disk before the run counts as finished, so a restarted experiment skips the recorded runs,
+ * and a line cut by a crash is dropped when the journal is opened again
+ * @author Zixuan Chen
+*/
+public class Journal {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private FileOutputStream out;
+    private LinkedHashMap<String, int[]> runs;
+
+    /** 
+     * Open a journal, and read the runs it has recorded
+     * @param file_path The file of the journal, which is created if it does not exist
+    */
+    public Journal(String file_path) throws IOException {
+        runs = new LinkedHashMap<String, int[]>();
+        File f = new File(file_path);
+        if (f.getParentFile() != null) {
+            f.getParentFile().mkdirs();
+        }
+        if (f.exists()) {
+            String content = new String(Files.readAllBytes(f.toPath()), UTF8);
+            int end = content.lastIndexOf('\n') + 1;
+            if (end < content.length()) {
+                // Drop the last line, which was cut by a crash
+                RandomAccessFile raf = new RandomAccessFile(f, "rw");
+                raf.setLength(content.substring(0, end).getBytes(UTF8).length);
+                raf.close();
+            }
+            for (String line : content.substring(0, end).split("\n")) {
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    continue;
+                }
+                String[] values = line.substring(tab + 1).split(",");
+                int[] measures = new int[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    measures[i] = Integer.parseInt(values[i].trim());
+                }
+                runs.put(line.substring(0, tab), measures);
+            }
+        }
+        out = new FileOutputStream(f, true);
+    }
+
+    /** 
+     * @param run The key of a run
+     * @return Whether the run has been recorded
+    */
+    public synchronized boolean contains(String run) {
+        return runs.containsKey(run);
+    }
+
+    /** 
+     * Record a finished run
+     * @param run The key of the run
+     * @param measures The measures of the run
+    */
+    public synchronized void append(String run, int[] measures) throws IOException {
+        StringBuilder line = new StringBuilder(run).append('\t');
+        for (int i = 0; i < measures.length; i++) {
+            line.append(i > 0 ? "," : "").append(measures[i]);
+        }
+        out.write(line.append('\n').toString().getBytes(UTF8));
+        out.flush();
+        out.getFD().sync();
+        runs.put(run, measures);
+    }
+
+    /** 
+     * @return A copy of the recorded runs, in the order of their records
+    */
+    public synchronized Map<String, int[]> getRuns() {
+        return new LinkedHashMap<String, int[]>(runs);
+    }
+
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
\ No newline at end of file
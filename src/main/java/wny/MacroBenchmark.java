@@ -0,0 +1,283 @@
+package wny;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import wny.data.Generator;
+import wny.entities.Tuple;
+import wny.metrics.Output;
+import wny.metrics.Sink;
+import wny.query.Query;
+import wny.query.Workload;
+import wny.util.DatabaseParser;
+
+/** 
+ * A scaled-down, deterministic version of the experiments of the paper, which runs in minutes with the java optimizer or z3 
+ * and serves as a performance regression gate for the solvers
+ * Every scenario is repeated, and the median wall-clock time of each stage of the query (initialization, clustering, satisfiability, 
+ * best, box and their total) is recorded into a baseline file, or compared with it
+ * Usage: java -Dwny.solver=java wny.MacroBenchmark record|check baseline.properties
+ * A stage regresses if it is slower than the baseline by more than -Dwny.threshold (by default 0.2, i.e., 20%) and by more than 
+ * -Dwny.slack milliseconds (by default 20), and a changed answer (a perimeter by more than the tolerance 0.01) also fails the check, which then exits with status 1
+ * The repetitions are set with -Dwny.repetitions (by default 5) after -Dwny.warmup discarded ones (by default 1), 
+ * and -Dwny.scenarios runs only the given scenarios separated by commas
+ * @author Zixuan Chen
+*/
+public class MacroBenchmark {
+    private static final long SEED = 20230601L;
+
+    /** 
+     * A why-not-yet question derived from an experiment of the paper
+    */
+    private static class Scenario {
+        String name;
+        String source; // a data file, or the distribution of fixed-seed synthetic data
+        int num_tuple;
+        int num_attribute;
+        int k;
+        int index; // the index of the expected tuple in the relation, -1 for the tuple ranked k + offset by the equal weights
+        int offset;
+        String problem;
+        double clustered;
+        boolean precise;
+        int measure;
+
+        Scenario(String name, String source, int num_tuple, int num_attribute, int k, int index, int offset, 
+        String problem, double clustered, boolean precise, int measure) {
+            this.name = name;
+            this.source = source;
+            this.num_tuple = num_tuple;
+            this.num_attribute = num_attribute;
+            this.k = k;
+            this.index = index;
+            this.offset = offset;
+            this.problem = problem;
+            this.clustered = clustered;
+            this.precise = precise;
+            this.measure = measure;
+        }
+    }
+
+    /** 
+     * @return All scenarios, in the order of the experiments in the paper
+    */
+    private static List<Scenario> getScenarios() {
+        List<Scenario> scenarios = new ArrayList<Scenario>();
+        // case_study: the SAT problem of Luka Dončić on all players
+        scenarios.add(new Scenario("case_study", "data/stats.csv", Integer.MAX_VALUE, 5, 10, 22, 0, "satisfiability", 0, true, 1));
+        // best: the direct BEST problem
+        scenarios.add(new Scenario("best", "data/stats.csv", 1000, 5, 0, 40, 0, "best (direct)", 0, true, 1));
+        // real_experiment: BOX on CUBE with 300 instead of all players and k = 20 instead of 50
+        scenarios.add(new Scenario("real_experiment", "data/stats.csv", 300, 3, 20, -1, 10, "optimization (cube)", 0, true, 1));
+        // synthetic_experiment_techniques: BOX with binary search, without and with clustering, on 300 instead of up to 1000000 tuples and k = 20 instead of 50
+        scenarios.add(new Scenario("techniques_binary_search", "uniform", 300, 3, 20, -1, 1, "optimization (cube)", 0, false, 1));
+        scenarios.add(new Scenario("techniques_clustering", "uniform", 300, 3, 20, -1, 1, "optimization (cube)", 0.5, false, 1));
+        // clustering: SAT after clustering on 10000 instead of 1000000 tuples
+        scenarios.add(new Scenario("clustering", "anti-correlated", 10000, 3, 50, -1, 1, "satisfiability", 0.1, true, 1));
+        // perimeter_vs_volume: BOX on CUBE with both measures
+        scenarios.add(new Scenario("perimeter", "data/uniform-5d.csv", 100, 3, 10, -1, 1, "optimization (cube)", 0, true, 1));
+        scenarios.add(new Scenario("volume", "data/uniform-5d.csv", 100, 3, 10, -1, 1, "optimization (cube)", 0, true, 0));
+        return scenarios;
+    }
+
+    /** 
+     * @param scenario The scenario
+     * @return The relation of the scenario, projected on its attributes
+    */
+    private static ArrayList<Tuple> getTuples(Scenario scenario) throws IOException {
+        File file;
+        if (scenario.source.endsWith(".csv")) {
+            file = new File(scenario.source);
+        } else {
+            file = File.createTempFile("wny-macro-", ".csv");
+            file.deleteOnExit();
+            // The generator compares the distributions by identity
+            new Generator(scenario.num_tuple, scenario.num_attribute, file.getPath(), SEED).create(scenario.source.intern());
+        }
+        ArrayList<Tuple> relation = new DatabaseParser(null).parse_file(file).get(0).tuples;
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < Math.min(scenario.num_tuple, relation.size()); i++) {
+            tuples.add(new Tuple(Arrays.copyOf(relation.get(i).values, scenario.num_attribute + 1), null));
+        }
+        return tuples;
+    }
+
+    /** 
+     * Run a scenario and take the median time of each stage over the repetitions
+     * @param scenario The scenario
+     * @param solver The solver
+     * @param warmup The number of discarded repetitions
+     * @param repetitions The number of measured repetitions
+     * @param results The results, where "scenario.stage" is mapped to the median time and "scenario.answer" to the answer
+    */
+    private static void run(Scenario scenario, String solver, int warmup, int repetitions, Map<String, String> results) throws Exception {
+        ArrayList<Tuple> tuples = getTuples(scenario);
+        ArrayList<Tuple> expected_tuples = new ArrayList<Tuple>();
+        if (scenario.index >= 0) {
+            expected_tuples.add(tuples.get(scenario.index));
+        } else {
+            ArrayList<Tuple> sorted = new ArrayList<Tuple>(tuples);
+            Collections.sort(sorted, Collections.reverseOrder());
+            expected_tuples.add(sorted.get(scenario.k + scenario.offset - 1));
+        }
+        int[] topk = {scenario.k};
+
+        Map<String, List<Long>> times = new LinkedHashMap<String, List<Long>>();
+        String answer = null;
+        // The solvers print their progress, which is not part of the measured time
+        Sink sink = Output.getSink();
+        Output.setSink(Output.NONE);
+        try {
+            for (int r = 0; r < warmup + repetitions; r++) {
+                long start = System.currentTimeMillis();
+                Query q = new Query(solver, scenario.problem, tuples, topk, expected_tuples, scenario.clustered, scenario.precise, scenario.measure);
+                q.run();
+                long total = System.currentTimeMillis() - start;
+                if (r < warmup) {
+                    continue;
+                }
+                answer = Workload.getAnswer(scenario.problem, q.getSatisfiability(), q.getBest(), q.getBox());
+                for (Map.Entry<String, Long> e : q.getStageTimes().entrySet()) {
+                    addTime(times, e.getKey(), e.getValue());
+                }
+                addTime(times, "total", total);
+            }
+        } finally {
+            Output.setSink(sink);
+        }
+
+        for (Map.Entry<String, List<Long>> e : times.entrySet()) {
+            results.put(scenario.name + "." + e.getKey(), String.valueOf(median(e.getValue())));
+        }
+        results.put(scenario.name + ".answer", answer);
+    }
+
+    /** 
+     * @param times The times of each stage
+     * @param stage The stage
+     * @param time The time of a repetition
+    */
+    private static void addTime(Map<String, List<Long>> times, String stage, long time) {
+        if (!times.containsKey(stage)) {
+            times.put(stage, new ArrayList<Long>());
+        }
+        times.get(stage).add(time);
+    }
+
+    /** 
+     * @param times The times of the repetitions
+     * @return The median time
+    */
+    private static long median(List<Long> times) {
+        ArrayList<Long> sorted = new ArrayList<Long>(times);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+
+    /** 
+     * Compare the results with the baseline
+     * @param baseline The baseline
+     * @param results The results
+     * @param threshold The relative slowdown which is tolerated
+     * @param slack The absolute slowdown in milliseconds which is tolerated
+     * @return The number of regressed stages and changed answers
+    */
+    private static int compare(Properties baseline, Map<String, String> results, double threshold, long slack) {
+        int failures = 0;
+        System.out.println(String.format("%-42s %12s %12s %9s  %s", "stage", "baseline", "current", "change", "status"));
+        for (Map.Entry<String, String> e : results.entrySet()) {
+            String expected = baseline.getProperty(e.getKey());
+            String status;
+            if (expected == null) {
+                status = "new";
+                expected = "-";
+            } else if (e.getKey().endsWith(".answer")) {
+                status = Workload.isSameAnswer(expected, e.getValue()) ? "ok" : "CHANGED";
+            } else {
+                long before = Long.parseLong(expected);
+                long now = Long.parseLong(e.getValue());
+                status = now > before * (1 + threshold) && now - before > slack ? "REGRESSED" : "ok";
+            }
+            if (!status.equals("ok") && !status.equals("new")) {
+                failures++;
+            }
+            String change = "";
+            if (!e.getKey().endsWith(".answer") && !expected.equals("-") && Long.parseLong(expected) > 0) {
+                change = String.format("%+.1f%%", 100.0 * (Long.parseLong(e.getValue()) - Long.parseLong(expected)) / Long.parseLong(expected));
+            }
+            System.out.println(String.format("%-42s %12s %12s %9s  %s", e.getKey(), expected, e.getValue(), change, status));
+        }
+        return failures;
+    }
+
+    /** 
+     * @param results The results
+     * @param solver The solver
+     * @param file_path The baseline file
+    */
+    private static void write(Map<String, String> results, String solver, String file_path) throws IOException {
+        FileWriter out = new FileWriter(file_path);
+        out.write("# The baseline of the macro-benchmark with the " + solver + " solver, in milliseconds\n");
+        for (Map.Entry<String, String> e : new TreeMap<String, String>(results).entrySet()) {
+            out.write(e.getKey() + "=" + e.getValue() + "\n");
+        }
+        out.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || !(args[0].equals("record") || args[0].equals("check"))) {
+            System.out.println("Usage: MacroBenchmark record|check <baseline file>");
+            return;
+        }
+        String solver = System.getProperty("wny.solver", "java");
+        int warmup = Integer.parseInt(System.getProperty("wny.warmup", "1"));
+        int repetitions = Integer.parseInt(System.getProperty("wny.repetitions", "5"));
+        String filter = System.getProperty("wny.scenarios");
+        List<String> names = filter == null ? null : Arrays.asList(filter.split(","));
+
+        Map<String, String> results = new LinkedHashMap<String, String>();
+        for (Scenario scenario : getScenarios()) {
+            if (names != null && !names.contains(scenario.name)) {
+                continue;
+            }
+            System.out.println("Running " + scenario.name);
+            try {
+                run(scenario, solver, warmup, repetitions, results);
+            } catch (UnsupportedOperationException e) {
+                // e.g., the volume with the java optimizer
+                System.out.println("Skipping " + scenario.name + ": " + e.getMessage());
+            }
+        }
+
+        if (args[0].equals("record")) {
+            write(results, solver, args[1]);
+            System.out.println("The baseline is written to " + args[1]);
+            return;
+        }
+        Properties baseline = new Properties();
+        InputStream in = new FileInputStream(args[1]);
+        try {
+            baseline.load(in);
+        } finally {
+            in.close();
+        }
+        int failures = compare(baseline, results, Double.parseDouble(System.getProperty("wny.threshold", "0.2")), 
+            Long.parseLong(System.getProperty("wny.slack", "20")));
+        if (failures > 0) {
+            System.out.println(failures + " stages regressed or changed their answers");
+            System.exit(1);
+        }
+        System.out.println("No regression");
+    }
+}
\ No newline at end of file
@@ -17,20 +17,30 @@ public class Generator {
     public int num_tuple;
     public int num_attribute;
     public String filename;
+    private Random r;
 
     public Generator (int num_tuple, int num_attribute, String filename) {
 		this.num_tuple = num_tuple;
         this.num_attribute = num_attribute;
         this.filename = filename;
+        this.r = new Random();
 	}
 
+    /** 
+     * A generator with a fixed seed creates the same data every time, e.g., for benchmarks
+     * @param seed The seed of the random values
+    */
+    public Generator (int num_tuple, int num_attribute, String filename, long seed) {
+        this(num_tuple, num_attribute, filename);
+        this.r = new Random(seed);
+    }
+
     /** 
      * Get a correlated value based on the input value
      * @param a The input value
      * @return A correlated value to the input value
     */
     private double getCorrelated(double a) {
-        Random r = new Random();
         double v = (r.nextDouble() - 0.5) / 5 + a;
         if (v > 1) {
             v = 1 - r.nextDouble() / 100;
@@ -52,7 +62,6 @@ public class Generator {
         }
         out.write("Attribute" + num_attribute + "\n");
         if (distribution == "uniform") {
-            Random r = new Random();
             for (int i = 0; i < num_tuple; i++) {
                 out.write((i + 1) + ",");
                 for (int j = 0; j < num_attribute - 1; j++) {  
@@ -61,7 +70,6 @@ public class Generator {
                 out.write(String.format("%.3f", r.nextDouble()) + "\n");
             }
         } else if (distribution == "correlated") {
-            Random r = new Random();
             for (int i = 0; i < num_tuple; i++) {
                 out.write((i + 1) + ",");
                 double v = r.nextDouble();
@@ -71,7 +79,6 @@ public class Generator {
                 out.write(String.format("%.3f", getCorrelated(v)) + "\n");
             }
         } else if (distribution == "anti-correlated")  {
-            Random r = new Random();
             for (int i = 0; i < num_tuple; i++) {
                 out.write((i + 1) + ",");
                 double v = r.nextDouble();
@@ -0,0 +1,713 @@
+package wny.engine;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+
+import wny.model.CardinalityRow;
+import wny.model.Formulation;
+import wny.model.IndicatorRow;
+import wny.model.LinearRow;
+import wny.model.Variable;
+
+/**
+ * A pure-Java mixed integer program solver for the why-not-yet model using branch and bound
+ * Each indicator row is linearized as expr - M * (1 - b) >= rhs - M with the tight M = rhs - min(expr) derived from the data,
+ * where min(expr) is taken over the shape and flexible constraints,
+ * and the indicators whose rows always or never hold over these constraints are fixed before solving
+ * The indicator rows are generated lazily: the binary of a row stays fixed to 1 and the row stays out of the linear program
+ * until a relaxed solution violates it, which keeps the linear program small since few competitors matter for a solution
+ * Fixing the binary to 1 and dropping the row only relaxes the model, so every relaxed solution still gives a valid bound
+ * The nodes are explored depth first and solved by the simplex method starting from the basis of the previous node
+ * At every node, the continuous part of the relaxed solution is checked directly against all rows, which usually finds a feasible solution early
+ * @author Zixuan Chen
+*/
+public class BranchAndBound {
+    // The status codes follow the gurobi status codes
+    public static final int OPTIMAL = 2;
+    public static final int INFEASIBLE = 3;
+    public static final int TIME_LIMIT = 9;
+    public static final int INTERRUPTED = 11;
+
+    private static final double TOLERANCE = 1e-6;
+    private static final double GAP = 1e-4;
+    private static final int MAX_GENERATED_ROWS = 50; // The maximum number of indicator rows added to the linear program at once
+
+    private Formulation f;
+    private Simplex lp;
+    private int num_variables;
+    private int[] columns; // The column of the binary of each indicator row, -1 if fixed
+    private boolean[] active; // Whether the indicator row is in the linear program
+    private double[] minimum; // The minimum of the left-hand side of each indicator row
+    private int[] fixed; // 1 if the indicator row always holds, 0 if it never holds, -1 otherwise
+    private int[] position; // The indicator row of each binary column
+    private int[] current; // The current fixing of each binary in the linear program, -1 if not fixed
+    private int[] cardinality_rows;
+    private double[] cardinality_rhs; // The current right-hand side of each cardinality row, which setCardinality changes without the model
+    private int perimeter_row;
+    private double[] objective; // null for the satisfiability problem
+    private int counted; // the cardinality row whose weighted number of holding indicator rows is maximized, -1 if none
+    private double always; // the weight of the indicator rows of the counted cardinality row which always hold
+    private double[] start; // a known solution which becomes the first incumbent, null if none
+    private Listener listener; // notified of every improving incumbent, null if none
+    private double cutoff; // only the solutions with a larger objective value are searched for, -infinity for all
+
+    private double[] incumbent;
+    private double incumbent_value;
+    private double bound;
+    private int nodes;
+    private volatile boolean interrupted;
+
+    /**
+     * Lower the solver-neutral model to a linear program with binaries
+     * @param f The solver-neutral model
+    */
+    public BranchAndBound(Formulation f) {
+        this(f, true);
+    }
+
+    /**
+     * Lower the solver-neutral model to a linear program with binaries
+     * Without the presolve, the indicator rows are only fixed by the bounds of the variables, 
+     * which saves two linear programs per indicator row, e.g., for a single LP relaxation
+     * @param f The solver-neutral model
+     * @param presolve Whether the indicator rows are presolved over the shape and flexible constraints
+    */
+    public BranchAndBound(Formulation f, boolean presolve) {
+        this.f = f;
+        lp = new Simplex();
+        num_variables = f.size();
+        for (Variable v : f.variables) {
+            lp.addVariable(v.lower, v.upper);
+        }
+
+        // The linear program of the shape and flexible constraints only, to find the range of the left-hand sides
+        Simplex shape = new Simplex();
+        for (Variable v : f.variables) {
+            shape.addVariable(v.lower, v.upper);
+        }
+        for (LinearRow row : f.rows) {
+            lp.addRow(row.indices, row.coefficients, row.sense, row.rhs);
+            shape.addRow(row.indices, row.coefficients, row.sense, row.rhs);
+        }
+
+        // Presolve the indicator rows with the range of their left-hand sides
+        columns = new int[f.indicators.size()];
+        fixed = new int[f.indicators.size()];
+        active = new boolean[f.indicators.size()];
+        minimum = new double[f.indicators.size()];
+        for (int i = 0; i < f.indicators.size(); i++) {
+            IndicatorRow row = f.indicators.get(i);
+            minimum[i] = presolve ? Math.max(f.getMinimum(row), -optimize(shape, row, -1.0)) : f.getMinimum(row);
+            columns[i] = -1;
+            if (minimum[i] >= row.rhs - TOLERANCE) {
+                fixed[i] = 1;
+            } else if (Math.min(f.getMaximum(row), presolve ? optimize(shape, row, 1.0) : Double.POSITIVE_INFINITY) < row.rhs - TOLERANCE) {
+                fixed[i] = 0;
+            } else {
+                fixed[i] = -1;
+                columns[i] = lp.addVariable(1.0, 1.0);
+            }
+        }
+
+        current = new int[columns.length];
+        Arrays.fill(current, -1);
+        position = new int[lp.getNumVariables()];
+        Arrays.fill(position, -1);
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] >= 0) {
+                position[columns[i]] = i;
+            }
+        }
+
+        cardinality_rows = new int[f.cardinalities.size()];
+        cardinality_rhs = new double[f.cardinalities.size()];
+        for (int c = 0; c < f.cardinalities.size(); c++) {
+            CardinalityRow row = f.cardinalities.get(c);
+            int size = 0;
+            for (int i = row.first; i < row.last; i++) {
+                if (fixed[i] == -1) {
+                    size++;
+                }
+            }
+            int[] indices = new int[size];
+            double[] coefficients = new double[size];
+            size = 0;
+            for (int i = row.first; i < row.last; i++) {
+                if (fixed[i] == -1) {
+                    indices[size] = columns[i];
+                    coefficients[size] = f.indicators.get(i).weight;
+                    size++;
+                }
+            }
+            cardinality_rows[c] = lp.addRow(indices, coefficients, ">=", 0.0);
+            setCardinality(c, row.rhs);
+        }
+
+        perimeter_row = -1;
+        if (f.perimeter != null) {
+            perimeter_row = lp.addRow(f.perimeter.indices, f.perimeter.coefficients, "free", 0.0);
+        }
+
+        objective = null;
+        counted = -1;
+        start = null;
+        cutoff = Double.NEGATIVE_INFINITY;
+        interrupted = false;
+    }
+
+    /**
+     * Change the right-hand side of a cardinality row, e.g., for another top-k limit
+     * @param c The index of the cardinality row
+     * @param rhs The minimum weighted number of competitors the expected tuple needs to be not worse than
+    */
+    public void setCardinality(int c, double rhs) {
+        CardinalityRow row = f.cardinalities.get(c);
+        double always = 0;
+        for (int i = row.first; i < row.last; i++) {
+            if (fixed[i] == 1) {
+                always += f.indicators.get(i).weight;
+            }
+        }
+        lp.setRhs(cardinality_rows[c], ">=", rhs - always);
+        cardinality_rhs[c] = rhs;
+    }
+
+    /**
+     * Limit the perimeter of the box
+     * @param sense The sense of the limit, which can be ">=", "<=", "=" or "free" to remove the limit
+     * @param rhs The limit
+    */
+    public void setPerimeter(String sense, double rhs) {
+        lp.setRhs(perimeter_row, sense, rhs);
+    }
+
+    /**
+     * @param row The linear expression over the variables of the model to maximize, null for the satisfiability problem
+    */
+    public void setObjective(LinearRow row) {
+        counted = -1;
+        if (row == null) {
+            objective = null;
+            return;
+        }
+        objective = new double[num_variables];
+        for (int i = 0; i < row.indices.length; i++) {
+            objective[row.indices[i]] += row.coefficients[i];
+        }
+    }
+
+    /**
+     * Maximize the weighted number of holding indicator rows of a cardinality row instead, e.g., for the best problem
+     * The weights are the numbers of competitors, so a node is pruned unless it may hold one more competitor than the best solution
+     * @param c The index of the cardinality row
+    */
+    public void setCountObjective(int c) {
+        objective = null;
+        counted = c;
+        CardinalityRow row = f.cardinalities.get(c);
+        always = 0;
+        for (int i = row.first; i < row.last; i++) {
+            if (fixed[i] == 1) {
+                always += f.indicators.get(i).weight;
+            }
+        }
+    }
+
+    /**
+     * Start the next optimization from a known solution, e.g., the solution for a smaller k, which is still feasible for a larger k
+     * It needs to satisfy the shape, flexible and perimeter constraints, and is only used if it satisfies the cardinality rows
+     * @param values The values of the variables of the model, null for no solution
+    */
+    public void setStart(double[] values) {
+        start = values;
+    }
+
+    /**
+     * Search only for the solutions better than a known objective value, e.g., the best value over other cells of the model
+     * The solve is INFEASIBLE if there is no such solution
+     * @param cutoff The known objective value, -infinity for none
+    */
+    public void setCutoff(double cutoff) {
+        this.cutoff = cutoff;
+    }
+
+    /**
+     * @param listener The listener of the improving incumbents of the next solves, null for none
+    */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Solve the linear relaxation of the model only, i.e., the root node with all violated indicator rows generated
+     * Its objective value is a valid upper bound of the objective of the model
+     * @param timeout The time limit in milliseconds, 0 for no limit
+     * @return The values of the variables of the model in the relaxed solution, null if the relaxation is infeasible or not solved
+    */
+    public double[] relax(long timeout) {
+        lp.setDeadline(timeout == 0 ? 0 : System.currentTimeMillis() + timeout);
+        lp.setObjective(getRelaxedObjective());
+        apply(new Node(new int[0], new int[0], Double.POSITIVE_INFINITY));
+
+        double[] values;
+        do {
+            if (lp.solve() != Simplex.OPTIMAL) {
+                return null;
+            }
+            values = lp.getValues();
+        } while (generate(values));
+        return Arrays.copyOf(values, num_variables);
+    }
+
+    /**
+     * Solve the model
+     * The satisfiability problem stops at the first feasible solution
+     * @param timeout The time limit in milliseconds, 0 for no limit
+     * @return The status of the solve
+    */
+    public int solve(long timeout) {
+        long deadline = timeout == 0 ? 0 : System.currentTimeMillis() + timeout;
+        lp.setDeadline(deadline);
+
+        lp.setObjective(getRelaxedObjective());
+
+        incumbent = null;
+        incumbent_value = isOptimizing() ? cutoff : Double.NEGATIVE_INFINITY;
+        bound = Double.POSITIVE_INFINITY;
+        nodes = 0;
+        if (start != null && isOptimizing() && isFeasible(start)) {
+            double value = objective != null ? evaluate(objective, start) : count(start);
+            if (value > incumbent_value) {
+                incumbent = Arrays.copyOf(start, num_variables);
+                incumbent_value = value;
+            }
+        }
+
+        boolean complete = true;
+
+        Deque<Node> stack = new ArrayDeque<Node>();
+        stack.push(new Node(new int[0], new int[0], Double.POSITIVE_INFINITY));
+        while (!stack.isEmpty()) {
+            if (interrupted) {
+                return finish(INTERRUPTED, stack);
+            }
+            if (deadline != 0 && System.currentTimeMillis() > deadline) {
+                return finish(TIME_LIMIT, stack);
+            }
+            Node node = stack.pop();
+            if (isOptimizing() && node.bound <= incumbent_value + gap()) {
+                continue;
+            }
+            apply(node);
+            nodes++;
+
+            // Solve the node again whenever its relaxed solution violates indicator rows out of the linear program
+            int status;
+            double[] values;
+            double relaxation;
+            do {
+                status = lp.solve();
+                if (status != Simplex.OPTIMAL) {
+                    break;
+                }
+                values = lp.getValues();
+                relaxation = relax(values);
+
+                // Check the continuous part of the relaxed solution directly
+                if (isFeasible(values)) {
+                    double value = objective != null ? relaxation : counted >= 0 ? count(values) : 0.0;
+                    if (value > incumbent_value) {
+                        incumbent_value = value;
+                        incumbent = Arrays.copyOf(values, num_variables);
+                        if (listener != null && isOptimizing()) {
+                            listener.improved(Arrays.copyOf(incumbent, num_variables), incumbent_value, getOpenBound(relaxation, stack));
+                        }
+                    }
+                    if (!isOptimizing()) {
+                        bound = 0.0;
+                        return OPTIMAL;
+                    }
+                }
+                if (isOptimizing() && relaxation <= incumbent_value + gap()) {
+                    break;
+                }
+            } while (generate(values));
+
+            if (status == Simplex.INFEASIBLE) {
+                continue;
+            } else if (status == Simplex.TIME_LIMIT) {
+                stack.push(node);
+                return finish(TIME_LIMIT, stack);
+            } else if (status == Simplex.INTERRUPTED) {
+                stack.push(node);
+                return finish(INTERRUPTED, stack);
+            } else if (status != Simplex.OPTIMAL) {
+                complete = false;
+                continue;
+            }
+            values = lp.getValues();
+            relaxation = relax(values);
+            if (isOptimizing() && relaxation <= incumbent_value + gap()) {
+                continue;
+            }
+
+            int branch = choose(values);
+            if (branch < 0) {
+                continue;
+            }
+            // Explore the side without the row first, which uses up the few competitors allowed to win
+            // and soon forces all other rows, so a feasible solution or infeasibility is found early
+            stack.push(node.child(columns[branch], 1, relaxation));
+            stack.push(node.child(columns[branch], 0, relaxation));
+        }
+
+        bound = incumbent_value;
+        if (incumbent != null) {
+            return OPTIMAL;
+        } else if (complete) {
+            return INFEASIBLE;
+        } else {
+            return TIME_LIMIT;
+        }
+    }
+
+    /**
+     * Record the best bound of the unexplored nodes when the search stops early
+     * @param status The status of the solve
+     * @param stack The unexplored nodes
+     * @return The status of the solve
+    */
+    private int finish(int status, Deque<Node> stack) {
+        bound = getOpenBound(incumbent_value, stack);
+        return status;
+    }
+
+    /**
+     * @param value The bound of the current node
+     * @param stack The unexplored nodes
+     * @return The best bound of the current node and the unexplored nodes
+    */
+    private double getOpenBound(double value, Deque<Node> stack) {
+        double b = value;
+        for (Node n : stack) {
+            b = Math.max(b, n.bound);
+        }
+        return b;
+    }
+
+    /**
+     * @param shape The linear program of the shape and flexible constraints
+     * @param row A row
+     * @param sign 1 to maximize the left-hand side of the row, -1 to minimize it
+     * @return The maximum of sign * the left-hand side, infinity if the linear program fails
+    */
+    private double optimize(Simplex shape, LinearRow row, double sign) {
+        double[] c = new double[num_variables];
+        for (int k = 0; k < row.indices.length; k++) {
+            c[row.indices[k]] += sign * row.coefficients[k];
+        }
+        shape.setObjective(c);
+        if (shape.solve() == Simplex.OPTIMAL) {
+            return shape.getObjective();
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Add the big-M row of an indicator row to the linear program and free its binary
+     * @param i The indicator row
+    */
+    private void activate(int i) {
+        IndicatorRow row = f.indicators.get(i);
+        double m = row.rhs - minimum[i];
+        int[] indices = Arrays.copyOf(row.indices, row.indices.length + 1);
+        double[] coefficients = Arrays.copyOf(row.coefficients, row.coefficients.length + 1);
+        indices[row.indices.length] = columns[i];
+        coefficients[row.indices.length] = -m;
+        lp.addRow(indices, coefficients, ">=", row.rhs - m);
+        lp.setBounds(columns[i], 0.0, 1.0);
+        active[i] = true;
+    }
+
+    /**
+     * Add the indicator rows violated by a relaxed solution to the linear program, the most violated first
+     * @param values A solution of the relaxation
+     * @return Whether any row is added
+    */
+    private boolean generate(double[] values) {
+        ArrayList<double[]> violated = new ArrayList<double[]>();
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] >= 0 && !active[i]) {
+                IndicatorRow row = f.indicators.get(i);
+                double v = row.evaluate(values);
+                if (v < row.rhs - TOLERANCE) {
+                    violated.add(new double[] {(row.rhs - v) / (row.rhs - minimum[i]), i});
+                }
+            }
+        }
+        if (violated.isEmpty()) {
+            return false;
+        }
+
+        Collections.sort(violated, new Comparator<double[]>() {
+            public int compare(double[] a, double[] b) {
+                return Double.compare(b[0], a[0]);
+            }
+        });
+        for (int k = 0; k < violated.size() && k < MAX_GENERATED_ROWS; k++) {
+            activate((int) violated.get(k)[1]);
+        }
+        return true;
+    }
+
+    /**
+     * Set the bounds of the binaries for a node, changing only the ones that differ from the previous node
+     * @param node The node
+    */
+    private void apply(Node node) {
+        int[] target = new int[columns.length];
+        Arrays.fill(target, -1);
+        for (int k = 0; k < node.columns.length; k++) {
+            target[position[node.columns[k]]] = node.values[k];
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (active[i] && target[i] != current[i]) {
+                if (target[i] == -1) {
+                    lp.setBounds(columns[i], 0.0, 1.0);
+                } else {
+                    lp.setBounds(columns[i], target[i], target[i]);
+                }
+                current[i] = target[i];
+            }
+        }
+    }
+
+    /**
+     * @param values A solution of the relaxation
+     * @return The indicator row of the most fractional binary, -1 if all binaries are integral
+    */
+    private int choose(double[] values) {
+        int best = -1;
+        double best_value = TOLERANCE;
+        for (int i = 0; i < columns.length; i++) {
+            if (active[i]) {
+                double v = values[columns[i]];
+                double fraction = Math.min(v, 1 - v) * f.indicators.get(i).weight;
+                if (fraction > best_value) {
+                    best_value = fraction;
+                    best = i;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Check whether the continuous part of a solution satisfies the model
+     * The rows of the shape and flexible constraints are satisfied by every relaxed solution,
+     * so only the cardinality rows are checked with the actual indicator rows
+     * @param values A solution
+     * @return Whether the solution is feasible
+    */
+    public boolean isFeasible(double[] values) {
+        for (int k = 0; k < f.cardinalities.size(); k++) {
+            CardinalityRow c = f.cardinalities.get(k);
+            double sum = 0;
+            for (int i = c.first; i < c.last; i++) {
+                IndicatorRow row = f.indicators.get(i);
+                if (row.evaluate(values) >= row.rhs - TOLERANCE) {
+                    sum += row.weight;
+                }
+            }
+            if (sum < cardinality_rhs[k] - TOLERANCE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The relaxation of the satisfiability problem maximizes the weighted number of holding indicator rows
+     * @return The objective of the linear program
+    */
+    private double[] getRelaxedObjective() {
+        double[] c = new double[lp.getNumVariables()];
+        if (objective != null) {
+            System.arraycopy(objective, 0, c, 0, num_variables);
+        } else {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i] >= 0 && isCounted(i)) {
+                    c[columns[i]] = f.indicators.get(i).weight;
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * @return Whether the solve optimizes an objective instead of stopping at the first feasible solution
+    */
+    private boolean isOptimizing() {
+        return objective != null || counted >= 0;
+    }
+
+    /**
+     * @param i An indicator row
+     * @return Whether the binary of the row is in the relaxed objective
+    */
+    private boolean isCounted(int i) {
+        if (counted < 0) {
+            return true;
+        }
+        CardinalityRow row = f.cardinalities.get(counted);
+        return i >= row.first && i < row.last;
+    }
+
+    /**
+     * @param values The solution of the relaxation just solved
+     * @return The bound of the relaxation on the objective, infinity for the satisfiability problem
+    */
+    private double relax(double[] values) {
+        if (objective != null) {
+            return evaluate(objective, values);
+        } else if (counted >= 0) {
+            return lp.getObjective() + always;
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @param values A solution
+     * @return The weighted number of holding indicator rows of the counted cardinality row
+    */
+    private double count(double[] values) {
+        CardinalityRow c = f.cardinalities.get(counted);
+        double sum = 0;
+        for (int i = c.first; i < c.last; i++) {
+            IndicatorRow row = f.indicators.get(i);
+            if (row.evaluate(values) >= row.rhs - TOLERANCE) {
+                sum += row.weight;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @param c The coefficients of an objective
+     * @param values A solution
+     * @return The objective value of the solution
+    */
+    private double evaluate(double[] c, double[] values) {
+        double v = 0;
+        for (int j = 0; j < c.length; j++) {
+            v += c[j] * values[j];
+        }
+        return v;
+    }
+
+    /**
+     * @return The absolute gap under which a node cannot improve the incumbent
+    */
+    private double gap() {
+        if (counted >= 0) {
+            return 1 - TOLERANCE;
+        }
+        return Math.max(TOLERANCE, GAP * Math.abs(incumbent_value));
+    }
+
+    /**
+     * @return The values of the variables of the model in the best solution, null if no solution is found
+    */
+    public double[] getSolution() {
+        return incumbent;
+    }
+
+    /**
+     * @return The objective value of the best solution
+    */
+    public double getObjective() {
+        return incumbent_value;
+    }
+
+    /**
+     * @return The proven upper bound of the objective value
+    */
+    public double getBound() {
+        return bound;
+    }
+
+    /**
+     * @return The number of explored nodes
+    */
+    public int getNodeCount() {
+        return nodes;
+    }
+
+    /**
+     * @return The number of indicator rows generated in the linear program
+    */
+    public int getNumIndicators() {
+        int n = 0;
+        for (int i = 0; i < columns.length; i++) {
+            if (active[i]) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Stop the running solve as soon as possible, and all later solves immediately
+    */
+    public void interrupt() {
+        interrupted = true;
+        lp.interrupt();
+    }
+
+    /**
+     * Allow solves again after an interruption, e.g., for the next probe of a search whose previous probe was cancelled
+    */
+    public void resume() {
+        interrupted = false;
+        lp.resume();
+    }
+
+    /**
+     * A listener of the improving incumbents of the optimization problems, which is called in the solving thread
+    */
+    public interface Listener {
+        /**
+         * @param values The values of the variables of the model in the new incumbent
+         * @param objective The objective value of the new incumbent
+         * @param bound The proven upper bound of the objective value when the incumbent is found
+        */
+        void improved(double[] values, double objective, double bound);
+    }
+
+    /**
+     * A node of the branch and bound tree, which fixes some binaries
+    */
+    private static class Node {
+        private int[] columns;
+        private int[] values;
+        private double bound; // The relaxation value of the parent
+
+        private Node(int[] columns, int[] values, double bound) {
+            this.columns = columns;
+            this.values = values;
+            this.bound = bound;
+        }
+
+        private Node child(int column, int value, double bound) {
+            int[] c = Arrays.copyOf(columns, columns.length + 1);
+            int[] v = Arrays.copyOf(values, values.length + 1);
+            c[columns.length] = column;
+            v[values.length] = value;
+            return new Node(c, v, bound);
+        }
+    }
+}
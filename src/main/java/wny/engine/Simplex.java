@@ -0,0 +1,841 @@
+package wny.engine;
+
+import java.util.Arrays;
+
+/**
+ * A pure-Java linear program solver using the bounded revised simplex method
+ * It maximizes c * x subject to linear rows and lower and upper bounds on every variable
+ * Each row i is stored as a * x - r_i = 0 with a logical variable r_i whose bounds come from the sense and the right-hand side,
+ * so changing a right-hand side or a bound keeps the current basis and the next solve starts from it (warm start)
+ * When the warm basis stays dual feasible, e.g., after fixing a variable or adding a row, the dual simplex method repairs it,
+ * otherwise the primal simplex method with a composite phase one objective is used
+ * The basis inverse is kept dense, so the solver is intended for models with up to a few thousand rows
+ * @author Zixuan Chen
+*/
+public class Simplex {
+    // The status codes follow the gurobi status codes
+    public static final int OPTIMAL = 2;
+    public static final int INFEASIBLE = 3;
+    public static final int UNBOUNDED = 5;
+    public static final int ITERATION_LIMIT = 7;
+    public static final int TIME_LIMIT = 9;
+    public static final int INTERRUPTED = 11;
+
+    private static final int BASIC = 0;
+    private static final int AT_LOWER = 1;
+    private static final int AT_UPPER = 2;
+    private static final int FREE = 3;
+
+    private static final double PRIMAL_TOLERANCE = 1e-7;
+    private static final double DUAL_TOLERANCE = 1e-7;
+    private static final double PIVOT_TOLERANCE = 1e-9;
+
+    private int num_structurals;
+    private int num_rows;
+
+    // Sparse columns of the structural variables
+    private int[][] column_rows;
+    private double[][] column_values;
+    private int[] column_sizes;
+
+    private double[] lower;
+    private double[] upper;
+    private double[] cost;
+    private double[] x;
+    private int[] status;
+
+    private int[] basis;
+    private double[][] binv;
+    private boolean started;
+    private int pivots;
+
+    private long deadline; // 0 for no deadline
+    private volatile boolean interrupted;
+
+    /**
+     * Construct an empty linear program
+    */
+    public Simplex() {
+        num_structurals = 0;
+        num_rows = 0;
+        column_rows = new int[8][];
+        column_values = new double[8][];
+        column_sizes = new int[8];
+        lower = new double[8];
+        upper = new double[8];
+        cost = new double[8];
+        x = new double[8];
+        status = new int[8];
+        basis = new int[8];
+        binv = new double[0][0];
+        started = false;
+        deadline = 0;
+        interrupted = false;
+    }
+
+    /**
+     * @param l The lower bound of the variable
+     * @param u The upper bound of the variable
+     * @return The index of the added variable
+    */
+    public int addVariable(double l, double u) {
+        if (started) {
+            throw new IllegalStateException("Variables need to be added before the first solve");
+        }
+        int j = num_structurals;
+        ensureVariables(num_structurals + num_rows + 1);
+        // Shift the logical variables by one
+        for (int i = num_structurals + num_rows; i > j; i--) {
+            lower[i] = lower[i - 1];
+            upper[i] = upper[i - 1];
+            cost[i] = cost[i - 1];
+            x[i] = x[i - 1];
+            status[i] = status[i - 1];
+        }
+        if (column_rows.length <= j) {
+            column_rows = Arrays.copyOf(column_rows, j * 2 + 1);
+            column_values = Arrays.copyOf(column_values, j * 2 + 1);
+            column_sizes = Arrays.copyOf(column_sizes, j * 2 + 1);
+        }
+        column_rows[j] = new int[4];
+        column_values[j] = new double[4];
+        column_sizes[j] = 0;
+        lower[j] = l;
+        upper[j] = u;
+        cost[j] = 0;
+        num_structurals++;
+        return j;
+    }
+
+    /**
+     * @param indices The variables in the row
+     * @param coefficients The coefficients of the variables
+     * @param sense The sense of the row, which can be ">=", "<=" or "="
+     * @param rhs The right-hand side of the row
+     * @return The index of the added row
+    */
+    public int addRow(int[] indices, double[] coefficients, String sense, double rhs) {
+        int r = num_rows;
+        ensureVariables(num_structurals + num_rows + 1);
+        for (int k = 0; k < indices.length; k++) {
+            int j = indices[k];
+            if (coefficients[k] == 0) {
+                continue;
+            }
+            if (column_sizes[j] == column_rows[j].length) {
+                column_rows[j] = Arrays.copyOf(column_rows[j], column_sizes[j] * 2);
+                column_values[j] = Arrays.copyOf(column_values[j], column_sizes[j] * 2);
+            }
+            column_rows[j][column_sizes[j]] = r;
+            column_values[j][column_sizes[j]] = coefficients[k];
+            column_sizes[j]++;
+        }
+        num_rows++;
+        int logical = num_structurals + r;
+        cost[logical] = 0;
+        setRhs(r, sense, rhs);
+
+        if (basis.length < num_rows) {
+            basis = Arrays.copyOf(basis, num_rows * 2);
+        }
+        basis[r] = logical;
+        status[logical] = BASIC;
+        if (started) {
+            // The new logical variable is basic, and the inverse of the basis is extended by one row
+            double[][] b = new double[num_rows][];
+            for (int i = 0; i < r; i++) {
+                b[i] = Arrays.copyOf(binv[i], num_rows);
+            }
+            double[] row = new double[num_rows];
+            for (int i = 0; i < r; i++) {
+                double a = coefficient(basis[i], r);
+                if (a != 0) {
+                    for (int k = 0; k < r; k++) {
+                        row[k] += a * binv[i][k];
+                    }
+                }
+            }
+            row[r] = -1.0;
+            b[r] = row;
+            binv = b;
+            double v = 0;
+            for (int k = 0; k < indices.length; k++) {
+                v += coefficients[k] * x[indices[k]];
+            }
+            x[logical] = v;
+        }
+        return r;
+    }
+
+    /**
+     * @param r The row
+     * @param sense The new sense of the row, which can be ">=", "<=" or "="
+     * @param rhs The new right-hand side of the row
+    */
+    public void setRhs(int r, String sense, double rhs) {
+        int logical = num_structurals + r;
+        if (sense.equals(">=")) {
+            setBounds(logical, rhs, Double.POSITIVE_INFINITY);
+        } else if (sense.equals("<=")) {
+            setBounds(logical, Double.NEGATIVE_INFINITY, rhs);
+        } else if (sense.equals("free")) {
+            setBounds(logical, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+        } else {
+            setBounds(logical, rhs, rhs);
+        }
+    }
+
+    /**
+     * @param j The variable
+     * @param l The new lower bound of the variable
+     * @param u The new upper bound of the variable
+    */
+    public void setBounds(int j, double l, double u) {
+        lower[j] = l;
+        upper[j] = u;
+        if (started && status[j] != BASIC) {
+            moveToBound(j);
+        }
+    }
+
+    /**
+     * @param j The variable
+     * @return The lower bound of the variable
+    */
+    public double getLower(int j) {
+        return lower[j];
+    }
+
+    /**
+     * @param j The variable
+     * @return The upper bound of the variable
+    */
+    public double getUpper(int j) {
+        return upper[j];
+    }
+
+    /**
+     * @param c The coefficients of the objective to maximize, one for each structural variable
+    */
+    public void setObjective(double[] c) {
+        for (int j = 0; j < num_structurals; j++) {
+            cost[j] = j < c.length ? c[j] : 0.0;
+        }
+    }
+
+    /**
+     * @param j The structural variable
+     * @return The value of the variable in the last solution
+    */
+    public double getValue(int j) {
+        return x[j];
+    }
+
+    /**
+     * @return The values of all structural variables in the last solution
+    */
+    public double[] getValues() {
+        return Arrays.copyOf(x, num_structurals);
+    }
+
+    /**
+     * @return The objective value of the last solution
+    */
+    public double getObjective() {
+        double v = 0;
+        for (int j = 0; j < num_structurals; j++) {
+            v += cost[j] * x[j];
+        }
+        return v;
+    }
+
+    /**
+     * @return The number of structural variables
+    */
+    public int getNumVariables() {
+        return num_structurals;
+    }
+
+    /**
+     * @return The number of rows
+    */
+    public int getNumRows() {
+        return num_rows;
+    }
+
+    /**
+     * @param deadline The wall-clock time in milliseconds after which a solve stops, 0 for no deadline
+    */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Stop the running solve as soon as possible, and all later solves immediately
+    */
+    public void interrupt() {
+        interrupted = true;
+    }
+
+    /**
+     * Allow solves again after an interruption
+    */
+    public void resume() {
+        interrupted = false;
+    }
+
+    /**
+     * Solve the linear program from the current basis
+     * @return The status of the solve
+    */
+    public int solve() {
+        if (!started) {
+            start();
+        }
+        recompute();
+
+        int limit = 50 * (num_rows + num_structurals) + 1000;
+        int iterations = 0;
+        int degenerate = 0;
+        while (true) {
+            if (interrupted) {
+                return INTERRUPTED;
+            }
+            if (iterations++ > limit) {
+                return ITERATION_LIMIT;
+            }
+            if (deadline != 0 && iterations % 100 == 0 && System.currentTimeMillis() > deadline) {
+                return TIME_LIMIT;
+            }
+            if (pivots >= Math.max(200, num_rows)) {
+                refactor();
+                recompute();
+            } else if (iterations % 100 == 0) {
+                recompute();
+            }
+            boolean phase_one = isInfeasible();
+            if (phase_one && degenerate <= 50) {
+                double[] d = reducedCosts(cost);
+                if (isDualFeasible(d)) {
+                    if (!dualIterate(d)) {
+                        return INFEASIBLE;
+                    }
+                    continue;
+                }
+            }
+            double[] c = phase_one ? phaseOneCost() : cost;
+
+            int entering = price(c, degenerate > 50);
+            if (entering < 0) {
+                if (phase_one) {
+                    return INFEASIBLE;
+                }
+                return OPTIMAL;
+            }
+            double step = iterate(entering, c, phase_one, degenerate > 50);
+            if (Double.isInfinite(step)) {
+                if (!phase_one) {
+                    return UNBOUNDED;
+                }
+            }
+            if (step < PRIMAL_TOLERANCE) {
+                degenerate++;
+            } else {
+                degenerate = 0;
+            }
+        }
+    }
+
+    /**
+     * Set up the slack basis
+    */
+    private void start() {
+        for (int j = 0; j < num_structurals; j++) {
+            moveToBound(j);
+        }
+        binv = new double[num_rows][num_rows];
+        for (int i = 0; i < num_rows; i++) {
+            basis[i] = num_structurals + i;
+            status[num_structurals + i] = BASIC;
+            binv[i][i] = -1.0;
+        }
+        pivots = 0;
+        started = true;
+    }
+
+    /**
+     * Put a non-basic variable to one of its bounds
+     * @param j The variable
+    */
+    private void moveToBound(int j) {
+        if (status[j] == AT_UPPER && upper[j] < Double.POSITIVE_INFINITY) {
+            x[j] = upper[j];
+        } else if (lower[j] > Double.NEGATIVE_INFINITY) {
+            status[j] = AT_LOWER;
+            x[j] = lower[j];
+        } else if (upper[j] < Double.POSITIVE_INFINITY) {
+            status[j] = AT_UPPER;
+            x[j] = upper[j];
+        } else {
+            status[j] = FREE;
+            x[j] = 0.0;
+        }
+    }
+
+    /**
+     * Recompute the inverse of the basis from scratch to remove the accumulated numerical error
+     * The current inverse is kept if the basis is found to be singular
+    */
+    private void refactor() {
+        int n = num_rows;
+        double[][] a = new double[n][2 * n];
+        for (int i = 0; i < n; i++) {
+            int j = basis[i];
+            if (j < num_structurals) {
+                for (int k = 0; k < column_sizes[j]; k++) {
+                    a[column_rows[j][k]][i] = column_values[j][k];
+                }
+            } else {
+                a[j - num_structurals][i] = -1.0;
+            }
+            a[i][n + i] = 1.0;
+        }
+        // Gauss-Jordan elimination with partial pivoting
+        for (int c = 0; c < n; c++) {
+            int p = c;
+            for (int i = c + 1; i < n; i++) {
+                if (Math.abs(a[i][c]) > Math.abs(a[p][c])) {
+                    p = i;
+                }
+            }
+            if (Math.abs(a[p][c]) < PIVOT_TOLERANCE) {
+                pivots = 0;
+                return;
+            }
+            double[] t = a[p];
+            a[p] = a[c];
+            a[c] = t;
+            double pivot = a[c][c];
+            for (int k = c; k < 2 * n; k++) {
+                a[c][k] /= pivot;
+            }
+            for (int i = 0; i < n; i++) {
+                double f = a[i][c];
+                if (i != c && f != 0) {
+                    for (int k = c; k < 2 * n; k++) {
+                        a[i][k] -= f * a[c][k];
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            binv[i] = Arrays.copyOfRange(a[i], n, 2 * n);
+        }
+        pivots = 0;
+    }
+
+    /**
+     * Recompute the values of the basic variables from the non-basic ones
+    */
+    private void recompute() {
+        double[] v = new double[num_rows];
+        for (int j = 0; j < num_structurals; j++) {
+            if (status[j] != BASIC && x[j] != 0) {
+                for (int k = 0; k < column_sizes[j]; k++) {
+                    v[column_rows[j][k]] += column_values[j][k] * x[j];
+                }
+            }
+        }
+        for (int i = 0; i < num_rows; i++) {
+            int logical = num_structurals + i;
+            if (status[logical] != BASIC) {
+                v[i] -= x[logical];
+            }
+        }
+        // B * x_B + N * x_N = 0
+        for (int i = 0; i < num_rows; i++) {
+            double s = 0;
+            double[] row = binv[i];
+            for (int k = 0; k < num_rows; k++) {
+                s += row[k] * v[k];
+            }
+            x[basis[i]] = -s;
+        }
+    }
+
+    /**
+     * @return Whether any basic variable violates its bounds
+    */
+    private boolean isInfeasible() {
+        for (int i = 0; i < num_rows; i++) {
+            int j = basis[i];
+            if (x[j] < lower[j] - PRIMAL_TOLERANCE || x[j] > upper[j] + PRIMAL_TOLERANCE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The phase one objective maximizes the negative sum of infeasibilities
+     * @return The phase one costs
+    */
+    private double[] phaseOneCost() {
+        double[] c = new double[num_structurals + num_rows];
+        for (int i = 0; i < num_rows; i++) {
+            int j = basis[i];
+            if (x[j] < lower[j] - PRIMAL_TOLERANCE) {
+                c[j] = 1.0;
+            } else if (x[j] > upper[j] + PRIMAL_TOLERANCE) {
+                c[j] = -1.0;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * @param c The costs
+     * @return The reduced costs of all variables, 0 for the basic ones
+    */
+    private double[] reducedCosts(double[] c) {
+        double[] y = new double[num_rows];
+        for (int i = 0; i < num_rows; i++) {
+            double cb = c[basis[i]];
+            if (cb != 0) {
+                double[] row = binv[i];
+                for (int k = 0; k < num_rows; k++) {
+                    y[k] += cb * row[k];
+                }
+            }
+        }
+
+        double[] d = new double[num_structurals + num_rows];
+        for (int j = 0; j < num_structurals + num_rows; j++) {
+            if (status[j] == BASIC) {
+                continue;
+            }
+            d[j] = c[j];
+            if (j < num_structurals) {
+                for (int k = 0; k < column_sizes[j]; k++) {
+                    d[j] -= y[column_rows[j][k]] * column_values[j][k];
+                }
+            } else {
+                d[j] += y[j - num_structurals];
+            }
+        }
+        return d;
+    }
+
+    /**
+     * @param d The reduced costs
+     * @return Whether no non-basic variable can improve the objective by leaving its bound
+    */
+    private boolean isDualFeasible(double[] d) {
+        for (int j = 0; j < num_structurals + num_rows; j++) {
+            if (status[j] == BASIC || lower[j] == upper[j]) {
+                continue;
+            }
+            if (d[j] > DUAL_TOLERANCE && (status[j] == AT_LOWER || status[j] == FREE)) {
+                return false;
+            }
+            if (d[j] < -DUAL_TOLERANCE && (status[j] == AT_UPPER || status[j] == FREE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Do one iteration of the dual simplex method, which moves the most infeasible basic variable to its violated bound
+     * @param d The reduced costs, which are dual feasible
+     * @return false if the linear program is proven infeasible
+    */
+    private boolean dualIterate(double[] d) {
+        int leaving = -1;
+        double violation = PRIMAL_TOLERANCE;
+        for (int i = 0; i < num_rows; i++) {
+            int j = basis[i];
+            double v = Math.max(lower[j] - x[j], x[j] - upper[j]);
+            if (v > violation) {
+                violation = v;
+                leaving = i;
+            }
+        }
+        int j_leaving = basis[leaving];
+        boolean to_upper = x[j_leaving] > upper[j_leaving];
+        double[] rho = binv[leaving];
+
+        // The basic variable changes by -alpha_j * t when the non-basic variable j changes by t
+        int entering = -1;
+        double best_ratio = Double.POSITIVE_INFINITY;
+        double best_alpha = 0;
+        for (int j = 0; j < num_structurals + num_rows; j++) {
+            if (status[j] == BASIC || lower[j] == upper[j]) {
+                continue;
+            }
+            double a = 0;
+            if (j < num_structurals) {
+                for (int k = 0; k < column_sizes[j]; k++) {
+                    a += rho[column_rows[j][k]] * column_values[j][k];
+                }
+            } else {
+                a = -rho[j - num_structurals];
+            }
+            if (Math.abs(a) <= 1e-7) {
+                continue;
+            }
+            // Increasing the basic variable needs -a * t > 0
+            double t = to_upper ? a : -a;
+            boolean eligible = status[j] == FREE || (status[j] == AT_LOWER && t > 0) || (status[j] == AT_UPPER && t < 0);
+            if (!eligible) {
+                continue;
+            }
+            double ratio = Math.abs(d[j]) / Math.abs(a);
+            if (ratio < best_ratio - PIVOT_TOLERANCE || (ratio <= best_ratio + PIVOT_TOLERANCE && Math.abs(a) > Math.abs(best_alpha))) {
+                best_ratio = Math.min(ratio, best_ratio);
+                entering = j;
+                best_alpha = a;
+            }
+        }
+        if (entering < 0) {
+            return false;
+        }
+
+        double[] alpha = column(entering);
+        double target = to_upper ? upper[j_leaving] : lower[j_leaving];
+        double step = (x[j_leaving] - target) / alpha[leaving];
+        x[entering] += step;
+        for (int i = 0; i < num_rows; i++) {
+            x[basis[i]] -= step * alpha[i];
+        }
+        pivot(leaving, entering, alpha, to_upper);
+        return true;
+    }
+
+    /**
+     * @param j A variable
+     * @return The column of the variable in terms of the current basis, B^-1 * A_j
+    */
+    private double[] column(int j) {
+        double[] alpha = new double[num_rows];
+        if (j < num_structurals) {
+            for (int k = 0; k < column_sizes[j]; k++) {
+                int r = column_rows[j][k];
+                double a = column_values[j][k];
+                for (int i = 0; i < num_rows; i++) {
+                    alpha[i] += binv[i][r] * a;
+                }
+            }
+        } else {
+            int r = j - num_structurals;
+            for (int i = 0; i < num_rows; i++) {
+                alpha[i] = -binv[i][r];
+            }
+        }
+        return alpha;
+    }
+
+    /**
+     * Choose the entering variable
+     * @param c The costs
+     * @param bland Whether to use Bland's rule to avoid cycling
+     * @return The entering variable, or -1 if the current basis is optimal
+    */
+    private int price(double[] c, boolean bland) {
+        double[] reduced = reducedCosts(c);
+
+        int best = -1;
+        double best_value = 0;
+        for (int j = 0; j < num_structurals + num_rows; j++) {
+            if (status[j] == BASIC || lower[j] == upper[j]) {
+                continue;
+            }
+            double d = reduced[j];
+            double gain = 0;
+            if (d > DUAL_TOLERANCE && (status[j] == AT_LOWER || status[j] == FREE)) {
+                gain = d;
+            } else if (d < -DUAL_TOLERANCE && (status[j] == AT_UPPER || status[j] == FREE)) {
+                gain = -d;
+            }
+            if (gain > 0) {
+                if (bland) {
+                    return j;
+                }
+                if (gain > best_value) {
+                    best_value = gain;
+                    best = j;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Move the entering variable as far as possible and update the basis
+     * @param entering The entering variable
+     * @param c The costs
+     * @param phase_one Whether this is a phase one iteration
+     * @param bland Whether to use Bland's rule to avoid cycling
+     * @return The length of the step
+    */
+    private double iterate(int entering, double[] c, boolean phase_one, boolean bland) {
+        double[] alpha = column(entering);
+
+        // Decide the direction from the reduced cost
+        double d = c[entering];
+        for (int i = 0; i < num_rows; i++) {
+            d -= c[basis[i]] * alpha[i];
+        }
+        double direction = d > 0 ? 1.0 : -1.0;
+
+        // Ratio test, the basic variables change by -direction * t * alpha
+        double step = upper[entering] - lower[entering];
+        int leaving = -1;
+        boolean to_upper = false;
+        double leaving_alpha = 0;
+        for (int i = 0; i < num_rows; i++) {
+            double rate = -direction * alpha[i];
+            if (Math.abs(rate) <= PIVOT_TOLERANCE) {
+                continue;
+            }
+            int j = basis[i];
+            double limit;
+            boolean upper_bound;
+            if (rate < 0) {
+                if (phase_one && x[j] > upper[j] + PRIMAL_TOLERANCE) {
+                    limit = (x[j] - upper[j]) / -rate;
+                    upper_bound = true;
+                } else if (phase_one && x[j] < lower[j] - PRIMAL_TOLERANCE) {
+                    continue;
+                } else if (lower[j] > Double.NEGATIVE_INFINITY) {
+                    limit = (x[j] - lower[j]) / -rate;
+                    upper_bound = false;
+                } else {
+                    continue;
+                }
+            } else {
+                if (phase_one && x[j] < lower[j] - PRIMAL_TOLERANCE) {
+                    limit = (lower[j] - x[j]) / rate;
+                    upper_bound = false;
+                } else if (phase_one && x[j] > upper[j] + PRIMAL_TOLERANCE) {
+                    continue;
+                } else if (upper[j] < Double.POSITIVE_INFINITY) {
+                    limit = (upper[j] - x[j]) / rate;
+                    upper_bound = true;
+                } else {
+                    continue;
+                }
+            }
+            limit = Math.max(0.0, limit);
+            boolean better;
+            if (limit < step - PIVOT_TOLERANCE) {
+                better = true;
+            } else if (leaving >= 0 && limit <= step + PIVOT_TOLERANCE) {
+                // Break ties by the larger pivot for stability, or by the smaller index for Bland's rule
+                better = bland ? j < basis[leaving] : Math.abs(alpha[i]) > Math.abs(leaving_alpha);
+            } else {
+                better = false;
+            }
+            if (better) {
+                step = limit;
+                leaving = i;
+                to_upper = upper_bound;
+                leaving_alpha = alpha[i];
+            }
+        }
+
+        if (Double.isInfinite(step)) {
+            return step;
+        }
+
+        // Update the values
+        x[entering] += direction * step;
+        for (int i = 0; i < num_rows; i++) {
+            x[basis[i]] -= direction * step * alpha[i];
+        }
+
+        if (leaving < 0) {
+            // The entering variable moves to its other bound
+            if (direction > 0) {
+                status[entering] = AT_UPPER;
+                x[entering] = upper[entering];
+            } else {
+                status[entering] = AT_LOWER;
+                x[entering] = lower[entering];
+            }
+            return step;
+        }
+
+        pivot(leaving, entering, alpha, to_upper);
+        return step;
+    }
+
+    /**
+     * Replace a basic variable with a non-basic one
+     * @param leaving The row of the leaving basic variable
+     * @param entering The entering variable
+     * @param alpha The column of the entering variable in terms of the current basis
+     * @param to_upper Whether the leaving variable goes to its upper bound
+    */
+    private void pivot(int leaving, int entering, double[] alpha, boolean to_upper) {
+        int j = basis[leaving];
+        if (to_upper) {
+            status[j] = AT_UPPER;
+            x[j] = upper[j];
+        } else {
+            status[j] = AT_LOWER;
+            x[j] = lower[j];
+        }
+        basis[leaving] = entering;
+        status[entering] = BASIC;
+
+        // Update the inverse of the basis
+        double[] pivot_row = binv[leaving];
+        double pivot = alpha[leaving];
+        for (int k = 0; k < num_rows; k++) {
+            pivot_row[k] /= pivot;
+        }
+        for (int i = 0; i < num_rows; i++) {
+            if (i != leaving && alpha[i] != 0) {
+                double a = alpha[i];
+                double[] row = binv[i];
+                for (int k = 0; k < num_rows; k++) {
+                    row[k] -= a * pivot_row[k];
+                }
+            }
+        }
+        pivots++;
+    }
+
+    /**
+     * @param j A variable
+     * @param r A row
+     * @return The coefficient of the variable in the row
+    */
+    private double coefficient(int j, int r) {
+        if (j >= num_structurals) {
+            return j - num_structurals == r ? -1.0 : 0.0;
+        }
+        for (int k = 0; k < column_sizes[j]; k++) {
+            if (column_rows[j][k] == r) {
+                return column_values[j][k];
+            }
+        }
+        return 0.0;
+    }
+
+    /**
+     * Make sure the arrays of the variables can hold n variables
+     * @param n The number of variables
+    */
+    private void ensureVariables(int n) {
+        if (lower.length < n) {
+            int size = Math.max(n, lower.length * 2);
+            lower = Arrays.copyOf(lower, size);
+            upper = Arrays.copyOf(upper, size);
+            cost = Arrays.copyOf(cost, size);
+            x = Arrays.copyOf(x, size);
+            status = Arrays.copyOf(status, size);
+        }
+    }
+}
@@ -2,6 +2,8 @@ package wny.entities;
 
 import java.util.ArrayList;
 
+import wny.metrics.Output;
+
 /** 
  * A box is a hyper-rectangle where each attribute is limited by a lower bound and an upper bound
  * @author Zixuan Chen
@@ -9,10 +11,57 @@ import java.util.ArrayList;
 public class Box {
     private double measure; // This can either be the perimeter or volume of the box
 	private ArrayList<String> bounds;
+    private double bound; // The proven upper bound of the measure over all boxes of the question
 
     public Box(double measure) {
         this.measure = measure;
         bounds = new ArrayList<String>();
+        bound = Double.POSITIVE_INFINITY;
+    }
+
+    /** 
+     * @param other A box whose measure, bounds and proven bound are copied
+    */
+    public Box(Box other) {
+        this.measure = other.measure;
+        bounds = new ArrayList<String>(other.bounds);
+        bound = other.bound;
+    }
+
+    /** 
+     * @return The proven upper bound of the measure over all boxes of the question, infinity if unknown
+    */
+    public double getBound() {
+        return bound;
+    }
+
+    /** 
+     * @param bound The proven upper bound of the measure over all boxes of the question
+    */
+    public void setBound(double bound) {
+        this.bound = bound;
+    }
+
+    /** 
+     * A box which was returned or published is never changed, so a new proven bound is set on a copy
+     * @param bound The proven upper bound of the measure over all boxes of the question
+     * @return A copy of the box with the bound
+    */
+    public Box withBound(double bound) {
+        Box b = new Box(this);
+        b.bound = bound;
+        return b;
+    }
+
+    /** 
+     * @return All bounds of the box in a sequence of lower, upper of attribute 1, lower, upper of attribute 2, ...
+    */
+    public double[] getBounds() {
+        double[] values = new double[bounds.size()];
+        for (int i = 0; i < bounds.size(); i++) {
+            values[i] = Double.parseDouble(bounds.get(i));
+        }
+        return values;
     }
 
     /** 
@@ -69,18 +118,21 @@ public class Box {
     */
     public void print() {
         if (valid()) {
-            System.out.println("The optimization goal of the box is: " + String.format("%.5f", measure));
-            System.out.print("The box is ");
+            Output.println("The optimization goal of the box is: " + String.format("%.5f", measure));
+            if (bound < Double.POSITIVE_INFINITY) {
+                Output.println("The proven upper bound of the goal is: " + String.format("%.5f", bound));
+            }
+            Output.print("The box is ");
             for (int i = 0; i < bounds.size() / 2; i++) {
                 if (!isZero(bounds.get(i * 2 + 1))) {
-                    System.out.print("Attribute" + (i + 1) + " ");
-                    System.out.print(bounds.get(i * 2) + " ");
-                    System.out.print(bounds.get(i * 2 + 1) + " ");
+                    Output.print("Attribute" + (i + 1) + " ");
+                    Output.print(bounds.get(i * 2) + " ");
+                    Output.print(bounds.get(i * 2 + 1) + " ");
                 }
             }
-            System.out.println();
+            Output.println();
         } else {
-            System.out.println("No valid box returned by the optimizer");
+            Output.println("No valid box returned by the optimizer");
         }
     } 
 }
@@ -0,0 +1,82 @@
+package wny.entities;
+
+import java.util.ArrayList;
+
+import wny.metrics.Output;
+
+/**
+ * A curve is the result of a why-not-yet question over a range of top-k limits
+ * Each point is a k, whether the expected tuples can be ranked into top-k, and the best box for this k
+ * @author Zixuan Chen
+*/
+public class Curve {
+    private ArrayList<Integer> ks;
+    private ArrayList<Boolean> satisfiability;
+    private ArrayList<Box> boxes;
+
+    public Curve() {
+        ks = new ArrayList<Integer>();
+        satisfiability = new ArrayList<Boolean>();
+        boxes = new ArrayList<Box>();
+    }
+
+    /**
+     * Add a point to the curve
+     * All points need to be added in ascending order of k
+     * @param k The top-k limit
+     * @param satisfiable The SAT result for this k
+     * @param box The BOX result for this k, which is not valid for the SAT problem
+    */
+    public void add(int k, boolean satisfiable, Box box) {
+        ks.add(k);
+        satisfiability.add(satisfiable);
+        boxes.add(box);
+    }
+
+    /**
+     * @return The number of points
+    */
+    public int size() {
+        return ks.size();
+    }
+
+    /**
+     * @param i The index of the point
+     * @return The top-k limit of the point
+    */
+    public int getK(int i) {
+        return ks.get(i);
+    }
+
+    /**
+     * @param i The index of the point
+     * @return The SAT result of the point
+    */
+    public boolean getSatisfiability(int i) {
+        return satisfiability.get(i);
+    }
+
+    /**
+     * @param i The index of the point
+     * @return The BOX result of the point
+    */
+    public Box getBox(int i) {
+        return boxes.get(i);
+    }
+
+    /**
+     * Print all points of the curve
+    */
+    public void print() {
+        for (int i = 0; i < ks.size(); i++) {
+            Output.print("k = " + ks.get(i) + ": ");
+            if (!satisfiability.get(i)) {
+                Output.println("UNSATISFIABLE");
+            } else if (boxes.get(i).valid()) {
+                Output.println("SATISFIABLE, perimeter " + String.format("%.5f", boxes.get(i).getPerimeter()));
+            } else {
+                Output.println("SATISFIABLE");
+            }
+        }
+    }
+}
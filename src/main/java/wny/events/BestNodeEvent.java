@@ -0,0 +1,35 @@
+package wny.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** 
+ * A JFR event for a node of the arrangement tree of TREE for the BEST problem, which solves the LP of the node
+ * A BEST problem expands up to millions of nodes, so the event is disabled by default and enabled in a JFR settings file
+ * @author Zixuan Chen
+*/
+@Name("wny.BestNode")
+@Label("BEST Node")
+@Category("Why-Not-Yet")
+@Description("The LP of a node of the BEST tree")
+@Enabled(false)
+public class BestNodeEvent extends Event {
+    @Label("Question")
+    @Description("The ID of the expected tuple")
+    public String question;
+
+    @Label("Depth")
+    @Description("The number of inequalities decided at the node")
+    public int depth;
+
+    @Label("Status")
+    public String status;
+
+    @Label("Ranking")
+    @Description("The best ranking found so far")
+    public int ranking;
+}
\ No newline at end of file
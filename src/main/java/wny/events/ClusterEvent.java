@@ -0,0 +1,31 @@
+package wny.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** 
+ * A JFR event for the Weka clustering of the inequalities of an expected tuple
+ * @author Zixuan Chen
+*/
+@Name("wny.Cluster")
+@Label("Cluster")
+@Category("Why-Not-Yet")
+@Description("The clustering of the inequalities of an expected tuple")
+public class ClusterEvent extends Event {
+    @Label("Question")
+    @Description("The ID of the expected tuple")
+    public String question;
+
+    @Label("Attributes")
+    public int attributes;
+
+    @Label("Inequalities")
+    @Description("The number of inequalities before the clustering")
+    public int inequalities;
+
+    @Label("Clusters")
+    public int clusters;
+}
\ No newline at end of file
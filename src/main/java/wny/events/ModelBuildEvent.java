@@ -0,0 +1,37 @@
+package wny.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** 
+ * A JFR event for building a model: the solver-neutral model, or the objects of a backend (the gurobi model, the z3 assertions or the java engine)
+ * @author Zixuan Chen
+*/
+@Name("wny.ModelBuild")
+@Label("Model Build")
+@Category("Why-Not-Yet")
+@Description("The construction of a solver-neutral model or of the objects of a backend")
+public class ModelBuildEvent extends Event {
+    @Label("Backend")
+    @Description("model for the solver-neutral model, or the class of the backend")
+    public String backend;
+
+    @Label("Question")
+    @Description("The ID of the first expected tuple")
+    public String question;
+
+    @Label("Shape")
+    public String shape;
+
+    @Label("Tuples")
+    public int tuples;
+
+    @Label("Attributes")
+    public int attributes;
+
+    @Label("Indicators")
+    public int indicators;
+}
\ No newline at end of file
@@ -0,0 +1,36 @@
+package wny.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** 
+ * A JFR event for the preprocessing of an expected tuple: the dominance tests and the inequalities of the competitors
+ * @author Zixuan Chen
+*/
+@Name("wny.Preprocess")
+@Label("Preprocess")
+@Category("Why-Not-Yet")
+@Description("The comparison of an expected tuple with all tuples")
+public class PreprocessEvent extends Event {
+    @Label("Question")
+    @Description("The ID of the expected tuple")
+    public String question;
+
+    @Label("Tuples")
+    public int tuples;
+
+    @Label("Attributes")
+    public int attributes;
+
+    @Label("Dominators")
+    public int dominators;
+
+    @Label("Dominatees")
+    public int dominatees;
+
+    @Label("Competitors")
+    public int competitors;
+}
\ No newline at end of file
@@ -0,0 +1,43 @@
+package wny.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** 
+ * A JFR event for one solve of a backend on a fixed perimeter, e.g., a probe of the binary search
+ * @author Zixuan Chen
+*/
+@Name("wny.SolverProbe")
+@Label("Solver Probe")
+@Category("Why-Not-Yet")
+@Description("A solve of a backend on a fixed perimeter")
+public class SolverProbeEvent extends Event {
+    @Label("Backend")
+    public String backend;
+
+    @Label("Question")
+    @Description("The ID of the first expected tuple")
+    public String question;
+
+    @Label("Tuples")
+    public int tuples;
+
+    @Label("Attributes")
+    public int attributes;
+
+    @Label("K")
+    @Description("The top-k limit of the first expected tuple")
+    public int k;
+
+    @Label("Indicators")
+    public int indicators;
+
+    @Label("Perimeter")
+    public double perimeter;
+
+    @Label("Status")
+    public String status;
+}
\ No newline at end of file
@@ -0,0 +1,41 @@
+package wny.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** 
+ * A counter which only goes up, e.g., the number of nodes of the BEST tree which are expanded
+ * A counter of a query also counts in the counter of the same name of its parent registry
+ * @author Zixuan Chen
+*/
+public class Counter {
+    private final AtomicLong count = new AtomicLong();
+    private final Counter parent;
+
+    /** 
+     * @param parent The counter of the parent registry, null for none
+    */
+    Counter(Counter parent) {
+        this.parent = parent;
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    /** 
+     * @param n The amount to add
+    */
+    public void add(long n) {
+        count.addAndGet(n);
+        if (parent != null) {
+            parent.add(n);
+        }
+    }
+
+    /** 
+     * @return The count
+    */
+    public long get() {
+        return count.get();
+    }
+}
\ No newline at end of file
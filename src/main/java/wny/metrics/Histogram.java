@@ -0,0 +1,132 @@
+package wny.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** 
+ * A histogram of non-negative values with log-linear buckets as in HdrHistogram
+ * The values below 2^SUB_BITS have their own buckets, and every power of 2 above is split into 2^(SUB_BITS - 1) buckets, 
+ * so any percentile is within 1 / 2^(SUB_BITS - 1), about 3%, of the recorded value, with a fixed memory of 976 buckets
+ * Recording is lock-free, so the solver threads record into the same histogram
+ * A histogram of a query also records into the histogram of the same name of its parent registry
+ * @author Zixuan Chen
+*/
+public class Histogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int HALF = SUB / 2;
+    private static final int BUCKETS = SUB + (64 - SUB_BITS) * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+    private final Histogram parent;
+
+    /** 
+     * @param parent The histogram of the parent registry, null for none
+    */
+    Histogram(Histogram parent) {
+        this.parent = parent;
+    }
+
+    /** 
+     * A summary of a histogram at some moment
+    */
+    public static class Snapshot {
+        public final long count;
+        public final long min;
+        public final long max;
+        public final double mean;
+        public final long p50;
+        public final long p95;
+        public final long p99;
+
+        Snapshot(long count, long min, long max, double mean, long p50, long p95, long p99) {
+            this.count = count;
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+        }
+    }
+
+    /** 
+     * @param value A value, where negative values are recorded as 0
+    */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(getIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long m;
+        while (value < (m = min.get()) && !min.compareAndSet(m, value)) {
+        }
+        while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+        }
+        if (parent != null) {
+            parent.record(value);
+        }
+    }
+
+    /** 
+     * @param value A non-negative value
+     * @return The bucket of the value
+    */
+    private static int getIndex(long value) {
+        if (value < SUB) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS + 1;
+        return SUB + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    /** 
+     * @param index A bucket
+     * @return The middle of the values of the bucket
+    */
+    private static long getValue(int index) {
+        if (index < SUB) {
+            return index;
+        }
+        int shift = (index - SUB) / HALF + 1;
+        long lowest = ((long) ((index - SUB) % HALF + HALF)) << shift;
+        return lowest + ((1L << shift) - 1) / 2;
+    }
+
+    /** 
+     * @param p The percentile in (0, 100]
+     * @return The value at the percentile, 0 if nothing is recorded
+    */
+    public long getPercentile(double p) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.max(min.get(), Math.min(max.get(), getValue(i)));
+            }
+        }
+        return max.get();
+    }
+
+    /** 
+     * @return The summary of the recorded values
+    */
+    public Snapshot snapshot() {
+        long n = count.get();
+        if (n == 0) {
+            return new Snapshot(0, 0, 0, 0, 0, 0, 0);
+        }
+        return new Snapshot(n, min.get(), max.get(), (double) sum.get() / n, getPercentile(50), getPercentile(95), getPercentile(99));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,97 @@
+package wny.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** 
+ * A registry of counters and histograms, which are created on first use
+ * Every solve session has its own registry, whose parent is the global registry of the process, so the metrics of one query 
+ * are returned with the query and the metrics of all queries are aggregated, e.g., for the /metrics endpoint of the server
+ * The times are recorded in microseconds, and their names end with _us
+ * @author Zixuan Chen
+*/
+public class Metrics {
+    private static final Metrics GLOBAL = new Metrics(null);
+
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+    private final Metrics parent;
+
+    /** 
+     * Construct a registry whose metrics are also recorded in the global registry
+    */
+    public Metrics() {
+        this(GLOBAL);
+    }
+
+    /** 
+     * @param parent The registry which also records the metrics of this one, null for none
+    */
+    public Metrics(Metrics parent) {
+        this.parent = parent;
+    }
+
+    /** 
+     * @return The registry of all queries of the process
+    */
+    public static Metrics global() {
+        return GLOBAL;
+    }
+
+    /** 
+     * @param name The name of the counter
+     * @return The counter, which is created if it does not exist
+    */
+    public Counter counter(String name) {
+        Counter c = counters.get(name);
+        if (c == null) {
+            Counter created = new Counter(parent == null ? null : parent.counter(name));
+            c = counters.putIfAbsent(name, created);
+            if (c == null) {
+                c = created;
+            }
+        }
+        return c;
+    }
+
+    /** 
+     * @param name The name of the histogram
+     * @return The histogram, which is created if it does not exist
+    */
+    public Histogram histogram(String name) {
+        Histogram h = histograms.get(name);
+        if (h == null) {
+            Histogram created = new Histogram(parent == null ? null : parent.histogram(name));
+            h = histograms.putIfAbsent(name, created);
+            if (h == null) {
+                h = created;
+            }
+        }
+        return h;
+    }
+
+    /** 
+     * Record the time since a start in microseconds
+     * @param name The name of the histogram
+     * @param start The start, as System.nanoTime()
+    */
+    public void recordTime(String name, long start) {
+        histogram(name).record((System.nanoTime() - start) / 1000);
+    }
+
+    /** 
+     * @return The values of all counters and the summaries of all histograms, in the order of their names
+    */
+    public MetricsSnapshot snapshot() {
+        Map<String, Long> c = new TreeMap<String, Long>();
+        for (Map.Entry<String, Counter> e : counters.entrySet()) {
+            c.put(e.getKey(), e.getValue().get());
+        }
+        Map<String, Histogram.Snapshot> h = new TreeMap<String, Histogram.Snapshot>();
+        for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+            h.put(e.getKey(), e.getValue().snapshot());
+        }
+        return new MetricsSnapshot(c, h);
+    }
+}
\ No newline at end of file
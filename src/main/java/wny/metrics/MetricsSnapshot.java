@@ -0,0 +1,88 @@
+package wny.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/** 
+ * The immutable metrics of a query or of all queries at some moment
+ * @author Zixuan Chen
+*/
+public class MetricsSnapshot {
+    private final Map<String, Long> counters;
+    private final Map<String, Histogram.Snapshot> histograms;
+
+    MetricsSnapshot(Map<String, Long> counters, Map<String, Histogram.Snapshot> histograms) {
+        this.counters = Collections.unmodifiableMap(counters);
+        this.histograms = Collections.unmodifiableMap(histograms);
+    }
+
+    /** 
+     * @return The value of each counter
+    */
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    /** 
+     * @return The summary of each histogram
+    */
+    public Map<String, Histogram.Snapshot> getHistograms() {
+        return histograms;
+    }
+
+    /** 
+     * @param name The name of a counter
+     * @return The value of the counter, 0 if it was never used
+    */
+    public long getCounter(String name) {
+        Long c = counters.get(name);
+        return c == null ? 0 : c;
+    }
+
+    /** 
+     * @param name The name of a histogram
+     * @return The summary of the histogram, null if it was never used
+    */
+    public Histogram.Snapshot getHistogram(String name) {
+        return histograms.get(name);
+    }
+
+    /** 
+     * @return The metrics as a JSON object with a "counters" and a "histograms" object
+    */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"counters\": {");
+        String separator = "";
+        for (Map.Entry<String, Long> e : counters.entrySet()) {
+            json.append(separator).append('"').append(e.getKey()).append("\": ").append(e.getValue());
+            separator = ", ";
+        }
+        json.append("}, \"histograms\": {");
+        separator = "";
+        for (Map.Entry<String, Histogram.Snapshot> e : histograms.entrySet()) {
+            Histogram.Snapshot h = e.getValue();
+            json.append(separator).append('"').append(e.getKey()).append("\": {\"count\": ").append(h.count)
+                .append(", \"min\": ").append(h.min).append(", \"max\": ").append(h.max)
+                .append(", \"mean\": ").append(String.format("%.1f", h.mean)).append(", \"p50\": ").append(h.p50)
+                .append(", \"p95\": ").append(h.p95).append(", \"p99\": ").append(h.p99).append('}');
+            separator = ", ";
+        }
+        return json.append("}}").toString();
+    }
+
+    /** 
+     * @return One line for each counter and histogram
+    */
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Long> e : counters.entrySet()) {
+            text.append(e.getKey()).append(": ").append(e.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Histogram.Snapshot> e : histograms.entrySet()) {
+            Histogram.Snapshot h = e.getValue();
+            text.append(e.getKey()).append(": count ").append(h.count).append(", min ").append(h.min).append(", p50 ").append(h.p50)
+                .append(", p95 ").append(h.p95).append(", p99 ").append(h.p99).append(", max ").append(h.max).append('\n');
+        }
+        return text.toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,73 @@
+package wny.metrics;
+
+/** 
+ * The progress messages of the solvers and queries, which are written to a pluggable sink instead of System.out
+ * The sink is the console by default, and -Dwny.output=none drops all messages, so the hot loops do no I/O
+ * The loops which build a message only for the output check isEnabled() first
+ * @author Zixuan Chen
+*/
+public class Output {
+    /** 
+     * The sink which writes to System.out as it is at the time of writing
+    */
+    public static final Sink CONSOLE = new Sink() {
+        public void write(String text) {
+            System.out.print(text);
+        }
+    };
+
+    /** 
+     * The sink which drops all messages
+    */
+    public static final Sink NONE = new Sink() {
+        public void write(String text) {
+        }
+    };
+
+    private static volatile Sink sink = "none".equals(System.getProperty("wny.output")) ? NONE : CONSOLE;
+
+    /** 
+     * @param s The sink of all messages
+    */
+    public static void setSink(Sink s) {
+        sink = s;
+    }
+
+    /** 
+     * @return The sink of all messages
+    */
+    public static Sink getSink() {
+        return sink;
+    }
+
+    /** 
+     * @return Whether the messages are written anywhere
+    */
+    public static boolean isEnabled() {
+        return sink != NONE;
+    }
+
+    /** 
+     * @param o The message
+    */
+    public static void print(Object o) {
+        if (sink != NONE) {
+            sink.write(String.valueOf(o));
+        }
+    }
+
+    /** 
+     * @param o The message, which is followed by a line break
+    */
+    public static void println(Object o) {
+        if (sink != NONE) {
+            sink.write(o + "\n");
+        }
+    }
+
+    public static void println() {
+        if (sink != NONE) {
+            sink.write("\n");
+        }
+    }
+}
\ No newline at end of file
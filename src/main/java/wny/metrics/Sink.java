@@ -0,0 +1,12 @@
+package wny.metrics;
+
+/** 
+ * The destination of the progress messages of the solvers and queries, e.g., the console
+ * @author Zixuan Chen
+*/
+public interface Sink {
+    /** 
+     * @param text The text, which ends with a line break for a full line
+    */
+    void write(String text);
+}
\ No newline at end of file
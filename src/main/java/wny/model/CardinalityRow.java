@@ -0,0 +1,27 @@
+package wny.model;
+
+/** 
+ * A cardinality row of a why-not-yet model
+ * The weighted sum of the indicators in [first, last) of the indicator rows needs to be at least rhs,
+ * i.e., the expected tuple needs to be not worse than enough competitors to be ranked into top-k
+ * @author Zixuan Chen
+*/
+public class CardinalityRow {
+    public String name;
+    public int first;
+    public int last;
+    public double rhs;
+
+    /** 
+     * @param name The name of the row
+     * @param first The first indicator row of the question
+     * @param last The indicator row after the last one of the question
+     * @param rhs The minimum weighted number of competitors the expected tuple needs to be not worse than
+    */
+    public CardinalityRow(String name, int first, int last, double rhs) {
+        this.name = name;
+        this.first = first;
+        this.last = last;
+        this.rhs = rhs;
+    }
+}
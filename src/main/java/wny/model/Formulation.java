@@ -0,0 +1,239 @@
+package wny.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A solver-neutral intermediate representation of a why-not-yet model
+ * It is built once from the preprocessed questions and lowered to a specific solver or optimizer afterwards
+ * The variables are the weights for the SAT problem,
+ * or the lower and upper bounds of the box in a sequence of lower, upper of attribute 1, lower, upper of attribute 2, ... for the BOX problem
+ * @author Zixuan Chen
+*/
+public class Formulation {
+    public String shape; // satisfiability, triangle, pyramid or cube
+    public int num_used_attributes;
+    public ArrayList<Variable> variables;
+    public ArrayList<LinearRow> rows; // shape constraints and flexible constraints
+    public ArrayList<IndicatorRow> indicators;
+    public ArrayList<CardinalityRow> cardinalities; // one for each question
+    public LinearRow perimeter; // sum(upper - lower), null for the SAT problem
+    public int measure; // -1 for no objective, 0 for volume, 1 for perimeter
+
+    /**
+     * Construct an empty model
+     * @param shape The weight constraint of the model
+     * @param num_used_attributes The number of used attributes
+    */
+    public Formulation(String shape, int num_used_attributes) {
+        this.shape = shape;
+        this.num_used_attributes = num_used_attributes;
+        variables = new ArrayList<Variable>();
+        rows = new ArrayList<LinearRow>();
+        indicators = new ArrayList<IndicatorRow>();
+        cardinalities = new ArrayList<CardinalityRow>();
+        perimeter = null;
+        measure = -1;
+    }
+
+    /**
+     * @param name The name of the variable
+     * @param lower The lower bound of the variable
+     * @param upper The upper bound of the variable
+     * @return The index of the added variable
+    */
+    public int addVariable(String name, double lower, double upper) {
+        variables.add(new Variable(name, lower, upper));
+        return variables.size() - 1;
+    }
+
+    /**
+     * @param row The shape or flexible constraint to be added
+    */
+    public void addRow(LinearRow row) {
+        rows.add(row);
+    }
+
+    /**
+     * @param row The indicator row to be added
+    */
+    public void addIndicator(IndicatorRow row) {
+        indicators.add(row);
+    }
+
+    /**
+     * @param row The cardinality row to be added
+    */
+    public void addCardinality(CardinalityRow row) {
+        cardinalities.add(row);
+    }
+
+    /**
+     * @return Whether the variables are the bounds of a box
+    */
+    public boolean isBox() {
+        return perimeter != null;
+    }
+
+    /**
+     * @param c The cardinality row
+     * @return The sum of the weights of the indicators in the cardinality row
+    */
+    public double getTotalWeight(CardinalityRow c) {
+        double sum = 0;
+        for (int i = c.first; i < c.last; i++) {
+            sum += indicators.get(i).weight;
+        }
+        return sum;
+    }
+
+    /**
+     * The minimum of the left-hand side of a row over the bounds of the variables
+     * It is exact for the CUBE constraint, and a valid (possibly loose) bound for other shapes
+     * @param row The row
+     * @return The minimum of the left-hand side
+    */
+    public double getMinimum(LinearRow row) {
+        double v = 0;
+        for (int i = 0; i < row.indices.length; i++) {
+            Variable x = variables.get(row.indices[i]);
+            v += row.coefficients[i] * (row.coefficients[i] >= 0 ? x.lower : x.upper);
+        }
+        return v;
+    }
+
+    /**
+     * The maximum of the left-hand side of a row over the bounds of the variables
+     * It is exact for the CUBE constraint, and a valid (possibly loose) bound for other shapes
+     * @param row The row
+     * @return The maximum of the left-hand side
+    */
+    public double getMaximum(LinearRow row) {
+        double v = 0;
+        for (int i = 0; i < row.indices.length; i++) {
+            Variable x = variables.get(row.indices[i]);
+            v += row.coefficients[i] * (row.coefficients[i] >= 0 ? x.upper : x.lower);
+        }
+        return v;
+    }
+
+    /**
+     * The exact minimum of the left-hand side of an indicator row over the weight constraint, which gives the tightest big-M of the row
+     * With the TRIANGLE or PYRAMID constraint, the weights of the SAT problem or the upper bounds of the box sum up to (at most) 1,
+     * so the minimum puts all the weight on the smallest coefficient. The bounds of the variables give the minimum for the CUBE constraint
+     * The flexible constraints are ignored, so the minimum is still a valid bound with them
+     * @param row The indicator row
+     * @return The minimum of the left-hand side
+    */
+    public double getTightMinimum(LinearRow row) {
+        if (shape.equals("cube")) {
+            return getMinimum(row);
+        }
+        // The weights sum up to exactly 1 for the SAT problem, and the empty box is allowed otherwise
+        double v = shape.equals("satisfiability") ? Double.POSITIVE_INFINITY : 0.0;
+        for (int i = 0; i < row.coefficients.length; i++) {
+            v = Math.min(v, row.coefficients[i]);
+        }
+        return Math.max(v, getMinimum(row));
+    }
+
+    /**
+     * Check whether a solution satisfies all rows and cardinality rows of the model
+     * @param values The values of all variables
+     * @param tolerance The violation allowed for each row
+     * @return Whether the solution is feasible
+    */
+    public boolean isFeasible(double[] values, double tolerance) {
+        for (LinearRow row : rows) {
+            double v = row.evaluate(values);
+            if ((!row.sense.equals("<=") && v < row.rhs - tolerance) || (!row.sense.equals(">=") && v > row.rhs + tolerance)) {
+                return false;
+            }
+        }
+        for (CardinalityRow c : cardinalities) {
+            double sum = 0;
+            for (int i = c.first; i < c.last; i++) {
+                IndicatorRow row = indicators.get(i);
+                if (row.evaluate(values) >= row.rhs - tolerance) {
+                    sum += row.weight;
+                }
+            }
+            if (sum < c.rhs - tolerance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A model of one cell of the variable space, which shares all rows with this model
+     * @param lower The lower bounds of the variables in the cell
+     * @param upper The upper bounds of the variables in the cell
+     * @return The model of the cell
+    */
+    public Formulation restrict(double[] lower, double[] upper) {
+        Formulation f = new Formulation(shape, num_used_attributes);
+        for (int i = 0; i < variables.size(); i++) {
+            f.addVariable(variables.get(i).name, lower[i], upper[i]);
+        }
+        f.rows = rows;
+        f.indicators = indicators;
+        f.cardinalities = cardinalities;
+        f.perimeter = perimeter;
+        f.measure = measure;
+        return f;
+    }
+
+    /**
+     * Split the variable space into 2^depth cells by halving the widest domain again and again
+     * The weights are split for the SAT problem, and the lower bounds, i.e., the position of the box, for the BOX problem,
+     * so every solution lies in at least one cell
+     * @param depth The number of halvings
+     * @return The models of the cells
+    */
+    public ArrayList<Formulation> decompose(int depth) {
+        ArrayList<Formulation> cells = new ArrayList<Formulation>();
+        double[] lower = new double[variables.size()];
+        double[] upper = new double[variables.size()];
+        for (int i = 0; i < variables.size(); i++) {
+            lower[i] = variables.get(i).lower;
+            upper[i] = variables.get(i).upper;
+        }
+        decompose(depth, lower, upper, cells);
+        return cells;
+    }
+
+    /**
+     * @param depth The number of halvings left
+     * @param lower The lower bounds of the variables in the current cell
+     * @param upper The upper bounds of the variables in the current cell
+     * @param cells The models of the cells found so far
+    */
+    private void decompose(int depth, double[] lower, double[] upper, ArrayList<Formulation> cells) {
+        if (depth == 0) {
+            cells.add(restrict(lower, upper));
+            return;
+        }
+        int widest = 0;
+        for (int i = 0; i < variables.size(); i += isBox() ? 2 : 1) {
+            if (upper[i] - lower[i] > upper[widest] - lower[widest]) {
+                widest = i;
+            }
+        }
+        double middle = (lower[widest] + upper[widest]) / 2;
+
+        double[] u = Arrays.copyOf(upper, upper.length);
+        u[widest] = middle;
+        decompose(depth - 1, lower, u, cells);
+        double[] l = Arrays.copyOf(lower, lower.length);
+        l[widest] = middle;
+        decompose(depth - 1, l, upper, cells);
+    }
+
+    /**
+     * @return The number of variables
+    */
+    public int size() {
+        return variables.size();
+    }
+}
@@ -0,0 +1,24 @@
+package wny.model;
+
+/** 
+ * A weighted indicator row of a why-not-yet model
+ * Each row belongs to one competitor (or one cluster of competitors) and owns a binary indicator b,
+ * b = 1 implies that the expected tuple is not worse than the competitor, i.e., sum(coefficients * variables) >= rhs
+ * The weight is the number of competitors represented by the row
+ * @author Zixuan Chen
+*/
+public class IndicatorRow extends LinearRow {
+    public double weight;
+
+    /** 
+     * @param name The name of the row
+     * @param indices The indices of the variables in the row
+     * @param coefficients The coefficients of the variables in the row
+     * @param rhs The right-hand side of the row
+     * @param weight The number of competitors represented by the row
+    */
+    public IndicatorRow(String name, int[] indices, double[] coefficients, double rhs, double weight) {
+        super(name, indices, coefficients, ">=", rhs);
+        this.weight = weight;
+    }
+}
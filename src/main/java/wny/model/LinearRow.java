@@ -0,0 +1,41 @@
+package wny.model;
+
+/** 
+ * A linear row of a why-not-yet model in the form of sum(coefficients * variables) sense rhs
+ * The sense can be ">=", "<=" or "="
+ * @author Zixuan Chen
+*/
+public class LinearRow {
+    public String name;
+    public int[] indices;
+    public double[] coefficients;
+    public String sense;
+    public double rhs;
+
+    /** 
+     * @param name The name of the row
+     * @param indices The indices of the variables in the row
+     * @param coefficients The coefficients of the variables in the row
+     * @param sense The sense of the row
+     * @param rhs The right-hand side of the row
+    */
+    public LinearRow(String name, int[] indices, double[] coefficients, String sense, double rhs) {
+        this.name = name;
+        this.indices = indices;
+        this.coefficients = coefficients;
+        this.sense = sense;
+        this.rhs = rhs;
+    }
+
+    /** 
+     * @param values The values of all variables
+     * @return The value of the left-hand side
+    */
+    public double evaluate(double[] values) {
+        double v = 0;
+        for (int i = 0; i < indices.length; i++) {
+            v += coefficients[i] * values[indices[i]];
+        }
+        return v;
+    }
+}
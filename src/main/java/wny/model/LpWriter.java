@@ -0,0 +1,83 @@
+package wny.model;
+
+import java.io.IOException;
+
+/**
+ * A writer of the CPLEX LP format, which is also read by gurobi and SCIP
+ * Each indicator row is written as a native indicator constraint "b = 1 -> expr >= rhs", as in the gurobi optimizer
+ * @author Zixuan Chen
+*/
+public class LpWriter extends ModelWriter {
+    /**
+     * Write the model to the current stream
+     * @param f The solver-neutral model
+    */
+    protected void write(Formulation f) throws IOException {
+        out.write("\\ Why-not-yet model (" + f.shape + ")\n");
+
+        // The perimeter is maximized for the BOX problem, and the SAT problem has an empty objective
+        out.write("Maximize\n obj:");
+        if (f.measure == 1 && f.perimeter != null) {
+            writeTerms(f, f.perimeter.indices, f.perimeter.coefficients);
+        } else {
+            out.write(" 0 " + f.variables.get(0).name);
+        }
+        out.write("\n");
+
+        out.write("Subject To\n");
+        for (LinearRow row : f.rows) {
+            out.write(" " + row.name + ":");
+            writeTerms(f, row.indices, row.coefficients);
+            out.write(" " + row.sense + " " + number(row.rhs) + "\n");
+        }
+        for (int c = 0; c < f.cardinalities.size(); c++) {
+            CardinalityRow card = f.cardinalities.get(c);
+            for (int i = card.first; i < card.last; i++) {
+                IndicatorRow row = f.indicators.get(i);
+                out.write(" " + getIndicatorName(f, c, i) + ": " + getBinaryName(f, c, i) + " = 1 ->");
+                writeTerms(f, row.indices, row.coefficients);
+                out.write(" >= " + number(row.rhs) + "\n");
+            }
+            out.write(" " + getCardinalityName(f, c) + ":");
+            if (card.first == card.last) {
+                out.write(" 0 " + f.variables.get(0).name);
+            }
+            for (int i = card.first; i < card.last; i++) {
+                if ((i - card.first) % TERMS_PER_LINE == TERMS_PER_LINE - 1) {
+                    out.write("\n  ");
+                }
+                out.write(" + " + number(f.indicators.get(i).weight) + " " + getBinaryName(f, c, i));
+            }
+            out.write(" >= " + number(card.rhs) + "\n");
+        }
+
+        out.write("Bounds\n");
+        for (Variable v : f.variables) {
+            out.write(" " + number(v.lower) + " <= " + v.name + " <= " + number(v.upper) + "\n");
+        }
+
+        out.write("Binaries\n");
+        for (int c = 0; c < f.cardinalities.size(); c++) {
+            CardinalityRow card = f.cardinalities.get(c);
+            for (int i = card.first; i < card.last; i++) {
+                out.write(" " + getBinaryName(f, c, i) + "\n");
+            }
+        }
+        out.write("End\n");
+    }
+
+    /**
+     * @param f The solver-neutral model
+     * @param indices The indices of the variables
+     * @param coefficients The coefficients of the variables
+    */
+    private void writeTerms(Formulation f, int[] indices, double[] coefficients) throws IOException {
+        for (int k = 0; k < indices.length; k++) {
+            if (k % TERMS_PER_LINE == TERMS_PER_LINE - 1) {
+                out.write("\n  ");
+            }
+            double a = coefficients[k];
+            out.write((a < 0 ? " - " : " + ") + number(Math.abs(a)) + " " + f.variables.get(indices[k]).name);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package wny.model;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A writer which exports a solver-neutral model to a file for external solvers
+ * The text is streamed term by term, so models with millions of competitors never need to be held in memory as text
+ * @author Zixuan Chen
+*/
+public abstract class ModelWriter {
+    protected static final int TERMS_PER_LINE = 8;
+
+    protected Writer out;
+
+    /**
+     * @param path The path of the file, whose extension (.lp, .mps or .smt2) decides the format
+     * @return The writer of the format
+    */
+    public static ModelWriter forFile(String path) {
+        String p = path.toLowerCase();
+        if (p.endsWith(".lp")) {
+            return new LpWriter();
+        } else if (p.endsWith(".mps")) {
+            return new MpsWriter();
+        } else if (p.endsWith(".smt2")) {
+            return new SmtWriter();
+        }
+        throw new IllegalArgumentException("Unknown model format: " + path);
+    }
+
+    /**
+     * Write the model to a file
+     * @param f The solver-neutral model
+     * @param path The path of the file
+    */
+    public void write(Formulation f, String path) throws IOException {
+        write(f, new BufferedWriter(new FileWriter(path), 1 << 16));
+    }
+
+    /**
+     * Write the model to a stream, which is closed afterwards
+     * @param f The solver-neutral model
+     * @param out The stream
+    */
+    public void write(Formulation f, Writer out) throws IOException {
+        if (f.measure == 0) {
+            throw new IllegalArgumentException("The volume is not a linear objective");
+        }
+        this.out = out;
+        try {
+            write(f);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write the model to the current stream
+     * @param f The solver-neutral model
+    */
+    protected abstract void write(Formulation f) throws IOException;
+
+    /**
+     * The indicator rows of all questions are named "constraint" + i, so the index of the question is appended when there are several questions
+     * @param f The solver-neutral model
+     * @param c The index of the question
+     * @param i The index of the indicator row
+     * @return The unique name of the indicator row
+    */
+    protected String getIndicatorName(Formulation f, int c, int i) {
+        String name = f.indicators.get(i).name;
+        return f.cardinalities.size() > 1 ? name + "_" + c : name;
+    }
+
+    /**
+     * @param f The solver-neutral model
+     * @param c The index of the question
+     * @param i The index of the indicator row
+     * @return The unique name of the binary indicator of the row, which is named as in the gurobi optimizer for one question
+    */
+    protected String getBinaryName(Formulation f, int c, int i) {
+        String name = "indicator" + (i - f.cardinalities.get(c).first);
+        return f.cardinalities.size() > 1 ? name + "_" + c : name;
+    }
+
+    /**
+     * @param f The solver-neutral model
+     * @param c The index of the question
+     * @return The unique name of the cardinality row of the question
+    */
+    protected String getCardinalityName(Formulation f, int c) {
+        String name = f.cardinalities.get(c).name;
+        return f.cardinalities.size() > 1 ? name + "_" + c : name;
+    }
+
+    /**
+     * @param v A double
+     * @return The text of the double without loss of precision
+    */
+    protected String number(double v) {
+        if (v == Math.rint(v) && Math.abs(v) < 1e15) {
+            return String.valueOf((long) v);
+        }
+        return String.valueOf(v);
+    }
+}
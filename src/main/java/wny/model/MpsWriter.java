@@ -0,0 +1,131 @@
+package wny.model;
+
+import java.io.IOException;
+
+/**
+ * A writer of the free MPS format with the OBJSENSE and INDICATORS sections, which are read by gurobi and CPLEX
+ * The format is column-oriented, so the rows are scanned once for each continuous variable instead of building the columns in memory
+ * @author Zixuan Chen
+*/
+public class MpsWriter extends ModelWriter {
+    /**
+     * Write the model to the current stream
+     * @param f The solver-neutral model
+    */
+    protected void write(Formulation f) throws IOException {
+        out.write("NAME wny_" + f.shape + "\n");
+        out.write("OBJSENSE\n    MAX\n");
+
+        out.write("ROWS\n");
+        out.write(" N  obj\n");
+        for (LinearRow row : f.rows) {
+            out.write(" " + type(row.sense) + "  " + row.name + "\n");
+        }
+        for (int c = 0; c < f.cardinalities.size(); c++) {
+            CardinalityRow card = f.cardinalities.get(c);
+            for (int i = card.first; i < card.last; i++) {
+                out.write(" G  " + getIndicatorName(f, c, i) + "\n");
+            }
+            out.write(" G  " + getCardinalityName(f, c) + "\n");
+        }
+
+        out.write("COLUMNS\n");
+        for (int j = 0; j < f.size(); j++) {
+            String name = f.variables.get(j).name;
+            if (f.measure == 1 && f.perimeter != null) {
+                writeEntry(name, "obj", f.perimeter, j);
+            }
+            for (LinearRow row : f.rows) {
+                writeEntry(name, row.name, row, j);
+            }
+            for (int c = 0; c < f.cardinalities.size(); c++) {
+                CardinalityRow card = f.cardinalities.get(c);
+                for (int i = card.first; i < card.last; i++) {
+                    writeEntry(name, getIndicatorName(f, c, i), f.indicators.get(i), j);
+                }
+            }
+        }
+        out.write("    MARKER  'MARKER'  'INTORG'\n");
+        for (int c = 0; c < f.cardinalities.size(); c++) {
+            CardinalityRow card = f.cardinalities.get(c);
+            for (int i = card.first; i < card.last; i++) {
+                out.write("    " + getBinaryName(f, c, i) + "  " + getCardinalityName(f, c) + "  " + number(f.indicators.get(i).weight) + "\n");
+            }
+        }
+        out.write("    MARKER  'MARKER'  'INTEND'\n");
+
+        out.write("RHS\n");
+        for (LinearRow row : f.rows) {
+            writeRhs(row.name, row.rhs);
+        }
+        for (int c = 0; c < f.cardinalities.size(); c++) {
+            CardinalityRow card = f.cardinalities.get(c);
+            for (int i = card.first; i < card.last; i++) {
+                writeRhs(getIndicatorName(f, c, i), f.indicators.get(i).rhs);
+            }
+            writeRhs(getCardinalityName(f, c), card.rhs);
+        }
+
+        out.write("BOUNDS\n");
+        for (Variable v : f.variables) {
+            out.write(" LO bnd  " + v.name + "  " + number(v.lower) + "\n");
+            out.write(" UP bnd  " + v.name + "  " + number(v.upper) + "\n");
+        }
+        for (int c = 0; c < f.cardinalities.size(); c++) {
+            CardinalityRow card = f.cardinalities.get(c);
+            for (int i = card.first; i < card.last; i++) {
+                out.write(" BV bnd  " + getBinaryName(f, c, i) + "\n");
+            }
+        }
+
+        out.write("INDICATORS\n");
+        for (int c = 0; c < f.cardinalities.size(); c++) {
+            CardinalityRow card = f.cardinalities.get(c);
+            for (int i = card.first; i < card.last; i++) {
+                out.write(" IF " + getIndicatorName(f, c, i) + "  " + getBinaryName(f, c, i) + "  1\n");
+            }
+        }
+        out.write("ENDATA\n");
+    }
+
+    /**
+     * Write the coefficient of a variable in a row if the variable is in the row
+     * @param name The name of the variable
+     * @param row_name The name of the row
+     * @param row The row
+     * @param j The index of the variable
+    */
+    private void writeEntry(String name, String row_name, LinearRow row, int j) throws IOException {
+        for (int k = 0; k < row.indices.length; k++) {
+            if (row.indices[k] == j && row.coefficients[k] != 0) {
+                out.write("    " + name + "  " + row_name + "  " + number(row.coefficients[k]) + "\n");
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write the right-hand side of a row if it is not zero
+     * @param name The name of the row
+     * @param rhs The right-hand side
+    */
+    private void writeRhs(String name, double rhs) throws IOException {
+        if (rhs != 0) {
+            out.write("    rhs  " + name + "  " + number(rhs) + "\n");
+        }
+    }
+
+    /**
+     * @param sense The sense of a row
+     * @return The MPS type of the row
+    */
+    private String type(String sense) {
+        if (sense.equals(">=")) {
+            return "G";
+        } else if (sense.equals("<=")) {
+            return "L";
+        } else {
+            return "E";
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package wny.model;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * A writer of the SMT-LIB2 format, which encodes the model in the same way as the z3 solver
+ * Each indicator row becomes a boolean "the competitor may win", i.e., expr - 0.00001 <= rhs,
+ * and the weighted number of such competitors is limited with a sum of if-then-else terms
+ * The perimeter is maximized with the (maximize) command of z3 for the BOX problem
+ * @author Zixuan Chen
+*/
+public class SmtWriter extends ModelWriter {
+    /**
+     * Write the model to the current stream
+     * @param f The solver-neutral model
+    */
+    protected void write(Formulation f) throws IOException {
+        out.write("; Why-not-yet model (" + f.shape + ")\n");
+        out.write("(set-option :produce-models true)\n");
+
+        for (Variable v : f.variables) {
+            out.write("(declare-fun " + v.name + " () Real)\n");
+            out.write("(assert (and (>= " + v.name + " " + real(v.lower) + ") (<= " + v.name + " " + real(v.upper) + ")))\n");
+        }
+
+        for (LinearRow row : f.rows) {
+            out.write("(assert (" + row.sense + " ");
+            writeExpression(f, row);
+            out.write(" " + real(row.rhs) + "))\n");
+        }
+
+        for (int c = 0; c < f.cardinalities.size(); c++) {
+            CardinalityRow card = f.cardinalities.get(c);
+            for (int i = card.first; i < card.last; i++) {
+                IndicatorRow row = f.indicators.get(i);
+                out.write("(define-fun " + getBinaryName(f, c, i) + " () Bool (<= (- ");
+                writeExpression(f, row);
+                out.write(" 0.00001) " + real(row.rhs) + "))\n");
+            }
+            // Add the constraint on the sum of the indicators
+            long k = Math.round(f.getTotalWeight(card) - card.rhs);
+            out.write("(assert (<= (+ 0");
+            for (int i = card.first; i < card.last; i++) {
+                if ((i - card.first) % TERMS_PER_LINE == TERMS_PER_LINE - 1) {
+                    out.write("\n ");
+                }
+                out.write(" (ite " + getBinaryName(f, c, i) + " " + real(f.indicators.get(i).weight) + " 0.0)");
+            }
+            out.write(") " + real(k) + "))\n");
+        }
+
+        if (f.measure == 1 && f.perimeter != null) {
+            out.write("(maximize ");
+            writeExpression(f, f.perimeter);
+            out.write(")\n");
+        }
+        out.write("(check-sat)\n");
+        out.write("(get-value (");
+        for (Variable v : f.variables) {
+            out.write(" " + v.name);
+        }
+        out.write("))\n");
+    }
+
+    /**
+     * @param f The solver-neutral model
+     * @param row A row
+    */
+    private void writeExpression(Formulation f, LinearRow row) throws IOException {
+        out.write("(+ 0.0");
+        for (int k = 0; k < row.indices.length; k++) {
+            out.write(" (* " + real(row.coefficients[k]) + " " + f.variables.get(row.indices[k]).name + ")");
+        }
+        out.write(")");
+    }
+
+    /**
+     * @param v A double
+     * @return The SMT-LIB2 real of the double with the same precision as the z3 solver
+    */
+    private String real(double v) {
+        String s = String.format(Locale.ROOT, "%.5f", Math.abs(v));
+        return v < 0 ? "(- " + s + ")" : s;
+    }
+}
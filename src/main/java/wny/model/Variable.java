@@ -0,0 +1,23 @@
+package wny.model;
+
+/** 
+ * A continuous variable of a why-not-yet model
+ * It is either a weight or the lower or upper bound of a box on one attribute
+ * @author Zixuan Chen
+*/
+public class Variable {
+    public String name;
+    public double lower;
+    public double upper;
+
+    /** 
+     * @param name The name of the variable
+     * @param lower The lower bound of the variable
+     * @param upper The upper bound of the variable
+    */
+    public Variable(String name, double lower, double upper) {
+        this.name = name;
+        this.lower = lower;
+        this.upper = upper;
+    }
+}
@@ -1,13 +1,28 @@
 package wny.query;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
 import wny.entities.Box;
 import wny.entities.Constraint;
+import wny.entities.Curve;
 import wny.entities.Tuple;
+import wny.metrics.MetricsSnapshot;
+import wny.metrics.Output;
+import wny.solver.BestListener;
+import wny.solver.BoxListener;
 import wny.solver.Solver;
 import wny.solver.Z3Solver;
 import wny.solver.GurobiOptimizer;
+import wny.solver.JavaOptimizer;
+import wny.solver.PortfolioSolver;
+import wny.solver.PreparedQuestion;
+import wny.solver.ExternalSolver;
 
 /** 
  * A query class which contains everything about a why-not-yet question
@@ -21,13 +36,17 @@ public class Query {
     private boolean precise; // true for w/o binary search, false for w/ binary search
     private int measure; // 0 for volume, 1 for perimeter
     private int execution_time;
+    private Map<String, Long> stage_times; // the wall-clock time of each stage in milliseconds
     private Box box;
     private boolean satisfiability;
     private int best;
+    private double[] witness;
+    private Workload.Entry entry; // the captured query, null if the queries are not captured
+    private long created;
 
     /** 
-     * @param solver The solver used for this question. The options are Gurobi optimizer, z3 solver.
-     * @param problem The problem to solve. The options are SAT, BEST, BOX(TRIANGLE, PYRAMID, CUBE, Direct encoding for CUBE)
+     * @param solver The solver used for this question. The options are Gurobi optimizer (with indicator constraints or big-M rows), z3 solver, the license-free java optimizer, an external solver executable and a portfolio of them.
+     * @param problem The problem to solve. The options are SAT, BEST (TREE, Direct), BOX(TRIANGLE, PYRAMID, CUBE, Direct encoding for CUBE) and the greedy heuristic BOX (TRIANGLE, PYRAMID, CUBE)
      * @param tuples The list of all tuples to rank
      * @param topk The top-k limits for expected tuples
      * @param expcted_tuples The list of all expecetd tuples
@@ -37,35 +56,180 @@ public class Query {
     */
     public Query (String solver, String problem, ArrayList<Tuple> tuples,
     int[] topk, ArrayList<Tuple> expected_tuples, double clustered, boolean precise, int measure) throws Exception {
-        System.out.println("This query uses " + solver + " to solve the " + problem + " problem of a why-not-yet question.");
+        Output.println("This query uses " + solver + " to solve the " + problem + " problem of a why-not-yet question.");
 
         execution_time = 0;
+        stage_times = new LinkedHashMap<String, Long>();
+        created = System.currentTimeMillis();
 
-        System.out.println("Initializing a " + solver +": ");
+        Output.println("Initializing a " + solver +": ");
         long start = System.currentTimeMillis();
-        if (solver == "gurobi") {
-            this.solver = new GurobiOptimizer(tuples, expected_tuples);
-        } else if (solver == "z3 solver"){
-            this.solver = new Z3Solver(tuples, expected_tuples);
+        long preprocess_start = System.nanoTime();
+        List<PreparedQuestion> prepared = PreparedQuestion.prepare(tuples, expected_tuples);
+        long preprocess_time = (System.nanoTime() - preprocess_start) / 1000;
+        this.solver = getSolver(solver, tuples, prepared);
+        if (this.solver != null) {
+            this.solver.getMetrics().histogram("preprocess.time_us").record(preprocess_time);
         }
         long end = System.currentTimeMillis();
-        System.out.println("Initialization time: " + (end - start) + "ms");
+        Output.println("Initialization time: " + (end - start) + "ms");
         execution_time += end - start;
-        System.out.println();
+        addStage("initialization", end - start);
+        Output.println();
 
         this.problem = problem;
         this.topk = topk;
         this.clustered = clustered;
         this.precise = precise;
         this.measure = measure;
+        capture(solver, tuples, expected_tuples);
 	}
 
+    /** 
+     * Construct a query on prepared questions, which skips the preprocessing of the expected tuples
+     * The prepared questions are shared and not copied, so many queries with different problems, top-k limits and constraints 
+     * can be solved on the same expected tuples concurrently
+     * @param solver The solver used for this question, with the same options as above
+     * @param problem The problem to solve, with the same options as above
+     * @param tuples The list of all tuples to rank
+     * @param topk The top-k limits for expected tuples
+     * @param prepared The prepared question of each expected tuple
+     * @param clustered An indicator of whether to use cluster
+     * @param precise An indicator of whether to use binary search to get an approximate result
+     * @param measure The optimization measure
+    */
+    public Query (String solver, String problem, ArrayList<Tuple> tuples,
+    int[] topk, List<PreparedQuestion> prepared, double clustered, boolean precise, int measure) throws Exception {
+        execution_time = 0;
+        stage_times = new LinkedHashMap<String, Long>();
+        created = System.currentTimeMillis();
+        this.solver = getSolver(solver, tuples, prepared);
+        execution_time += System.currentTimeMillis() - created;
+        addStage("initialization", System.currentTimeMillis() - created);
+
+        this.problem = problem;
+        this.topk = topk;
+        this.clustered = clustered;
+        this.precise = precise;
+        this.measure = measure;
+        if (Workload.isCapturing()) {
+            ArrayList<Tuple> expected_tuples = new ArrayList<Tuple>();
+            for (PreparedQuestion p : prepared) {
+                expected_tuples.add(p.getExpectedTuple());
+            }
+            capture(solver, tuples, expected_tuples);
+        }
+	}
+
+    /** 
+     * Start the capture of this query into the workload file given with -Dwny.capture, which is written when the query finishes
+     * @param solver The solver used for this question
+     * @param tuples The list of all tuples to rank
+     * @param expected_tuples The list of all expected tuples
+    */
+    private void capture(String solver, ArrayList<Tuple> tuples, List<Tuple> expected_tuples) {
+        if (!Workload.isCapturing()) {
+            return;
+        }
+        entry = new Workload.Entry();
+        entry.fingerprint = Workload.fingerprint(tuples);
+        entry.num_tuples = tuples.size();
+        entry.num_attributes = tuples.get(0).values.length - 1;
+        entry.ids = new String[expected_tuples.size()];
+        for (int i = 0; i < entry.ids.length; i++) {
+            entry.ids[i] = expected_tuples.get(i).values[0];
+        }
+        entry.topk = topk;
+        entry.solver = solver;
+        entry.problem = problem;
+        entry.clustered = clustered;
+        entry.precise = precise;
+        entry.measure = measure;
+    }
+
+    /** 
+     * @param solver The solver used for this question
+     * @param tuples The list of all tuples to rank
+     * @param prepared The prepared question of each expected tuple
+     * @return The solve session on the prepared questions
+    */
+    private static Solver getSolver(String solver, ArrayList<Tuple> tuples, List<PreparedQuestion> prepared) throws Exception {
+        if (solver.equals("gurobi")) {
+            return new GurobiOptimizer(tuples, prepared, false);
+        } else if (solver.equals("gurobi big-M")) {
+            return new GurobiOptimizer(tuples, prepared, true);
+        } else if (solver.equals("z3 solver")){
+            return new Z3Solver(tuples, prepared);
+        } else if (solver.equals("java")){
+            return new JavaOptimizer(tuples, prepared);
+        } else if (solver.equals("external")){
+            // The solver executable is configured with -Dwny.command and -Dwny.format
+            String command = System.getProperty("wny.command", "scip -c \"read {model} optimize write solution {solution} quit\"");
+            return new ExternalSolver(tuples, prepared, command, System.getProperty("wny.format", "lp"));
+        } else if (solver.equals("portfolio")){
+            // The strategies are configured with -Dwny.portfolio as solver[:clustering level] separated by commas
+            PortfolioSolver portfolio = new PortfolioSolver(tuples, prepared);
+            for (String strategy : System.getProperty("wny.portfolio", "gurobi,z3 solver,java").split(",")) {
+                String[] parts = strategy.trim().split(":");
+                portfolio.addStrategy(parts[0], parts.length > 1 ? Double.parseDouble(parts[1]) : 0);
+            }
+            return portfolio;
+        }
+        return null;
+    }
+
     /** 
      * Add one flexible constraint
      * @param c The constraint to be added
     */
     public void addConstraint(Constraint c) {
         solver.addConstraint(c);
+        if (entry != null) {
+            entry.constraints.add(c);
+        }
+    }
+
+    /** 
+     * @param tolerance The gap between the bounds of the perimeter at which the binary search stops
+    */
+    public void setTolerance(double tolerance) {
+        solver.setTolerance(tolerance);
+    }
+
+    /** 
+     * @param parallelism The number of perimeters probed at once by the binary search, which is supported by the java optimizer
+    */
+    public void setParallelism(int parallelism) {
+        solver.setParallelism(parallelism);
+    }
+
+    /** 
+     * @param decomposition The number of halvings of the weight space into cells solved in parallel, which is supported by the java optimizer
+    */
+    public void setDecomposition(int decomposition) {
+        solver.setDecomposition(decomposition);
+    }
+
+    /** 
+     * @param threads The number of threads of the solver, 0 for the default of the backend
+    */
+    public void setThreads(int threads) {
+        solver.setThreads(threads);
+    }
+
+    /** 
+     * @param deadline The wall-clock deadline of the query in milliseconds, which bounds the auxiliary stages of the solver, 0 for none
+    */
+    public void setDeadline(long deadline) {
+        solver.setDeadline(deadline);
+    }
+
+    /** 
+     * @param segments The number of segments of the piecewise-linear log of each side for the volume, which is supported by gurobi, 0 for the exact volume
+     * @param refinement Whether the piecewise-linear log is refined around the optimal sides and solved again
+    */
+    public void setVolumeSegments(int segments, boolean refinement) {
+        solver.setVolumeSegments(segments, refinement);
     }
 
     /** 
@@ -74,10 +238,21 @@ public class Query {
     */
     public void addConstraints(ArrayList<Constraint> list) {
         for (Constraint c : list) {
-            solver.addConstraint(c);
+            addConstraint(c);
         }
     }
     
+    /** 
+     * Solve the SAT problem, where only the questions which are not decided by the dominators or sampled weights reach the solver
+     * @return The SAT result, whose weights of the certificate or the solver become the witness if it is satisfiable
+    */
+    private boolean decideSatisfiability() throws Exception {
+        Boolean certificate = solver.certify(topk);
+        boolean result = certificate != null ? certificate : solver.solve_satisfiability(topk);
+        witness = result ? solver.getWitness() : null;
+        return result;
+    }
+
     /** 
      * Run the solver for the given problem
     */
@@ -89,33 +264,53 @@ public class Query {
             start = System.currentTimeMillis();
             solver.cluster(clustered);
             end = System.currentTimeMillis();
-            System.out.println("Clustering time: " + (end - start) + "ms");
+            Output.println("Clustering time: " + (end - start) + "ms");
             execution_time += end - start;
-            System.out.println();
-            satisfiability = solver.solve_satisfiability(topk);
-            System.out.println("Satisfiable after clustering? " + satisfiability);
+            addStage("clustering", end - start);
+            Output.println();
+            start = System.currentTimeMillis();
+            satisfiability = decideSatisfiability();
+            addStage("satisfiability", System.currentTimeMillis() - start);
+            Output.println("Satisfiable after clustering? " + satisfiability);
         }
 
-        System.out.println("Solving the problem of " + problem + ": ");
+        Output.println("Solving the problem of " + problem + ": ");
         if (problem == "satisfiability") {
             // double[] weights = {0.2, 0.2, 0.2, 0.2, 0.2};
             start = System.currentTimeMillis();
-            satisfiability = solver.solve_satisfiability(topk);
+            satisfiability = decideSatisfiability();
             end = System.currentTimeMillis();
-            System.out.println("Satisfiable? " + satisfiability);
-            System.out.println("Satisfiability solver execution time: " + (end - start) + "ms");
-            System.out.println();
+            Output.println("Satisfiable? " + satisfiability);
+            Output.println("Satisfiability solver execution time: " + (end - start) + "ms");
+            Output.println();
             execution_time += end - start;
+            addStage("satisfiability", end - start);
         } else if (problem == "best") {
             // The following code is TREE implementation for the BEST experiment, corresponding to Sec 6.3 of the paper
             start = System.currentTimeMillis();
             best = solver.solve_best_brute_force_sampling();
             end = System.currentTimeMillis();
-            System.out.println("Best ranking: " + best);
-            System.out.println("BEST execution time: " + (end - start) + "ms");
-            System.out.println();
+            Output.println("Best ranking: " + best);
+            Output.println("BEST execution time: " + (end - start) + "ms");
+            Output.println();
+            execution_time += end - start;
+            addStage("best", end - start);
+        } else if (problem == "best (direct)") {
+            // Minimize the number of competitors which win the expected tuple in one solve
+            start = System.currentTimeMillis();
+            best = solver.solve_best();
+            witness = solver.getWitness();
+            end = System.currentTimeMillis();
+            Output.println("Best ranking: " + best);
+            Output.println("BEST execution time: " + (end - start) + "ms");
+            Output.println();
             execution_time += end - start;
+            addStage("best", end - start);
         } else {
+            if (satisfiability && solver.isDominated(topk)) {
+                Output.println("UNSATISFIABLE by dominators");
+                satisfiability = false;
+            }
             if (satisfiability) {
                 start = System.currentTimeMillis();
                 if (problem == "optimization (triangle)") {
@@ -124,13 +319,16 @@ public class Query {
                     box = solver.optimize_box_pyramid(topk, precise, measure);
                 } else if (problem == "optimization (cube)") {
                     box = solver.optimize_box_cube(topk, precise, measure);
+                } else if (problem == "heuristic (triangle)" || problem == "heuristic (pyramid)" || problem == "heuristic (cube)") {
+                    box = solver.optimize_box_greedy(getShape(), topk, measure);
                 } else {
                     box = solver.optimize_box_cube_forall(topk, precise);
                 }
                 end = System.currentTimeMillis();
                 box.print();
-                System.out.println("Optimizer execution time: " + (end - start) + "ms");
+                Output.println("Optimizer execution time: " + (end - start) + "ms");
                 execution_time += end - start;
+                addStage("box", end - start);
                 if (!box.valid()) {
                     execution_time = 0;
                 }
@@ -138,11 +336,188 @@ public class Query {
                 execution_time = 0;
             }
         }
-        System.out.println("Query finished");
-        System.out.println();
+        Output.println("Query finished");
+        Output.println();
+        if (entry != null) {
+            entry.answer = Workload.getAnswer(problem, satisfiability, best, box);
+            entry.latency = System.currentTimeMillis() - created;
+            Workload.capture(entry);
+        }
         return execution_time;
     }
     
+    /** 
+     * Run the solver for the given problem over a range of top-k limits instead of the top-k limits of the query
+     * The model is built once, and only the right-hand sides of the cardinality rows change for each k
+     * @param ks The top-k limits, where the same k applies to all expected tuples
+     * @return The k to (SAT, BOX) curve
+    */
+    public Curve sweep(int[] ks) throws Exception {
+        if (clustered > 0) {
+            solver.cluster(clustered);
+        }
+
+        String shape = getShape();
+
+        Output.println("Sweeping the problem of " + problem + ": ");
+        long start = System.currentTimeMillis();
+        Curve curve = solver.sweep(shape, ks, precise, measure);
+        long end = System.currentTimeMillis();
+        curve.print();
+        Output.println("Sweep execution time: " + (end - start) + "ms");
+        Output.println();
+        execution_time += end - start;
+        return curve;
+    }
+
+    /** 
+     * Run the solver for the BOX problem on the perimeter before a wall-clock deadline
+     * Every improving box is published to the listener as soon as it is found, so the caller can show a result before the solve finishes
+     * The direct encoding for CUBE describes the same box as CUBE, so it is solved as CUBE
+     * @param deadline The wall-clock deadline in milliseconds, as System.currentTimeMillis()
+     * @param listener The listener of the improving boxes, null for none
+     * @return The best box found before the deadline, which carries the proven upper bound of the perimeter
+    */
+    public Box anytime(long deadline, BoxListener listener) throws Exception {
+        if (clustered > 0) {
+            solver.cluster(clustered);
+        }
+
+        String shape = getShape();
+        if (shape.equals("satisfiability")) {
+            shape = "cube";
+        }
+
+        Output.println("Solving the problem of " + problem + " before the deadline: ");
+        long start = System.currentTimeMillis();
+        box = solver.optimize_box_anytime(shape, topk, deadline, listener);
+        long end = System.currentTimeMillis();
+        box.print();
+        Output.println("Anytime execution time: " + (end - start) + "ms");
+        Output.println();
+        execution_time += end - start;
+        return box;
+    }
+
+    /** 
+     * Run the solver for the BEST problem before a wall-clock deadline
+     * The bounds are published to the listener as soon as they improve, so the caller can stop once the gap is acceptable
+     * @param deadline The wall-clock deadline in milliseconds, as System.currentTimeMillis()
+     * @param listener The listener of the best ranking found so far and its proven lower bound, null for none
+     * @return The best ranking found before the deadline
+    */
+    public int best_anytime(long deadline, BestListener listener) throws Exception {
+        Output.println("Solving the problem of best before the deadline: ");
+        long start = System.currentTimeMillis();
+        best = solver.solve_best_anytime(deadline, listener);
+        witness = solver.getWitness();
+        long end = System.currentTimeMillis();
+        Output.println("Best ranking: " + best);
+        Output.println("Anytime execution time: " + (end - start) + "ms");
+        Output.println();
+        execution_time += end - start;
+        return best;
+    }
+
+    /** 
+     * Run the solver for the given problem on an executor without blocking the caller
+     * Cancelling the future with cancel(true) interrupts the running backend: the context of z3, the model of gurobi, 
+     * the java engine and an external process stop, and the thread of the query is interrupted
+     * The futures compose, e.g., sat.submit(pool).thenCompose(r -> r.getSatisfiability() ? box.submit(pool) : ...) runs BOX only after SAT succeeds
+     * @param executor The executor of the query
+     * @return The future of the result, which completes exceptionally if the solver fails
+    */
+    public CompletableFuture<QueryResult> submit(Executor executor) {
+        final AtomicReference<Thread> thread = new AtomicReference<Thread>();
+        final CompletableFuture<QueryResult> future = new CompletableFuture<QueryResult>() {
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                if (cancelled && mayInterruptIfRunning) {
+                    interrupt();
+                    synchronized (thread) {
+                        if (thread.get() != null) {
+                            thread.get().interrupt();
+                        }
+                    }
+                }
+                return cancelled;
+            }
+        };
+        executor.execute(new Runnable() {
+            public void run() {
+                if (future.isDone()) {
+                    return;
+                }
+                thread.set(Thread.currentThread());
+                try {
+                    int time = Query.this.run();
+                    future.complete(new QueryResult(problem, satisfiability, best, box, witness, time, getMetrics()));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    // The interrupt of a late cancel must not leak into the next task of the executor
+                    synchronized (thread) {
+                        thread.set(null);
+                        Thread.interrupted();
+                    }
+                }
+            }
+        });
+        return future;
+    }
+
+    /** 
+     * Stop the running solve of this query as soon as possible, e.g., when its deadline has passed
+     * An interrupted query gives no definitive result
+    */
+    public void interrupt() {
+        solver.interrupt();
+    }
+
+    /** 
+     * @return The weight constraint of the problem. The options are triangle, pyramid, cube and satisfiability for the other problems
+    */
+    private String getShape() {
+        if (problem == "optimization (triangle)" || problem == "heuristic (triangle)") {
+            return "triangle";
+        } else if (problem == "optimization (pyramid)" || problem == "heuristic (pyramid)") {
+            return "pyramid";
+        } else if (problem == "optimization (cube)" || problem == "heuristic (cube)") {
+            return "cube";
+        }
+        return "satisfiability";
+    }
+    
+    /** 
+     * @param stage The stage of the query
+     * @param time The wall-clock time of the stage in milliseconds, which is added to the earlier time of the stage
+    */
+    private void addStage(String stage, long time) {
+        Long before = stage_times.get(stage);
+        stage_times.put(stage, before == null ? time : before + time);
+        if (solver != null) {
+            solver.getMetrics().histogram("stage." + stage + "_ms").record(time);
+        }
+    }
+
+    /** 
+     * @return The wall-clock time in milliseconds of each stage which has run, in order: initialization, clustering, satisfiability, best and box
+    */
+    public Map<String, Long> getStageTimes() {
+        return stage_times;
+    }
+
+    /** 
+     * The metrics are recorded in microseconds for the times, e.g., preprocess.time_us, model.build_us, backend.build_us, 
+     * probe.time_us for each probe of the binary search and search.iterations for each binary search, 
+     * and as counts for the rest, e.g., question.competitors, model.indicators, best.nodes and lp.calls, 
+     * besides the time of each stage in milliseconds, e.g., stage.box_ms
+     * @return The counters and histograms of this query so far, which are also aggregated in Metrics.global()
+    */
+    public MetricsSnapshot getMetrics() {
+        return solver.getMetrics().snapshot();
+    }
+
     /** 
      * @return The BOX result
     */
@@ -163,4 +538,11 @@ public class Query {
     public int getBest() {
         return best;
     }
+    
+    /** 
+     * @return The weights which achieve the BEST result, null if the direct BEST problem is not solved
+    */
+    public double[] getWitness() {
+        return witness;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+package wny.query;
+
+import wny.entities.Box;
+import wny.metrics.MetricsSnapshot;
+
+/** 
+ * The result of a why-not-yet question which has been run asynchronously
+ * Only the results of the problem of the query are set, e.g., the box is null for the SAT problem
+ * @author Zixuan Chen
+*/
+public class QueryResult {
+    private String problem;
+    private boolean satisfiability;
+    private int best;
+    private Box box;
+    private double[] witness;
+    private int execution_time;
+    private MetricsSnapshot metrics;
+
+    /** 
+     * @param problem The problem of the query
+     * @param satisfiability The SAT result
+     * @param best The BEST result
+     * @param box The BOX result
+     * @param witness The weights which achieve the SAT or BEST result
+     * @param execution_time The execution time in milliseconds, 0 if no valid box is found
+     * @param metrics The metrics of the query
+    */
+    public QueryResult(String problem, boolean satisfiability, int best, Box box, double[] witness, int execution_time, MetricsSnapshot metrics) {
+        this.problem = problem;
+        this.satisfiability = satisfiability;
+        this.best = best;
+        this.box = box;
+        this.witness = witness;
+        this.execution_time = execution_time;
+        this.metrics = metrics;
+    }
+
+    /** 
+     * @return The problem of the query
+    */
+    public String getProblem() {
+        return problem;
+    }
+
+    /** 
+     * @return The SAT result
+    */
+    public boolean getSatisfiability() {
+        return satisfiability;
+    }
+
+    /** 
+     * @return The BEST result
+    */
+    public int getBest() {
+        return best;
+    }
+
+    /** 
+     * @return The BOX result
+    */
+    public Box getBox() {
+        return box;
+    }
+
+    /** 
+     * @return The weights which achieve the SAT or BEST result, null if there are none
+    */
+    public double[] getWitness() {
+        return witness;
+    }
+
+    /** 
+     * @return The execution time in milliseconds
+    */
+    public int getExecutionTime() {
+        return execution_time;
+    }
+
+    /** 
+     * @return The counters and histograms of the query
+    */
+    public MetricsSnapshot getMetrics() {
+        return metrics;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,180 @@
+package wny.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import wny.entities.Relation;
+import wny.entities.Tuple;
+import wny.util.DatabaseParser;
+
+/** 
+ * Replay a captured workload against any backend and report the latency percentiles, the throughput and the answers 
+ * which differ from the captured ones for each problem
+ * Usage: java -Dwny.concurrency=4 -Dwny.rate=10 -Dwny.solver=java wny.query.Replay workload.tsv data/stats.csv ...
+ * The relation of each query is the first tuples of a dataset on its first attributes whose fingerprint matches the captured one, 
+ * and the queries without a matching dataset are skipped
+ * With -Dwny.rate the queries start at a fixed rate regardless of the finished ones (open loop), and the latency is measured from 
+ * the intended start, so the waiting in the queue is included. Without it, the queries start as soon as a thread is free
+ * @author Zixuan Chen
+*/
+public class Replay {
+    /** 
+     * The replayed results of one problem
+    */
+    private static class Report {
+        ArrayList<Long> latencies = new ArrayList<Long>();
+        int differences = 0;
+        int failures = 0;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: Replay <workload file> <dataset file>...");
+            return;
+        }
+        ArrayList<Workload.Entry> entries = Workload.load(args[0]);
+        final String solver = System.getProperty("wny.solver");
+        int concurrency = Integer.parseInt(System.getProperty("wny.concurrency", "1"));
+        double rate = Double.parseDouble(System.getProperty("wny.rate", "0"));
+
+        ArrayList<ArrayList<Tuple>> datasets = new ArrayList<ArrayList<Tuple>>();
+        for (int i = 1; i < args.length; i++) {
+            List<Relation> database = new DatabaseParser(null).parse_file(args[i]);
+            datasets.add(database.get(0).tuples);
+        }
+
+        // The relations are rebuilt once for each fingerprint, and the queries on the same relation share it
+        Map<String, ArrayList<Tuple>> relations = new HashMap<String, ArrayList<Tuple>>();
+        Map<String, Map<String, Tuple>> indexes = new HashMap<String, Map<String, Tuple>>();
+        final Map<String, Report> reports = new LinkedHashMap<String, Report>();
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        int skipped = 0;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < entries.size(); i++) {
+            final Workload.Entry e = entries.get(i);
+            String key = e.fingerprint + ":" + e.num_tuples + ":" + e.num_attributes;
+            if (!relations.containsKey(key)) {
+                ArrayList<Tuple> tuples = getRelation(datasets, e);
+                relations.put(key, tuples);
+                if (tuples != null) {
+                    Map<String, Tuple> index = new HashMap<String, Tuple>();
+                    for (Tuple t : tuples) {
+                        index.put(t.values[0], t);
+                    }
+                    indexes.put(key, index);
+                }
+            }
+            final ArrayList<Tuple> tuples = relations.get(key);
+            final ArrayList<Tuple> expected_tuples = new ArrayList<Tuple>();
+            if (tuples != null) {
+                for (String id : e.ids) {
+                    if (indexes.get(key).containsKey(id)) {
+                        expected_tuples.add(indexes.get(key).get(id));
+                    }
+                }
+            }
+            if (expected_tuples.size() != e.ids.length) {
+                System.out.println("Query " + i + " is skipped: no dataset matches the fingerprint " + e.fingerprint);
+                skipped++;
+                continue;
+            }
+            if (!reports.containsKey(e.problem)) {
+                reports.put(e.problem, new Report());
+            }
+            final Report report = reports.get(e.problem);
+
+            final long intended = rate > 0 ? start + (long) (i * 1000 / rate) : 0;
+            if (rate > 0) {
+                long wait = intended - System.currentTimeMillis();
+                if (wait > 0) {
+                    Thread.sleep(wait);
+                }
+            }
+            pool.execute(new Runnable() {
+                public void run() {
+                    long begin = intended > 0 ? intended : System.currentTimeMillis();
+                    String answer;
+                    try {
+                        Query q = new Query(solver == null ? e.solver : solver, e.problem, tuples, e.topk, expected_tuples, e.clustered, e.precise, e.measure);
+                        q.addConstraints(e.constraints);
+                        q.run();
+                        answer = Workload.getAnswer(e.problem, q.getSatisfiability(), q.getBest(), q.getBox());
+                    } catch (Exception ex) {
+                        answer = null;
+                    }
+                    long latency = System.currentTimeMillis() - begin;
+                    synchronized (report) {
+                        if (answer == null) {
+                            report.failures++;
+                            return;
+                        }
+                        report.latencies.add(latency);
+                        if (!Workload.isSameAnswer(e.answer, answer)) {
+                            report.differences++;
+                        }
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+        System.out.println("Replayed " + (entries.size() - skipped) + " of " + entries.size() + " queries in " + elapsed + "ms with " 
+            + concurrency + " threads" + (rate > 0 ? " at " + rate + " queries/s" : ""));
+        System.out.println(String.format("%-28s %8s %10s %10s %10s %12s %12s %9s", 
+            "problem", "queries", "p50 (ms)", "p95 (ms)", "p99 (ms)", "queries/s", "differences", "failures"));
+        for (Map.Entry<String, Report> r : reports.entrySet()) {
+            Report report = r.getValue();
+            long[] latencies = new long[report.latencies.size()];
+            for (int j = 0; j < latencies.length; j++) {
+                latencies[j] = report.latencies.get(j);
+            }
+            Arrays.sort(latencies);
+            System.out.println(String.format("%-28s %8d %10d %10d %10d %12.2f %12d %9d", r.getKey(), latencies.length, 
+                getPercentile(latencies, 50), getPercentile(latencies, 95), getPercentile(latencies, 99), 
+                latencies.length * 1000.0 / elapsed, report.differences, report.failures));
+        }
+    }
+
+    /** 
+     * @param datasets All tuples of each dataset
+     * @param e A captured query
+     * @return The first tuples of a dataset on the first attributes of the query whose fingerprint matches, null if there is none
+    */
+    private static ArrayList<Tuple> getRelation(ArrayList<ArrayList<Tuple>> datasets, Workload.Entry e) {
+        for (ArrayList<Tuple> dataset : datasets) {
+            if (dataset.size() < e.num_tuples || dataset.get(0).values.length <= e.num_attributes) {
+                continue;
+            }
+            ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+            for (int i = 0; i < e.num_tuples; i++) {
+                tuples.add(new Tuple(Arrays.copyOf(dataset.get(i).values, e.num_attributes + 1), null));
+            }
+            if (Workload.fingerprint(tuples).equals(e.fingerprint)) {
+                return tuples;
+            }
+        }
+        return null;
+    }
+
+    /** 
+     * @param sorted The sorted latencies
+     * @param p The percentile
+     * @return The nearest-rank percentile, 0 if there are no latencies
+    */
+    private static long getPercentile(long[] sorted, int p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
\ No newline at end of file
@@ -0,0 +1,207 @@
+package wny.query;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+import wny.entities.Box;
+import wny.entities.Constraint;
+import wny.entities.Tuple;
+
+/** 
+ * A workload of why-not-yet questions, captured from the queries which are run and replayed by the Replay tool
+ * Every query is one line, which refers to its relation by a fingerprint and to its expected tuples by their IDs (values[0]), 
+ * so the file stays small and the relation is loaded again when the workload is replayed
+ * The queries are captured into the file given with -Dwny.capture
+ * @author Zixuan Chen
+*/
+public class Workload {
+    private static final String CAPTURE = System.getProperty("wny.capture");
+    private static final double TOLERANCE = 0.01; // the default gap of the binary search, within which two perimeters are the same answer
+    private static FileWriter out;
+
+    /** 
+     * A captured query with its answer and latency
+    */
+    public static class Entry {
+        public String fingerprint;
+        public int num_tuples;
+        public int num_attributes;
+        public String[] ids;
+        public int[] topk;
+        public String solver;
+        public String problem;
+        public double clustered;
+        public boolean precise;
+        public int measure;
+        public ArrayList<Constraint> constraints = new ArrayList<Constraint>();
+        public String answer;
+        public long latency; // in milliseconds, from the construction of the query to the end of its run
+
+        /** 
+         * @return The line of the query in the workload file
+        */
+        public String toLine() throws UnsupportedEncodingException {
+            StringBuilder line = new StringBuilder();
+            line.append(fingerprint).append('\t').append(num_tuples).append('\t').append(num_attributes).append('\t');
+            for (int i = 0; i < ids.length; i++) {
+                line.append(i > 0 ? "," : "").append(URLEncoder.encode(ids[i], "UTF-8"));
+            }
+            line.append('\t');
+            for (int i = 0; i < topk.length; i++) {
+                line.append(i > 0 ? "," : "").append(topk[i]);
+            }
+            line.append('\t').append(solver).append('\t').append(problem).append('\t').append(clustered);
+            line.append('\t').append(precise).append('\t').append(measure).append('\t');
+            for (int i = 0; i < constraints.size(); i++) {
+                Constraint c = constraints.get(i);
+                line.append(i > 0 ? ";" : "").append(c.attribute).append(':').append(c.type).append(':').append(c.value);
+            }
+            line.append('\t').append(answer).append('\t').append(latency);
+            return line.toString();
+        }
+
+        /** 
+         * @param line A line of a workload file
+         * @return The captured query
+        */
+        public static Entry parse(String line) throws UnsupportedEncodingException {
+            String[] fields = line.split("\t", -1);
+            Entry e = new Entry();
+            e.fingerprint = fields[0];
+            e.num_tuples = Integer.parseInt(fields[1]);
+            e.num_attributes = Integer.parseInt(fields[2]);
+            e.ids = fields[3].split(",");
+            for (int i = 0; i < e.ids.length; i++) {
+                e.ids[i] = URLDecoder.decode(e.ids[i], "UTF-8");
+            }
+            String[] ks = fields[4].split(",");
+            e.topk = new int[ks.length];
+            for (int i = 0; i < ks.length; i++) {
+                e.topk[i] = Integer.parseInt(ks[i]);
+            }
+            e.solver = fields[5];
+            // The query compares the problems by identity, so they are the canonical strings
+            e.problem = fields[6].intern();
+            e.clustered = Double.parseDouble(fields[7]);
+            e.precise = Boolean.parseBoolean(fields[8]);
+            e.measure = Integer.parseInt(fields[9]);
+            if (!fields[10].isEmpty()) {
+                for (String c : fields[10].split(";")) {
+                    String[] parts = c.split(":");
+                    e.constraints.add(new Constraint(Integer.parseInt(parts[0]), parts[1], Double.valueOf(parts[2])));
+                }
+            }
+            e.answer = fields[11];
+            e.latency = Long.parseLong(fields[12]);
+            return e;
+        }
+    }
+
+    /** 
+     * @return Whether the queries are captured
+    */
+    public static boolean isCapturing() {
+        return CAPTURE != null;
+    }
+
+    /** 
+     * Append a query to the workload file given with -Dwny.capture
+     * @param e The query
+    */
+    public static synchronized void capture(Entry e) throws IOException {
+        if (CAPTURE == null) {
+            return;
+        }
+        if (out == null) {
+            out = new FileWriter(CAPTURE, true);
+        }
+        out.write(e.toLine() + "\n");
+        out.flush();
+    }
+
+    /** 
+     * @param file_path A workload file
+     * @return The captured queries in order
+    */
+    public static ArrayList<Entry> load(String file_path) throws IOException {
+        ArrayList<Entry> entries = new ArrayList<Entry>();
+        BufferedReader in = new BufferedReader(new FileReader(file_path));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    entries.add(Entry.parse(line));
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return entries;
+    }
+
+    /** 
+     * The fingerprint does not depend on the order of the tuples, so a sorted relation has the same one
+     * It is computed again on every call, in linear time, so a relation changed in place gets a new one
+     * @param tuples All tuples of a relation
+     * @return The fingerprint of the relation, the sum of the 64-bit FNV-1a hashes of its tuples
+    */
+    public static String fingerprint(List<Tuple> tuples) {
+        long sum = 0;
+        for (Tuple t : tuples) {
+            long hash = 0xcbf29ce484222325L;
+            for (String v : t.values) {
+                for (int i = 0; i < v.length(); i++) {
+                    hash = (hash ^ v.charAt(i)) * 0x100000001b3L;
+                }
+                hash = (hash ^ 0x1f) * 0x100000001b3L;
+            }
+            sum += hash;
+        }
+        return Long.toHexString(sum);
+    }
+
+    /** 
+     * @param problem The problem
+     * @param satisfiability The SAT result
+     * @param best The BEST result
+     * @param box The BOX result
+     * @return The answer of a query which is compared when the workload is replayed
+    */
+    public static String getAnswer(String problem, boolean satisfiability, int best, Box box) {
+        if (problem == "satisfiability") {
+            return String.valueOf(satisfiability);
+        } else if (problem == "best" || problem == "best (direct)") {
+            return String.valueOf(best);
+        } else if (box == null || !box.valid()) {
+            return "none";
+        }
+        return String.format("%.5f", box.getPerimeter());
+    }
+
+    /** 
+     * The perimeter of a box is only found within the tolerance of the binary search, so two perimeters are compared within it, 
+     * and the other answers exactly
+     * @param expected The answer of the baseline
+     * @param answer The current answer
+     * @return Whether it is the same answer
+    */
+    public static boolean isSameAnswer(String expected, String answer) {
+        if (expected.equals(answer)) {
+            return true;
+        } else if (!expected.contains(".") || !answer.contains(".")) {
+            return false;
+        }
+        try {
+            return Math.abs(Double.parseDouble(expected) - Double.parseDouble(answer)) <= TOLERANCE;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
\ No newline at end of file
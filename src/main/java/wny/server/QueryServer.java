@@ -0,0 +1,468 @@
+package wny.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import wny.entities.Box;
+import wny.entities.Relation;
+import wny.entities.Tuple;
+import wny.metrics.Metrics;
+import wny.metrics.Output;
+import wny.query.Query;
+import wny.solver.PreparedQuestion;
+import wny.util.DatabaseParser;
+
+/**
+ * A resident server which answers why-not-yet questions over HTTP on localhost
+ * The relations are parsed once at startup and kept in memory, and the expected tuples are looked up by their ID (values[0]) in a hash index,
+ * and the preprocessing of an expected tuple is prepared once and shared by all questions on it, 
+ * so a warm question only pays for its solve instead of parsing the data and starting a JVM
+ * The questions are solved by a fixed number of workers with a bounded queue. A question is rejected with 503 when the queue is full,
+ * and interrupted with 504 when its deadline passes
+ * <br><br>
+ * The endpoints are /sat, /best and /box, with the parameters as a query string or a form body:
+ * relation (the name of a loaded relation, by default the first one), id (the ID of an expected tuple, repeated for more tuples),
+ * k (the top-k limit, repeated for each expected tuple or given once for all), attributes (the number of attributes, by default all),
+ * solver (by default java), shape (triangle, pyramid or cube for /box, by default cube), precise (true or false, by default true),
+ * measure (0 for volume or 1 for perimeter, by default 1) and deadline (in milliseconds, by default 60000)
+ * The endpoint /relations lists the loaded relations, and /metrics gives the counters and histograms of all questions so far. All responses are JSON
+ * @author Zixuan Chen
+*/
+public class QueryServer {
+    private static final long DEFAULT_DEADLINE = 60000; // the deadline of a question in milliseconds if the request gives none
+
+    private HttpServer server;
+    private ThreadPoolExecutor workers;
+    private ExecutorService exchanges;
+    private Map<String, Table> tables;
+
+    /**
+     * An in-memory relation with the hash index on the IDs of its tuples
+    */
+    private static class Table {
+        ArrayList<Tuple> tuples;
+        HashMap<String, Integer> index; // the ID of a tuple to its position, the first one for repeated IDs
+        int num_attributes;
+        ConcurrentHashMap<Integer, ArrayList<Tuple>> projections; // the tuples on the first attributes, by the number of attributes
+        ConcurrentHashMap<String, PreparedQuestion> prepared; // the prepared questions, by the number of attributes and the position of the expected tuple
+
+        Table(Relation relation) {
+            tuples = relation.tuples;
+            index = new HashMap<String, Integer>();
+            for (int i = 0; i < tuples.size(); i++) {
+                if (!index.containsKey(tuples.get(i).values[0])) {
+                    index.put(tuples.get(i).values[0], i);
+                }
+            }
+            num_attributes = relation.schema.length - 1;
+            projections = new ConcurrentHashMap<Integer, ArrayList<Tuple>>();
+            prepared = new ConcurrentHashMap<String, PreparedQuestion>();
+        }
+
+        /**
+         * @param m The number of attributes
+         * @return The tuples on the ID and the first m attributes, which are shared by all questions
+        */
+        ArrayList<Tuple> project(int m) {
+            ArrayList<Tuple> projected = projections.get(m);
+            if (projected == null) {
+                projected = new ArrayList<Tuple>();
+                for (Tuple t : tuples) {
+                    String[] values = new String[m + 1];
+                    System.arraycopy(t.values, 0, values, 0, m + 1);
+                    projected.add(new Tuple(values, null));
+                }
+                ArrayList<Tuple> previous = projections.putIfAbsent(m, projected);
+                if (previous != null) {
+                    projected = previous;
+                }
+            }
+            return projected;
+        }
+
+        /**
+         * @param m The number of attributes
+         * @param i The position of the expected tuple
+         * @return The prepared question of the expected tuple on the first m attributes, which is shared by all questions on it
+        */
+        PreparedQuestion prepare(int m, int i) {
+            String key = m + ":" + i;
+            PreparedQuestion p = prepared.get(key);
+            if (p == null) {
+                ArrayList<Tuple> projected = project(m);
+                p = new PreparedQuestion(projected, projected.get(i));
+                PreparedQuestion previous = prepared.putIfAbsent(key, p);
+                if (previous != null) {
+                    p = previous;
+                }
+            }
+            return p;
+        }
+    }
+
+    /**
+     * A request which the server cannot answer, with its HTTP status
+    */
+    private static class RequestException extends Exception {
+        private static final long serialVersionUID = 1L;
+        int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * @param port The port on localhost
+     * @param num_workers The number of questions solved at once
+     * @param capacity The number of questions which wait for a worker before the server rejects new ones
+    */
+    public QueryServer(int port, int num_workers, int capacity) throws IOException {
+        tables = new LinkedHashMap<String, Table>();
+        workers = new ThreadPoolExecutor(num_workers, num_workers, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(capacity));
+        // The exchanges only wait for the workers, so they are not bounded themselves
+        exchanges = Executors.newCachedThreadPool();
+
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.setExecutor(exchanges);
+        server.createContext("/sat", new QuestionHandler("satisfiability"));
+        server.createContext("/best", new QuestionHandler("best"));
+        server.createContext("/box", new QuestionHandler("box"));
+        server.createContext("/relations", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                StringBuilder json = new StringBuilder("{\"relations\": [");
+                int i = 0;
+                for (Map.Entry<String, Table> e : tables.entrySet()) {
+                    json.append(i++ > 0 ? ", " : "").append("{\"name\": ").append(quote(e.getKey()));
+                    json.append(", \"tuples\": ").append(e.getValue().tuples.size());
+                    json.append(", \"attributes\": ").append(e.getValue().num_attributes).append("}");
+                }
+                respond(exchange, 200, json.append("]}").toString());
+            }
+        });
+        server.createContext("/metrics", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 200, Metrics.global().snapshot().toJson());
+            }
+        });
+    }
+
+    /**
+     * Parse a relation and keep it in memory
+     * It must be loaded before the server starts
+     * @param name The name of the relation in the requests
+     * @param file_path The file of the relation, in the format of the DatabaseParser
+    */
+    public void load(String name, String file_path) {
+        List<Relation> database = new DatabaseParser(null).parse_file(file_path);
+        tables.put(name, new Table(database.get(0)));
+        Output.println("Loaded " + name + " with " + database.get(0).get_size() + " tuples");
+    }
+
+    /**
+     * Start to answer the requests
+    */
+    public void start() {
+        server.start();
+        Output.println("Answering why-not-yet questions on http://localhost:" + server.getAddress().getPort());
+    }
+
+    /**
+     * Stop the server and interrupt the running questions
+    */
+    public void stop() {
+        server.stop(0);
+        workers.shutdownNow();
+        exchanges.shutdownNow();
+    }
+
+    /**
+     * The handler of the questions of one problem
+    */
+    private class QuestionHandler implements HttpHandler {
+        private String problem;
+
+        QuestionHandler(String problem) {
+            this.problem = problem;
+        }
+
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                respond(exchange, 200, answer(problem, getParameters(exchange)));
+            } catch (RequestException e) {
+                respond(exchange, e.status, "{\"error\": " + quote(e.getMessage()) + "}");
+            } catch (Exception e) {
+                respond(exchange, 500, "{\"error\": " + quote(String.valueOf(e)) + "}");
+            }
+        }
+    }
+
+    /**
+     * Solve one question on a worker before its deadline
+     * @param problem The problem. The options are satisfiability, best and box
+     * @param parameters The parameters of the request
+     * @return The JSON answer
+    */
+    private String answer(final String problem, Map<String, List<String>> parameters) throws Exception {
+        List<String> relation = parameters.get("relation");
+        final Table table = relation == null ? (tables.isEmpty() ? null : tables.values().iterator().next()) : tables.get(relation.get(0));
+        if (table == null) {
+            throw new RequestException(404, "Unknown relation");
+        }
+
+        int m = getInt(parameters, "attributes", table.num_attributes);
+        if (m < 1 || m > table.num_attributes) {
+            throw new RequestException(400, "The number of attributes must be from 1 to " + table.num_attributes);
+        }
+        final ArrayList<Tuple> tuples = table.project(m);
+
+        List<String> ids = parameters.get("id");
+        if (ids == null) {
+            throw new RequestException(400, "No expected tuple");
+        }
+        final ArrayList<PreparedQuestion> prepared = new ArrayList<PreparedQuestion>();
+        for (String id : ids) {
+            Integer i = table.index.get(id);
+            if (i == null) {
+                throw new RequestException(404, "Unknown tuple " + id);
+            }
+            prepared.add(table.prepare(m, i));
+        }
+
+        List<String> ks = parameters.get("k");
+        if (problem != "best" && (ks == null || (ks.size() != 1 && ks.size() != ids.size()))) {
+            throw new RequestException(400, "The top-k limits must be given once or for each expected tuple");
+        }
+        final int[] topk = new int[ids.size()];
+        for (int i = 0; i < topk.length && ks != null; i++) {
+            topk[i] = parseInt("k", ks.get(ks.size() == 1 ? 0 : i));
+            if (topk[i] < 1) {
+                throw new RequestException(400, "The parameter k must be positive");
+            }
+        }
+
+        final String solver = getString(parameters, "solver", "java");
+        final String shape = getString(parameters, "shape", "cube");
+        final boolean precise = Boolean.parseBoolean(getString(parameters, "precise", "true"));
+        final int measure = getInt(parameters, "measure", 1);
+        final long deadline = System.currentTimeMillis() + getInt(parameters, "deadline", (int) DEFAULT_DEADLINE);
+
+        final AtomicReference<Query> running = new AtomicReference<Query>();
+        Future<String> future;
+        try {
+            future = workers.submit(new Callable<String>() {
+                public String call() throws Exception {
+                    long start = System.currentTimeMillis();
+                    Query q = new Query(solver, getProblem(problem, shape), tuples, topk, prepared, 0, precise, measure);
+                    running.set(q);
+                    q.setDeadline(deadline);
+                    long preprocessed = System.currentTimeMillis();
+                    q.run();
+                    long end = System.currentTimeMillis();
+                    return toJson(problem, q, preprocessed - start, end - preprocessed);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            throw new RequestException(503, "Too many questions are waiting");
+        }
+
+        try {
+            return future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            if (running.get() != null) {
+                running.get().interrupt();
+            }
+            throw new RequestException(504, "The deadline has passed");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UnsupportedOperationException) {
+                throw new RequestException(400, e.getCause().getMessage());
+            }
+            throw new RequestException(500, String.valueOf(e.getCause()));
+        }
+    }
+
+    /**
+     * @param problem The problem of the endpoint
+     * @param shape The weight constraint of a BOX problem
+     * @return The problem of the query
+    */
+    private static String getProblem(String problem, String shape) throws RequestException {
+        if (problem == "satisfiability") {
+            return "satisfiability";
+        } else if (problem == "best") {
+            return "best (direct)";
+        } else if (shape.equals("triangle")) {
+            return "optimization (triangle)";
+        } else if (shape.equals("pyramid")) {
+            return "optimization (pyramid)";
+        } else if (shape.equals("cube")) {
+            return "optimization (cube)";
+        }
+        throw new RequestException(400, "Unknown shape " + shape);
+    }
+
+    /**
+     * @param problem The problem of the endpoint
+     * @param q The query which has been run
+     * @param preprocessing The preprocessing time in milliseconds
+     * @param solving The solving time in milliseconds
+     * @return The JSON answer
+    */
+    private static String toJson(String problem, Query q, long preprocessing, long solving) {
+        StringBuilder json = new StringBuilder("{");
+        if (problem == "satisfiability") {
+            json.append("\"satisfiable\": ").append(q.getSatisfiability());
+        } else if (problem == "best") {
+            json.append("\"best\": ").append(q.getBest());
+        } else {
+            Box b = q.getBox();
+            json.append("\"satisfiable\": ").append(q.getSatisfiability());
+            if (b != null && b.valid()) {
+                json.append(", \"goal\": ").append(b.getPerimeter()).append(", \"bounds\": [");
+                double[] bounds = b.getBounds();
+                for (int i = 0; i < bounds.length; i++) {
+                    json.append(i > 0 ? ", " : "").append(bounds[i]);
+                }
+                json.append("]");
+            } else {
+                json.append(", \"goal\": null");
+            }
+        }
+        double[] witness = q.getWitness();
+        if (witness != null) {
+            json.append(", \"weights\": [");
+            for (int i = 0; i < witness.length; i++) {
+                json.append(i > 0 ? ", " : "").append(witness[i]);
+            }
+            json.append("]");
+        }
+        json.append(", \"preprocessing_ms\": ").append(preprocessing);
+        json.append(", \"solving_ms\": ").append(solving).append("}");
+        return json.toString();
+    }
+
+    /**
+     * @param exchange The exchange
+     * @return The parameters of the query string and the form body, where a parameter may be repeated
+    */
+    private static Map<String, List<String>> getParameters(HttpExchange exchange) throws IOException {
+        Map<String, List<String>> parameters = new HashMap<String, List<String>>();
+        addParameters(parameters, exchange.getRequestURI().getRawQuery());
+        InputStream in = exchange.getRequestBody();
+        StringBuilder body = new StringBuilder();
+        byte[] buffer = new byte[4096];
+        for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+            body.append(new String(buffer, 0, n, "UTF-8"));
+        }
+        addParameters(parameters, body.toString());
+        return parameters;
+    }
+
+    /**
+     * @param parameters The parameters
+     * @param encoded The URL-encoded parameters to add
+    */
+    private static void addParameters(Map<String, List<String>> parameters, String encoded) throws UnsupportedEncodingException {
+        if (encoded == null || encoded.trim().isEmpty()) {
+            return;
+        }
+        for (String pair : encoded.trim().split("&")) {
+            int i = pair.indexOf('=');
+            String key = URLDecoder.decode(i < 0 ? pair : pair.substring(0, i), "UTF-8");
+            String value = i < 0 ? "" : URLDecoder.decode(pair.substring(i + 1), "UTF-8");
+            if (!parameters.containsKey(key)) {
+                parameters.put(key, new ArrayList<String>());
+            }
+            parameters.get(key).add(value);
+        }
+    }
+
+    private static String getString(Map<String, List<String>> parameters, String key, String otherwise) {
+        List<String> values = parameters.get(key);
+        return values == null ? otherwise : values.get(0);
+    }
+
+    private static int getInt(Map<String, List<String>> parameters, String key, int otherwise) throws RequestException {
+        return parseInt(key, getString(parameters, key, String.valueOf(otherwise)));
+    }
+
+    private static int parseInt(String key, String value) throws RequestException {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "The parameter " + key + " must be an integer");
+        }
+    }
+
+    /**
+     * @param s A string
+     * @return The JSON string
+    */
+    private static String quote(String s) {
+        StringBuilder json = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append("\"").toString();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (status == 503) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    /**
+     * Start a server with the relations given as name=file
+     * The number of workers is set with -Dwny.workers (by default the number of processors), and the capacity of the queue with -Dwny.queue (by default 64)
+     * @param args The port, then the relations, e.g., 8080 stats=data/stats.csv
+    */
+    public static void main(String args[]) throws Exception {
+        int num_workers = Integer.getInteger("wny.workers", Runtime.getRuntime().availableProcessors());
+        QueryServer s = new QueryServer(Integer.parseInt(args[0]), num_workers, Integer.getInteger("wny.queue", 64));
+        for (int i = 1; i < args.length; i++) {
+            String[] parts = args[i].split("=", 2);
+            s.load(parts[0], parts[1]);
+        }
+        s.start();
+    }
+}
\ No newline at end of file
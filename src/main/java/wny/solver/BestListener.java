@@ -0,0 +1,13 @@
+package wny.solver;
+
+/**
+ * A listener which receives the bounds of an anytime BEST problem as soon as they improve
+ * @author Zixuan Chen
+*/
+public interface BestListener {
+    /**
+     * @param ranking The best ranking found so far, whose weights are the witness of the solver
+     * @param bound The proven lower bound of the best ranking, which is equal to the ranking once it is optimal
+    */
+    void improved(int ranking, int bound);
+}
\ No newline at end of file
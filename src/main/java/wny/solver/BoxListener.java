@@ -0,0 +1,14 @@
+package wny.solver;
+
+import wny.entities.Box;
+
+/**
+ * A listener which receives every improving box of an anytime BOX problem as soon as it is found
+ * @author Zixuan Chen
+*/
+public interface BoxListener {
+    /**
+     * @param box The improving box, which carries the proven upper bound of the perimeter at the time it is found
+    */
+    void improved(Box box);
+}
\ No newline at end of file
@@ -0,0 +1,509 @@
+package wny.solver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import wny.entities.Box;
+import wny.entities.Tuple;
+import wny.events.SolverProbeEvent;
+import wny.metrics.Output;
+import wny.model.Formulation;
+import wny.model.LinearRow;
+
+/**
+ * A solver which writes the model to a file, runs a local solver executable as a subprocess and parses the solution back
+ * The command is a template in which {model} and {solution} are replaced by the paths of the files,
+ * e.g., scip -c "read {model} optimize write solution {solution} quit" for the LP format,
+ * gurobi_cl ResultFile={solution} {model} for the MPS format, or z3 {model} for the SMT-LIB2 format
+ * Without {solution} in the command, the solution is read from the standard output
+ * @author Zixuan Chen
+*/
+public class ExternalSolver extends Solver {
+    // The status codes follow the gurobi status codes
+    private static final int OPTIMAL = 2;
+    private static final int INFEASIBLE = 3;
+    private static final int TIME_LIMIT = 9;
+
+    private String command;
+    private String format; // lp, mps or smt2
+    private double[] values; // The values of the variables in the last solution
+    private volatile Process process; // The running solver executable, null if there is none
+
+    /**
+     * @param tuples All tuples of a relation
+     * @param expected_tuples The expected tuples in the why-not-yet question
+     * @param command The command template of the solver executable
+     * @param format The format of the model. The options are lp, mps and smt2
+    */
+    public ExternalSolver(ArrayList<Tuple> tuples, ArrayList<Tuple> expected_tuples, String command, String format) throws Exception {
+        super(tuples, expected_tuples);
+        this.command = command;
+        this.format = format;
+    }
+
+    /**
+     * @param tuples All tuples of a relation
+     * @param prepared The prepared question of each expected tuple, which is shared
+     * @param command The command template of the solver executable
+     * @param format The format of the model. The options are lp, mps and smt2
+    */
+    public ExternalSolver(ArrayList<Tuple> tuples, List<PreparedQuestion> prepared, String command, String format) {
+        super(tuples, prepared);
+        this.command = command;
+        this.format = format;
+    }
+
+    /**
+     * @param prepared A solver whose preprocessed question is shared
+     * @param command The command template of the solver executable
+     * @param format The format of the model. The options are lp, mps and smt2
+    */
+    public ExternalSolver(Solver prepared, String command, String format) {
+        super(prepared);
+        this.command = command;
+        this.format = format;
+    }
+
+    /**
+     * Stop the running solver executable, and do not run it again
+    */
+    public void interrupt() {
+        super.interrupt();
+        Process p = process;
+        if (p != null) {
+            p.destroyForcibly();
+        }
+    }
+
+    /**
+     * Write the model, run the solver and parse the solution
+     * @param f The solver-neutral model
+     * @param measure -1 for no objective, 1 to maximize the perimeter
+     * @param limit The limit on the perimeter, null for no limit
+     * @param timeout The time limit in seconds, 0 for no limit
+     * @return The status of the solve
+    */
+    private int run(Formulation f, int measure, LinearRow limit, int timeout) {
+        File model = null;
+        File solution = null;
+        File log = null;
+        try {
+            model = File.createTempFile("wny", "." + format);
+            solution = File.createTempFile("wny", ".sol");
+            log = File.createTempFile("wny", ".log");
+            write(f, measure, limit, model.getPath());
+
+            ArrayList<String> arguments = new ArrayList<String>();
+            for (String argument : split(command)) {
+                arguments.add(argument.replace("{model}", model.getPath()).replace("{solution}", solution.getPath()));
+            }
+            ProcessBuilder builder = new ProcessBuilder(arguments);
+            builder.redirectErrorStream(true);
+            builder.redirectOutput(command.contains("{solution}") ? log : solution);
+            if (interrupted) {
+                return TIME_LIMIT;
+            }
+            process = builder.start();
+            if (interrupted) {
+                process.destroyForcibly();
+            }
+            if (timeout != 0) {
+                if (!process.waitFor(timeout, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                    return TIME_LIMIT;
+                }
+            } else {
+                process.waitFor();
+            }
+
+            String text = new String(Files.readAllBytes(solution.toPath()), StandardCharsets.UTF_8);
+            if (format.equals("smt2")) {
+                return parseModel(f, text);
+            } else {
+                return parseSolution(f, text);
+            }
+        } catch (IOException e) {
+            Output.println("The solver cannot be run: " + e.getMessage());
+            return TIME_LIMIT;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return TIME_LIMIT;
+        } finally {
+            process = null;
+            if (model != null) {
+                model.delete();
+            }
+            if (solution != null) {
+                solution.delete();
+            }
+            if (log != null) {
+                log.delete();
+            }
+        }
+    }
+
+    /**
+     * Split a command into arguments at spaces outside double quotes
+     * @param s The command
+     * @return The arguments
+    */
+    private ArrayList<String> split(String s) {
+        ArrayList<String> arguments = new ArrayList<String>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        boolean started = false;
+        for (char ch : s.toCharArray()) {
+            if (ch == '"') {
+                quoted = !quoted;
+                started = true;
+            } else if (ch == ' ' && !quoted) {
+                if (started) {
+                    arguments.add(current.toString());
+                    current = new StringBuilder();
+                    started = false;
+                }
+            } else {
+                current.append(ch);
+                started = true;
+            }
+        }
+        if (started) {
+            arguments.add(current.toString());
+        }
+        return arguments;
+    }
+
+    /**
+     * Parse a solution file with one "name value" per line, as written by gurobi, SCIP, CBC or HiGHS
+     * The status is taken from the status line of the solver, and a gurobi solution file, which has no status line, 
+     * is only written if there is a solution
+     * Variables which are not listed are 0, since some solvers only list the non-zero ones
+     * @param f The solver-neutral model
+     * @param text The solution file
+     * @return The status of the solve
+    */
+    private int parseSolution(Formulation f, String text) {
+        String[] lines = text.split("\n");
+        Integer status = parseStatus(lines);
+        if (status != null && status != OPTIMAL) {
+            return status;
+        }
+
+        HashMap<String, Integer> names = new HashMap<String, Integer>();
+        for (int j = 0; j < f.size(); j++) {
+            names.put(f.variables.get(j).name, j);
+        }
+
+        values = new double[f.size()];
+        boolean found = false;
+        for (String line : lines) {
+            String l = line.trim();
+            if (l.startsWith("#")) {
+                continue;
+            }
+            String[] tokens = l.split("\\s+");
+            for (int p = 0; p + 1 < tokens.length; p++) {
+                Integer j = names.get(tokens[p]);
+                if (j != null) {
+                    try {
+                        values[j] = Double.parseDouble(tokens[p + 1]);
+                        found = true;
+                    } catch (NumberFormatException e) {
+                        // Not a value of the variable
+                    }
+                    break;
+                }
+            }
+        }
+        if (status != null) {
+            return status;
+        }
+        return found ? OPTIMAL : TIME_LIMIT;
+    }
+
+    /**
+     * Find the status line of a solution file or log, which is
+     * "solution status: ..." or "SCIP Status : ..." of SCIP, the line after "Model status" or "Model status : ..." of HiGHS,
+     * the first line of a CBC solution, e.g., "Optimal - objective value 1.2", 
+     * or "Optimal solution found", "Model is infeasible" and "Time limit reached" of gurobi
+     * Only these lines are read, so the banners and other log lines of the solvers do not change the status
+     * @param lines The lines of the solution file or log
+     * @return The status of the solve, null if there is no status line
+    */
+    private Integer parseStatus(String[] lines) {
+        for (int i = 0; i < lines.length; i++) {
+            String l = lines[i].trim().toLowerCase();
+            if (l.startsWith("solution status:") || l.startsWith("scip status")) {
+                return getStatus(l.substring(l.indexOf(':') + 1));
+            } else if (l.equals("model status") && i + 1 < lines.length) {
+                return getStatus(lines[i + 1].trim().toLowerCase());
+            } else if (l.startsWith("model status") && l.contains(":")) {
+                return getStatus(l.substring(l.indexOf(':') + 1));
+            } else if (i == 0 && l.contains(" - objective value")) {
+                return getStatus(l.substring(0, l.indexOf(" - objective value")));
+            } else if (l.startsWith("optimal solution found")) {
+                return OPTIMAL;
+            } else if (l.startsWith("model is infeasible") || l.startsWith("infeasible model")) {
+                return INFEASIBLE;
+            } else if (l.startsWith("time limit reached")) {
+                return TIME_LIMIT;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param status The text of a status line in lower case, e.g., "problem is solved [optimal solution found]" or "infeasible"
+     * @return The status of the solve
+    */
+    private int getStatus(String status) {
+        String s = status.trim();
+        if (s.contains("infeasible")) {
+            return INFEASIBLE;
+        } else if (s.startsWith("optimal") || s.contains("[optimal")) {
+            return OPTIMAL;
+        }
+        return TIME_LIMIT;
+    }
+
+    /**
+     * Parse the output of the (check-sat) and (get-value) commands of an SMT solver,
+     * e.g., sat ((x0lower 0.0) (x0upper (/ 1.0 3.0)))
+     * @param f The solver-neutral model
+     * @param text The output
+     * @return The status of the solve
+    */
+    private int parseModel(Formulation f, String text) {
+        String t = text.trim();
+        if (t.startsWith("unsat")) {
+            return INFEASIBLE;
+        } else if (!t.startsWith("sat")) {
+            return TIME_LIMIT;
+        }
+
+        HashMap<String, Integer> names = new HashMap<String, Integer>();
+        for (int j = 0; j < f.size(); j++) {
+            names.put(f.variables.get(j).name, j);
+        }
+        values = new double[f.size()];
+
+        ArrayList<String> tokens = new ArrayList<String>();
+        for (String token : t.substring(3).replace("(", " ( ").replace(")", " ) ").trim().split("\\s+")) {
+            tokens.add(token);
+        }
+        int[] position = {0};
+        for (int p = 0; p < tokens.size(); p++) {
+            Integer j = names.get(tokens.get(p));
+            if (j != null && p > 0 && tokens.get(p - 1).equals("(")) {
+                position[0] = p + 1;
+                values[j] = evaluate(tokens, position);
+            }
+        }
+        return OPTIMAL;
+    }
+
+    /**
+     * Evaluate a real term of an SMT solver, which is a number, (- term) or (/ term term)
+     * @param tokens The tokens of the output
+     * @param position The position of the term, which is moved after the term
+     * @return The value of the term
+    */
+    private double evaluate(ArrayList<String> tokens, int[] position) {
+        String token = tokens.get(position[0]++);
+        if (!token.equals("(")) {
+            return Double.parseDouble(token);
+        }
+        String operator = tokens.get(position[0]++);
+        ArrayList<Double> operands = new ArrayList<Double>();
+        while (!tokens.get(position[0]).equals(")")) {
+            operands.add(evaluate(tokens, position));
+        }
+        position[0]++;
+        if (operator.equals("-")) {
+            return operands.size() == 1 ? -operands.get(0) : operands.get(0) - operands.get(1);
+        } else if (operator.equals("/")) {
+            return operands.get(0) / operands.get(1);
+        }
+        return operands.get(0);
+    }
+
+    /**
+     * Turn the solution into a box
+     * @param measure The measure of this box
+     * @return The box
+    */
+    private Box getBox(double measure) {
+        Box b = new Box(measure);
+
+        for (int i = 0; i < values.length; i++) {
+            b.addBound(String.format("%.5f", values[i]));
+        }
+
+        return b;
+    }
+
+    /**
+     * Solve the why-not-yet satisfiability problem using indicators
+     * @param topk The top-k limits for expected tuples
+     * @return The SAT result
+    */
+    public boolean solve_satisfiability(int[] topk) {
+        Formulation f = formulate("satisfiability", topk);
+        if (f == null) {
+            return false;
+        }
+
+        int status = run(f, -1, null, 0);
+
+        if (status == OPTIMAL) {
+            Output.println("OPTIMAL");
+            witness = Arrays.copyOf(values, f.num_used_attributes);
+            for (int i = 0; i < values.length; i++) {
+               Output.print(String.format("%.5f", values[i]) + " ");
+            }
+            Output.println();
+            return true;
+        } else if (status == INFEASIBLE) {
+            Output.println("INFEASIBLE");
+        }
+
+        return false;
+    }
+
+    /**
+     * Utilize binary search to optimize, running the solver once for each perimeter
+     * @param f The solver-neutral model
+     * @param perimeter_high The upper bound of the perimeter
+     * @param start A known feasible box whose perimeter is the lower bound, or an invalid box
+     * @return The BOX result
+    */
+    private Box binary_search(Formulation f, double perimeter_high, Box start) {
+        Double perimeter_low = start.valid() ? start.getPerimeter() : 0.0;
+        Double perimeter = perimeter_high - 0.00000001;
+
+        double proven = perimeter_high; // lowered only when a perimeter is proven infeasible, not on a timeout
+        int status;
+        Box b = start;
+        int iterations = 0;
+
+        while(true) {
+            if (perimeter_high - perimeter_low < tolerance || perimeter_high < 0.00001 || interrupted) {
+                break;
+            }
+
+            Output.print(String.format("%.5f", perimeter));
+            Output.print(" ");
+
+            LinearRow limit = new LinearRow("perimeter", f.perimeter.indices, f.perimeter.coefficients, "=", perimeter);
+            long probe_start = System.nanoTime();
+            SolverProbeEvent event = new SolverProbeEvent();
+            event.begin();
+            status = run(f, -1, limit, 60);
+            commit(event, perimeter, status);
+            metrics.recordTime("probe.time_us", probe_start);
+            iterations++;
+
+            if (status == OPTIMAL) {
+                Output.println("OPTIMAL");
+                b = getBox(perimeter);
+                perimeter_low = perimeter;
+            } else if (status == INFEASIBLE) {
+                Output.println("INFEASIBLE");
+                perimeter_high = perimeter;
+                proven = perimeter;
+            } else {
+                Output.println("TIMEOUT");
+                perimeter_high = perimeter;
+            }
+            perimeter = (perimeter_high - perimeter_low) / 2 + perimeter_low;
+        }
+        metrics.histogram("search.iterations").record(iterations);
+        return b.withBound(proven);
+    }
+
+    /**
+     * Solve the why-not-yet box problem with the TRIANGLE weight constraint
+     * @param topk The top-k limits for expected tuples
+     * @return The BOX result
+    */
+    public Box optimize_box_triangle(int[] topk, boolean precise, int measure) {
+        return optimize_box("triangle", topk, precise, measure);
+    }
+
+    /**
+     * Solve the why-not-yet box problem with the PYRAMID weight constraint
+     * @param topk The top-k limits for expected tuples
+     * @return The BOX result
+    */
+    public Box optimize_box_pyramid(int[] topk, boolean precise, int measure) {
+        return optimize_box("pyramid", topk, precise, measure);
+    }
+
+    /**
+     * Solve the why-not-yet box problem with the CUBE weight constraint
+     * @param topk The top-k limits for expected tuples
+     * @return The BOX result
+    */
+    public Box optimize_box_cube(int[] topk, boolean precise, int measure) {
+        return optimize_box("cube", topk, precise, measure);
+    }
+
+    /**
+     * The direct encoding with quantifiers describes the same box as the CUBE encoding,
+     * so the CUBE problem is solved instead
+     * @param topk The top-k limits for expected tuples
+     * @return The BOX result
+    */
+    public Box optimize_box_cube_forall(int[] topk, boolean precise) {
+        return optimize_box("cube", topk, precise, 1);
+    }
+
+    /**
+     * Solve the why-not-yet box problem with the given weight constraint
+     * The files only hold linear objectives, so the volume is reported for the box with the optimal perimeter
+     * @param shape The weight constraint. The options are triangle, pyramid and cube
+     * @param topk The top-k limits for expected tuples
+     * @return The BOX result
+    */
+    private Box optimize_box(String shape, int[] topk, boolean precise, int measure) {
+        Box b = new Box(-1.0);
+
+        Formulation f = formulate(shape, topk);
+        if (f == null) {
+            return b;
+        }
+
+        if (precise) {
+            // Use 1 constraint on the perimeter to avoid the output of an empty box
+            LinearRow limit = new LinearRow("Non-zero", f.perimeter.indices, f.perimeter.coefficients, ">=", Math.pow(10, -5));
+            int status = run(f, 1, limit, 0);
+
+            if (status == OPTIMAL) {
+                Output.println("OPTIMAL");
+                b = getBox(f.perimeter.evaluate(values));
+                if (measure == 0) {
+                    b = getBox(b.getVolume());
+                }
+            } else if (status == INFEASIBLE) {
+                Output.println("INFEASIBLE");
+            }
+        } else {
+            // The perimeter is at most 1 with the TRIANGLE or PYRAMID constraint and num_attributes with the CUBE constraint
+            double perimeter_high = shape.equals("cube") ? 1.0 * f.num_used_attributes : 1.0;
+
+            // Cover only the interval between a heuristic box and the bound of the LP relaxation
+            double[] relaxed = relax(f);
+            perimeter_high = getPerimeterBound(f, relaxed, perimeter_high);
+            b = binary_search(f, perimeter_high, getHeuristicBox(f, relaxed));
+        }
+
+        return b;
+    }
+}
@@ -2,13 +2,23 @@ package wny.solver;
 
 import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
 
 import gurobi.*;
 import wny.entities.Box;
-import wny.entities.Constraint;
 import wny.entities.Treenode;
 import wny.entities.Tuple;
+import wny.events.BestNodeEvent;
+import wny.events.ModelBuildEvent;
+import wny.events.SolverProbeEvent;
+import wny.metrics.Output;
+import wny.model.CardinalityRow;
+import wny.model.Formulation;
+import wny.model.IndicatorRow;
+import wny.model.LinearRow;
+import wny.model.Variable;
+import wny.util.PiecewiseLog;
 
 /** 
  * An optimizer using the gurobi library
@@ -16,7 +26,14 @@ import wny.entities.Tuple;
 */
 public class GurobiOptimizer extends Solver {
     private GRBEnv env;
-    private GRBModel model;
+    private volatile GRBModel model;
+    private boolean big_m; // true for big-M rows, false for indicator constraints
+    private GRBVar[] binaries; // the binary indicator of each indicator row
+    private GRBConstr[] cardinality_constraints; // the constraint on the sum of the indicators of each question
+    private GRBVar[] sweep_variables; // the variables of the model kept during a sweep, null if there is none
+    private Box sweep_result; // the BOX result of the previous k of a sweep
+    private GRBGenConstr[] logs; // the piecewise-linear log of each side of the box, null with the exact volume
+    private double[][] log_breakpoints; // the breakpoints of each piecewise-linear log
     int count = 0;
     
     /** 
@@ -24,7 +41,47 @@ public class GurobiOptimizer extends Solver {
      * @param expected_tuples The expected tuples in the why-not-yet question
     */
     public GurobiOptimizer(ArrayList<Tuple> tuples, ArrayList<Tuple> expected_tuples) throws Exception {
+        this(tuples, expected_tuples, false);
+    }
+
+    /** 
+     * @param tuples All tuples of a relation
+     * @param expected_tuples The expected tuples in the why-not-yet question
+     * @param big_m An indicator of whether to encode the indicator rows as big-M rows instead of indicator constraints
+    */
+    public GurobiOptimizer(ArrayList<Tuple> tuples, ArrayList<Tuple> expected_tuples, boolean big_m) throws Exception {
         super(tuples, expected_tuples);
+        this.big_m = big_m;
+    }
+
+    /** 
+     * @param tuples All tuples of a relation
+     * @param prepared The prepared question of each expected tuple, which is shared
+     * @param big_m An indicator of whether to encode the indicator rows as big-M rows instead of indicator constraints
+    */
+    public GurobiOptimizer(ArrayList<Tuple> tuples, List<PreparedQuestion> prepared, boolean big_m) {
+        super(tuples, prepared);
+        this.big_m = big_m;
+    }
+
+    /** 
+     * @param prepared A solver whose preprocessed question is shared
+     * @param big_m An indicator of whether to encode the indicator rows as big-M rows instead of indicator constraints
+    */
+    public GurobiOptimizer(Solver prepared, boolean big_m) {
+        super(prepared);
+        this.big_m = big_m;
+    }
+
+    /** 
+     * Stop the running optimization as soon as possible, and all later optimizations immediately
+    */
+    public void interrupt() {
+        super.interrupt();
+        GRBModel m = model;
+        if (m != null) {
+            m.terminate();
+        }
     }
 
     /** 
@@ -39,9 +96,17 @@ public class GurobiOptimizer extends Solver {
 
         model = new GRBModel(env);
         model.set(GRB.IntParam.LogToConsole, 0);
+        logs = null;
         if (timeout != 0) { 
             model.set(GRB.DoubleParam.TimeLimit, timeout);
         }
+        if (threads > 0) {
+            model.set(GRB.IntParam.Threads, threads);
+        }
+        // An interrupted optimizer gives up its later optimizations at once
+        if (interrupted) {
+            model.set(GRB.DoubleParam.TimeLimit, 0.0);
+        }
     }
     
     /** 
@@ -52,26 +117,6 @@ public class GurobiOptimizer extends Solver {
         env.dispose();
     }
 
-    /** 
-     * Apply flexible constraints
-     * @param X All variables of the problem (lower bounds and upper bounds)
-     * @throws GRBException
-    */
-    private void apply_constraints(GRBVar[] V) throws GRBException {
-        for (Constraint c:constraints) {
-            if (c.type == "min") {
-                model.addConstr(V[c.attribute * 2], GRB.GREATER_EQUAL, c.value, "min" + c.attribute);
-            } else if (c.type == "max") {
-                model.addConstr(V[c.attribute * 2 + 1], GRB.LESS_EQUAL, c.value, "max" + c.attribute);
-            } else if (c.type == "space") {
-                GRBLinExpr expr = new GRBLinExpr();
-                expr.addTerm(-1.0, V[c.attribute * 2]);
-                expr.addTerm(1.0, V[c.attribute * 2 + 1]);
-                model.addConstr(expr, GRB.GREATER_EQUAL, c.value, "space" + c.attribute);
-            }
-        }
-    }
-
     /** 
      * Turn the output model into a box
      * @param perimeter The perimeter of this box
@@ -112,12 +157,20 @@ public class GurobiOptimizer extends Solver {
             // long end = System.currentTimeMillis();
             count++;
             // if (end - start > 6000) {
-            //     System.out.println(count);
+            //     Output.println(count);
             //     return ranking;
             // }
             if (count % 10000 == 0) {
-                System.out.println(count);
+                Output.println(count);
+            }
+            metrics.counter("best.nodes").increment();
+            // An interrupted search gives no definitive result
+            if (interrupted) {
+                close();
+                return -1;
             }
+            BestNodeEvent event = new BestNodeEvent();
+            event.begin();
             model.dispose();
             model = new GRBModel(env);
             model.set(GRB.IntParam.LogToConsole, 0);
@@ -132,8 +185,8 @@ public class GurobiOptimizer extends Solver {
             Treenode t = queue.poll();
             if (t == null) {
                 long end = System.currentTimeMillis();
-                System.out.println(end - start);
-                System.out.println(count);
+                Output.println(end - start);
+                Output.println(count);
                 return ranking;
             }
 
@@ -158,8 +211,10 @@ public class GurobiOptimizer extends Solver {
             }
 
             model.optimize();
+            metrics.counter("lp.calls").increment();
 
             int status = model.get(GRB.IntAttr.Status);
+            commit(event, q, t.which(), status, ranking);
             if (status == 2) {
                 double[] weights = new double[V.length];
                 for (int j = 0; j < V.length; j++) {
@@ -202,12 +257,131 @@ public class GurobiOptimizer extends Solver {
         }
     }
 
+    /** 
+     * Solve the why-not-yet best problem directly
+     * The best ranking has the fewest competitors which win the expected tuple, 
+     * so the weighted number of holding indicator rows of the SAT model without limits is maximized in one solve
+     * It is only implemented for one expected tuple as the brute force algorithm
+     * @return The BEST result
+    */
+    public int solve_best() throws GRBException {
+        setup(0);
+
+        Formulation f = formulate_best();
+        GRBVar V[] = lower(f);
+
+        CardinalityRow c = f.cardinalities.get(0);
+        GRBLinExpr expr = new GRBLinExpr();
+        for (int i = c.first; i < c.last; i++) {
+            expr.addTerm(f.indicators.get(i).weight, binaries[i]);
+        }
+        model.setObjective(expr, GRB.MAXIMIZE);
+        model.optimize();
+
+        int status = model.get(GRB.IntAttr.Status);
+
+        int ranking = -1;
+        if (status == 2) {
+            Output.println("OPTIMAL");
+            ranking = getRanking(questions.get(0), model.get(GRB.DoubleAttr.ObjVal));
+            witness = new double[V.length];
+            for (int i = 0; i < V.length; i++) {
+                witness[i] = V[i].get(GRB.DoubleAttr.X);
+                Output.print(String.format("%.5f", witness[i]) + " ");
+            }
+            Output.println();
+        } else if (status == 3) {
+            Output.println("INFEASIBLE");
+        }
+        close();
+
+        return ranking;
+    }
+
+    /** 
+     * Solve the why-not-yet best problem before a wall-clock deadline, and publish every improvement of its bounds as soon as it is found
+     * The best sampled weights are the MIP start, every new incumbent is published from a callback with the best bound of gurobi,
+     * and the incumbent is returned at the time limit
+     * @param deadline The wall-clock deadline in milliseconds, as System.currentTimeMillis()
+     * @param listener The listener of the bounds, null for none
+     * @return The best ranking found, whose weights are the witness
+    */
+    public int solve_best_anytime(long deadline, final BestListener listener) throws GRBException {
+        final Question q = questions.get(0);
+        final int[] best = new int[] {sample_best(deadline), q.num_dominators + 1}; // the best ranking and its proven bound
+        publish(listener, best[0], best[1]);
+        long remaining = deadline - System.currentTimeMillis();
+        if (isProven(best[0]) || remaining <= 0) {
+            return best[0];
+        }
+
+        setup(0);
+        model.set(GRB.DoubleParam.TimeLimit, remaining / 1000.0);
+        Formulation f = formulate_best();
+        final GRBVar V[] = lower(f);
+        model.set(GRB.DoubleAttr.Start, V, witness);
+
+        CardinalityRow c = f.cardinalities.get(0);
+        GRBLinExpr expr = new GRBLinExpr();
+        for (int i = c.first; i < c.last; i++) {
+            expr.addTerm(f.indicators.get(i).weight, binaries[i]);
+        }
+        model.setObjective(expr, GRB.MAXIMIZE);
+        final GRBException[] error = new GRBException[1]; // an exception in the callback, which stops the solve and is thrown afterwards
+        model.setCallback(new GRBCallback() {
+            protected void callback() {
+                try {
+                    if (where == GRB.CB_MIPSOL) {
+                        int ranking = getRanking(q, getDoubleInfo(GRB.CB_MIPSOL_OBJ));
+                        if (ranking < best[0]) {
+                            best[0] = ranking;
+                            witness = getSolution(V);
+                        }
+                        best[1] = Math.min(best[0], Math.max(best[1], getRankingBound(q, getDoubleInfo(GRB.CB_MIPSOL_OBJBND))));
+                        publish(listener, best[0], best[1]);
+                    }
+                } catch (GRBException e) {
+                    error[0] = e;
+                    abort();
+                }
+            }
+        });
+        model.optimize();
+        if (error[0] != null) {
+            close();
+            throw error[0];
+        }
+
+        int status = model.get(GRB.IntAttr.Status);
+
+        if (status == 2) {
+            Output.println("OPTIMAL");
+            int ranking = getRanking(q, model.get(GRB.DoubleAttr.ObjVal));
+            if (ranking < best[0]) {
+                best[0] = ranking;
+                witness = model.get(GRB.DoubleAttr.X, V);
+            }
+            best[1] = best[0];
+        } else if (status == 9) {
+            Output.println("TIMEOUT");
+            best[1] = Math.min(best[0], Math.max(best[1], getRankingBound(q, model.get(GRB.DoubleAttr.ObjBound))));
+        }
+        publish(listener, best[0], best[1]);
+        close();
+
+        return best[0];
+    }
+
     /** 
      * Recursive function for solving the why-not-yet satisfiability problem using the brute force way
      * It is only implemented for one expected tuple because the brute force algorithm is not our main focus
      * @return The SAT result
     */
     private boolean choose(Question q, int length, int i, int num_used_attributes, GRBVar[] V) throws GRBException {
+        // An interrupted search stops enumerating, and its result is not definitive
+        if (interrupted) {
+            return false;
+        }
         if (i == q.num_inequalities) {
             count++;
             model.optimize();
@@ -216,9 +390,9 @@ public class GurobiOptimizer extends Solver {
 
             if (status == 2) {
                 for (int j = 0; j < V.length; j++) {
-                    System.out.print(String.format("%.5f", V[j].get(GRB.DoubleAttr.X)) + " ");
+                    Output.print(String.format("%.5f", V[j].get(GRB.DoubleAttr.X)) + " ");
                 }
-                System.out.println();
+                Output.println();
                 return true;
             } else if (status == 3) {
                 return false;
@@ -259,7 +433,7 @@ public class GurobiOptimizer extends Solver {
             Question q = questions.get(i);
             q.k = getTopKConstraint(topk[i], q.num_dominators);
             if (q.k < 0) {
-                System.out.println("UNSATISFIABLE");
+                Output.println("UNSATISFIABLE");
                 return false;
             }
         }
@@ -277,11 +451,11 @@ public class GurobiOptimizer extends Solver {
         Question q = questions.get(0);
 
         if (choose(q, q.num_inequalities - q.k, 0, num_used_attributes, V)) {
-            System.out.println("SATISFIABLE" + count);
+            Output.println("SATISFIABLE" + count);
             close();
             return true;
         } else {
-            System.out.println("UNSATISFIABLE" + count);
+            Output.println("UNSATISFIABLE" + count);
             close();
             return false;
         }
@@ -296,118 +470,175 @@ public class GurobiOptimizer extends Solver {
     public boolean solve_satisfiability(int[] topk) throws GRBException {
         setup(0);
 
-        for (int i = 0; i < questions.size(); i++) {
-            Question q = questions.get(i);
-            q.k = getTopKConstraint(topk[i], q.num_dominators);
-            if (q.k < 0) {
-                System.out.println("UNSATISFIABLE");
-                return false;
-            }
-        }
-
-        int num_used_attributes = num_attributes;
-        
-        // Add the TRIANGLE weight constraint, which is one way to prevent all-zero weights as the answer
-        GRBLinExpr expr = new GRBLinExpr();
-        GRBVar V[] = new GRBVar[num_used_attributes];
-        for (int i = 0; i < num_used_attributes; i++) {
-            V[i] = model.addVar(0.0, 1.0, 0.0, GRB.CONTINUOUS, "x" + String.valueOf(i));
-            expr.addTerm(1.0, V[i]);
+        Formulation f = formulate("satisfiability", topk);
+        if (f == null) {
+            return false;
         }
-        model.addConstr(expr, GRB.EQUAL, 1.0, "one");
 
-        for (Question q : questions) {
-            GRBVar indicators[] = new GRBVar[q.num_inequalities];
-            double[] indicator_weights = new double[q.num_inequalities];
-            // Add indicators
-            for (int i = 0; i < q.num_inequalities; i++) {
-                expr = new GRBLinExpr();
-                for (int j = 0; j < num_used_attributes; j++) {
-                    Double c = q.inequalities.get(i).get(j);
-                    expr.addTerm(c, V[j]);
-                }
-                indicators[i] = model.addVar(0.0, 1.0, 0.0, GRB.BINARY, "indicator" + i);
-                if (!clustered) {
-                    indicator_weights[i] = 1;
-                } else {
-                    indicator_weights[i] = q.inequalities.get(i).get(num_attributes);
-                }
-                model.addGenConstrIndicator(indicators[i], 1, expr, GRB.GREATER_EQUAL, 0.0, "constraint" + i);
-            }
-            // Add the constraint on the sum of the indicators
-            expr = new GRBLinExpr();
-            expr.addTerms(indicator_weights, indicators);
-            model.addConstr(expr, GRB.EQUAL, q.num_competitors - q.k, "indicators");
-        }
+        GRBVar V[] = lower(f);
 
         model.optimize();
 
         int status = model.get(GRB.IntAttr.Status);
 
         if (status == 2) {
-            System.out.println("OPTIMAL");
+            Output.println("OPTIMAL");
+            witness = new double[V.length];
             for (int i = 0; i < V.length; i++) {
-               System.out.print(String.format("%.5f", V[i].get(GRB.DoubleAttr.X)) + " ");
+               witness[i] = V[i].get(GRB.DoubleAttr.X);
+               Output.print(String.format("%.5f", witness[i]) + " ");
             }
-            System.out.println();
+            Output.println();
             close();
             return true;
         } else if (status == 3) {
-            System.out.println("INFEASIBLE");
+            Output.println("INFEASIBLE");
             close();
         }
 
         return false;
     }
 
+    /** 
+     * Lower a solver-neutral model to the gurobi model
+     * Each indicator row is added as an indicator constraint, whose binary indicator is 1 if the row holds,
+     * or as the big-M row expr + M * (1 - indicator) >= rhs with the tightest M = rhs - min(expr) over the weight constraint
+     * @param f The solver-neutral model
+     * @return All variables of the problem (weights, or lower bounds and upper bounds)
+    */
+    private GRBVar[] lower(Formulation f) throws GRBException {
+        long start = System.nanoTime();
+        ModelBuildEvent event = new ModelBuildEvent();
+        event.begin();
+        GRBVar V[] = new GRBVar[f.size()];
+        for (int i = 0; i < f.size(); i++) {
+            Variable v = f.variables.get(i);
+            V[i] = model.addVar(v.lower, v.upper, 0.0, GRB.CONTINUOUS, v.name);
+        }
+
+        for (LinearRow row : f.rows) {
+            model.addConstr(expression(row, V), sense(row.sense), row.rhs, row.name);
+        }
+
+        binaries = new GRBVar[f.indicators.size()];
+        cardinality_constraints = new GRBConstr[f.cardinalities.size()];
+        for (CardinalityRow c : f.cardinalities) {
+            GRBVar indicators[] = new GRBVar[c.last - c.first];
+            double[] indicator_weights = new double[c.last - c.first];
+            // Add indicators
+            for (int i = c.first; i < c.last; i++) {
+                IndicatorRow row = f.indicators.get(i);
+                indicators[i - c.first] = model.addVar(0.0, 1.0, 0.0, GRB.BINARY, "indicator" + (i - c.first));
+                binaries[i] = indicators[i - c.first];
+                indicator_weights[i - c.first] = row.weight;
+                if (!big_m) {
+                    model.addGenConstrIndicator(indicators[i - c.first], 1, expression(row, V), GRB.GREATER_EQUAL, row.rhs, row.name);
+                } else {
+                    double M = row.rhs - f.getTightMinimum(row);
+                    // The row holds everywhere if M <= 0, so the indicator is free
+                    if (M > 0) {
+                        GRBLinExpr expr = expression(row, V);
+                        expr.addTerm(-M, indicators[i - c.first]);
+                        model.addConstr(expr, GRB.GREATER_EQUAL, row.rhs - M, row.name);
+                    }
+                }
+            }
+            // Add the constraint on the sum of the indicators
+            GRBLinExpr expr = new GRBLinExpr();
+            expr.addTerms(indicator_weights, indicators);
+            cardinality_constraints[f.cardinalities.indexOf(c)] = model.addConstr(expr, GRB.GREATER_EQUAL, c.rhs, c.name);
+        }
+
+        commit(event, "GurobiOptimizer", f);
+        metrics.recordTime("backend.build_us", start);
+        return V;
+    }
+
+    /** 
+     * @param row A linear row of the solver-neutral model
+     * @param V All variables of the problem
+     * @return The left-hand side of the row
+    */
+    private GRBLinExpr expression(LinearRow row, GRBVar[] V) {
+        GRBLinExpr expr = new GRBLinExpr();
+        for (int i = 0; i < row.indices.length; i++) {
+            expr.addTerm(row.coefficients[i], V[row.indices[i]]);
+        }
+        return expr;
+    }
+
+    /** 
+     * @param sense The sense of a linear row of the solver-neutral model
+     * @return The gurobi sense
+    */
+    private char sense(String sense) {
+        if (sense.equals(">=")) {
+            return GRB.GREATER_EQUAL;
+        } else if (sense.equals("<=")) {
+            return GRB.LESS_EQUAL;
+        } else {
+            return GRB.EQUAL;
+        }
+    }
+
     /** 
      * Utilize binary search to optimize
      * @param V All variables of the problem (lower bounds and upper bounds)
      * @param num_attributes The number of used attributes
      * @param perimeter_high The upper bound of the perimeter
+     * @param start A known feasible box whose perimeter is the lower bound, or an invalid box
      * @return The BOX result
     */
-    private Box binary_search(GRBVar V[], int num_attributes, double perimeter_high) throws GRBException {
+    private Box binary_search(GRBVar V[], int num_attributes, double perimeter_high, Box start) throws GRBException {
         GRBLinExpr expr = new GRBLinExpr();
         for (int i = 0; i < num_attributes; i++) {
             expr.addTerm(-1.0, V[i * 2]);
             expr.addTerm(1.0, V[i * 2 + 1]);
         }
-        Double perimeter_low = 0.0;
+        Double perimeter_low = start.valid() ? start.getPerimeter() : 0.0;
         Double perimeter = perimeter_high - 0.00000001;
 
+        double proven = perimeter_high; // lowered only when a perimeter is proven infeasible, not on a timeout
         int status;
-        Box b = new Box(-1.0);
+        Box b = start;
+        int iterations = 0;
 
         while(true) {
-            if (perimeter_high - perimeter_low < 0.01 || perimeter_high < 0.00001) {
+            if (perimeter_high - perimeter_low < tolerance || perimeter_high < 0.00001 || interrupted) {
                 break;
             }
             
-            System.out.print(String.format("%.5f", perimeter));
-            System.out.print(" ");
+            Output.print(String.format("%.5f", perimeter));
+            Output.print(" ");
 
             model.addConstr(expr, GRB.EQUAL, perimeter, "perimeter");
+            long probe_start = System.nanoTime();
+            SolverProbeEvent event = new SolverProbeEvent();
+            event.begin();
             model.optimize();
+            metrics.recordTime("probe.time_us", probe_start);
+            iterations++;
 
             status = model.get(GRB.IntAttr.Status);
+            commit(event, perimeter, status);
     
             if (status == 2) {
-                System.out.println("OPTIMAL");
+                Output.println("OPTIMAL");
                 b = getBox(perimeter, V);
                 perimeter_low = perimeter;
             } else if (status == 3) {
-                System.out.println("INFEASIBLE");
+                Output.println("INFEASIBLE");
                 perimeter_high = perimeter;
+                proven = perimeter;
             } else {
-                System.out.println("TIMEOUT");
+                Output.println("TIMEOUT");
                 perimeter_high = perimeter;
             }
             perimeter = (perimeter_high - perimeter_low) / 2 + perimeter_low;
             model.remove(model.getConstrByName("perimeter"));
         }
-
-        return b;
+        metrics.histogram("search.iterations").record(iterations);
+        return b.withBound(proven);
     }
 
     /** 
@@ -434,6 +665,10 @@ public class GurobiOptimizer extends Solver {
      * @param num_used_attributes The number of used attributes
     */
     public void optimize_volume(GRBVar V[], int num_used_attributes) throws GRBException {
+        if (volume_segments > 0) {
+            optimize_log_volume(V, num_used_attributes);
+            return;
+        }
         model.set(GRB.IntParam.NonConvex, 2);
 
         GRBQuadExpr quadexpr = new GRBQuadExpr();
@@ -457,6 +692,80 @@ public class GurobiOptimizer extends Solver {
         model.optimize();
     }
 
+    /** 
+     * Optimize volume by the sum of the logs of the sides, which has the same argmax as the product
+     * Each log is a piecewise-linear function with volume_segments segments on geometric breakpoints, which keeps the model a MILP, 
+     * and with the refinement, it is rebuilt with volume_segments more segments around the optimal sides and solved again from the last box
+     * @param V All variables of the problem (lower bounds and upper bounds)
+     * @param num_used_attributes The number of used attributes
+    */
+    public void optimize_log_volume(GRBVar V[], int num_used_attributes) throws GRBException {
+        logs = new GRBGenConstr[num_used_attributes];
+        log_breakpoints = new double[num_used_attributes][];
+        GRBVar U[] = new GRBVar[num_used_attributes];
+        GRBVar L[] = new GRBVar[num_used_attributes];
+        GRBLinExpr objective = new GRBLinExpr();
+        for (int i = 0; i < num_used_attributes; i++) {
+            // The side is at least 10^-5 to avoid the output of an empty box
+            double high = Math.max(V[i * 2 + 1].get(GRB.DoubleAttr.UB) - V[i * 2].get(GRB.DoubleAttr.LB), 2 * Math.pow(10, -5));
+            GRBLinExpr expr = new GRBLinExpr();
+            expr.addTerm(-1.0, V[i * 2]);
+            expr.addTerm(1.0, V[i * 2 + 1]);
+            U[i] = model.addVar(Math.pow(10, -5), high, 0.0, GRB.CONTINUOUS, "x" + String.valueOf(i) + "range");
+            model.addConstr(U[i], GRB.EQUAL, expr, "range" + i);
+            L[i] = model.addVar(Math.log(Math.pow(10, -5)), Math.log(high), 0.0, GRB.CONTINUOUS, "x" + String.valueOf(i) + "log");
+            log_breakpoints[i] = PiecewiseLog.getBreakpoints(Math.pow(10, -5), high, volume_segments, 0.0);
+            logs[i] = addLog(U[i], L[i], log_breakpoints[i], i);
+            objective.addTerm(1.0, L[i]);
+        }
+        model.setObjective(objective, GRB.MAXIMIZE);
+        model.optimize();
+
+        if (volume_refinement && model.get(GRB.IntAttr.Status) == 2) {
+            GRBVar[] all = model.getVars();
+            double[] start = model.get(GRB.DoubleAttr.X, all);
+            for (int i = 0; i < num_used_attributes; i++) {
+                model.remove(logs[i]);
+                double[] coarse = log_breakpoints[i];
+                log_breakpoints[i] = PiecewiseLog.getBreakpoints(coarse[0], coarse[coarse.length - 1], volume_segments, U[i].get(GRB.DoubleAttr.X));
+                logs[i] = addLog(U[i], L[i], log_breakpoints[i], i);
+            }
+            model.set(GRB.DoubleAttr.Start, all, start);
+            model.optimize();
+        }
+    }
+
+    /** 
+     * @param u The side of the box
+     * @param l The log of the side
+     * @param breakpoints The breakpoints of the side
+     * @param i The index of the side
+     * @return The piecewise-linear log
+    */
+    private GRBGenConstr addLog(GRBVar u, GRBVar l, double[] breakpoints, int i) throws GRBException {
+        double[] values = new double[breakpoints.length];
+        for (int j = 0; j < breakpoints.length; j++) {
+            values[j] = Math.log(breakpoints[j]);
+        }
+        return model.addGenConstrPWL(u, l, breakpoints, values, "log" + i);
+    }
+
+    /** 
+     * @param V All variables of the problem (lower bounds and upper bounds)
+     * @param measure The optimization measure
+     * @return The box of the optimal solution, whose goal is the volume instead of the sum of the logs with the piecewise-linear volume
+    */
+    private Box getOptimalBox(GRBVar V[], int measure) throws GRBException {
+        if (measure != 0 || logs == null) {
+            return getBox(model.get(GRB.DoubleAttr.ObjVal), V);
+        }
+        double volume = 1.0;
+        for (int i = 0; i < V.length; i += 2) {
+            volume *= V[i + 1].get(GRB.DoubleAttr.X) - V[i].get(GRB.DoubleAttr.X);
+        }
+        return getBox(volume, V);
+    }
+
     /** 
      * Solve the why-not-yet box problem with the TRIANGLE weight constraint
      * Use 1 TRIANGLE weight constraint and (num_attributes - 1) constraints on (upper bound - lower bound) for all questions, 
@@ -465,6 +774,39 @@ public class GurobiOptimizer extends Solver {
      * @return The BOX result
     */
     public Box optimize_box_triangle(int[] topk, boolean precise, int measure) throws GRBException {
+        return optimize_box("triangle", topk, precise, measure);
+    }
+
+    /** 
+     * Solve the why-not-yet box problem with the PYRAMID weight constraint
+     * Use 1 PYRAMID weight constraint and num_attributes constraints on (upper bound - lower bound) for all questions, 
+     * q.num_ineqaulities indicators and 1 constraint on the sum of the indicators for each question
+     * @param topk The top-k limits for expected tuples
+     * @return The BOX result
+    */
+    public Box optimize_box_pyramid(int[] topk, boolean precise, int measure) throws GRBException {
+        return optimize_box("pyramid", topk, precise, measure);
+    }
+
+    /** 
+     * Solve the why-not-yet box problem with the CUBE weight constraint
+     * Use num_attributes constraints on (upper bound - lower bound) for all questions, 
+     * q.num_ineqaulities indicators and 1 constraint on the sum of the indicators for each question
+     * The CUBE constraints are contained in the variables
+     * @param topk The top-k limits for expected tuples
+     * @return The CUBE result
+    */
+    public Box optimize_box_cube(int[] topk, boolean precise, int measure) throws GRBException {
+        return optimize_box("cube", topk, precise, measure);
+    }
+
+    /** 
+     * Solve the why-not-yet box problem with the given weight constraint
+     * @param shape The weight constraint. The options are triangle, pyramid and cube
+     * @param topk The top-k limits for expected tuples
+     * @return The BOX result
+    */
+    private Box optimize_box(String shape, int[] topk, boolean precise, int measure) throws GRBException {
         if (precise) {
             setup(0);
         } else {
@@ -473,69 +815,13 @@ public class GurobiOptimizer extends Solver {
 
         Box b = new Box(-1.0);
 
-        for (int i = 0; i < questions.size(); i++) {
-            Question q = questions.get(i);
-            q.k = getTopKConstraint(topk[i], q.num_dominators);
-            if (q.k < 0) {
-                System.out.println("UNSATISFIABLE");
-                return null;
-            }
-        }
-
-        int num_used_attributes = num_attributes - 1;
-
-        GRBVar V[] = new GRBVar[num_used_attributes * 2];
-        for (int i = 0; i < num_used_attributes; i++) {
-            V[i * 2] = model.addVar(0.0, 1.0, 0.0, GRB.CONTINUOUS, "x" + String.valueOf(i) + "lower");
-            V[i * 2 + 1] = model.addVar(0.0, 1.0, 0.0, GRB.CONTINUOUS, "x" + String.valueOf(i) + "upper");
-        }
-
-        GRBLinExpr expr;
-
-        // Add constraints to make sure the upper bound is larger than or equal to the lower bound on each attribute 
-        for (int i = 0; i < num_used_attributes; i++) {
-            expr = new GRBLinExpr();
-            expr.addTerm(-1.0, V[i * 2]); 
-            expr.addTerm(1.0, V[i * 2 + 1]); 
-            model.addConstr(expr, GRB.GREATER_EQUAL, 0.0, "bound" + String.valueOf(i));
-        }
-
-        // Add the TRIANGLE constraint
-        expr = new GRBLinExpr();
-        for (int i = 0; i < num_used_attributes; i++) {
-            expr.addTerm(1.0, V[i * 2 + 1]); 
-        }
-        model.addConstr(expr, GRB.LESS_EQUAL, 1.0, "triangle");
-        
-        for (Question q : questions) {
-            GRBVar indicators[] = new GRBVar[q.num_inequalities];
-            double[] indicator_weights = new double[q.num_inequalities];
-            // Add indicators
-            for (int i = 0; i < q.num_inequalities; i++) {
-                expr = new GRBLinExpr();
-                for (int j = 0; j < num_used_attributes; j++) {
-                    Double c = q.inequalities.get(i).get(j) - q.inequalities.get(i).get(num_used_attributes);
-                    if (c >= 0) {
-                        expr.addTerm(c, V[j * 2]);
-                    } else {
-                        expr.addTerm(c, V[j * 2 + 1]);
-                    }
-                }
-                indicators[i] = model.addVar(0.0, 1.0, 0.0, GRB.BINARY, "indicator" + i);
-                if (!clustered) {
-                    indicator_weights[i] = 1;
-                } else {
-                    indicator_weights[i] = q.inequalities.get(i).get(num_attributes);
-                }
-                model.addGenConstrIndicator(indicators[i], 1, expr, GRB.GREATER_EQUAL, -q.inequalities.get(i).get(num_used_attributes), "constraint" + i);
-            }
-            // Add the constraint on the sum of the indicators
-            expr = new GRBLinExpr();
-            expr.addTerms(indicator_weights, indicators);
-            model.addConstr(expr, GRB.EQUAL, q.num_competitors - q.k, "indicators");
+        Formulation f = formulate(shape, topk);
+        if (f == null) {
+            return b;
         }
 
-        apply_constraints(V);
+        GRBVar V[] = lower(f);
+        int num_used_attributes = f.num_used_attributes;
 
         if (precise) {
             if (measure == 0) {
@@ -543,229 +829,214 @@ public class GurobiOptimizer extends Solver {
             } else if (measure == 1) {
                 optimize_perimeter(V, num_used_attributes);
             }
+    
             int status = model.get(GRB.IntAttr.Status);
     
             if (status == 2) {
-                System.out.println("OPTIMAL");
-                b = getBox(model.get(GRB.DoubleAttr.ObjVal), V);
+                Output.println("OPTIMAL");
+                b = getOptimalBox(V, measure);
+                b.setBound(measure == 0 && logs != null ? PiecewiseLog.getVolumeBound(model.get(GRB.DoubleAttr.ObjBound), log_breakpoints) : b.getPerimeter());
             } else if (status == 3) {
-                System.out.println("INFEASIBLE");
+                Output.println("INFEASIBLE");
             }  
         } else {
-            Double perimeter_high = 1.0;
+            // The perimeter is at most 1 with the TRIANGLE or PYRAMID constraint and num_attributes with the CUBE constraint
+            Double perimeter_high = shape.equals("cube") ? 1.0 * num_used_attributes : 1.0;
 
-            b = binary_search(V, num_used_attributes, perimeter_high);
+            // Cover only the interval between a heuristic box and the bound of the LP relaxation
+            double[] relaxed = relax(f);
+            perimeter_high = getPerimeterBound(f, relaxed, perimeter_high);
+            b = binary_search(V, num_used_attributes, perimeter_high, getHeuristicBox(f, relaxed));
         }
-
+        
         close();
 
         return b;
     }
 
     /** 
-     * Solve the why-not-yet box problem with the PYRAMID weight constraint
-     * Use 1 PYRAMID weight constraint and num_attributes constraints on (upper bound - lower bound) for all questions, 
-     * q.num_ineqaulities indicators and 1 constraint on the sum of the indicators for each question
+     * Solve the why-not-yet box problem on the perimeter before a wall-clock deadline, and publish every improving box as soon as it is found
+     * The heuristic box is the MIP start, every new incumbent is published from a callback with the best bound of gurobi,
+     * and the incumbent is returned at the time limit instead of being treated as infeasible
+     * @param shape The weight constraint. The options are triangle, pyramid and cube
      * @param topk The top-k limits for expected tuples
-     * @return The BOX result
+     * @param deadline The wall-clock deadline in milliseconds, as System.currentTimeMillis()
+     * @param listener The listener of the improving boxes, null for none
+     * @return The best box found, which carries the proven upper bound of the perimeter
     */
-    public Box optimize_box_pyramid(int[] topk, boolean precise, int measure) throws GRBException {
-        if (precise) {
-            setup(0);
-        } else {
-            setup(60);
+    public Box optimize_box_anytime(String shape, int[] topk, long deadline, BoxListener listener) throws GRBException {
+        Formulation f = formulate(shape, topk);
+        if (f == null) {
+            return new Box(-1.0);
         }
 
-        Box b = new Box(-1.0);
-
-        for (int i = 0; i < questions.size(); i++) {
-            Question q = questions.get(i);
-            q.k = getTopKConstraint(topk[i], q.num_dominators);
-            if (q.k < 0) {
-                System.out.println("UNSATISFIABLE");
-                return null;
-            }
-        }
-
-        int num_used_attributes = num_attributes;
-
-        GRBVar V[] = new GRBVar[num_used_attributes * 2];
-        for (int i = 0; i < num_used_attributes; i++) {
-            V[i * 2] = model.addVar(0.0, 1.0, 0.0, GRB.CONTINUOUS, "x" + String.valueOf(i) + "lower");
-            V[i * 2 + 1] = model.addVar(0.0, 1.0, 0.0, GRB.CONTINUOUS, "x" + String.valueOf(i) + "upper");
+        Box start = getStartBox(f, deadline, listener);
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            return start;
         }
 
-        GRBLinExpr expr;
-
-        // Add constraints to make sure the upper bound is larger than or equal to the lower bound on each attribute 
-        for (int i = 0; i < num_used_attributes; i++) {
-            expr = new GRBLinExpr();
-            expr.addTerm(-1.0, V[i * 2]); 
-            expr.addTerm(1.0, V[i * 2 + 1]); 
-            model.addConstr(expr, GRB.GREATER_EQUAL, 0.0, "bound" + String.valueOf(i));
+        setup(0);
+        model.set(GRB.DoubleParam.TimeLimit, remaining / 1000.0);
+        GRBVar V[] = lower(f);
+        if (start.valid()) {
+            model.set(GRB.DoubleAttr.Start, V, start.getBounds());
         }
 
-        // Add the PYRAMID constraint
-        expr = new GRBLinExpr();
-        for (int i = 0; i < num_used_attributes; i++) {
-            expr.addTerm(1.0, V[i * 2 + 1]); 
-        }
-        model.addConstr(expr, GRB.LESS_EQUAL, 1.0, "pyramid");
-        
-        for (Question q : questions) {
-            GRBVar indicators[] = new GRBVar[q.num_inequalities];
-            double[] indicator_weights = new double[q.num_inequalities];
-            // Add indicators
-            for (int i = 0; i < q.num_inequalities; i++) {
-                expr = new GRBLinExpr();
-                for (int j = 0; j < num_used_attributes; j++) {
-                    Double c = q.inequalities.get(i).get(j);
-                    if (c >= 0) {
-                        expr.addTerm(c, V[j * 2]);
-                    } else {
-                        expr.addTerm(c, V[j * 2 + 1]);
+        Box[] best = new Box[] {start};
+        final GRBException[] error = new GRBException[1]; // an exception in the callback, which stops the solve and is thrown afterwards
+        model.setCallback(new GRBCallback() {
+            protected void callback() {
+                try {
+                    if (where == GRB.CB_MIPSOL) {
+                        Box b = getBox(getDoubleInfo(GRB.CB_MIPSOL_OBJ), getSolution(V));
+                        b.setBound(getDoubleInfo(GRB.CB_MIPSOL_OBJBND));
+                        best[0] = publish(listener, best[0], b);
                     }
+                } catch (GRBException e) {
+                    error[0] = e;
+                    abort();
                 }
-                indicators[i] = model.addVar(0.0, 1.0, 0.0, GRB.BINARY, "indicator" + i);
-                if (!clustered) {
-                    indicator_weights[i] = 1.0;
-                } else {
-                    indicator_weights[i] = q.inequalities.get(i).get(num_attributes);
-                }
-                model.addGenConstrIndicator(indicators[i], 1, expr, GRB.GREATER_EQUAL, 0.0, "constraint" + i);
             }
-            // Add the constraint on the sum of the indicators
-            expr = new GRBLinExpr();
-            expr.addTerms(indicator_weights, indicators);
-            model.addConstr(expr, GRB.EQUAL, q.num_competitors - q.k, "indicators");
+        });
+        optimize_perimeter(V, f.num_used_attributes);
+        if (error[0] != null) {
+            close();
+            throw error[0];
         }
 
-        apply_constraints(V);
+        int status = model.get(GRB.IntAttr.Status);
 
-        if (precise) {
-            if (measure == 0) {
-                optimize_volume(V, num_used_attributes);
-            } else if (measure == 1) {
-                optimize_perimeter(V, num_used_attributes);
+        if (status == 2) {
+            Output.println("OPTIMAL");
+            Box b = getBox(model.get(GRB.DoubleAttr.ObjVal), V);
+            b.setBound(b.getPerimeter());
+            best[0] = publish(listener, best[0], b);
+        } else if (status == 3) {
+            Output.println("INFEASIBLE");
+            best[0] = best[0].withBound(0.0);
+        } else if (status == 9) {
+            Output.println("TIMEOUT");
+            if (model.get(GRB.IntAttr.SolCount) > 0) {
+                Box b = getBox(model.get(GRB.DoubleAttr.ObjVal), V);
+                b.setBound(model.get(GRB.DoubleAttr.ObjBound));
+                best[0] = publish(listener, best[0], b);
+            } else {
+                best[0] = best[0].withBound(Math.min(best[0].getBound(), model.get(GRB.DoubleAttr.ObjBound)));
             }
-            
-            int status = model.get(GRB.IntAttr.Status);
-    
-            if (status == 2) {
-                System.out.println("OPTIMAL");
-                b = getBox(model.get(GRB.DoubleAttr.ObjVal), V);
-            } else if (status == 3) {
-                System.out.println("INFEASIBLE");
-            }  
-        } else {
-            Double perimeter_high = 1.0;
-
-            b = binary_search(V, num_used_attributes, perimeter_high);
         }
-
         close();
 
-        return b;
+        return best[0];
     }
 
     /** 
-     * Solve the why-not-yet box problem with the CUBE weight constraint
-     * Use num_attributes constraints on (upper bound - lower bound) for all questions, 
-     * q.num_ineqaulities indicators and 1 constraint on the sum of the indicators for each question
-     * The CUBE constraints are contained in the variables
+     * Solve the SAT problem for the next k of the binary search over k with the model kept from the previous k
+     * Only the right-hand sides of the cardinality constraints change, so gurobi starts from the previous solve
      * @param topk The top-k limits for expected tuples
-     * @return The CUBE result
+     * @return The SAT result
     */
-    public Box optimize_box_cube(int[] topk, boolean precise, int measure) throws GRBException {
-        if (precise) {
-            setup(0);
-        } else {
-            setup(60);
+    protected boolean sweep_satisfiability(int[] topk) throws GRBException {
+        Formulation f = formulate("satisfiability", topk);
+        if (f == null) {
+            return false;
         }
-        
-        Box b = new Box(-1.0);
 
-        for (int i = 0; i < questions.size(); i++) {
-            Question q = questions.get(i);
-            q.k = getTopKConstraint(topk[i], q.num_dominators);
-            if (q.k < 0) {
-                System.out.println("UNSATISFIABLE");
-                return b;
+        if (sweep_variables == null) {
+            setup(0);
+            sweep_variables = lower(f);
+        } else {
+            for (int c = 0; c < f.cardinalities.size(); c++) {
+                cardinality_constraints[c].set(GRB.DoubleAttr.RHS, f.cardinalities.get(c).rhs);
             }
         }
+        GRBVar V[] = sweep_variables;
 
-        int num_used_attributes = num_attributes;
-
-        GRBVar V[] = new GRBVar[num_used_attributes * 2];
-        for (int i = 0; i < num_used_attributes; i++) {
-            // The CUBE constraints are added with the variables
-            V[i * 2] = model.addVar(0.0, 1.0, 0.0, GRB.CONTINUOUS, "x" + String.valueOf(i) + "lower");
-            V[i * 2 + 1] = model.addVar(0.0, 1.0, 0.0, GRB.CONTINUOUS, "x" + String.valueOf(i) + "upper");
-        }
+        model.optimize();
 
-        GRBLinExpr expr;
+        int status = model.get(GRB.IntAttr.Status);
 
-        // Add constraints to make sure the upper bound is larger than or equal to the lower bound on each attribute 
-        for (int i = 0; i < num_used_attributes; i++) {
-            expr = new GRBLinExpr();
-            expr.addTerm(-1.0, V[i * 2]); 
-            expr.addTerm(1.0, V[i * 2 + 1]); 
-            model.addConstr(expr, GRB.GREATER_EQUAL, 0.0, "bound" + String.valueOf(i));
+        if (status == 2) {
+            Output.println("OPTIMAL");
+            witness = model.get(GRB.DoubleAttr.X, V);
+            return true;
+        } else if (status == 3) {
+            Output.println("INFEASIBLE");
         }
-        
-        for (Question q : questions) {
-            GRBVar indicators[] = new GRBVar[q.num_inequalities];
-            double[] indicator_weights = new double[q.num_inequalities];
-            // Add indicators
-            for (int i = 0; i < q.num_inequalities; i++) {
-                expr = new GRBLinExpr();
-                for (int j = 0; j < num_used_attributes; j++) {
-                    Double c = q.inequalities.get(i).get(j);
-                    if (c >= 0) {
-                        expr.addTerm(c, V[j * 2]);
-                    } else {
-                        expr.addTerm(c, V[j * 2 + 1]);
-                    }
-                }
-                indicators[i] = model.addVar(0.0, 1.0, 0.0, GRB.BINARY, "indicator" + i);
-                if (!clustered) {
-                    indicator_weights[i] = 1.0;
-                } else {
-                    indicator_weights[i] = q.inequalities.get(i).get(num_attributes);
-                }
-                model.addGenConstrIndicator(indicators[i], 1, expr, GRB.GREATER_EQUAL, 0.0, "constraint" + i);
+        return false;
+    }
+
+    /** 
+     * Solve the BOX problem for the next k of a sweep with the model kept from the previous k
+     * Only the right-hand sides of the cardinality constraints change, and the previous box is still feasible for a larger k, 
+     * so it is the MIP start of the precise optimization and the lower bound of the binary search
+     * @param shape The weight constraint. The options are triangle, pyramid and cube
+     * @param topk The top-k limits for expected tuples
+     * @param first Whether this is the first BOX problem of the sweep
+     * @return The BOX result
+    */
+    protected Box sweep_box(String shape, int[] topk, boolean precise, int measure, boolean first) throws GRBException {
+        Formulation f = formulate(shape, topk);
+        int num_used_attributes = f.num_used_attributes;
+
+        if (first) {
+            setup(precise ? 0 : 60);
+            sweep_variables = lower(f);
+            sweep_result = new Box(-1.0);
+        } else {
+            for (int c = 0; c < f.cardinalities.size(); c++) {
+                cardinality_constraints[c].set(GRB.DoubleAttr.RHS, f.cardinalities.get(c).rhs);
             }
-            // Add the constraint on the sum of the indicators
-            expr = new GRBLinExpr();
-            expr.addTerms(indicator_weights, indicators);
-            model.addConstr(expr, GRB.EQUAL, q.num_competitors - q.k, "indicators");
         }
-
-        apply_constraints(V);
+        GRBVar V[] = sweep_variables;
 
         if (precise) {
-            if (measure == 0) {
-                optimize_volume(V, num_used_attributes);
-            } else if (measure == 1) {
-                optimize_perimeter(V, num_used_attributes);
+            if (first) {
+                if (measure == 0) {
+                    optimize_volume(V, num_used_attributes);
+                } else {
+                    optimize_perimeter(V, num_used_attributes);
+                }
+            } else {
+                if (sweep_result.valid()) {
+                    GRBVar[] all = model.getVars();
+                    model.set(GRB.DoubleAttr.Start, all, model.get(GRB.DoubleAttr.X, all));
+                }
+                model.optimize();
             }
-    
+
             int status = model.get(GRB.IntAttr.Status);
-    
+
             if (status == 2) {
-                System.out.println("OPTIMAL");
-                b = getBox(model.get(GRB.DoubleAttr.ObjVal), V);
+                Output.println("OPTIMAL");
+                sweep_result = getOptimalBox(V, measure);
             } else if (status == 3) {
-                System.out.println("INFEASIBLE");
-            }  
+                Output.println("INFEASIBLE");
+            }
         } else {
-            Double perimeter_high = 1.0 * num_used_attributes;
-
-            b = binary_search(V, num_used_attributes, perimeter_high);
+            // The perimeter is at most 1 with the TRIANGLE or PYRAMID constraint and num_attributes with the CUBE constraint
+            Double perimeter_high = shape.equals("cube") ? 1.0 * num_used_attributes : 1.0;
+
+            // Cover only the interval between the better of the previous box and a heuristic box, and the bound of the LP relaxation
+            double[] relaxed = relax(f);
+            perimeter_high = getPerimeterBound(f, relaxed, perimeter_high);
+            Box heuristic = getHeuristicBox(f, relaxed);
+            if (heuristic.getPerimeter() > sweep_result.getPerimeter()) {
+                sweep_result = heuristic;
+            }
+            sweep_result = binary_search(V, num_used_attributes, perimeter_high, sweep_result);
         }
-        
-        close();
 
-        return b;
+        return sweep_result;
+    }
+
+    /** 
+     * Dispose the model kept during the SAT or BOX problems of a sweep
+    */
+    protected void sweep_close() throws GRBException {
+        if (sweep_variables != null) {
+            close();
+            sweep_variables = null;
+        }
     }
 }
\ No newline at end of file
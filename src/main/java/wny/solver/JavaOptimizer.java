@@ -0,0 +1,890 @@
+package wny.solver;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import wny.engine.BranchAndBound;
+import wny.engine.Simplex;
+import wny.entities.Box;
+import wny.entities.Treenode;
+import wny.entities.Tuple;
+import wny.events.BestNodeEvent;
+import wny.events.ModelBuildEvent;
+import wny.events.SolverProbeEvent;
+import wny.metrics.Output;
+import wny.model.Formulation;
+
+/**
+ * An optimizer using the embedded pure-Java engine, which needs no license
+ * Indicators are linearized with big-M rows whose M are derived from the data
+ * @author Zixuan Chen
+*/
+public class JavaOptimizer extends Solver {
+    private volatile BranchAndBound engine;
+    private volatile BranchAndBound[] probes; // the engines of the running k-ary search, null if there is none
+    private volatile ArrayList<BranchAndBound> cells; // the engines of the running cells of the weight space, null if there are none
+    private Box sweep_result; // the BOX result of the previous k of a sweep
+    private BranchAndBound sweep_engine; // the engine of the SAT model kept during the binary search over k of a sweep, null if there is none
+
+    /**
+     * @param tuples All tuples of a relation
+     * @param expected_tuples The expected tuples in the why-not-yet question
+    */
+    public JavaOptimizer(ArrayList<Tuple> tuples, ArrayList<Tuple> expected_tuples) throws Exception {
+        super(tuples, expected_tuples);
+    }
+
+    /**
+     * @param tuples All tuples of a relation
+     * @param prepared The prepared question of each expected tuple, which is shared
+    */
+    public JavaOptimizer(ArrayList<Tuple> tuples, List<PreparedQuestion> prepared) {
+        super(tuples, prepared);
+    }
+
+    /**
+     * @param prepared A solver whose preprocessed question is shared
+    */
+    public JavaOptimizer(Solver prepared) {
+        super(prepared);
+    }
+
+    /**
+     * Build the engine for a model, which stops immediately if the solver is interrupted
+     * @param f The solver-neutral model
+     * @return The engine
+    */
+    private BranchAndBound build(Formulation f) {
+        long start = System.nanoTime();
+        ModelBuildEvent event = new ModelBuildEvent();
+        event.begin();
+        BranchAndBound e = new BranchAndBound(f);
+        commit(event, "JavaOptimizer", f);
+        metrics.recordTime("backend.build_us", start);
+        engine = e;
+        if (interrupted) {
+            e.interrupt();
+        }
+        return e;
+    }
+
+    /**
+     * Stop the running solve as soon as possible, and all later solves immediately
+    */
+    public void interrupt() {
+        super.interrupt();
+        BranchAndBound e = engine;
+        if (e != null) {
+            e.interrupt();
+        }
+        BranchAndBound[] p = probes;
+        if (p != null) {
+            for (BranchAndBound b : p) {
+                b.interrupt();
+            }
+        }
+        ArrayList<BranchAndBound> c = cells;
+        if (c != null) {
+            synchronized (c) {
+                for (BranchAndBound b : c) {
+                    b.interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Solve the why-not-yet satisfiability problem using indicators
+     * Use 1 TRIANGLE weight constraint for all questions, q.num_ineqaulities indicators and 1 constraint on the sum of the indicators for each question
+     * @param topk The top-k limits for expected tuples
+     * @return The SAT result
+    */
+    public boolean solve_satisfiability(int[] topk) {
+        Formulation f = formulate("satisfiability", topk);
+        if (f == null) {
+            return false;
+        }
+        if (decomposition > 0) {
+            return solve_satisfiability_cells(f);
+        }
+
+        engine = build(f);
+        int status = engine.solve(0);
+
+        if (status == BranchAndBound.OPTIMAL) {
+            Output.println("OPTIMAL");
+            double[] weights = engine.getSolution();
+            witness = weights;
+            for (int i = 0; i < weights.length; i++) {
+               Output.print(String.format("%.5f", weights[i]) + " ");
+            }
+            Output.println();
+            return true;
+        } else if (status == BranchAndBound.INFEASIBLE) {
+            Output.println("INFEASIBLE");
+        }
+
+        return false;
+    }
+
+    /**
+     * Solve the why-not-yet best problem directly
+     * The weighted number of holding indicator rows of the SAT model without limits is maximized in one branch and bound search
+     * It is only implemented for one expected tuple as the brute force algorithm
+     * @return The BEST result
+    */
+    public int solve_best() {
+        Formulation f = formulate_best();
+
+        engine = build(f);
+        engine.setCountObjective(0);
+        int status = engine.solve(0);
+
+        if (status == BranchAndBound.OPTIMAL) {
+            Output.println("OPTIMAL");
+            witness = engine.getSolution();
+            for (int i = 0; i < witness.length; i++) {
+               Output.print(String.format("%.5f", witness[i]) + " ");
+            }
+            Output.println();
+            return getRanking(questions.get(0), engine.getObjective());
+        } else if (status == BranchAndBound.INFEASIBLE) {
+            Output.println("INFEASIBLE");
+        }
+
+        return -1;
+    }
+
+    /**
+     * Solve the why-not-yet best problem before a wall-clock deadline, and publish every improvement of its bounds as soon as it is found
+     * The best sampled weights are the first incumbent of the branch and bound search, every new incumbent is published,
+     * and the best bound of the open nodes gives the proven lower bound of the ranking
+     * @param deadline The wall-clock deadline in milliseconds, as System.currentTimeMillis()
+     * @param listener The listener of the bounds, null for none
+     * @return The best ranking found, whose weights are the witness
+    */
+    public int solve_best_anytime(long deadline, final BestListener listener) {
+        final Question q = questions.get(0);
+        final int[] best = new int[] {sample_best(deadline), q.num_dominators + 1}; // the best ranking and its proven bound
+        publish(listener, best[0], best[1]);
+        long remaining = deadline - System.currentTimeMillis();
+        if (isProven(best[0]) || remaining <= 0) {
+            return best[0];
+        }
+
+        Formulation f = formulate_best();
+        engine = build(f);
+        engine.setCountObjective(0);
+        engine.setStart(witness);
+        engine.setListener(new BranchAndBound.Listener() {
+            public void improved(double[] values, double objective, double bound) {
+                int ranking = getRanking(q, objective);
+                if (ranking < best[0]) {
+                    best[0] = ranking;
+                    witness = values;
+                }
+                best[1] = Math.min(best[0], Math.max(best[1], getRankingBound(q, bound)));
+                publish(listener, best[0], best[1]);
+            }
+        });
+        int status = engine.solve(remaining);
+
+        if (status == BranchAndBound.OPTIMAL) {
+            Output.println("OPTIMAL");
+            best[1] = best[0];
+        } else if (status == BranchAndBound.TIME_LIMIT) {
+            Output.println("TIMEOUT");
+            best[1] = Math.min(best[0], Math.max(best[1], getRankingBound(q, engine.getBound())));
+        }
+        publish(listener, best[0], best[1]);
+
+        return best[0];
+    }
+
+    /**
+     * Solve the why-not-yet best problem using the brute force way with sampling
+     * It explores the same arrangement tree as the gurobi optimizer, solving each node with the pure-Java simplex method
+     * @return The BEST result
+    */
+    public int solve_best_brute_force_sampling() {
+        int num_used_attributes = num_attributes;
+
+        Question q = questions.get(0);
+
+        Queue<Treenode> queue = new LinkedList<Treenode>();
+        queue.add(new Treenode(0, new ArrayList<ArrayList<Double>>(), new ArrayList<ArrayList<Double>>()));
+
+        int count = 0;
+        int ranking = q.num_competitors + 1;
+        long start = System.currentTimeMillis();
+        while (true) {
+            count++;
+            if (count % 10000 == 0) {
+                Output.println(count);
+            }
+            metrics.counter("best.nodes").increment();
+            // An interrupted search gives no definitive result
+            if (interrupted) {
+                return -1;
+            }
+
+            Treenode t = queue.poll();
+            if (t == null) {
+                long end = System.currentTimeMillis();
+                Output.println(end - start);
+                Output.println(count);
+                return ranking;
+            }
+
+            BestNodeEvent event = new BestNodeEvent();
+            event.begin();
+            Simplex lp = new Simplex();
+            int[] indices = new int[num_used_attributes];
+            double[] ones = new double[num_used_attributes];
+            for (int i = 0; i < num_used_attributes; i++) {
+                indices[i] = lp.addVariable(0.0, 1.0);
+                ones[i] = 1.0;
+            }
+            lp.addRow(indices, ones, "=", 1.0);
+
+            ArrayList<ArrayList<Double>> win_inequalities = t.getInequalities(true);
+            ArrayList<ArrayList<Double>> lose_inequalities = t.getInequalities(false);
+
+            for (int i = 0; i < win_inequalities.size(); i++) {
+                lp.addRow(indices, toArray(win_inequalities.get(i), num_used_attributes), ">=", 0.0);
+            }
+            for (int i = 0; i < lose_inequalities.size(); i++) {
+                lp.addRow(indices, toArray(lose_inequalities.get(i), num_used_attributes), "<=", 0.0);
+            }
+
+            int status = lp.solve();
+            metrics.counter("lp.calls").increment();
+            commit(event, q, t.which(), status, ranking);
+            if (status == Simplex.OPTIMAL) {
+                double[] weights = lp.getValues();
+                int lose = 0;
+                for (int j = 0; j < q.num_inequalities; j++) {
+                    double value = 0;
+                    for (int p = 0; p < num_used_attributes; p++) {
+                        value += weights[p] * q.inequalities.get(j).get(p);
+                    }
+                    if (value < 0) {
+                        lose++;
+                        if (lose >= ranking - 1) {
+                            break;
+                        }
+                    }
+                }
+                if (lose < ranking - 1) {
+                    ranking = lose + 1;
+                    if (ranking == 1) {
+                        return ranking;
+                    }
+                }
+                int i = t.which();
+                if (i < q.num_inequalities) {
+                    Treenode node_right = new Treenode(t);
+                    node_right.next();
+                    node_right.addInequality(q.inequalities.get(i), true);
+                    queue.add(node_right);
+
+                    Treenode node_left = new Treenode(t);
+                    node_left.next();
+                    node_left.addInequality(q.inequalities.get(i), false);
+                    queue.add(node_left);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param inequality An inequality
+     * @param num_used_attributes The number of used attributes
+     * @return The coefficients of the inequality on the used attributes
+    */
+    private double[] toArray(ArrayList<Double> inequality, int num_used_attributes) {
+        double[] coefficients = new double[num_used_attributes];
+        for (int j = 0; j < num_used_attributes; j++) {
+            coefficients[j] = inequality.get(j);
+        }
+        return coefficients;
+    }
+
+    /**
+     * Utilize binary search to optimize
+     * Every probe fixes the perimeter and starts from the basis of the previous probe
+     * @param num_attributes The number of used attributes
+     * @param perimeter_high The upper bound of the perimeter
+     * @param start A known feasible box whose perimeter is the lower bound, or an invalid box
+     * @return The BOX result
+    */
+    private Box binary_search(int num_attributes, double perimeter_high, Box start) {
+        Double perimeter_low = start.valid() ? start.getPerimeter() : 0.0;
+        Double perimeter = perimeter_high - 0.00000001;
+
+        double proven = perimeter_high; // lowered only when a perimeter is proven infeasible, not on a timeout
+        int status;
+        Box b = start;
+        int iterations = 0;
+
+        while(true) {
+            if (perimeter_high - perimeter_low < tolerance || perimeter_high < 0.00001 || interrupted) {
+                break;
+            }
+
+            Output.print(String.format("%.5f", perimeter));
+            Output.print(" ");
+
+            engine.setPerimeter("=", perimeter);
+            long probe_start = System.nanoTime();
+            SolverProbeEvent event = new SolverProbeEvent();
+            event.begin();
+            status = engine.solve(60000);
+            commit(event, perimeter, status);
+            metrics.recordTime("probe.time_us", probe_start);
+            iterations++;
+
+            if (status == BranchAndBound.OPTIMAL) {
+                Output.println("OPTIMAL");
+                b = getBox(perimeter, engine.getSolution());
+                perimeter_low = perimeter;
+            } else if (status == BranchAndBound.INFEASIBLE) {
+                Output.println("INFEASIBLE");
+                perimeter_high = perimeter;
+                proven = perimeter;
+            } else {
+                Output.println("TIMEOUT");
+                perimeter_high = perimeter;
+            }
+            perimeter = (perimeter_high - perimeter_low) / 2 + perimeter_low;
+        }
+        metrics.histogram("search.iterations").record(iterations);
+        return b.withBound(proven);
+    }
+
+    /**
+     * Utilize k-ary search to optimize, which probes parallelism perimeters at once on independent engines
+     * Each round splits the interval into (parallelism + 1) parts, and a box with some perimeter can be shrunk to any smaller perimeter,
+     * so a feasible probe cancels the probes below it and an infeasible probe cancels the probes above it
+     * @param f The solver-neutral model
+     * @param perimeter_high The upper bound of the perimeter
+     * @param start A known feasible box whose perimeter is the lower bound, or an invalid box
+     * @return The BOX result
+    */
+    private Box k_ary_search(final Formulation f, double perimeter_high, Box start) {
+        final int p = parallelism;
+        double perimeter_low = start.valid() ? start.getPerimeter() : 0.0;
+        double proven = perimeter_high; // lowered only when a perimeter is proven infeasible, not on a timeout
+        Box b = start;
+        int iterations = 0;
+
+        ExecutorService pool = Executors.newFixedThreadPool(p);
+        try {
+            // The engine of the model is reused for the first probe, and the others are built in parallel
+            final BranchAndBound[] engines = new BranchAndBound[p];
+            engines[0] = engine;
+            ArrayList<Future<BranchAndBound>> built = new ArrayList<Future<BranchAndBound>>();
+            for (int j = 1; j < p; j++) {
+                built.add(pool.submit(new Callable<BranchAndBound>() {
+                    public BranchAndBound call() {
+                        return new BranchAndBound(f);
+                    }
+                }));
+            }
+            for (int j = 1; j < p; j++) {
+                engines[j] = built.get(j - 1).get();
+            }
+            probes = engines;
+
+            final int[] statuses = new int[p];
+            while(true) {
+                if (perimeter_high - perimeter_low < tolerance || perimeter_high < 0.00001 || interrupted) {
+                    break;
+                }
+
+                double[] perimeters = new double[p];
+                CompletionService<Integer> completed = new ExecutorCompletionService<Integer>(pool);
+                for (int j = 0; j < p; j++) {
+                    final int probe = j;
+                    perimeters[j] = perimeter_low + (perimeter_high - perimeter_low) * (j + 1) / (p + 1);
+                    engines[j].resume();
+                    if (interrupted) {
+                        engines[j].interrupt();
+                    }
+                    engines[j].setPerimeter("=", perimeters[j]);
+                    final double perimeter = perimeters[j];
+                    completed.submit(new Callable<Integer>() {
+                        public Integer call() {
+                            long probe_start = System.nanoTime();
+                            SolverProbeEvent event = new SolverProbeEvent();
+                            event.begin();
+                            statuses[probe] = engines[probe].solve(60000);
+                            commit(event, perimeter, statuses[probe]);
+                            metrics.recordTime("probe.time_us", probe_start);
+                            return probe;
+                        }
+                    });
+                }
+
+                // The highest feasible probe and the lowest probe above it which is infeasible or not solved in time
+                int feasible = -1;
+                int infeasible = p;
+                for (int n = 0; n < p; n++) {
+                    int j = completed.take().get();
+                    Output.print(String.format("%.5f", perimeters[j]));
+                    Output.print(" ");
+
+                    if (statuses[j] == BranchAndBound.OPTIMAL) {
+                        Output.println("OPTIMAL");
+                        if (j > feasible) {
+                            feasible = j;
+                            b = getBox(perimeters[j], engines[j].getSolution());
+                            for (int i = 0; i < j; i++) {
+                                engines[i].interrupt();
+                            }
+                        }
+                    } else if (statuses[j] == BranchAndBound.INFEASIBLE) {
+                        Output.println("INFEASIBLE");
+                        proven = Math.min(proven, perimeters[j]);
+                        for (int i = j + 1; i < p; i++) {
+                            engines[i].interrupt();
+                        }
+                    } else if (statuses[j] == BranchAndBound.TIME_LIMIT) {
+                        Output.println("TIMEOUT");
+                    } else {
+                        Output.println("CANCELLED");
+                    }
+                }
+                for (int j = p - 1; j > feasible; j--) {
+                    if (statuses[j] == BranchAndBound.INFEASIBLE || statuses[j] == BranchAndBound.TIME_LIMIT) {
+                        infeasible = j;
+                    }
+                }
+
+                if (feasible >= 0) {
+                    perimeter_low = perimeters[feasible];
+                }
+                if (infeasible < p) {
+                    perimeter_high = perimeters[infeasible];
+                }
+                iterations++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            probes = null;
+            pool.shutdownNow();
+        }
+        metrics.histogram("search.iterations").record(iterations);
+        return b.withBound(proven);
+    }
+
+    /**
+     * Solve the SAT problem on the cells of the weight space in parallel
+     * Each cell is presolved on its own, where many indicator rows always or never hold, and the first satisfiable cell stops all others
+     * @param f The solver-neutral model
+     * @return The SAT result
+    */
+    private boolean solve_satisfiability_cells(Formulation f) {
+        ArrayList<Formulation> cells = f.decompose(decomposition);
+        final ArrayList<BranchAndBound> running = new ArrayList<BranchAndBound>();
+        final double[][] found = new double[1][];
+        final boolean[] unknown = new boolean[1];
+
+        ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final Formulation cell : cells) {
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    BranchAndBound e = new BranchAndBound(cell);
+                    synchronized (running) {
+                        if (interrupted) {
+                            unknown[0] = true;
+                            return null;
+                        } else if (found[0] != null) {
+                            return null;
+                        }
+                        running.add(e);
+                    }
+                    int status = e.solve(0);
+                    synchronized (running) {
+                        running.remove(e);
+                        if (status == BranchAndBound.OPTIMAL && found[0] == null) {
+                            found[0] = e.getSolution();
+                            for (BranchAndBound other : running) {
+                                other.interrupt();
+                            }
+                        } else if (status != BranchAndBound.INFEASIBLE) {
+                            unknown[0] = true;
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        runCells(tasks, running);
+
+        if (found[0] != null) {
+            Output.println("OPTIMAL");
+            witness = found[0];
+            for (int i = 0; i < found[0].length; i++) {
+               Output.print(String.format("%.5f", found[0][i]) + " ");
+            }
+            Output.println();
+            return true;
+        } else if (!unknown[0]) {
+            Output.println("INFEASIBLE");
+        }
+        return false;
+    }
+
+    /**
+     * Solve the BOX problem on the perimeter on the cells of the weight space in parallel
+     * Each cell is presolved on its own and skipped if the bound of its LP relaxation cannot beat the best box of the other cells,
+     * which is also the cutoff of its branch and bound search
+     * @param f The solver-neutral model
+     * @return The BOX result
+    */
+    private Box optimize_box_cells(Formulation f) {
+        ArrayList<Formulation> cells = f.decompose(decomposition);
+        final ArrayList<BranchAndBound> running = new ArrayList<BranchAndBound>();
+        final double[] best = new double[] {Double.NEGATIVE_INFINITY};
+        final double[][] solution = new double[1][];
+        final boolean[] unknown = new boolean[1];
+
+        ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final Formulation cell : cells) {
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    // Use 1 constraint on the perimeter to avoid the output of an empty box
+                    BranchAndBound e = new BranchAndBound(cell);
+                    e.setPerimeter(">=", Math.pow(10, -5));
+                    e.setObjective(cell.perimeter);
+                    synchronized (running) {
+                        if (interrupted) {
+                            unknown[0] = true;
+                            return null;
+                        }
+                        running.add(e);
+                    }
+                    double[] relaxed = e.relax(0);
+                    int status = BranchAndBound.INFEASIBLE;
+                    if (relaxed != null && cell.perimeter.evaluate(relaxed) > getBest()) {
+                        e.setCutoff(getBest());
+                        status = e.solve(0);
+                    }
+                    synchronized (running) {
+                        running.remove(e);
+                        if (status == BranchAndBound.OPTIMAL && e.getObjective() > best[0]) {
+                            best[0] = e.getObjective();
+                            solution[0] = e.getSolution();
+                        } else if (status != BranchAndBound.OPTIMAL && status != BranchAndBound.INFEASIBLE) {
+                            unknown[0] = true;
+                        }
+                    }
+                    return null;
+                }
+
+                private double getBest() {
+                    synchronized (running) {
+                        return best[0];
+                    }
+                }
+            });
+        }
+        runCells(tasks, running);
+
+        Box b = new Box(-1.0);
+        if (solution[0] != null) {
+            Output.println("OPTIMAL");
+            b = getBox(best[0], solution[0]);
+            if (!unknown[0]) {
+                b.setBound(best[0]);
+            }
+        } else if (!unknown[0]) {
+            Output.println("INFEASIBLE");
+        }
+        return b;
+    }
+
+    /**
+     * Run the tasks of the cells on a worker pool with a thread for each processor
+     * @param tasks The tasks of the cells
+     * @param running The engines of the running tasks, which are interrupted if the solver is interrupted
+    */
+    private void runCells(ArrayList<Callable<Void>> tasks, ArrayList<BranchAndBound> running) {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(tasks.size(), getWorkers()));
+        cells = running;
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            cells = null;
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * The engine only handles linear objectives, so the volume is not optimized, 
+     * rather than reporting the box with the optimal perimeter as the box with the optimal volume
+     * @param measure The optimization measure
+    */
+    private void checkMeasure(int measure) {
+        if (measure == 0) {
+            throw new UnsupportedOperationException("The java optimizer only maximizes the perimeter, and the volume needs gurobi");
+        }
+    }
+
+    /**
+     * Solve the why-not-yet box problem with the TRIANGLE weight constraint
+     * @param topk The top-k limits for expected tuples
+     * @return The BOX result
+    */
+    public Box optimize_box_triangle(int[] topk, boolean precise, int measure) {
+        return optimize_box("triangle", topk, precise, measure);
+    }
+
+    /**
+     * Solve the why-not-yet box problem with the PYRAMID weight constraint
+     * @param topk The top-k limits for expected tuples
+     * @return The BOX result
+    */
+    public Box optimize_box_pyramid(int[] topk, boolean precise, int measure) {
+        return optimize_box("pyramid", topk, precise, measure);
+    }
+
+    /**
+     * Solve the why-not-yet box problem with the CUBE weight constraint
+     * @param topk The top-k limits for expected tuples
+     * @return The BOX result
+    */
+    public Box optimize_box_cube(int[] topk, boolean precise, int measure) {
+        return optimize_box("cube", topk, precise, measure);
+    }
+
+    /**
+     * The direct encoding with quantifiers describes the same box as the CUBE encoding,
+     * so the CUBE problem is solved instead
+     * @param topk The top-k limits for expected tuples
+     * @return The BOX result
+    */
+    public Box optimize_box_cube_forall(int[] topk, boolean precise) {
+        return optimize_box("cube", topk, precise, 1);
+    }
+
+    /**
+     * Solve the why-not-yet box problem with the given weight constraint
+     * @param shape The weight constraint. The options are triangle, pyramid and cube
+     * @param topk The top-k limits for expected tuples
+     * @param measure The optimization measure, which needs to be the perimeter
+     * @return The BOX result
+    */
+    private Box optimize_box(String shape, int[] topk, boolean precise, int measure) {
+        checkMeasure(measure);
+        Box b = new Box(-1.0);
+
+        Formulation f = formulate(shape, topk);
+        if (f == null) {
+            return b;
+        }
+        if (precise && decomposition > 0) {
+            return optimize_box_cells(f);
+        }
+
+        engine = build(f);
+        int num_used_attributes = f.num_used_attributes;
+
+        if (precise) {
+            // Use 1 constraint on the perimeter to avoid the output of an empty box
+            engine.setPerimeter(">=", Math.pow(10, -5));
+            engine.setObjective(f.perimeter);
+            int status = engine.solve(0);
+
+            if (status == BranchAndBound.OPTIMAL) {
+                Output.println("OPTIMAL");
+                b = getBox(engine.getObjective(), engine.getSolution());
+                b.setBound(engine.getObjective());
+            } else if (status == BranchAndBound.INFEASIBLE) {
+                Output.println("INFEASIBLE");
+            }
+        } else {
+            // The perimeter is at most 1 with the TRIANGLE or PYRAMID constraint and num_attributes with the CUBE constraint
+            double perimeter_high = shape.equals("cube") ? 1.0 * num_used_attributes : 1.0;
+
+            // Cover only the interval between a heuristic box and the bound of the LP relaxation
+            double[] relaxed = relax(f);
+            perimeter_high = getPerimeterBound(f, relaxed, perimeter_high);
+            if (parallelism > 1) {
+                b = k_ary_search(f, perimeter_high, getHeuristicBox(f, relaxed));
+            } else {
+                b = binary_search(num_used_attributes, perimeter_high, getHeuristicBox(f, relaxed));
+            }
+        }
+
+        return b;
+    }
+
+    /**
+     * Solve the why-not-yet box problem on the perimeter before a wall-clock deadline, and publish every improving box as soon as it is found
+     * The heuristic box is the first incumbent of the branch and bound search, every new incumbent is published with the best bound of the open nodes,
+     * and the incumbent is returned at the deadline instead of being treated as infeasible
+     * @param shape The weight constraint. The options are triangle, pyramid and cube
+     * @param topk The top-k limits for expected tuples
+     * @param deadline The wall-clock deadline in milliseconds, as System.currentTimeMillis()
+     * @param listener The listener of the improving boxes, null for none
+     * @return The best box found, which carries the proven upper bound of the perimeter
+    */
+    public Box optimize_box_anytime(String shape, int[] topk, long deadline, final BoxListener listener) {
+        Formulation f = formulate(shape, topk);
+        if (f == null) {
+            return new Box(-1.0);
+        }
+
+        final Box[] best = new Box[] {getStartBox(f, deadline, listener)};
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            return best[0];
+        }
+
+        // Use 1 constraint on the perimeter to avoid the output of an empty box
+        engine = build(f);
+        engine.setPerimeter(">=", Math.pow(10, -5));
+        engine.setObjective(f.perimeter);
+        if (best[0].valid()) {
+            engine.setStart(best[0].getBounds());
+        }
+        engine.setListener(new BranchAndBound.Listener() {
+            public void improved(double[] values, double objective, double bound) {
+                Box b = getBox(objective, values);
+                b.setBound(bound);
+                best[0] = publish(listener, best[0], b);
+            }
+        });
+        int status = engine.solve(remaining);
+
+        if (status == BranchAndBound.OPTIMAL) {
+            Output.println("OPTIMAL");
+            best[0] = best[0].withBound(Math.max(best[0].getPerimeter(), engine.getObjective()));
+        } else if (status == BranchAndBound.INFEASIBLE) {
+            Output.println("INFEASIBLE");
+            best[0] = best[0].withBound(0.0);
+        } else {
+            Output.println("TIMEOUT");
+            best[0] = best[0].withBound(Math.min(best[0].getBound(), engine.getBound()));
+        }
+
+        return best[0];
+    }
+
+    /**
+     * Solve the SAT problem for the next k of the binary search over k with the engine kept from the previous k
+     * Only the right-hand sides of the cardinality rows change, so the simplex method starts from the basis of the previous k
+     * @param topk The top-k limits for expected tuples
+     * @return The SAT result
+    */
+    protected boolean sweep_satisfiability(int[] topk) {
+        Formulation f = formulate("satisfiability", topk);
+        if (f == null) {
+            return false;
+        }
+        if (decomposition > 0) {
+            return solve_satisfiability_cells(f);
+        }
+
+        if (sweep_engine == null) {
+            sweep_engine = build(f);
+        } else {
+            for (int c = 0; c < f.cardinalities.size(); c++) {
+                sweep_engine.setCardinality(c, f.cardinalities.get(c).rhs);
+            }
+            engine = sweep_engine;
+        }
+        int status = sweep_engine.solve(0);
+
+        if (status == BranchAndBound.OPTIMAL) {
+            Output.println("OPTIMAL");
+            witness = sweep_engine.getSolution();
+            return true;
+        } else if (status == BranchAndBound.INFEASIBLE) {
+            Output.println("INFEASIBLE");
+        }
+        return false;
+    }
+
+    /**
+     * Release the engine kept during the SAT problems of a sweep
+    */
+    protected void sweep_close() {
+        sweep_engine = null;
+    }
+
+    /**
+     * Solve the BOX problem for the next k of a sweep with the engine kept from the previous k
+     * Only the right-hand sides of the cardinality rows change, so the simplex method starts from the basis of the previous k,
+     * and the previous box is still feasible for a larger k, so it is the first incumbent or the lower bound of the binary search
+     * @param shape The weight constraint. The options are triangle, pyramid and cube
+     * @param topk The top-k limits for expected tuples
+     * @param first Whether this is the first BOX problem of the sweep
+     * @return The BOX result
+    */
+    protected Box sweep_box(String shape, int[] topk, boolean precise, int measure, boolean first) {
+        checkMeasure(measure);
+        Formulation f = formulate(shape, topk);
+        int num_used_attributes = f.num_used_attributes;
+
+        if (first) {
+            engine = build(f);
+            sweep_result = new Box(-1.0);
+        } else {
+            for (int c = 0; c < f.cardinalities.size(); c++) {
+                engine.setCardinality(c, f.cardinalities.get(c).rhs);
+            }
+        }
+
+        if (precise) {
+            // Use 1 constraint on the perimeter to avoid the output of an empty box
+            engine.setPerimeter(">=", Math.pow(10, -5));
+            engine.setObjective(f.perimeter);
+            int status = engine.solve(0);
+
+            if (status == BranchAndBound.OPTIMAL) {
+                Output.println("OPTIMAL");
+                double[] values = engine.getSolution();
+                engine.setStart(values);
+                sweep_result = getBox(engine.getObjective(), values);
+                sweep_result.setBound(engine.getObjective());
+            } else if (status == BranchAndBound.INFEASIBLE) {
+                Output.println("INFEASIBLE");
+            }
+        } else {
+            // The perimeter is at most 1 with the TRIANGLE or PYRAMID constraint and num_attributes with the CUBE constraint
+            double perimeter_high = shape.equals("cube") ? 1.0 * num_used_attributes : 1.0;
+
+            // Cover only the interval between the better of the previous box and a heuristic box, and the bound of the LP relaxation
+            double[] relaxed = relax(f);
+            perimeter_high = getPerimeterBound(f, relaxed, perimeter_high);
+            Box heuristic = getHeuristicBox(f, relaxed);
+            if (heuristic.getPerimeter() > sweep_result.getPerimeter()) {
+                sweep_result = heuristic;
+            }
+            sweep_result = binary_search(num_used_attributes, perimeter_high, sweep_result);
+        }
+
+        return sweep_result;
+    }
+}
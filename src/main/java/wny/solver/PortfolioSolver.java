@@ -0,0 +1,436 @@
+package wny.solver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import gurobi.GRBException;
+import wny.entities.Box;
+import wny.entities.Constraint;
+import wny.entities.Tuple;
+import wny.metrics.Output;
+
+/**
+ * A solver which races several strategies on the same preprocessed question and returns the first definitive answer
+ * A strategy is a solver (gurobi, gurobi big-M, z3 solver, java or external) with a clustering level, 0 for the exact question
+ * The clustered question is stricter than the exact one, so only its satisfiable answers are definitive,
+ * and its boxes are only returned if no exact strategy finishes with a box
+ * As soon as one strategy gives a definitive answer, it is returned and all other strategies are interrupted,
+ * and the next race waits until the interrupted strategies have stopped before it reuses them
+ * @author Zixuan Chen
+*/
+public class PortfolioSolver extends Solver {
+    private ArrayList<Solver> strategies;
+    private ArrayList<String> names;
+    private ArrayList<Double> clusterings; // the clustering level of each strategy, 0 for the exact question
+    private ArrayList<Future<Integer>> losers = new ArrayList<Future<Integer>>(); // the runs of the interrupted strategies of the last race
+
+    /**
+     * @param tuples All tuples of a relation
+     * @param expected_tuples The expected tuples in the why-not-yet question
+    */
+    public PortfolioSolver(ArrayList<Tuple> tuples, ArrayList<Tuple> expected_tuples) throws Exception {
+        this(tuples, PreparedQuestion.prepare(tuples, expected_tuples));
+    }
+
+    /**
+     * @param tuples All tuples of a relation
+     * @param prepared The prepared question of each expected tuple, which is shared
+    */
+    public PortfolioSolver(ArrayList<Tuple> tuples, List<PreparedQuestion> prepared) {
+        super(tuples, prepared);
+        strategies = new ArrayList<Solver>();
+        names = new ArrayList<String>();
+        clusterings = new ArrayList<Double>();
+    }
+
+    /**
+     * Add a strategy which shares the preprocessed question of the portfolio
+     * @param solver The solver of the strategy. The options are gurobi, gurobi big-M, z3 solver, java and external
+     * @param clustered 0 for the exact question, x in (0,1) for (num_inequalities * x) clusters
+    */
+    public void addStrategy(String solver, double clustered) throws Exception {
+        Solver s;
+        if (solver.equals("gurobi")) {
+            s = new GurobiOptimizer(this, false);
+        } else if (solver.equals("gurobi big-M")) {
+            s = new GurobiOptimizer(this, true);
+        } else if (solver.equals("z3 solver")) {
+            s = new Z3Solver(this);
+        } else if (solver.equals("java")) {
+            s = new JavaOptimizer(this);
+        } else if (solver.equals("external")) {
+            // The solver executable is configured with -Dwny.command and -Dwny.format as in the query
+            String command = System.getProperty("wny.command", "scip -c \"read {model} optimize write solution {solution} quit\"");
+            s = new ExternalSolver(this, command, System.getProperty("wny.format", "lp"));
+        } else {
+            throw new IllegalArgumentException("Unknown solver: " + solver);
+        }
+        if (clustered > 0) {
+            s.cluster(clustered);
+        }
+        strategies.add(s);
+        names.add(clustered > 0 ? solver + " (clustered " + clustered + ")" : solver);
+        clusterings.add(clustered);
+    }
+
+    /**
+     * A problem which is solved by every strategy
+    */
+    private interface Problem<T> {
+        /**
+         * @param s The solver of a strategy
+         * @return The result of the strategy
+        */
+        T solve(Solver s) throws Exception;
+
+        /**
+         * @param result The result of a strategy
+         * @param exact Whether the strategy solves the exact question
+         * @return Whether the result is the answer of the portfolio
+        */
+        boolean isDefinitive(T result, boolean exact);
+    }
+
+    /**
+     * Wait until the interrupted strategies of the last race have stopped, so that all later solves run again
+     * The strategies are interrupted again if the portfolio itself is interrupted meanwhile
+    */
+    private void settle() {
+        for (Future<Integer> f : losers) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                // The interrupted strategies give no results, so their failures are ignored
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        losers.clear();
+        for (Solver s : strategies) {
+            s.interrupted = interrupted;
+        }
+    }
+
+    /**
+     * Run the problem on all strategies concurrently until one of them gives a definitive answer, and interrupt the others
+     * The answer is returned at once, while the interrupted strategies stop in the background until the next race
+     * The failing strategies, e.g., a solver without its library or license, are reported and ignored
+     * @param problem The problem
+     * @return The results of all strategies, where only the definitive one is kept if there is one,
+     * and the results of the failing or interrupted strategies are null
+    */
+    private <T> ArrayList<T> race(final Problem<T> problem) {
+        settle();
+        ArrayList<T> results = new ArrayList<T>();
+        for (int i = 0; i < strategies.size(); i++) {
+            results.add(null);
+        }
+        if (strategies.isEmpty()) {
+            return results;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(strategies.size(), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                // The interrupted strategies which are still stopping do not keep the JVM alive
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        ArrayList<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        try {
+            CompletionService<Integer> runs = new ExecutorCompletionService<Integer>(pool);
+            final ArrayList<T> outputs = new ArrayList<T>(results);
+            for (int i = 0; i < strategies.size(); i++) {
+                final int strategy = i;
+                futures.add(runs.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        T result = problem.solve(strategies.get(strategy));
+                        synchronized (outputs) {
+                            outputs.set(strategy, result);
+                        }
+                        return strategy;
+                    }
+                }));
+            }
+
+            for (int n = 0; n < strategies.size(); n++) {
+                Future<Integer> done = runs.take();
+                int i = futures.indexOf(done);
+                try {
+                    done.get();
+                } catch (ExecutionException e) {
+                    Output.println("The strategy " + names.get(i) + " failed: " + e.getCause());
+                    continue;
+                }
+                // An interrupted strategy gives no definitive result
+                if (strategies.get(i).interrupted) {
+                    continue;
+                }
+                T result;
+                synchronized (outputs) {
+                    result = outputs.get(i);
+                }
+                results.set(i, result);
+                if (problem.isDefinitive(result, clusterings.get(i) == 0)) {
+                    Output.println("The strategy " + names.get(i) + " gives the first definitive answer");
+                    for (int j = 0; j < strategies.size(); j++) {
+                        if (j != i) {
+                            strategies.get(j).interrupt();
+                            results.set(j, null);
+                            if (!futures.get(j).isDone()) {
+                                losers.add(futures.get(j));
+                            }
+                        }
+                    }
+                    witness = strategies.get(i).getWitness();
+                    return results;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (int j = 0; j < futures.size(); j++) {
+                strategies.get(j).interrupt();
+                losers.add(futures.get(j));
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        return results;
+    }
+
+    /**
+     * @param results The results of all strategies
+     * @return The definitive SAT result, or false if there is none
+    */
+    private boolean getSatisfiability(ArrayList<Boolean> results) {
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) != null && (results.get(i) || clusterings.get(i) == 0)) {
+                return results.get(i);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param results The results of all strategies
+     * @return The definitive BEST result, or -1 if there is none
+    */
+    private int getRanking(ArrayList<Integer> results) {
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) != null && results.get(i) > 0 && clusterings.get(i) == 0) {
+                return results.get(i);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param results The results of all strategies
+     * @return The definitive BOX result, or the best box of the clustered strategies if there is none
+    */
+    private Box getBox(ArrayList<Box> results) {
+        Box b = new Box(-1.0);
+        for (int i = 0; i < results.size(); i++) {
+            Box r = results.get(i);
+            if (r == null || !r.valid()) {
+                continue;
+            }
+            if (clusterings.get(i) == 0) {
+                return r;
+            } else if (!b.valid() || r.getPerimeter() > b.getPerimeter()) {
+                b = r;
+            }
+        }
+        return b;
+    }
+
+    /**
+     * The SAT problem of the portfolio, where an unsatisfiable answer of a clustered strategy is not definitive
+    */
+    private abstract class SatisfiabilityProblem implements Problem<Boolean> {
+        public boolean isDefinitive(Boolean result, boolean exact) {
+            return result || exact;
+        }
+    }
+
+    /**
+     * The BOX problem of the portfolio, where only the valid boxes of the exact strategies are definitive
+    */
+    private abstract class BoxProblem implements Problem<Box> {
+        public boolean isDefinitive(Box result, boolean exact) {
+            return exact && result.valid();
+        }
+    }
+
+    /**
+     * The BEST problem of the portfolio, where only the rankings of the exact strategies are definitive
+    */
+    private abstract class BestProblem implements Problem<Integer> {
+        public boolean isDefinitive(Integer result, boolean exact) {
+            return exact && result > 0;
+        }
+    }
+
+    public boolean solve_satisfiability(final int[] topk) throws GRBException {
+        return getSatisfiability(race(new SatisfiabilityProblem() {
+            public Boolean solve(Solver s) throws Exception {
+                return s.solve_satisfiability(topk);
+            }
+        }));
+    }
+
+    public boolean solve_satisfiability_brute_force(final int[] topk) throws GRBException {
+        return getSatisfiability(race(new SatisfiabilityProblem() {
+            public Boolean solve(Solver s) throws Exception {
+                return s.solve_satisfiability_brute_force(topk);
+            }
+        }));
+    }
+
+    public int solve_best_brute_force_sampling() throws GRBException {
+        return getRanking(race(new BestProblem() {
+            public Integer solve(Solver s) throws Exception {
+                return s.solve_best_brute_force_sampling();
+            }
+        }));
+    }
+
+    public int solve_best() throws GRBException {
+        witness = null;
+        return getRanking(race(new BestProblem() {
+            public Integer solve(Solver s) throws Exception {
+                return s.solve_best();
+            }
+        }));
+    }
+
+    public Box optimize_box_triangle(final int[] topk, final boolean precise, final int measure) throws GRBException {
+        return getBox(race(new BoxProblem() {
+            public Box solve(Solver s) throws Exception {
+                return s.optimize_box_triangle(topk, precise, measure);
+            }
+        }));
+    }
+
+    public Box optimize_box_pyramid(final int[] topk, final boolean precise, final int measure) throws GRBException {
+        return getBox(race(new BoxProblem() {
+            public Box solve(Solver s) throws Exception {
+                return s.optimize_box_pyramid(topk, precise, measure);
+            }
+        }));
+    }
+
+    public Box optimize_box_cube(final int[] topk, final boolean precise, final int measure) throws GRBException {
+        return getBox(race(new BoxProblem() {
+            public Box solve(Solver s) throws Exception {
+                return s.optimize_box_cube(topk, precise, measure);
+            }
+        }));
+    }
+
+    public Box optimize_box_cube_forall(final int[] topk, final boolean precise) throws GRBException {
+        return getBox(race(new BoxProblem() {
+            public Box solve(Solver s) throws Exception {
+                return s.optimize_box_cube_forall(topk, precise);
+            }
+        }));
+    }
+
+    /**
+     * Add one flexible constraint to the portfolio and all its strategies
+     * @param c The constraint to be added
+    */
+    public void addConstraint(Constraint c) {
+        settle();
+        super.addConstraint(c);
+        for (Solver s : strategies) {
+            s.addConstraint(c);
+        }
+    }
+
+    /**
+     * @param tolerance The gap between the bounds of the perimeter at which the binary search of every strategy stops
+    */
+    public void setTolerance(double tolerance) {
+        super.setTolerance(tolerance);
+        for (Solver s : strategies) {
+            s.setTolerance(tolerance);
+        }
+    }
+
+    /**
+     * @param parallelism The number of perimeters probed at once by every strategy
+    */
+    public void setParallelism(int parallelism) {
+        super.setParallelism(parallelism);
+        for (Solver s : strategies) {
+            s.setParallelism(parallelism);
+        }
+    }
+
+    /** 
+     * @param threads The number of threads of every strategy, 0 for the default of each backend
+    */
+    public void setThreads(int threads) {
+        super.setThreads(threads);
+        for (Solver s : strategies) {
+            s.setThreads(threads);
+        }
+    }
+
+    /** 
+     * @param deadline The wall-clock deadline of the query for every strategy, 0 for none
+    */
+    public void setDeadline(long deadline) {
+        super.setDeadline(deadline);
+        for (Solver s : strategies) {
+            s.setDeadline(deadline);
+        }
+    }
+
+    /** 
+     * @param segments The number of segments of the piecewise-linear log of each side for the volume of every strategy, 0 for the exact volume
+     * @param refinement Whether the piecewise-linear log is refined around the optimal sides and solved again
+    */
+    public void setVolumeSegments(int segments, boolean refinement) {
+        super.setVolumeSegments(segments, refinement);
+        for (Solver s : strategies) {
+            s.setVolumeSegments(segments, refinement);
+        }
+    }
+
+    /**
+     * Cluster the question of the exact strategies, which become clustered strategies, while the clustered strategies keep their own levels
+    */
+    public void cluster(double cluster_parameter) throws Exception {
+        settle();
+        super.cluster(cluster_parameter);
+        for (int i = 0; i < strategies.size(); i++) {
+            if (clusterings.get(i) == 0) {
+                strategies.get(i).cluster(cluster_parameter);
+                clusterings.set(i, cluster_parameter);
+            }
+        }
+    }
+
+    /**
+     * Stop all strategies
+    */
+    public void interrupt() {
+        super.interrupt();
+        for (Solver s : strategies) {
+            s.interrupt();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,133 @@
+package wny.solver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import wny.entities.Tuple;
+import wny.events.PreprocessEvent;
+
+/**
+ * The preprocessed question of one expected tuple: the dominance counts and the inequality of each competitor
+ * It is immutable after construction, so any number of solvers on any threads can share it without copying or locking,
+ * while each solver keeps its own per-call state, e.g., the top-k limit, the clustered inequalities and the models
+ * @author Zixuan Chen
+*/
+public final class PreparedQuestion {
+    private final Tuple expected_tuple;
+    private final ArrayList<ArrayList<Double>> inequalities; // never modified after construction
+    private final int num_dominators;
+    private final int num_dominatees;
+    private final int num_competitors;
+    private final int num_attributes;
+
+    /**
+     * Compare the expected tuple with every tuple to count the dominators and dominatees and to get the inequalities of the competitors
+     * @param tuples All tuples of a relation
+     * @param expected_tuple The expected tuple in the why-not-yet question
+    */
+    public PreparedQuestion(ArrayList<Tuple> tuples, Tuple expected_tuple) {
+        PreprocessEvent event = new PreprocessEvent();
+        event.begin();
+        this.expected_tuple = expected_tuple;
+        num_attributes = expected_tuple.values.length - 1;
+        double[] expected = new double[num_attributes];
+        for (int j = 0; j < num_attributes; j++) {
+            expected[j] = Double.valueOf(expected_tuple.values[j + 1]);
+        }
+
+        int dominators = 0;
+        int dominatees = 0;
+        inequalities = new ArrayList<ArrayList<Double>>();
+        for (Tuple t : tuples) {
+            int dominance = expected_tuple.isDominating(t);
+            if (dominance == 1) {
+                dominatees++;
+            } else if (dominance == -1) {
+                dominators++;
+            } else {
+                ArrayList<Double> l = new ArrayList<Double>(num_attributes);
+                for (int j = 0; j < num_attributes; j++) {
+                    l.add(expected[j] - Double.valueOf(t.values[j + 1]));
+                }
+                inequalities.add(l);
+            }
+        }
+        num_dominators = dominators;
+        num_dominatees = dominatees;
+        num_competitors = inequalities.size();
+        if (event.shouldCommit()) {
+            event.question = expected_tuple.values[0];
+            event.tuples = tuples.size();
+            event.attributes = num_attributes;
+            event.dominators = num_dominators;
+            event.dominatees = num_dominatees;
+            event.competitors = num_competitors;
+            event.commit();
+        }
+    }
+
+    /**
+     * Prepare the questions of several expected tuples
+     * @param tuples All tuples of a relation
+     * @param expected_tuples The expected tuples in the why-not-yet question
+     * @return The prepared question of each expected tuple
+    */
+    public static ArrayList<PreparedQuestion> prepare(ArrayList<Tuple> tuples, List<Tuple> expected_tuples) {
+        ArrayList<PreparedQuestion> prepared = new ArrayList<PreparedQuestion>();
+        for (Tuple t : expected_tuples) {
+            prepared.add(new PreparedQuestion(tuples, t));
+        }
+        return prepared;
+    }
+
+    /**
+     * @return The expected tuple
+    */
+    public Tuple getExpectedTuple() {
+        return expected_tuple;
+    }
+
+    /**
+     * @return The shared inequalities, which the solvers only read
+    */
+    ArrayList<ArrayList<Double>> getInequalities() {
+        return inequalities;
+    }
+
+    /**
+     * @param i The index of a competitor
+     * @param j The index of an attribute
+     * @return The difference between the expected tuple and the competitor on the attribute
+    */
+    public double getInequality(int i, int j) {
+        return inequalities.get(i).get(j);
+    }
+
+    /**
+     * @return The number of tuples which dominate the expected tuple
+    */
+    public int getNumDominators() {
+        return num_dominators;
+    }
+
+    /**
+     * @return The number of tuples which the expected tuple dominates
+    */
+    public int getNumDominatees() {
+        return num_dominatees;
+    }
+
+    /**
+     * @return The number of competitors, which neither dominate nor are dominated by the expected tuple
+    */
+    public int getNumCompetitors() {
+        return num_competitors;
+    }
+
+    /**
+     * @return The number of attributes
+    */
+    public int getNumAttributes() {
+        return num_attributes;
+    }
+}
\ No newline at end of file
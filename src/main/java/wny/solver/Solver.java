@@ -1,13 +1,39 @@
 package wny.solver;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import gurobi.GRBException;
 import weka.clusterers.*;
 import weka.core.*;
+import wny.engine.BranchAndBound;
 import wny.entities.Constraint;
+import wny.entities.Curve;
 import wny.entities.Tuple;
 import wny.entities.Box;
+import wny.events.BestNodeEvent;
+import wny.events.ClusterEvent;
+import wny.events.ModelBuildEvent;
+import wny.events.SolverProbeEvent;
+import wny.metrics.Metrics;
+import wny.metrics.Output;
+import wny.model.CardinalityRow;
+import wny.model.Formulation;
+import wny.model.IndicatorRow;
+import wny.model.LinearRow;
+import wny.model.ModelWriter;
+import wny.model.Variable;
+import wny.util.Sobol;
 
 /** 
  * A solver class which implements all pre-processing tasks
@@ -18,7 +44,7 @@ public class Solver {
 
     protected class Question {
         protected Tuple expected_tuple;
-        protected ArrayList<ArrayList<Double>> inequalities;
+        protected ArrayList<ArrayList<Double>> inequalities; // shared with the prepared question until clustering replaces it, so it is never modified
         protected int num_dominators;
         protected int num_dominatees;
         protected int num_competitors;
@@ -31,6 +57,25 @@ public class Solver {
     protected ArrayList<Question> questions;
     protected ArrayList<Constraint> constraints;
     protected boolean clustered;
+    protected HashMap<String, Formulation> formulations; // models built so far, indexed by the shape
+    protected double[] witness; // the weights of the last BEST or SAT result
+    protected double tolerance = 0.01; // the gap between the bounds of the perimeter at which the binary search stops
+    protected int parallelism = 1; // the number of perimeters probed at once by the k-ary search, 1 for the binary search
+    protected int decomposition = 0; // the number of halvings of the weight space into cells solved in parallel, 0 for one solve
+    protected int volume_segments = 0; // the number of segments of the piecewise-linear log of each side for the volume, 0 for the exact volume
+    protected boolean volume_refinement = false; // whether the piecewise-linear log is refined around the optimal sides and solved again
+    protected int threads = 0; // the number of threads of the backend and the parallel stages, 0 for the number of processors
+    protected volatile boolean interrupted; // true if the solves need to stop as soon as possible
+    protected long deadline = 0; // the wall-clock deadline of the query in milliseconds, 0 for none
+    private volatile BranchAndBound relaxing; // the engine of the running LP relaxation, null if none
+    protected Metrics metrics = new Metrics(); // the counters and histograms of this solve session
+    protected int k; // the top-k limit of the first expected tuple in the last model, for the JFR events
+    protected static final int CERTIFICATE_SAMPLES = 1024; // the number of quasi-random weights tried before a SAT problem reaches the solver
+    protected static final int BEST_SAMPLES = 4096; // the number of quasi-random weights scored before an anytime BEST problem reaches the solver
+    protected static final long SAMPLE_SEED = 20220613; // the seed of the random weights when there are too many attributes for the Sobol sequence
+    protected static final int GREEDY_PASSES = 4; // the number of passes over the axes of the greedy box, each of which grows an axis by a part of its room
+    protected static final int GREEDY_CHUNK = 4096; // the least number of indicator rows counted by each worker of the greedy box, below which one thread is faster
+    private static ExecutorService greedy_pool; // the workers of the greedy box, shared by all solvers and created on first use
 
     /** 
      * Construct an empty solver to which a real solver can be assigned
@@ -45,58 +90,166 @@ public class Solver {
      * @param expected_tuple The expected tuple in the why-not-yet question
     */
     public Solver (ArrayList<Tuple> tuples, ArrayList<Tuple> expected_tuples) throws Exception {
+        this(tuples, PreparedQuestion.prepare(tuples, expected_tuples));
+	}
+
+    /** 
+     * Construct a solve session on prepared questions, which are shared and not copied
+     * The session keeps its own per-call state, so any number of sessions can solve the same prepared questions concurrently
+     * @param tuples All tuples of a relation
+     * @param prepared The prepared question of each expected tuple
+    */
+    public Solver (ArrayList<Tuple> tuples, List<PreparedQuestion> prepared) {
 		this.tuples = tuples;
         constraints = new ArrayList<Constraint>();
         clustered = false;
+        formulations = new HashMap<String, Formulation>();
 
         questions = new ArrayList<Question>();
-        for (Tuple t : expected_tuples) {
+        for (PreparedQuestion p : prepared) {
             Question q = new Question();
-            q.expected_tuple = t;
+            q.expected_tuple = p.getExpectedTuple();
+            q.inequalities = p.getInequalities();
+            q.num_dominators = p.getNumDominators();
+            q.num_dominatees = p.getNumDominatees();
+            q.num_competitors = p.getNumCompetitors();
+            q.num_inequalities = p.getNumCompetitors();
             questions.add(q);
+            metrics.histogram("question.dominators").record(q.num_dominators);
+            metrics.histogram("question.dominatees").record(q.num_dominatees);
+            metrics.histogram("question.competitors").record(q.num_competitors);
         }
-
-        initialize();
+        num_attributes = tuples.get(0).values.length - 1;
+        print();
 	}
 
     /** 
-     * Initialize to get all inequalities from the data
-     * Each inequality compares the expected tuple with a competitor to check whether the competitor is a dominator or dominatee to remove
+     * Construct the solver on the preprocessed question of another solver, e.g., for a strategy of a portfolio
+     * Each question is copied, so clustering this solver does not change the other one
+     * @param prepared A solver whose preprocessed question is shared
     */
-    private void initialize() {
-        for (Question q : questions) {
-            q.inequalities = new ArrayList<ArrayList<Double>>();
-            for (int i = 0; i < tuples.size(); i++) {
-                Tuple t = tuples.get(i);
-                if (q.expected_tuple.isDominating(t) == 1) {
-                    q.num_dominatees++;
-                } else if (q.expected_tuple.isDominating(t) == -1) {
-                    q.num_dominators++;
-                } else {
-                    q.num_competitors++;
-                    ArrayList<Double> l = new ArrayList<Double>();
-                    for (int j = 1; j < t.values.length; j++) {
-                        l.add(Double.valueOf(q.expected_tuple.values[j]) - Double.valueOf(t.values[j]));
-                    }
-                    q.inequalities.add(l);
-                }
+    protected Solver (Solver prepared) {
+        this.tuples = prepared.tuples;
+        num_attributes = prepared.num_attributes;
+        constraints = new ArrayList<Constraint>(prepared.constraints);
+        clustered = prepared.clustered;
+        formulations = new HashMap<String, Formulation>();
+        tolerance = prepared.tolerance;
+        parallelism = prepared.parallelism;
+        decomposition = prepared.decomposition;
+        volume_segments = prepared.volume_segments;
+        volume_refinement = prepared.volume_refinement;
+        threads = prepared.threads;
+        deadline = prepared.deadline;
+        metrics = prepared.metrics;
+
+        questions = new ArrayList<Question>();
+        for (Question p : prepared.questions) {
+            Question q = new Question();
+            q.expected_tuple = p.expected_tuple;
+            q.inequalities = p.inequalities;
+            q.num_dominators = p.num_dominators;
+            q.num_dominatees = p.num_dominatees;
+            q.num_competitors = p.num_competitors;
+            q.num_inequalities = p.num_inequalities;
+            questions.add(q);
+        }
+    }
+
+    /** 
+     * @return The counters and histograms of this solve session
+    */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /** 
+     * Commit the JFR event of a model build if it is enabled
+     * @param event The event, which has begun before the build
+     * @param backend model for the solver-neutral model, or the class of the backend
+     * @param f The solver-neutral model
+    */
+    protected void commit(ModelBuildEvent event, String backend, Formulation f) {
+        if (event.shouldCommit()) {
+            event.backend = backend;
+            event.question = questions.get(0).expected_tuple.values[0];
+            event.shape = f.shape;
+            event.tuples = tuples.size();
+            event.attributes = num_attributes;
+            event.indicators = f.indicators.size();
+            event.commit();
+        }
+    }
+
+    /** 
+     * Commit the JFR event of a probe if it is enabled
+     * @param event The event, which has begun before the solve
+     * @param perimeter The fixed perimeter
+     * @param status The status of the solve, as the status codes of gurobi or the name of the status
+    */
+    protected void commit(SolverProbeEvent event, double perimeter, Object status) {
+        if (event.shouldCommit()) {
+            event.backend = getClass().getSimpleName();
+            event.question = questions.get(0).expected_tuple.values[0];
+            event.tuples = tuples.size();
+            event.attributes = num_attributes;
+            event.k = k;
+            int indicators = 0;
+            for (Question q : questions) {
+                indicators += q.num_inequalities;
             }
-            q.num_inequalities = q.num_competitors;
+            event.indicators = indicators;
+            event.perimeter = perimeter;
+            event.status = getStatusName(status);
+            event.commit();
+        }
+    }
+
+    /** 
+     * Commit the JFR event of a node of the BEST tree if it is enabled
+     * @param event The event, which has begun before the LP of the node
+     * @param q The question
+     * @param depth The number of inequalities decided at the node
+     * @param status The status code of the LP
+     * @param ranking The best ranking found so far
+    */
+    protected void commit(BestNodeEvent event, Question q, int depth, int status, int ranking) {
+        if (event.shouldCommit()) {
+            event.question = q.expected_tuple.values[0];
+            event.depth = depth;
+            event.status = getStatusName(status);
+            event.ranking = ranking;
+            event.commit();
+        }
+    }
+
+    /** 
+     * @param status The status code of gurobi, or the status of another backend
+     * @return The name of the status
+    */
+    protected static String getStatusName(Object status) {
+        if (!(status instanceof Integer)) {
+            return String.valueOf(status);
+        }
+        switch ((Integer) status) {
+            case 2: return "OPTIMAL";
+            case 3: return "INFEASIBLE";
+            case 9: return "TIME_LIMIT";
+            case 11: return "INTERRUPTED";
+            default: return String.valueOf(status);
         }
-        num_attributes = tuples.get(0).values.length - 1;
-        print();
     }
 
     /** 
      * Print statistics
     */
     private void print() {
-        System.out.println(questions.size() + " expected tuples:");
+        Output.println(questions.size() + " expected tuples:");
         for (Question q : questions) {
-            System.out.println("Tuple " + q.expected_tuple.values[0]);
-            System.out.println("Dominator number: " + q.num_dominators);
-            System.out.println("Dominatee number: " + q.num_dominatees);
-            System.out.println("Competitor number: " + q.num_competitors);
+            Output.println("Tuple " + q.expected_tuple.values[0]);
+            Output.println("Dominator number: " + q.num_dominators);
+            Output.println("Dominatee number: " + q.num_dominatees);
+            Output.println("Competitor number: " + q.num_competitors);
         }
     }
 
@@ -114,12 +267,80 @@ public class Solver {
     */
     public void addConstraint(Constraint c) {
         constraints.add(c);
+        formulations.clear();
+    }
+
+    /** 
+     * @param tolerance The gap between the bounds of the perimeter at which the binary search stops
+    */
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /** 
+     * @param parallelism The number of perimeters probed at once on independent solver instances, 1 for the binary search
+    */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /** 
+     * @param decomposition The number of halvings of the weight space into 2^decomposition cells which are solved in parallel, 0 for one solve
+    */
+    public void setDecomposition(int decomposition) {
+        this.decomposition = Math.max(0, decomposition);
+    }
+
+    /** 
+     * Limit the threads of one solve, e.g., to share the processors among concurrent queries without oversubscribing them
+     * It sets the Threads parameter of gurobi, the threads parameter of z3 and the workers of the sampling and cell stages
+     * @param threads The number of threads, 0 for the default of the backend and the number of processors
+    */
+    public void setThreads(int threads) {
+        this.threads = Math.max(0, threads);
+    }
+
+    /** 
+     * Bound the auxiliary stages of a solve, e.g., the LP relaxation before the binary search, with the deadline of the query
+     * @param deadline The wall-clock deadline in milliseconds, as System.currentTimeMillis(), 0 for none
+    */
+    public void setDeadline(long deadline) {
+        this.deadline = Math.max(0, deadline);
+    }
+
+    /** 
+     * @return The number of workers of the parallel stages
+    */
+    protected int getWorkers() {
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /** 
+     * @param segments The number of segments of the piecewise-linear log of each side for the volume, 0 for the exact volume
+     * @param refinement Whether the piecewise-linear log is refined around the optimal sides and solved again
+    */
+    public void setVolumeSegments(int segments, boolean refinement) {
+        this.volume_segments = Math.max(0, segments);
+        this.volume_refinement = refinement;
+    }
+
+    /** 
+     * Stop the running solve as soon as possible, and all later solves immediately
+     * It is designed to be extended by the solvers which can stop their backends, and an interrupted solve gives no definitive result
+    */
+    public void interrupt() {
+        interrupted = true;
+        BranchAndBound r = relaxing;
+        if (r != null) {
+            r.interrupt();
+        }
     }
 
     /** 
      * Cluster to accelerate the computation
     */
     public void cluster(double cluster_parameter) throws Exception {
+        long start = System.nanoTime();
         ArrayList<Attribute> attributes = new ArrayList<Attribute>();
         for (int i = 1; i <= num_attributes; i++) {
             Attribute a = new Attribute("attribute" + i);
@@ -127,6 +348,8 @@ public class Solver {
         }
 
         for (Question q : questions) {
+            ClusterEvent event = new ClusterEvent();
+            event.begin();
             Instances data = new Instances("data", attributes, q.num_inequalities); 
 
             for (int i = 0; i < q.num_inequalities; i++) {
@@ -165,11 +388,1031 @@ public class Solver {
                 l.set(num_attributes, l.get(num_attributes) + 1);
             }
 
+            if (event.shouldCommit()) {
+                event.question = q.expected_tuple.values[0];
+                event.attributes = num_attributes;
+                event.inequalities = q.num_inequalities;
+                event.clusters = num_clusters;
+                event.commit();
+            }
             q.inequalities = clustered_inequalites;
             q.num_inequalities = num_clusters;
+            metrics.histogram("cluster.inequalities").record(num_clusters);
         }
 
         clustered = true;
+        formulations.clear();
+        metrics.recordTime("cluster.time_us", start);
+    }
+
+    /** 
+     * @param topk The top-k limits for expected tuples
+     * @return Whether an expected tuple has at least k dominators, so the question is unsatisfiable without any solver
+    */
+    public boolean isDominated(int[] topk) {
+        for (int i = 0; i < questions.size(); i++) {
+            if (getTopKConstraint(topk[i], questions.get(i).num_dominators) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** 
+     * Decide the SAT problem without a solver if possible
+     * The question is unsatisfiable if an expected tuple has at least k dominators,
+     * and satisfiable if one of a batch of quasi-random weights on the simplex ranks every expected tuple into its top-k, which becomes the witness
+     * @param topk The top-k limits for expected tuples
+     * @return The SAT result, or null if it is not decided
+    */
+    public Boolean certify(int[] topk) {
+        if (isDominated(topk)) {
+            Output.println("UNSATISFIABLE by dominators");
+            return false;
+        }
+
+        // The inequalities of each question in one flat matrix, and the weights of the competitors they stand for
+        double[][] matrices = new double[questions.size()][];
+        double[][] weights = new double[questions.size()][];
+        for (int i = 0; i < questions.size(); i++) {
+            Question q = questions.get(i);
+            q.k = getTopKConstraint(topk[i], q.num_dominators);
+            matrices[i] = getMatrix(q);
+            weights[i] = getWeights(q);
+        }
+
+        double[][] points = getSamples(CERTIFICATE_SAMPLES);
+        for (int s = 0; s < CERTIFICATE_SAMPLES; s++) {
+            double[] w = points[s];
+            boolean top = true;
+            for (int i = 0; i < questions.size() && top; i++) {
+                top = getLoss(w, matrices[i], weights[i], questions.get(i).k) <= questions.get(i).k;
+            }
+            if (top) {
+                Output.println("SATISFIABLE by sampling after " + (s + 1) + " weights");
+                witness = w;
+                return true;
+            }
+        }
+        return null;
+    }
+
+    /** 
+     * @param q The question
+     * @return The inequalities of the question in one flat matrix
+    */
+    private double[] getMatrix(Question q) {
+        double[] matrix = new double[q.num_inequalities * num_attributes];
+        for (int r = 0; r < q.num_inequalities; r++) {
+            for (int j = 0; j < num_attributes; j++) {
+                matrix[r * num_attributes + j] = q.inequalities.get(r).get(j);
+            }
+        }
+        return matrix;
+    }
+
+    /** 
+     * @param q The question
+     * @return The weights of the competitors the inequalities of the question stand for
+    */
+    private double[] getWeights(Question q) {
+        double[] weights = new double[q.num_inequalities];
+        for (int r = 0; r < q.num_inequalities; r++) {
+            weights[r] = getIndicatorWeight(q, r);
+        }
+        return weights;
+    }
+
+    /** 
+     * Sample weights on the simplex, which are the Sobol sequence if it supports the number of attributes,
+     * and otherwise the uniform weights followed by seeded random weights of the flat Dirichlet distribution
+     * @param count The number of weights
+     * @return The weights
+    */
+    private double[][] getSamples(int count) {
+        double[][] points = new double[count][];
+        if (num_attributes <= Sobol.MAX_DIMENSIONS) {
+            Sobol sobol = new Sobol(num_attributes);
+            for (int s = 0; s < count; s++) {
+                points[s] = toSimplex(sobol.next());
+            }
+            return points;
+        }
+
+        Random random = new Random(SAMPLE_SEED);
+        points[0] = new double[num_attributes];
+        Arrays.fill(points[0], 1.0 / num_attributes);
+        for (int s = 1; s < count; s++) {
+            double[] u = new double[num_attributes];
+            for (int j = 0; j < num_attributes; j++) {
+                u[j] = random.nextDouble();
+            }
+            points[s] = toSimplex(u);
+        }
+        return points;
+    }
+
+    /** 
+     * @param w The weights
+     * @return Whether the weights are finite, non-negative and sum to one
+    */
+    private boolean isSimplex(double[] w) {
+        double sum = 0;
+        for (int j = 0; j < w.length; j++) {
+            if (!(w[j] >= 0) || Double.isInfinite(w[j])) {
+                return false;
+            }
+            sum += w[j];
+        }
+        return Math.abs(sum - 1) < 0.000001;
+    }
+
+    /** 
+     * Map a point of the unit cube to the simplex with normalized exponentials
+     * @param u A point of the unit cube
+     * @return The weights
+    */
+    private double[] toSimplex(double[] u) {
+        double[] w = new double[u.length];
+        double sum = 0;
+        for (int j = 0; j < u.length; j++) {
+            w[j] = -Math.log(1 - u[j]);
+            sum += w[j];
+        }
+        for (int j = 0; j < u.length; j++) {
+            w[j] /= sum;
+        }
+        return w;
+    }
+
+    /** 
+     * The rank-counting kernel over the flat inequality matrix of a question
+     * @param w The weights
+     * @param matrix The inequalities of the question in one flat matrix
+     * @param weights The weights of the competitors the inequalities stand for
+     * @param limit The loss after which the counting stops
+     * @return The weighted number of competitors which win the expected tuple, or a number above the limit
+    */
+    private double getLoss(double[] w, double[] matrix, double[] weights, double limit) {
+        int d = w.length;
+        double lost = 0;
+        for (int r = 0, o = 0; r < weights.length; r++, o += d) {
+            double v = 0;
+            for (int j = 0; j < d; j++) {
+                v += matrix[o + j] * w[j];
+            }
+            if (v < 0) {
+                lost += weights[r];
+                if (lost > limit) {
+                    return lost;
+                }
+            }
+        }
+        return lost;
+    }
+
+    /** 
+     * Solve the why-not-yet best problem before a wall-clock deadline, and publish every improvement of its bounds as soon as it is found
+     * The ranking of a fast parallel sample of weights is published first, with the dominators as the only proven bound,
+     * and the BEST problem is then solved directly as usual, which is designed to be overridden by solvers which can report their incumbents and bounds
+     * It is only implemented for one expected tuple as the brute force algorithm
+     * @param deadline The wall-clock deadline in milliseconds, as System.currentTimeMillis()
+     * @param listener The listener of the bounds, null for none
+     * @return The best ranking found, whose weights are the witness
+    */
+    public int solve_best_anytime(long deadline, BestListener listener) throws GRBException {
+        Question q = questions.get(0);
+        int ranking = sample_best(deadline);
+        int bound = q.num_dominators + 1;
+        publish(listener, ranking, bound);
+
+        if (!isProven(ranking) && System.currentTimeMillis() < deadline) {
+            double[] sampled = witness;
+            int r = solve_best();
+            if (r > 0 && r <= ranking) {
+                ranking = r;
+                bound = r;
+                publish(listener, ranking, bound);
+            } else {
+                witness = sampled;
+            }
+        }
+        return ranking;
+    }
+
+    /** 
+     * Score a batch of quasi-random weights on the simplex in parallel, where each worker stops counting at its best ranking so far
+     * It is only implemented for one expected tuple
+     * @param deadline The wall-clock deadline in milliseconds, after which the remaining weights are skipped
+     * @return The best ranking of the sampled weights, whose weights become the witness
+    */
+    protected int sample_best(final long deadline) {
+        final Question q = questions.get(0);
+        final double[] matrix = getMatrix(q);
+        final double[] weights = getWeights(q);
+        final double[][] points = getSamples(BEST_SAMPLES);
+
+        int workers = Math.min(BEST_SAMPLES, getWorkers());
+        final double[] losses = new double[workers];
+        final double[][] best = new double[workers][];
+        ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int t = 0; t < workers; t++) {
+            final int worker = t;
+            final int first = BEST_SAMPLES * t / workers;
+            final int last = BEST_SAMPLES * (t + 1) / workers;
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    losses[worker] = Double.POSITIVE_INFINITY;
+                    for (int s = first; s < last && System.currentTimeMillis() < deadline; s++) {
+                        double loss = getLoss(points[s], matrix, weights, losses[worker]);
+                        if (loss < losses[worker]) {
+                            losses[worker] = loss;
+                            best[worker] = points[s];
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // The first weights are always scored, so there is a witness even after the deadline
+        witness = points[0];
+        double loss = getLoss(points[0], matrix, weights, Double.POSITIVE_INFINITY);
+        for (int t = 0; t < workers; t++) {
+            if (best[t] != null && losses[t] < loss) {
+                loss = losses[t];
+                witness = best[t];
+            }
+        }
+        return q.num_dominators + 1 + (int) Math.round(loss);
+    }
+
+    /** 
+     * A sampled ranking is only the proven optimum if it reaches the dominators, the only proven lower bound,
+     * and its witness is valid weights whose ranking is counted again from scratch
+     * @param ranking The best ranking of the sampled weights
+     * @return Whether the ranking is proven to be optimal without a solver
+    */
+    protected boolean isProven(int ranking) {
+        Question q = questions.get(0);
+        if (ranking > q.num_dominators + 1 || witness == null || !isSimplex(witness)) {
+            return false;
+        }
+        return getLoss(witness, getMatrix(q), getWeights(q), Double.POSITIVE_INFINITY) < 0.5;
+    }
+
+    /** 
+     * @param q The question
+     * @param holding A proven upper bound of the weighted number of holding indicator rows of the question
+     * @return The proven lower bound of the ranking of the expected tuple
+    */
+    protected int getRankingBound(Question q, double holding) {
+        return getRanking(q, Math.floor(holding + 0.000001));
+    }
+
+    /** 
+     * Print and publish the bounds of an anytime BEST problem
+     * @param listener The listener of the bounds, null for none
+     * @param ranking The best ranking found so far
+     * @param bound The proven lower bound of the ranking
+    */
+    protected void publish(BestListener listener, int ranking, int bound) {
+        Output.println("Best ranking so far: " + ranking + ", proven bound: " + bound);
+        if (listener != null) {
+            listener.improved(ranking, bound);
+        }
+    }
+
+    /** 
+     * Get the solver-neutral model of the why-not-yet question
+     * The model of each shape is built only once, and only the right-hand sides of the cardinality rows are updated for different top-k limits
+     * @param shape The weight constraint. The options are satisfiability, triangle, pyramid and cube
+     * @param topk The top-k limits for expected tuples
+     * @return The model, or null if the question is unsatisfiable because of the dominators
+    */
+    protected Formulation formulate(String shape, int[] topk) {
+        k = topk[0];
+        for (int i = 0; i < questions.size(); i++) {
+            Question q = questions.get(i);
+            q.k = getTopKConstraint(topk[i], q.num_dominators);
+            if (q.k < 0) {
+                Output.println("UNSATISFIABLE");
+                return null;
+            }
+        }
+
+        Formulation f = formulations.get(shape);
+        if (f == null) {
+            long start = System.nanoTime();
+            ModelBuildEvent event = new ModelBuildEvent();
+            event.begin();
+            f = build(shape);
+            formulations.put(shape, f);
+            commit(event, "model", f);
+            metrics.recordTime("model.build_us", start);
+            metrics.histogram("model.indicators").record(f.indicators.size());
+        }
+        for (int i = 0; i < questions.size(); i++) {
+            Question q = questions.get(i);
+            f.cardinalities.get(i).rhs = q.num_competitors - q.k;
+        }
+        f.measure = -1;
+        return f;
+    }
+
+    /** 
+     * Get the solver-neutral model of the why-not-yet best problem
+     * It is the SAT model without limits on the indicators, i.e., every top-k limit is the number of all tuples
+     * @return The model
+    */
+    protected Formulation formulate_best() {
+        int[] topk = new int[questions.size()];
+        for (int i = 0; i < questions.size(); i++) {
+            Question q = questions.get(i);
+            topk[i] = q.num_dominators + q.num_competitors + 1;
+        }
+        return formulate("satisfiability", topk);
+    }
+
+    /** 
+     * @param q The question
+     * @param holding The weighted number of holding indicator rows of the question
+     * @return The ranking of the expected tuple, where all dominators and the competitors of the other rows are ranked higher
+    */
+    protected int getRanking(Question q, double holding) {
+        return q.num_dominators + 1 + (int) Math.round(q.num_competitors - holding);
+    }
+
+    /** 
+     * @return The weights of the last BEST or SAT result, null if there is none
+    */
+    public double[] getWitness() {
+        return witness;
+    }
+
+    /** 
+     * Solve the why-not-yet question for a range of top-k limits, where the same k applies to all expected tuples
+     * The SAT problem is monotone in k, so it is solved by a binary search for the smallest satisfiable k,
+     * and the BOX problem is then solved for every satisfiable k with the model of the shape built once
+     * @param shape The weight constraint. The options are satisfiability, triangle, pyramid and cube
+     * @param ks The top-k limits
+     * @param precise An indicator of whether to optimize without the binary search
+     * @param measure The optimization measure
+     * @return The k to (SAT, BOX) curve
+    */
+    public Curve sweep(String shape, int[] ks, boolean precise, int measure) throws GRBException {
+        ks = Arrays.copyOf(ks, ks.length);
+        Arrays.sort(ks);
+        int first = getFirstSatisfiable(ks);
+
+        Curve curve = new Curve();
+        for (int i = 0; i < ks.length; i++) {
+            Box b = new Box(-1.0);
+            if (i >= first && !shape.equals("satisfiability")) {
+                b = sweep_box(shape, getTopK(ks[i]), precise, measure, i == first);
+            }
+            curve.add(ks[i], i >= first, b);
+        }
+        sweep_close();
+        return curve;
+    }
+
+    /** 
+     * @param ks The top-k limits in ascending order
+     * @return The index of the smallest satisfiable k, ks.length if there is none
+    */
+    protected int getFirstSatisfiable(int[] ks) throws GRBException {
+        int low = -1;
+        int high = ks.length;
+        while (high - low > 1) {
+            int mid = (high + low) / 2;
+            if (sweep_satisfiability(getTopK(ks[mid]))) {
+                high = mid;
+            } else {
+                low = mid;
+            }
+        }
+        sweep_close();
+        return high;
+    }
+
+    /** 
+     * Solve the SAT problem for the next k of the binary search over k, where k can increase or decrease
+     * It solves the problem from scratch, and is designed to be overridden by solvers which can keep the model 
+     * and only update the right-hand sides of the cardinality rows, which is released by sweep_close
+     * @param topk The top-k limits for expected tuples
+     * @return The SAT result
+    */
+    protected boolean sweep_satisfiability(int[] topk) throws GRBException {
+        return solve_satisfiability(topk);
+    }
+
+    /** 
+     * @param k A top-k limit
+     * @return The top-k limits of all expected tuples
+    */
+    protected int[] getTopK(int k) {
+        int[] topk = new int[questions.size()];
+        Arrays.fill(topk, k);
+        return topk;
+    }
+
+    /** 
+     * Solve the BOX problem for the next k of a sweep, where k only increases
+     * It solves the problem from scratch, and is designed to be overridden by solvers which can keep the model and warm start
+     * @param shape The weight constraint. The options are triangle, pyramid and cube
+     * @param topk The top-k limits for expected tuples
+     * @param precise An indicator of whether to optimize without the binary search
+     * @param measure The optimization measure
+     * @param first Whether this is the first BOX problem of the sweep
+     * @return The BOX result
+    */
+    protected Box sweep_box(String shape, int[] topk, boolean precise, int measure, boolean first) throws GRBException {
+        return solve_box(shape, topk, precise, measure);
+    }
+
+    /** 
+     * @param shape The weight constraint. The options are triangle, pyramid and cube
+     * @param topk The top-k limits for expected tuples
+     * @param precise An indicator of whether to optimize without the binary search
+     * @param measure The optimization measure
+     * @return The BOX result
+    */
+    protected Box solve_box(String shape, int[] topk, boolean precise, int measure) throws GRBException {
+        if (shape.equals("triangle")) {
+            return optimize_box_triangle(topk, precise, measure);
+        } else if (shape.equals("pyramid")) {
+            return optimize_box_pyramid(topk, precise, measure);
+        }
+        return optimize_box_cube(topk, precise, measure);
+    }
+
+    /** 
+     * Solve the why-not-yet box problem on the perimeter before a wall-clock deadline, and publish every improving box as soon as it is found
+     * The heuristic box with the bound of the LP relaxation is published first, and the precise BOX problem is then solved as usual, 
+     * which is designed to be overridden by solvers which can stop at the deadline and report their incumbents
+     * @param shape The weight constraint. The options are triangle, pyramid and cube
+     * @param topk The top-k limits for expected tuples
+     * @param deadline The wall-clock deadline in milliseconds, as System.currentTimeMillis()
+     * @param listener The listener of the improving boxes, null for none
+     * @return The best box found, which carries the proven upper bound of the perimeter
+    */
+    public Box optimize_box_anytime(String shape, int[] topk, long deadline, BoxListener listener) throws GRBException {
+        Formulation f = formulate(shape, topk);
+        if (f == null) {
+            return new Box(-1.0);
+        }
+
+        Box b = getStartBox(f, deadline, listener);
+        if (System.currentTimeMillis() < deadline) {
+            Box c = solve_box(shape, topk, true, 1);
+            if (c.valid()) {
+                c.setBound(c.getPerimeter());
+                b = publish(listener, b, c);
+            }
+        }
+        return b;
+    }
+
+    /** 
+     * Publish the heuristic box of an anytime BOX problem with the bound of the LP relaxation
+     * @param f The solver-neutral model
+     * @param deadline The wall-clock deadline in milliseconds
+     * @param listener The listener of the improving boxes, null for none
+     * @return The heuristic box, which is invalid if none is found but still carries the bound
+    */
+    protected Box getStartBox(Formulation f, long deadline, BoxListener listener) {
+        // The perimeter is at most 1 with the TRIANGLE or PYRAMID constraint and num_attributes with the CUBE constraint
+        double perimeter_high = f.shape.equals("cube") ? 1.0 * f.num_used_attributes : 1.0;
+
+        double[] relaxed = relax(f, Math.max(1, deadline - System.currentTimeMillis()));
+        Box b = getHeuristicBox(f, relaxed);
+        b.setBound(getPerimeterBound(f, relaxed, perimeter_high));
+        if (b.valid() && listener != null) {
+            listener.improved(b);
+        }
+        return b;
+    }
+
+    /** 
+     * @param listener The listener of the improving boxes, null for none
+     * @param best The best box published so far
+     * @param b A new box
+     * @return The better box, which is published if it is the new box, 
+     * otherwise a copy of the best box with the tighter bound, since a published box is never changed
+    */
+    protected Box publish(BoxListener listener, Box best, Box b) {
+        // The bound only gets tighter
+        b.setBound(Math.min(b.getBound(), best.getBound()));
+        if (b.valid() && (!best.valid() || b.getPerimeter() > best.getPerimeter())) {
+            if (listener != null) {
+                listener.improved(b);
+            }
+            return b;
+        }
+        return best.withBound(b.getBound());
+    }
+
+    /** 
+     * Turn a solution into a box
+     * @param measure The measure of this box
+     * @param values The values of all variables of the problem (lower bounds and upper bounds)
+     * @return The box
+    */
+    protected Box getBox(double measure, double[] values) {
+        Box b = new Box(measure);
+
+        for (int i = 0; i < values.length; i++) {
+            b.addBound(String.format("%.5f", values[i]));
+        }
+
+        return b;
+    }
+
+    /** 
+     * Release the model kept during the SAT or BOX problems of a sweep
+    */
+    protected void sweep_close() throws GRBException {
+
+    }
+
+    /** 
+     * Write the model that the optimizers solve for the why-not-yet question to a file
+     * @param shape The weight constraint. The options are satisfiability, triangle, pyramid and cube
+     * @param topk The top-k limits for expected tuples
+     * @param measure -1 for no objective, 1 to maximize the perimeter of a non-empty box
+     * @param path The path of the file, whose extension (.lp, .mps or .smt2) decides the format
+     * @return Whether the model is written, false if the question is unsatisfiable because of the dominators
+    */
+    public boolean write_model(String shape, int[] topk, int measure, String path) throws IOException {
+        Formulation f = formulate(shape, topk);
+        if (f == null) {
+            return false;
+        }
+        LinearRow limit = null;
+        if (measure == 1 && f.isBox()) {
+            // Use 1 constraint on the perimeter to avoid the output of an empty box
+            limit = new LinearRow("Non-zero", f.perimeter.indices, f.perimeter.coefficients, ">=", Math.pow(10, -5));
+        }
+        write(f, measure, limit, path);
+        return true;
+    }
+
+    /** 
+     * Write a model to a file with an objective and an extra limit on the perimeter, which are only kept for the file
+     * @param f The solver-neutral model
+     * @param measure -1 for no objective, 1 to maximize the perimeter
+     * @param limit The limit on the perimeter, null for no limit
+     * @param path The path of the file, whose extension (.lp, .mps or .smt2) decides the format
+    */
+    protected void write(Formulation f, int measure, LinearRow limit, String path) throws IOException {
+        if (limit != null) {
+            f.addRow(limit);
+        }
+        f.measure = measure;
+        try {
+            ModelWriter.forFile(path).write(f, path);
+        } finally {
+            f.measure = -1;
+            if (limit != null) {
+                f.rows.remove(f.rows.size() - 1);
+            }
+        }
+    }
+
+    /** 
+     * Solve the LP relaxation of the big-M model of a box with the embedded engine, which is cheap compared to the probes of the binary search
+     * It stops at the deadline of the query, and the binary search then starts from the trivial bound
+     * @param f The solver-neutral model
+     * @return The relaxed box in the form of the values of all variables, null if the relaxation is infeasible
+    */
+    protected double[] relax(Formulation f) {
+        if (deadline == 0) {
+            return relax(f, 0);
+        }
+        long remaining = deadline - System.currentTimeMillis();
+        return remaining > 0 ? relax(f, remaining) : null;
+    }
+
+    /** 
+     * The indicator rows are not presolved, since a single linear program does not pay for two linear programs per indicator row
+     * @param f The solver-neutral model
+     * @param timeout The time limit in milliseconds, 0 for no limit
+     * @return The relaxed box in the form of the values of all variables, null if the relaxation is infeasible, interrupted or not solved in time
+    */
+    protected double[] relax(Formulation f, long timeout) {
+        if (interrupted) {
+            return null;
+        }
+        long start = System.nanoTime();
+        BranchAndBound engine = new BranchAndBound(f, false);
+        engine.setObjective(f.perimeter);
+        relaxing = engine;
+        try {
+            if (interrupted) {
+                return null;
+            }
+            return engine.relax(timeout);
+        } finally {
+            relaxing = null;
+            metrics.recordTime("relax.time_us", start);
+        }
+    }
+
+    /** 
+     * @param f The solver-neutral model
+     * @param relaxed The relaxed box, null if there is none
+     * @param perimeter_high The trivial upper bound of the perimeter
+     * @return The upper bound of the perimeter for the binary search
+    */
+    protected double getPerimeterBound(Formulation f, double[] relaxed, double perimeter_high) {
+        if (relaxed == null) {
+            return perimeter_high;
+        }
+        return Math.min(perimeter_high, f.perimeter.evaluate(relaxed) + 0.00001);
+    }
+
+    /** 
+     * Find a feasible box quickly, whose perimeter is the lower bound for the binary search
+     * The relaxed box is shrunk toward a point in it until it is feasible, where the point is the center or a corner of the relaxed box. 
+     * Shrinking the box only helps the indicator rows, since every row uses the lower bound for a non-negative coefficient and the upper bound otherwise, 
+     * so the largest feasible box toward each feasible point is found by bisection
+     * @param f The solver-neutral model
+     * @param relaxed The relaxed box, null if there is none
+     * @return The heuristic box, which is invalid if no point is feasible
+    */
+    protected Box getHeuristicBox(Formulation f, double[] relaxed) {
+        Box b = new Box(-1.0);
+        if (relaxed == null) {
+            return b;
+        }
+
+        double[] best = null;
+        double best_perimeter = 0.0;
+        // The center and, for a few attributes, all corners of the relaxed box
+        int num_corners = f.num_used_attributes <= 10 ? 1 << f.num_used_attributes : 0;
+        for (int p = -1; p < num_corners; p++) {
+            double[] point = new double[relaxed.length];
+            for (int i = 0; i < relaxed.length; i += 2) {
+                if (p < 0) {
+                    point[i] = (relaxed[i] + relaxed[i + 1]) / 2;
+                } else {
+                    point[i] = ((p >> (i / 2)) & 1) == 0 ? relaxed[i] : Math.max(relaxed[i], relaxed[i + 1]);
+                }
+                point[i + 1] = point[i];
+            }
+            if (!f.isFeasible(point, 0.0)) {
+                continue;
+            }
+
+            double low = 0.0;
+            double high = 1.0;
+            for (int i = 0; i < 20; i++) {
+                double t = (low + high) / 2;
+                if (f.isFeasible(shrink(relaxed, point, t), 0.0)) {
+                    low = t;
+                } else {
+                    high = t;
+                }
+            }
+            double[] values = shrink(relaxed, point, low);
+            if (best == null || f.perimeter.evaluate(values) > best_perimeter) {
+                best = values;
+                best_perimeter = f.perimeter.evaluate(values);
+            }
+        }
+
+        if (best != null && best_perimeter > 0) {
+            b = new Box(best_perimeter);
+            for (int i = 0; i < best.length; i++) {
+                b.addBound(String.format("%.5f", best[i]));
+            }
+        }
+        return b;
+    }
+
+    /** 
+     * Solve the why-not-yet box problem heuristically without any MIP, for a near-optimal box in milliseconds
+     * The box starts from the weights of a SAT certificate or SAT result and grows axis by axis by line search, 
+     * where each step is checked by counting the competitors which win the expected tuple at the worst corner of the box
+     * The box is feasible, so its perimeter is a proven lower bound of the optimal one
+     * @param shape The weight constraint. The options are triangle, pyramid and cube
+     * @param topk The top-k limits for expected tuples
+     * @param measure The optimization measure
+     * @return The BOX result, which is invalid if the question is not satisfiable
+    */
+    public Box optimize_box_greedy(String shape, int[] topk, int measure) throws GRBException {
+        Box b = new Box(-1.0);
+        if (formulate(shape, topk) == null) {
+            return b;
+        }
+        Boolean certificate = certify(topk);
+        if (certificate == null) {
+            witness = null;
+            certificate = solve_satisfiability(topk);
+        }
+        if (!certificate || witness == null) {
+            return b;
+        }
+
+        Formulation f = formulate(shape, topk);
+        double[] values = getGreedyBox(f, witness);
+        if (values == null) {
+            return b;
+        }
+        b = getBox(f.perimeter.evaluate(values), values);
+        if (measure == 0) {
+            b = getBox(b.getVolume(), values);
+        }
+        return b;
+    }
+
+    /** 
+     * Grow a box from a point by line search on one axis at a time
+     * Each pass grows every axis by a part of its room, 1 / GREEDY_PASSES of it in the first pass and all of it in the last one, 
+     * so the first axes do not use up the room of the others. Growing an axis only hurts the indicator rows, so each line search is a bisection
+     * @param f The solver-neutral model
+     * @param weights The weights of the point
+     * @return The box in the form of the values of all variables, rounded inward to the precision of a box, or null if the point is not feasible
+    */
+    protected double[] getGreedyBox(Formulation f, double[] weights) {
+        double[] values = new double[f.size()];
+        for (int j = 0; j < f.num_used_attributes; j++) {
+            values[j * 2] = weights[j];
+            values[j * 2 + 1] = weights[j];
+        }
+
+        // The box is checked hundreds of times, so the workers are reused and only split the indicator rows when there are enough of them
+        int workers = Math.min(getWorkers(), f.indicators.size() / GREEDY_CHUNK);
+        ExecutorService pool = workers > 1 ? getGreedyPool() : null;
+        if (!isFeasibleBox(f, values, pool, workers)) {
+            return null;
+        }
+        for (int pass = GREEDY_PASSES; pass >= 1; pass--) {
+            for (int i = 0; i < values.length; i++) {
+                Variable v = f.variables.get(i);
+                double start = values[i];
+                double end = start + ((i % 2 == 0 ? v.lower : v.upper) - start) / pass;
+                values[i] = end;
+                if (isFeasibleBox(f, values, pool, workers)) {
+                    continue;
+                }
+                double low = 0.0;
+                double high = 1.0;
+                for (int step = 0; step < 20; step++) {
+                    double t = (low + high) / 2;
+                    values[i] = start + (end - start) * t;
+                    if (isFeasibleBox(f, values, pool, workers)) {
+                        low = t;
+                    } else {
+                        high = t;
+                    }
+                }
+                values[i] = start + (end - start) * low;
+            }
+        }
+
+        // The bounds of a box are printed with 5 digits, so the lower bounds are rounded up and the upper bounds down
+        double[] rounded = new double[values.length];
+        for (int i = 0; i < values.length; i += 2) {
+            rounded[i] = Math.ceil(values[i] * 100000) / 100000;
+            rounded[i + 1] = Math.max(rounded[i], Math.floor(values[i + 1] * 100000) / 100000);
+        }
+        return isFeasibleBox(f, rounded, pool, workers) ? rounded : values;
+    }
+
+    /** 
+     * @return The workers of the greedy box, one per processor, which do not keep the JVM alive
+    */
+    private static synchronized ExecutorService getGreedyPool() {
+        if (greedy_pool == null) {
+            greedy_pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "wny-greedy");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return greedy_pool;
+    }
+
+    /** 
+     * Check whether a box satisfies all rows and cardinality rows of the model exactly
+     * The indicator rows are counted in parallel over the competitors, and each worker stops once too many competitors win the expected tuple
+     * @param f The solver-neutral model
+     * @param values The values of all variables of the box
+     * @param pool The workers, null to count in the current thread
+     * @param workers The number of workers
+     * @return Whether the box is feasible
+    */
+    private boolean isFeasibleBox(final Formulation f, final double[] values, ExecutorService pool, int workers) {
+        for (LinearRow row : f.rows) {
+            double v = row.evaluate(values);
+            if ((!row.sense.equals("<=") && v < row.rhs) || (!row.sense.equals(">=") && v > row.rhs)) {
+                return false;
+            }
+        }
+        for (CardinalityRow c : f.cardinalities) {
+            // The weighted number of indicator rows which may fail
+            final double limit = f.getTotalWeight(c) - c.rhs;
+            if (pool == null) {
+                if (getFailing(f, values, c.first, c.last, limit) > limit) {
+                    return false;
+                }
+                continue;
+            }
+            ArrayList<Callable<Double>> tasks = new ArrayList<Callable<Double>>();
+            for (int t = 0; t < workers; t++) {
+                final int first = c.first + (c.last - c.first) * t / workers;
+                final int last = c.first + (c.last - c.first) * (t + 1) / workers;
+                tasks.add(new Callable<Double>() {
+                    public Double call() {
+                        return getFailing(f, values, first, last, limit);
+                    }
+                });
+            }
+            double failing = 0;
+            try {
+                for (Future<Double> future : pool.invokeAll(tasks)) {
+                    failing += future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+            if (failing > limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** 
+     * @param f The solver-neutral model
+     * @param values The values of all variables of the box
+     * @param first The first indicator row
+     * @param last The indicator row after the last one
+     * @param limit The weight after which the counting stops
+     * @return The weighted number of the failing indicator rows, or a number above the limit
+    */
+    private double getFailing(Formulation f, double[] values, int first, int last, double limit) {
+        double failing = 0;
+        for (int i = first; i < last; i++) {
+            IndicatorRow row = f.indicators.get(i);
+            if (row.evaluate(values) < row.rhs) {
+                failing += row.weight;
+                if (failing > limit) {
+                    return failing;
+                }
+            }
+        }
+        return failing;
+    }
+
+    /** 
+     * @param box A box in the form of the values of all variables (lower bounds and upper bounds)
+     * @param point A point in the box, in the same form
+     * @param t The ratio of the size of the shrunk box to the size of the box
+     * @return The box shrunk toward the point
+    */
+    private double[] shrink(double[] box, double[] point, double t) {
+        double[] values = new double[box.length];
+        for (int i = 0; i < box.length; i++) {
+            values[i] = point[i] + (box[i] - point[i]) * t;
+        }
+        return values;
+    }
+
+    /** 
+     * Build the solver-neutral model of the why-not-yet question
+     * @param shape The weight constraint. The options are satisfiability, triangle, pyramid and cube
+     * @return The model
+    */
+    private Formulation build(String shape) {
+        if (shape.equals("satisfiability")) {
+            int num_used_attributes = num_attributes;
+            Formulation f = new Formulation(shape, num_used_attributes);
+
+            // Add the TRIANGLE weight constraint, which is one way to prevent all-zero weights as the answer
+            int[] indices = new int[num_used_attributes];
+            double[] coefficients = new double[num_used_attributes];
+            for (int i = 0; i < num_used_attributes; i++) {
+                indices[i] = f.addVariable("x" + String.valueOf(i), 0.0, 1.0);
+                coefficients[i] = 1.0;
+            }
+            f.addRow(new LinearRow("one", indices, coefficients, "=", 1.0));
+
+            for (Question q : questions) {
+                int first = f.indicators.size();
+                for (int i = 0; i < q.num_inequalities; i++) {
+                    coefficients = new double[num_used_attributes];
+                    for (int j = 0; j < num_used_attributes; j++) {
+                        coefficients[j] = q.inequalities.get(i).get(j);
+                    }
+                    f.addIndicator(new IndicatorRow("constraint" + i, indices, coefficients, 0.0, getIndicatorWeight(q, i)));
+                }
+                f.addCardinality(new CardinalityRow("indicators", first, f.indicators.size(), 0.0));
+            }
+            return f;
+        }
+
+        // In TRIANGLE, the weight of the last attribute is 1 - sum(other weights), so it is not used
+        int num_used_attributes = shape.equals("triangle") ? num_attributes - 1 : num_attributes;
+        Formulation f = new Formulation(shape, num_used_attributes);
+
+        // The CUBE constraints are contained in the variables
+        for (int i = 0; i < num_used_attributes; i++) {
+            f.addVariable("x" + String.valueOf(i) + "lower", 0.0, 1.0);
+            f.addVariable("x" + String.valueOf(i) + "upper", 0.0, 1.0);
+        }
+
+        // Add constraints to make sure the upper bound is larger than or equal to the lower bound on each attribute 
+        for (int i = 0; i < num_used_attributes; i++) {
+            f.addRow(new LinearRow("bound" + String.valueOf(i), new int[] {i * 2, i * 2 + 1}, new double[] {-1.0, 1.0}, ">=", 0.0));
+        }
+
+        // Add the TRIANGLE or PYRAMID constraint
+        if (shape.equals("triangle") || shape.equals("pyramid")) {
+            int[] indices = new int[num_used_attributes];
+            double[] coefficients = new double[num_used_attributes];
+            for (int i = 0; i < num_used_attributes; i++) {
+                indices[i] = i * 2 + 1;
+                coefficients[i] = 1.0;
+            }
+            f.addRow(new LinearRow(shape, indices, coefficients, "<=", 1.0));
+        }
+
+        // Apply flexible constraints
+        for (Constraint c : constraints) {
+            if (c.type.equals("min")) {
+                f.addRow(new LinearRow("min" + c.attribute, new int[] {c.attribute * 2}, new double[] {1.0}, ">=", c.value));
+            } else if (c.type.equals("max")) {
+                f.addRow(new LinearRow("max" + c.attribute, new int[] {c.attribute * 2 + 1}, new double[] {1.0}, "<=", c.value));
+            } else if (c.type.equals("space")) {
+                f.addRow(new LinearRow("space" + c.attribute, new int[] {c.attribute * 2, c.attribute * 2 + 1}, new double[] {-1.0, 1.0}, ">=", c.value));
+            }
+        }
+
+        for (Question q : questions) {
+            int first = f.indicators.size();
+            for (int i = 0; i < q.num_inequalities; i++) {
+                ArrayList<Double> inequality = q.inequalities.get(i);
+                int[] indices = new int[num_used_attributes];
+                double[] coefficients = new double[num_used_attributes];
+                for (int j = 0; j < num_used_attributes; j++) {
+                    Double c = inequality.get(j);
+                    if (shape.equals("triangle")) {
+                        c -= inequality.get(num_used_attributes);
+                    }
+                    // Use the lower bound for a non-negative coefficient and the upper bound otherwise, so the row holds for the whole box
+                    indices[j] = c >= 0 ? j * 2 : j * 2 + 1;
+                    coefficients[j] = c;
+                }
+                double rhs = shape.equals("triangle") ? -inequality.get(num_used_attributes) : 0.0;
+                f.addIndicator(new IndicatorRow("constraint" + i, indices, coefficients, rhs, getIndicatorWeight(q, i)));
+            }
+            f.addCardinality(new CardinalityRow("indicators", first, f.indicators.size(), 0.0));
+        }
+
+        int[] indices = new int[num_used_attributes * 2];
+        double[] coefficients = new double[num_used_attributes * 2];
+        for (int i = 0; i < num_used_attributes; i++) {
+            indices[i * 2] = i * 2;
+            coefficients[i * 2] = -1.0;
+            indices[i * 2 + 1] = i * 2 + 1;
+            coefficients[i * 2 + 1] = 1.0;
+        }
+        f.perimeter = new LinearRow("perimeter", indices, coefficients, "=", 0.0);
+
+        return f;
+    }
+
+    /** 
+     * @param q The question
+     * @param i The index of the inequality
+     * @return The number of competitors represented by the inequality
+    */
+    protected double getIndicatorWeight(Question q, int i) {
+        if (!clustered) {
+            return 1.0;
+        } else {
+            return q.inequalities.get(i).get(num_attributes);
+        }
     }
 
     /** 
@@ -204,6 +1447,10 @@ public class Solver {
         return -1;
     }
 
+    public int solve_best() throws GRBException {
+        return -1;
+    }
+
     public Box optimize_box_triangle(int[] topk, boolean precise, int measure) throws GRBException {
         return new Box(-1.0);
     }
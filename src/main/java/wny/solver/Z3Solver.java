@@ -1,11 +1,20 @@
 package wny.solver;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import com.microsoft.z3.*;
 import wny.entities.Box;
 import wny.entities.Constraint;
 import wny.entities.Tuple;
+import wny.events.ModelBuildEvent;
+import wny.events.SolverProbeEvent;
+import wny.metrics.Output;
+import wny.model.CardinalityRow;
+import wny.model.Formulation;
+import wny.model.IndicatorRow;
+import wny.model.LinearRow;
+import wny.model.Variable;
 
 /** 
  * A solver using the z3 library
@@ -13,10 +22,13 @@ import wny.entities.Tuple;
  * @author Zixuan Chen
 */
 public class Z3Solver extends Solver {
-    private Context ctx;
+    private volatile Context ctx;
     private com.microsoft.z3.Solver solver;
     private RealExpr zero;
     private RealExpr one;
+    private RealExpr[] sweep_variables; // the variables of the model kept during a sweep, null if there is none
+    private BoolExpr[][] sweep_indicators; // the indicators of each cardinality row of the model kept during a sweep
+    private Box sweep_result; // the BOX result of the previous k of a sweep
 
     /** 
      * @param tuples All tuples of a relation
@@ -26,6 +38,32 @@ public class Z3Solver extends Solver {
         super(tuples, expected_tuples);
     }
 
+    /** 
+     * @param tuples All tuples of a relation
+     * @param prepared The prepared question of each expected tuple, which is shared
+    */
+    public Z3Solver(ArrayList<Tuple> tuples, List<PreparedQuestion> prepared) {
+        super(tuples, prepared);
+    }
+
+    /** 
+     * @param prepared A solver whose preprocessed question is shared
+    */
+    public Z3Solver(Solver prepared) {
+        super(prepared);
+    }
+
+    /** 
+     * Stop the running check as soon as possible, and all later checks immediately
+    */
+    public void interrupt() {
+        super.interrupt();
+        Context c = ctx;
+        if (c != null) {
+            c.interrupt();
+        }
+    }
+
     /** 
      * Set up the context and solver
      * @timeout The time limit for the model
@@ -37,9 +75,15 @@ public class Z3Solver extends Solver {
         zero = ctx.mkReal(0);
         one = ctx.mkReal(1);
 
-        if (timeout != 0) {
+        // An interrupted solver gives up its later checks at once
+        if (timeout != 0 || interrupted || threads > 0) {
             Params p = ctx.mkParams();
-            p.add("timeout", timeout);
+            if (timeout != 0 || interrupted) {
+                p.add("timeout", interrupted ? 1 : timeout);
+            }
+            if (threads > 0) {
+                p.add("threads", threads);
+            }
             solver.setParameters(p);
         }
     }
@@ -53,57 +97,25 @@ public class Z3Solver extends Solver {
     public boolean solve_satisfiability(int[] topk) {
         setup(0);
         
-        for (int i = 0; i < questions.size(); i++) {
-            Question q = questions.get(i);
-            q.k = getTopKConstraint(topk[i], q.num_dominators);
-            if (q.k < 0) {
-                System.out.println("UNSATISFIABLE");
-                return false;
-            }
-        }
-
-        int num_used_attributes = num_attributes;
-
-        // Add the TRIANGLE weight constraint, actually not necessary for the SAT problem but used for better presentation
-        RealExpr X[] = new RealExpr[num_used_attributes];
-        RealExpr sum = zero;
-        for (int i = 0; i < num_used_attributes; i++) {
-            X[i] = ctx.mkRealConst("x" + String.valueOf(i));
-            solver.add(ctx.mkGe(X[i], zero));
-            sum = (RealExpr) ctx.mkAdd(sum, X[i]);
+        Formulation f = formulate("satisfiability", topk);
+        if (f == null) {
+            return false;
         }
-        solver.add(ctx.mkEq(sum, one));
 
-        for (Question q : questions) {
-            BoolExpr indicators[] = new BoolExpr[q.num_inequalities];
-            int[] indicator_weights = new int[q.num_inequalities];
-            // Add indicators
-            for (int i = 0; i < q.num_inequalities; i++) {
-                RealExpr left = zero;
-                for (int j = 0; j < num_used_attributes; j++) {
-                    left = (RealExpr) ctx.mkAdd(left, ctx.mkMul(ctx.mkReal(String.format("%.5f", q.inequalities.get(i).get(j))), X[j]));
-                }
-                left = (RealExpr) ctx.mkSub(left, ctx.mkReal("0.00001"));
-                indicators[i] = ctx.mkLe(left, zero);
-                if (!clustered) {
-                    indicator_weights[i] = 1;
-                } else {
-                    indicator_weights[i] = q.inequalities.get(i).get(num_attributes).intValue();
-                }
-            }
-            // Add the constraint on the sum of the indicators
-            solver.add(ctx.mkPBLe(indicator_weights, indicators, q.k));
-        }
+        RealExpr X[] = lower(f);
+        int num_used_attributes = f.num_used_attributes;
         
         Status status = solver.check();
-        System.out.println(status);
+        Output.println(status);
         
         if (status == Status.SATISFIABLE) {
             Model model = solver.getModel();
+            witness = new double[num_used_attributes];
             for (int i = 0; i < num_used_attributes; i++) {
-                System.out.print(String.format("%.5f", toDouble(model.evaluate(X[i], true))) + " ");
+                witness[i] = toDouble(model.evaluate(X[i], true));
+                Output.print(String.format("%.5f", witness[i]) + " ");
             }
-            System.out.println();
+            Output.println();
             ctx.close();
             return true;
         } else {
@@ -112,6 +124,163 @@ public class Z3Solver extends Solver {
         }
     }
 
+    /** 
+     * Solve the why-not-yet best problem directly as a MaxSMT problem
+     * Each competitor winning the expected tuple is a soft constraint violated with its weight, 
+     * so the optimizer finds the fewest winning competitors of the SAT model without limits in one check
+     * It is only implemented for one expected tuple as the brute force algorithm
+     * @return The BEST result
+    */
+    public int solve_best() {
+        setup(0);
+
+        Formulation f = formulate_best();
+        RealExpr X[] = lower(f);
+
+        Optimize optimize = ctx.mkOptimize();
+        optimize.Add(solver.getAssertions());
+        CardinalityRow c = f.cardinalities.get(0);
+        Optimize.Handle<?> cost = null;
+        for (int i = c.first; i < c.last; i++) {
+            IndicatorRow row = f.indicators.get(i);
+            cost = optimize.AssertSoft(ctx.mkNot(wins(row, X)), (int) row.weight, "best");
+        }
+
+        Status status = optimize.Check();
+        Output.println(status);
+
+        int ranking = -1;
+        if (status == Status.SATISFIABLE) {
+            Question q = questions.get(0);
+            // All soft constraints of a group share the same handle of the violated weight
+            double violated = cost == null ? 0.0 : toDouble(cost.getValue());
+            ranking = getRanking(q, q.num_competitors - violated);
+            Model model = optimize.getModel();
+            witness = new double[X.length];
+            for (int i = 0; i < X.length; i++) {
+                witness[i] = toDouble(model.evaluate(X[i], true));
+                Output.print(String.format("%.5f", witness[i]) + " ");
+            }
+            Output.println();
+        }
+        ctx.close();
+
+        return ranking;
+    }
+
+    /** 
+     * Lower a solver-neutral model to the z3 solver
+     * Each indicator row becomes a boolean which is true if the competitor wins the expected tuple,
+     * and each cardinality row becomes a Pseudo-Boolean constraint on the sum of these booleans
+     * @param f The solver-neutral model
+     * @return All variables of the problem (weights, or lower bounds and upper bounds)
+    */
+    private RealExpr[] lower(Formulation f) {
+        return lower(f, true);
+    }
+
+    /** 
+     * @param f The solver-neutral model
+     * @param cardinalities Whether the cardinality rows are added, false to add them later in a scope for each k
+     * @return All variables of the problem (weights, or lower bounds and upper bounds)
+    */
+    private RealExpr[] lower(Formulation f, boolean cardinalities) {
+        long start = System.nanoTime();
+        ModelBuildEvent event = new ModelBuildEvent();
+        event.begin();
+        RealExpr X[] = new RealExpr[f.size()];
+        for (int i = 0; i < f.size(); i++) {
+            Variable v = f.variables.get(i);
+            X[i] = ctx.mkRealConst(v.name);
+            solver.add(ctx.mkGe(X[i], toReal(v.lower)));
+            solver.add(ctx.mkLe(X[i], toReal(v.upper)));
+        }
+
+        for (LinearRow row : f.rows) {
+            RealExpr left = expression(row, X);
+            if (row.sense.equals(">=")) {
+                solver.add(ctx.mkGe(left, toReal(row.rhs)));
+            } else if (row.sense.equals("<=")) {
+                solver.add(ctx.mkLe(left, toReal(row.rhs)));
+            } else {
+                solver.add(ctx.mkEq(left, toReal(row.rhs)));
+            }
+        }
+
+        if (cardinalities) {
+            addCardinalities(f, getIndicators(f, X));
+        }
+
+        commit(event, "Z3Solver", f);
+        metrics.recordTime("backend.build_us", start);
+        return X;
+    }
+
+    /** 
+     * @param f The solver-neutral model
+     * @param X All variables of the problem
+     * @return The indicators of each cardinality row, which are true if the competitors win the expected tuple
+    */
+    private BoolExpr[][] getIndicators(Formulation f, RealExpr[] X) {
+        BoolExpr[][] indicators = new BoolExpr[f.cardinalities.size()][];
+        for (int j = 0; j < f.cardinalities.size(); j++) {
+            CardinalityRow c = f.cardinalities.get(j);
+            indicators[j] = new BoolExpr[c.last - c.first];
+            for (int i = c.first; i < c.last; i++) {
+                indicators[j][i - c.first] = wins(f.indicators.get(i), X);
+            }
+        }
+        return indicators;
+    }
+
+    /** 
+     * Add the Pseudo-Boolean constraint on the sum of the indicators of each cardinality row with its current right-hand side
+     * @param f The solver-neutral model
+     * @param indicators The indicators of each cardinality row
+    */
+    private void addCardinalities(Formulation f, BoolExpr[][] indicators) {
+        for (int j = 0; j < f.cardinalities.size(); j++) {
+            CardinalityRow c = f.cardinalities.get(j);
+            int[] indicator_weights = new int[c.last - c.first];
+            for (int i = c.first; i < c.last; i++) {
+                indicator_weights[i - c.first] = (int) f.indicators.get(i).weight;
+            }
+            int k = (int) Math.round(f.getTotalWeight(c) - c.rhs);
+            solver.add(ctx.mkPBLe(indicator_weights, indicators[j], k));
+        }
+    }
+
+    /** 
+     * @param row An indicator row of the solver-neutral model
+     * @param X All variables of the problem
+     * @return The boolean which is true if the competitor of the row wins the expected tuple
+    */
+    private BoolExpr wins(IndicatorRow row, RealExpr[] X) {
+        RealExpr left = (RealExpr) ctx.mkSub(expression(row, X), ctx.mkReal("0.00001"));
+        return ctx.mkLe(left, toReal(row.rhs));
+    }
+
+    /** 
+     * @param row A linear row of the solver-neutral model
+     * @param X All variables of the problem
+     * @return The left-hand side of the row
+    */
+    private RealExpr expression(LinearRow row, RealExpr[] X) {
+        RealExpr left = zero;
+        for (int i = 0; i < row.indices.length; i++) {
+            left = (RealExpr) ctx.mkAdd(left, ctx.mkMul(toReal(row.coefficients[i]), X[row.indices[i]]));
+        }
+        return left;
+    }
+
+    /** 
+     * @param v A double
+     * @return The z3 real of the double
+    */
+    private RealExpr toReal(double v) {
+        return ctx.mkReal(String.format("%.5f", v));
+    }
+
     /** 
      * Apply flexible constraints
      * @param X All variables of the problem (lower bounds and upper bounds)
@@ -142,7 +311,7 @@ public class Z3Solver extends Solver {
                 b.addBound(String.format("%.5f", toDouble(model.evaluate(X[i], true))));
             }
         }
-        // System.out.println(perimeter);
+        // Output.println(perimeter);
         return b;
     }
     
@@ -151,43 +320,60 @@ public class Z3Solver extends Solver {
      * @param X All variables of the problem (lower bounds and upper bounds)
      * @param num_attributes The number of used attributes
      * @param perimeter_high The upper bound of the perimeter
+     * @param start A known feasible box whose perimeter is the lower bound, or an invalid box
      * @return The BOX result
     */
-    private Box binary_search(RealExpr[] X, int num_attributes, double perimeter_high) {
+    private Box binary_search(RealExpr[] X, int num_attributes, double perimeter_high, Box start) {
         RealExpr v = zero;
         for (int i = 0; i < num_attributes; i++) {
             v = (RealExpr) ctx.mkAdd(v, ctx.mkSub(X[i * 2 + 1], X[i * 2]));
         }
-        Double perimeter_low = 0.0;
+        Double perimeter_low = start.valid() ? start.getPerimeter() : 0.0;
         Double perimeter = perimeter_high - 0.00000001;
 
+        double proven = perimeter_high; // lowered only when a perimeter is proven unsatisfiable, not when the solver gives up
         Status status;
         Model model = null;
+        int iterations = 0;
 
         while(true) {
-            if (perimeter_high - perimeter_low < 0.01 || perimeter_high < 0.00001) {
+            if (perimeter_high - perimeter_low < tolerance || perimeter_high < 0.00001 || interrupted) {
                 break;
             }
             
-            System.out.print(String.format("%.5f", perimeter));
-            System.out.print(" ");
+            Output.print(String.format("%.5f", perimeter));
+            Output.print(" ");
 
             solver.push();
             solver.add(ctx.mkEq(v, ctx.mkReal(perimeter.toString())));
+            long probe_start = System.nanoTime();
+            SolverProbeEvent event = new SolverProbeEvent();
+            event.begin();
             status = solver.check();
-            System.out.println(status);
+            commit(event, perimeter, status);
+            metrics.recordTime("probe.time_us", probe_start);
+            iterations++;
+            Output.println(status);
             
             if (status == Status.SATISFIABLE) {
                 model = solver.getModel();
                 perimeter_low = perimeter;
             } else {
+                if (status == Status.UNSATISFIABLE) {
+                    proven = perimeter;
+                }
                 perimeter_high = perimeter;
             }
             solver.pop();
             perimeter = (perimeter_high - perimeter_low) / 2 + perimeter_low;
         }
+        metrics.histogram("search.iterations").record(iterations);
         
+        if (model == null && start.valid()) {
+            return start.withBound(proven);
+        }
         Box b = getBox(perimeter_low, model, X);
+        b.setBound(proven);
 
         return b;
     }
@@ -201,70 +387,7 @@ public class Z3Solver extends Solver {
      * @return The BOX result
     */
     public Box optimize_box_triangle(int[] topk, boolean precise, int measure) {
-        setup(60000);
-
-        Box b = new Box(-1.0);
-        
-        for (int i = 0; i < questions.size(); i++) {
-            Question q = questions.get(i);
-            q.k = getTopKConstraint(topk[i], q.num_dominators);
-            if (q.k < 0) {
-                System.out.println("UNSATISFIABLE");
-                return b;
-            }
-        }
-
-        int num_used_attributes = num_attributes - 1;
-
-        RealExpr X[] = new RealExpr[num_used_attributes * 2];
-        RealExpr sum = zero;
-        for (int i = 0; i < num_used_attributes; i++) {
-            X[i * 2] = ctx.mkRealConst("x" + String.valueOf(i) + "lower");
-            X[i * 2 + 1] = ctx.mkRealConst("x" + String.valueOf(i) + "upper");
-            // Add constraints to make sure all bounds are non-negative
-            solver.add(ctx.mkGe(X[i * 2], zero));
-            // Add constraints to make sure the upper bound is larger than or equal to the lower bound on each attribute 
-            solver.add(ctx.mkGe(X[i * 2 + 1], X[i * 2]));
-            sum = (RealExpr) ctx.mkAdd(sum, X[i * 2 + 1]);
-        }
-        // Add the TRIANGLE constraint
-        solver.add(ctx.mkLe(sum, one));
-
-        for (Question q : questions) {
-            BoolExpr indicators[] = new BoolExpr[q.num_inequalities];
-            int[] indicator_weights = new int[q.num_inequalities];
-            // Add indicators
-            for (int i = 0; i < q.num_inequalities; i++) {
-                RealExpr left = zero;
-                for (int j = 0; j < num_used_attributes; j++) {
-                    Double c = q.inequalities.get(i).get(j) - q.inequalities.get(i).get(num_used_attributes);
-                    if (c >= 0) {
-                        left = (RealExpr) ctx.mkAdd(left, ctx.mkMul(ctx.mkReal(String.format("%.5f", c)), X[j * 2]));
-                    } else {
-                        left = (RealExpr) ctx.mkAdd(left, ctx.mkMul(ctx.mkReal(String.format("%.5f", c)), X[j * 2 + 1]));
-                    }
-                }
-                left = (RealExpr) ctx.mkSub(left, ctx.mkReal("0.00001"));
-                indicators[i] = ctx.mkLe(left, ctx.mkMul(ctx.mkReal(String.format("%.5f", q.inequalities.get(i).get(num_used_attributes))), ctx.mkReal(-1)));
-                if (!clustered) {
-                    indicator_weights[i] = 1;
-                } else {
-                    indicator_weights[i] = q.inequalities.get(i).get(num_attributes).intValue();
-                }
-            }
-            // Add the constraint on the sum of the indicators
-            solver.add(ctx.mkPBLe(indicator_weights, indicators, q.k));
-        }
-
-        apply_constraints(X);
-
-        double perimeter_high = 1.0;
-
-        b = binary_search(X, num_used_attributes, perimeter_high);
-        
-        ctx.close();
-
-        return b;
+        return optimize_box("triangle", topk);
     }
     
     /** 
@@ -276,144 +399,139 @@ public class Z3Solver extends Solver {
      * @return The BOX result
     */
     public Box optimize_box_pyramid(int[] topk, boolean precise, int measure) {
-        setup(60000);
+        return optimize_box("pyramid", topk);
+    }
 
-        Box b = new Box(-1.0);
+    /** 
+     * Solve the why-not-yet box problem with the CUBE bound constraint
+     * Use num_attributes constarints on the lower bound to make sure every bound is non-negative, 
+     * num_attributes constraints on (upper bound - lower bound) to make sure upper bounds are larger than corresponding lower bounds,
+     * and num_attributes constraints on the upper bound to implement CUBE constraints for all questions, 
+     * q.num_ineqaulities indicators and 1 Pseudo-Boolean constraint on the sum of the indicators for each question
+     * @param topk The top-k limits for expected tuples
+     * @return The BOX result
+    */
+    public Box optimize_box_cube(int[] topk, boolean precise, int measure) {
+        return optimize_box("cube", topk);
+    }
 
-        for (int i = 0; i < questions.size(); i++) {
-            Question q = questions.get(i);
-            q.k = getTopKConstraint(topk[i], q.num_dominators);
-            if (q.k < 0) {
-                System.out.println("UNSATISFIABLE");
-                return b;
-            }
-        }
-        
-        int num_used_attributes = num_attributes;
+    /** 
+     * Solve the why-not-yet box problem with the given bound constraint using the binary search
+     * @param shape The weight constraint. The options are triangle, pyramid and cube
+     * @param topk The top-k limits for expected tuples
+     * @return The BOX result
+    */
+    private Box optimize_box(String shape, int[] topk) {
+        setup(60000);
 
-        RealExpr X[] = new RealExpr[num_used_attributes * 2];
-        RealExpr sum = zero;
-        for (int i = 0; i < num_used_attributes; i++) {
-            X[i * 2] = ctx.mkRealConst("x" + String.valueOf(i) + "lower");
-            X[i * 2 + 1] = ctx.mkRealConst("x" + String.valueOf(i) + "upper");
-            // Add constraints to make sure all bounds are non-negative
-            solver.add(ctx.mkGe(X[i * 2], zero));
-            // Add constraints to make sure the upper bound is larger than or equal to the lower bound on each attribute
-            solver.add(ctx.mkGe(X[i * 2 + 1], X[i * 2]));
-            sum = (RealExpr) ctx.mkAdd(sum, X[i * 2 + 1]);
-        }
-        // Add the PYRAMID constraint
-        solver.add(ctx.mkLe(sum, one));
+        Box b = new Box(-1.0);
 
-        for (Question q : questions) {
-            BoolExpr indicators[] = new BoolExpr[q.num_inequalities];
-            int[] indicator_weights = new int[q.num_inequalities];
-            // Add indicators
-            for (int i = 0; i < q.num_inequalities; i++) {
-                RealExpr left = zero;
-                for (int j = 0; j < num_used_attributes; j++) {
-                    Double c = q.inequalities.get(i).get(j);
-                    if (c >= 0) {
-                        left = (RealExpr) ctx.mkAdd(left, ctx.mkMul(ctx.mkReal(String.format("%.5f", c)), X[j * 2]));
-                    } else {
-                        left = (RealExpr) ctx.mkAdd(left, ctx.mkMul(ctx.mkReal(String.format("%.5f", c)), X[j * 2 + 1]));
-                    }
-                }
-                left = (RealExpr) ctx.mkSub(left, ctx.mkReal("0.00001"));
-                indicators[i] = ctx.mkLe(left, zero);
-                if (!clustered) {
-                    indicator_weights[i] = 1;
-                } else {
-                    indicator_weights[i] = q.inequalities.get(i).get(num_attributes).intValue();
-                }
-            }
-            // Add the constraint on the sum of the indicators
-            solver.add(ctx.mkPBLe(indicator_weights, indicators, q.k));
+        Formulation f = formulate(shape, topk);
+        if (f == null) {
+            return b;
         }
 
-        apply_constraints(X);
+        RealExpr X[] = lower(f);
+        int num_used_attributes = f.num_used_attributes;
 
-        double perimeter_high = 1.0;
+        // The perimeter is at most 1 with the TRIANGLE or PYRAMID constraint and num_attributes with the CUBE constraint
+        double perimeter_high = shape.equals("cube") ? 1.0 * num_used_attributes : 1.0;
 
-        b = binary_search(X, num_used_attributes, perimeter_high);
+        // Cover only the interval between a heuristic box and the bound of the LP relaxation
+        double[] relaxed = relax(f);
+        perimeter_high = getPerimeterBound(f, relaxed, perimeter_high);
+        b = binary_search(X, num_used_attributes, perimeter_high, getHeuristicBox(f, relaxed));
         
         ctx.close();
-
+        
         return b;
     }
 
     /** 
-     * Solve the why-not-yet box problem with the CUBE bound constraint
-     * Use num_attributes constarints on the lower bound to make sure every bound is non-negative, 
-     * num_attributes constraints on (upper bound - lower bound) to make sure upper bounds are larger than corresponding lower bounds,
-     * and num_attributes constraints on the upper bound to implement CUBE constraints for all questions, 
-     * q.num_ineqaulities indicators and 1 Pseudo-Boolean constraint on the sum of the indicators for each question
+     * Solve the SAT problem for the next k of the binary search over k with the model kept from the previous k
+     * The model without the cardinality rows is lowered once, and the Pseudo-Boolean constraints of each k are added in a scope which is popped afterwards
      * @param topk The top-k limits for expected tuples
-     * @return The BOX result
+     * @return The SAT result
     */
-    public Box optimize_box_cube(int[] topk, boolean precise, int measure) {
-        setup(60000);
+    protected boolean sweep_satisfiability(int[] topk) {
+        Formulation f = formulate("satisfiability", topk);
+        if (f == null) {
+            return false;
+        }
 
-        Box b = new Box(-1.0);
+        if (sweep_variables == null) {
+            setup(0);
+            sweep_variables = lower(f, false);
+            sweep_indicators = getIndicators(f, sweep_variables);
+        }
+        RealExpr X[] = sweep_variables;
 
-        for (int i = 0; i < questions.size(); i++) {
-            Question q = questions.get(i);
-            q.k = getTopKConstraint(topk[i], q.num_dominators);
-            if (q.k < 0) {
-                System.out.println("UNSATISFIABLE");
-                return b;
+        solver.push();
+        addCardinalities(f, sweep_indicators);
+        Status status = solver.check();
+        Output.println(status);
+
+        boolean satisfiable = status == Status.SATISFIABLE;
+        if (satisfiable) {
+            Model model = solver.getModel();
+            witness = new double[f.num_used_attributes];
+            for (int i = 0; i < f.num_used_attributes; i++) {
+                witness[i] = toDouble(model.evaluate(X[i], true));
             }
         }
+        solver.pop();
+        return satisfiable;
+    }
 
-        int num_used_attributes = num_attributes;
+    /** 
+     * Solve the BOX problem for the next k of a sweep with the model kept from the previous k
+     * The Pseudo-Boolean constraints of each k are added in a scope which is popped afterwards, 
+     * and the previous box is still feasible for a larger k, so it is the lower bound of the binary search
+     * @param shape The weight constraint. The options are triangle, pyramid and cube
+     * @param topk The top-k limits for expected tuples
+     * @param first Whether this is the first BOX problem of the sweep
+     * @return The BOX result
+    */
+    protected Box sweep_box(String shape, int[] topk, boolean precise, int measure, boolean first) {
+        Formulation f = formulate(shape, topk);
+        int num_used_attributes = f.num_used_attributes;
+
+        if (first) {
+            sweep_close();
+            setup(60000);
+            sweep_variables = lower(f, false);
+            sweep_indicators = getIndicators(f, sweep_variables);
+            sweep_result = new Box(-1.0);
+        }
 
-        RealExpr X[] = new RealExpr[num_used_attributes * 2];
-        for (int i = 0; i < num_used_attributes; i++) {
-            X[i * 2] = ctx.mkRealConst("x" + String.valueOf(i) + "lower");
-            X[i * 2 + 1] = ctx.mkRealConst("x" + String.valueOf(i) + "upper");
-            // Add constraints to make sure all bounds are non-negative
-            solver.add(ctx.mkGe(X[i * 2], zero));
-            // Add constraints to make sure the upper bound is larger than or equal to the lower bound on each attribute
-            solver.add(ctx.mkGe(X[i * 2 + 1], X[i * 2]));
-            // Add CUBE constraints
-            solver.add(ctx.mkLe(X[i * 2 + 1], one));
+        // The perimeter is at most 1 with the TRIANGLE or PYRAMID constraint and num_attributes with the CUBE constraint
+        double perimeter_high = shape.equals("cube") ? 1.0 * num_used_attributes : 1.0;
+
+        // Cover only the interval between the better of the previous box and a heuristic box, and the bound of the LP relaxation
+        double[] relaxed = relax(f);
+        perimeter_high = getPerimeterBound(f, relaxed, perimeter_high);
+        Box heuristic = getHeuristicBox(f, relaxed);
+        if (heuristic.getPerimeter() > sweep_result.getPerimeter()) {
+            sweep_result = heuristic;
         }
 
-        for (Question q : questions) {
-            BoolExpr indicators[] = new BoolExpr[q.num_inequalities];
-            int[] indicator_weights = new int[q.num_inequalities];
-            // Add indicators
-            for (int i = 0; i < q.num_inequalities; i++) {
-                RealExpr left = zero;
-                for (int j = 0; j < num_used_attributes; j++) {
-                    Double c = q.inequalities.get(i).get(j);
-                    if (c >= 0) {
-                        left = (RealExpr) ctx.mkAdd(left, ctx.mkMul(ctx.mkReal(String.format("%.5f", c)), X[j * 2]));
-                    } else {
-                        left = (RealExpr) ctx.mkAdd(left, ctx.mkMul(ctx.mkReal(String.format("%.5f", c)), X[j * 2 + 1]));
-                    }
-                }
-                left = (RealExpr) ctx.mkSub(left, ctx.mkReal("0.00001"));
-                indicators[i] = ctx.mkLe(left, zero);
-                if (!clustered) {
-                    indicator_weights[i] = 1;
-                } else {
-                    indicator_weights[i] = q.inequalities.get(i).get(num_attributes).intValue();
-                }
-            }
-            // Add the constraint on the sum of the indicators
-            solver.add(ctx.mkPBLe(indicator_weights, indicators, q.k));
-        }   
+        solver.push();
+        addCardinalities(f, sweep_indicators);
+        sweep_result = binary_search(sweep_variables, num_used_attributes, perimeter_high, sweep_result);
+        solver.pop();
 
-        apply_constraints(X);
-      
-        double perimeter_high = 1.0 * num_used_attributes;
+        return sweep_result;
+    }
 
-        b = binary_search(X, num_used_attributes, perimeter_high);
-        
-        ctx.close();
-        
-        return b;
+    /** 
+     * Close the context of the model kept during the SAT or BOX problems of a sweep
+    */
+    protected void sweep_close() {
+        if (sweep_variables != null) {
+            ctx.close();
+            sweep_variables = null;
+            sweep_indicators = null;
+        }
     }
 
     /** 
@@ -435,7 +553,7 @@ public class Z3Solver extends Solver {
             Question q = questions.get(i);
             q.k = getTopKConstraint(topk[i], q.num_dominators);
             if (q.k < 0) {
-                System.out.println("UNSATISFIABLE");
+                Output.println("UNSATISFIABLE");
                 return b;
             }
         }
@@ -485,7 +603,7 @@ public class Z3Solver extends Solver {
       
         double perimeter_high = 1.0 * num_used_attributes;
 
-        b = binary_search(X, num_used_attributes, perimeter_high);
+        b = binary_search(X, num_used_attributes, perimeter_high, new Box(-1.0));
         
         ctx.close();
         
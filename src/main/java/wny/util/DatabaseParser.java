@@ -11,6 +11,7 @@ import java.util.List;
 
 import wny.entities.Relation;
 import wny.entities.Tuple;
+import wny.metrics.Metrics;
 
 /** 
  * A class that reads a database as a list of relations from an input file.
@@ -113,6 +114,7 @@ public class DatabaseParser
      */
     public List<Relation> parse_file(BufferedReader br)
     {
+        long start = System.nanoTime();
         List<Relation> database = new ArrayList<Relation>();
 
         String sCurrentLine;
@@ -163,6 +165,10 @@ public class DatabaseParser
             e.printStackTrace();
         } 
 
+        // The relations are parsed before any query, so their metrics are in the global registry
+        Metrics.global().recordTime("parse.time_us", start);
+        for (Relation r : database)
+            Metrics.global().counter("parse.tuples").add(r.tuples.size());
         return database;
     }
 }
\ No newline at end of file
@@ -0,0 +1,92 @@
+package wny.util;
+
+import java.util.TreeSet;
+
+/**
+ * The piecewise-linear log of a side, by which the volume of a box is maximized as a MILP
+ * Each piece is the chord of the log between two breakpoints, so the piecewise-linear log is never above the log
+ * @author Zixuan Chen
+*/
+public class PiecewiseLog {
+
+    /**
+     * The log is concave, so the breakpoints are geometric for the same relative error on every segment
+     * @param low The smallest side
+     * @param high The largest side
+     * @param segments The number of segments between the smallest and the largest side
+     * @param center The side around which the segments are refined, 0 for no refinement
+     * @return The sorted breakpoints
+    */
+    public static double[] getBreakpoints(double low, double high, int segments, double center) {
+        double ratio = Math.pow(high / low, 1.0 / segments);
+        TreeSet<Double> points = new TreeSet<Double>();
+        for (int j = 0; j <= segments; j++) {
+            points.add(low * Math.pow(ratio, j));
+        }
+        if (center > 0) {
+            // The refined segments cover the two coarse segments around the center
+            double from = Math.max(low, center / ratio);
+            double to = Math.min(high, center * ratio);
+            for (int j = 0; j <= segments; j++) {
+                points.add(from * Math.pow(to / from, (double) j / segments));
+            }
+        }
+        // The powers may overshoot the largest side by a rounding error
+        while (points.last() > high) {
+            points.pollLast();
+        }
+        points.add(high);
+        double[] breakpoints = new double[points.size()];
+        int j = 0;
+        for (double p : points) {
+            breakpoints[j++] = p;
+        }
+        return breakpoints;
+    }
+
+    /**
+     * @param breakpoints The sorted breakpoints
+     * @param x A side between the first and the last breakpoint
+     * @return The piecewise-linear log of the side
+    */
+    public static double evaluate(double[] breakpoints, double x) {
+        int j = 1;
+        while (j < breakpoints.length - 1 && breakpoints[j] < x) {
+            j++;
+        }
+        double a = breakpoints[j - 1];
+        double b = breakpoints[j];
+        return Math.log(a) + (x - a) * (Math.log(b) - Math.log(a)) / (b - a);
+    }
+
+    /**
+     * @param breakpoints The sorted breakpoints
+     * @return The largest gap between the log and the piecewise-linear log
+    */
+    public static double getGap(double[] breakpoints) {
+        double gap = 0.0;
+        for (int j = 1; j < breakpoints.length; j++) {
+            // The chord of the log on [a, t * a] is the farthest from it at a * s, where the slope of the log equals the chord
+            double t = breakpoints[j] / breakpoints[j - 1];
+            if (t <= 1) {
+                continue;
+            }
+            double s = (t - 1) / Math.log(t);
+            gap = Math.max(gap, Math.log(s) - (s - 1) * Math.log(t) / (t - 1));
+        }
+        return gap;
+    }
+
+    /**
+     * The optimal sum of the logs is at most the optimal sum of the piecewise-linear logs raised by the largest gap of each log
+     * @param bound The upper bound of the sum of the piecewise-linear logs
+     * @param breakpoints The breakpoints of each side
+     * @return The proven upper bound of the volume
+    */
+    public static double getVolumeBound(double bound, double[][] breakpoints) {
+        for (double[] b : breakpoints) {
+            bound += getGap(b);
+        }
+        return Math.exp(bound);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,62 @@
+package wny.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A scheduler which runs independent jobs, e.g., the queries of an experiment, concurrently on a work-stealing pool
+ * Every job declares the number of solver threads it uses, and the scheduler keeps the sum of the threads of the running jobs 
+ * within a global budget, so the native threads of gurobi or z3 do not oversubscribe the processors
+ * With a budget of 1, the jobs run one by one in the order of their submission, and a job of 0 threads, i.e., the default threads of the backend, takes the whole budget
+ * @author Zixuan Chen
+*/
+public class Scheduler {
+    private ForkJoinPool pool;
+    private Semaphore budget;
+    private int num_threads;
+
+    /**
+     * @param num_threads The global budget of solver threads
+    */
+    public Scheduler(int num_threads) {
+        this.num_threads = Math.max(1, num_threads);
+        pool = new ForkJoinPool(this.num_threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        budget = new Semaphore(this.num_threads, true);
+    }
+
+    /**
+     * Submit a job, which waits until its threads are within the budget
+     * @param threads The number of solver threads of the job, which is capped by the budget, 0 for the whole budget
+     * @param job The job
+     * @return The future of the result of the job
+    */
+    public <T> Future<T> submit(int threads, final Callable<T> job) {
+        final int permits = threads > 0 ? Math.min(threads, num_threads) : num_threads;
+        return pool.submit(new Callable<T>() {
+            public T call() throws Exception {
+                budget.acquire(permits);
+                try {
+                    return job.call();
+                } finally {
+                    budget.release(permits);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The global budget of solver threads
+    */
+    public int getNumThreads() {
+        return num_threads;
+    }
+
+    /**
+     * Stop accepting jobs, while the submitted jobs still run
+    */
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
\ No newline at end of file
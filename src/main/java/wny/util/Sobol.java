@@ -0,0 +1,94 @@
+package wny.util;
+
+/**
+ * A generator of the Sobol sequence, a quasi-random sequence which covers the unit cube more evenly than random points
+ * The direction numbers are from the new-joe-kuo-6.21201 table by S. Joe and F. Y. Kuo, and the points are generated in the Gray code order
+ * The first point (all zeros) is skipped
+ * @author Zixuan Chen
+*/
+public class Sobol {
+    public static final int MAX_DIMENSIONS = 21;
+
+    private static final int BITS = 32;
+    // The degree s, the polynomial a and the initial direction numbers m of the dimensions after the first one
+    private static final int[][] DIRECTIONS = {
+        {1, 0, 1},
+        {2, 1, 1, 3},
+        {3, 1, 1, 3, 1},
+        {3, 2, 1, 1, 1},
+        {4, 1, 1, 1, 3, 3},
+        {4, 4, 1, 3, 5, 13},
+        {5, 2, 1, 1, 5, 5, 17},
+        {5, 4, 1, 1, 5, 5, 5},
+        {5, 7, 1, 1, 7, 11, 19},
+        {5, 11, 1, 1, 5, 1, 1},
+        {5, 13, 1, 1, 1, 3, 11},
+        {5, 14, 1, 3, 5, 5, 31},
+        {6, 1, 1, 3, 3, 9, 7, 49},
+        {6, 13, 1, 1, 1, 15, 21, 21},
+        {6, 16, 1, 3, 1, 13, 27, 49},
+        {6, 19, 1, 1, 1, 15, 7, 5},
+        {6, 22, 1, 3, 1, 15, 13, 25},
+        {6, 25, 1, 1, 5, 5, 19, 61},
+        {7, 1, 1, 3, 7, 11, 23, 15, 103},
+        {7, 4, 1, 3, 7, 13, 13, 15, 69}
+    };
+
+    private int dimensions;
+    private long[][] v; // The direction numbers of each dimension, scaled to BITS bits
+    private long[] x; // The current point, scaled to BITS bits
+    private long index;
+
+    /**
+     * @param dimensions The number of dimensions, at most MAX_DIMENSIONS
+    */
+    public Sobol(int dimensions) {
+        if (dimensions < 1 || dimensions > MAX_DIMENSIONS) {
+            throw new IllegalArgumentException("The Sobol sequence supports 1 to " + MAX_DIMENSIONS + " dimensions");
+        }
+        this.dimensions = dimensions;
+        v = new long[dimensions][BITS + 1];
+        x = new long[dimensions];
+        index = 0;
+
+        // The first dimension is the van der Corput sequence
+        for (int i = 1; i <= BITS; i++) {
+            v[0][i] = 1L << (BITS - i);
+        }
+        for (int d = 1; d < dimensions; d++) {
+            int[] direction = DIRECTIONS[d - 1];
+            int s = direction[0];
+            int a = direction[1];
+            for (int i = 1; i <= Math.min(s, BITS); i++) {
+                v[d][i] = ((long) direction[i + 1]) << (BITS - i);
+            }
+            for (int i = s + 1; i <= BITS; i++) {
+                v[d][i] = v[d][i - s] ^ (v[d][i - s] >> s);
+                for (int k = 1; k < s; k++) {
+                    v[d][i] ^= ((a >> (s - 1 - k)) & 1) * v[d][i - k];
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The next point of the sequence in [0, 1)^dimensions
+    */
+    public double[] next() {
+        // The rightmost zero bit of the index decides which direction number changes the point
+        int c = 1;
+        long i = index;
+        while ((i & 1) == 1) {
+            i >>= 1;
+            c++;
+        }
+        index++;
+
+        double[] point = new double[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            x[d] ^= v[d][c];
+            point[d] = x[d] / (double) (1L << BITS);
+        }
+        return point;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,91 @@
+package wny;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the journal of the finished runs of an experiment
+ * @author Zixuan Chen
+*/
+public class JournalTest {
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("journal", ".tsv");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        Journal journal = new Journal(file.getPath());
+        assertFalse(journal.contains("sat 1"));
+        journal.append("sat 1", new int[] {12, 3});
+        journal.append("box 1", new int[] {40});
+        assertTrue(journal.contains("sat 1"));
+        journal.close();
+
+        // A restarted experiment sees the recorded runs in order
+        journal = new Journal(file.getPath());
+        Map<String, int[]> runs = journal.getRuns();
+        assertEquals("[sat 1, box 1]", runs.keySet().toString());
+        assertArrayEquals(new int[] {12, 3}, runs.get("sat 1"));
+        assertArrayEquals(new int[] {40}, runs.get("box 1"));
+
+        journal.append("best 2", new int[] {7});
+        journal.close();
+        assertEquals("sat 1\t12,3\nbox 1\t40\nbest 2\t7\n", read());
+    }
+
+    @Test
+    public void testCutLine() throws IOException {
+        // A line without its end was cut by a crash, so it is dropped and cut from the file
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("sat 1\t12,3\nbox 1\t4".getBytes(Charset.forName("UTF-8")));
+        out.close();
+
+        Journal journal = new Journal(file.getPath());
+        assertTrue(journal.contains("sat 1"));
+        assertFalse(journal.contains("box 1"));
+        assertEquals("sat 1\t12,3\n", read());
+
+        journal.append("box 1", new int[] {40});
+        journal.close();
+        assertEquals("sat 1\t12,3\nbox 1\t40\n", read());
+    }
+
+    @Test
+    public void testDirectory() throws IOException {
+        // The directories of a new journal are created
+        File dir = new File(file.getPath() + ".d");
+        File nested = new File(dir, "journal.tsv");
+        Journal journal = new Journal(nested.getPath());
+        journal.append("sat 1", new int[] {1});
+        journal.close();
+        assertTrue(nested.exists());
+        nested.delete();
+        dir.delete();
+    }
+
+    private String read() throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8"));
+    }
+}
\ No newline at end of file
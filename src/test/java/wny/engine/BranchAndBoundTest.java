@@ -0,0 +1,191 @@
+package wny.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import wny.model.CardinalityRow;
+import wny.model.Formulation;
+import wny.model.IndicatorRow;
+import wny.model.LinearRow;
+
+/**
+ * Tests of the branch and bound solver on small why-not-yet models with known optima
+ * @author Zixuan Chen
+*/
+public class BranchAndBoundTest {
+    private static final double DELTA = 1e-6;
+
+    /**
+     * Build a SAT model over the weights of the attributes, which sum up to 1
+     * @param rows The coefficients of the indicator rows, one row for each competitor, which holds if the row is at least 0
+     * @param weights The numbers of competitors of the rows
+     * @param rhs The minimum weighted number of holding rows
+     * @return The model
+    */
+    static Formulation getModel(double[][] rows, double[] weights, double rhs) {
+        int m = rows[0].length;
+        Formulation f = new Formulation("satisfiability", m);
+        int[] indices = new int[m];
+        double[] ones = new double[m];
+        for (int j = 0; j < m; j++) {
+            indices[j] = f.addVariable("x" + j, 0.0, 1.0);
+            ones[j] = 1.0;
+        }
+        f.addRow(new LinearRow("one", indices, ones, "=", 1.0));
+        for (int i = 0; i < rows.length; i++) {
+            f.addIndicator(new IndicatorRow("constraint" + i, indices, rows[i], 0.0, weights[i]));
+        }
+        f.addCardinality(new CardinalityRow("indicators", 0, rows.length, rhs));
+        return f;
+    }
+
+    /**
+     * Three competitors, where x0 >= 2/3, x0 <= 1/3 and x0 >= 1/2 make the expected tuple not worse than each of them, 
+     * so at most two of them are beaten at once
+     * @param rhs The minimum number of beaten competitors
+     * @return The model
+    */
+    private Formulation getSmall(double rhs) {
+        return getModel(new double[][] {{1, -2}, {-2, 1}, {1, -1}}, new double[] {1, 1, 1}, rhs);
+    }
+
+    @Test
+    public void testFeasible() {
+        BranchAndBound b = new BranchAndBound(getSmall(2));
+        assertEquals(BranchAndBound.OPTIMAL, b.solve(0));
+        double[] x = b.getSolution();
+        assertNotNull(x);
+        assertTrue(x[0] >= 2.0 / 3 - DELTA);
+        assertTrue(b.isFeasible(x));
+    }
+
+    @Test
+    public void testInfeasible() {
+        BranchAndBound b = new BranchAndBound(getSmall(3));
+        assertEquals(BranchAndBound.INFEASIBLE, b.solve(0));
+        assertNull(b.getSolution());
+
+        // The same engine answers another top-k limit after the right-hand side is changed
+        b.setCardinality(0, 1);
+        assertEquals(BranchAndBound.OPTIMAL, b.solve(0));
+    }
+
+    @Test
+    public void testCount() {
+        BranchAndBound b = new BranchAndBound(getSmall(0));
+        b.setCountObjective(0);
+        assertEquals(BranchAndBound.OPTIMAL, b.solve(0));
+        assertEquals(2, b.getObjective(), DELTA);
+        assertTrue(b.getBound() >= b.getObjective() - DELTA);
+
+        // No solution beats the optimum
+        b.setCutoff(2);
+        assertEquals(BranchAndBound.INFEASIBLE, b.solve(0));
+    }
+
+    @Test
+    public void testWeightedCount() {
+        // The second competitor stands for five tuples, so beating it alone is better than beating the other two
+        BranchAndBound b = new BranchAndBound(getModel(new double[][] {{1, -2}, {-2, 1}, {1, -1}}, new double[] {1, 5, 1}, 0));
+        b.setCountObjective(0);
+        assertEquals(BranchAndBound.OPTIMAL, b.solve(0));
+        assertEquals(5, b.getObjective(), DELTA);
+        assertTrue(b.getSolution()[0] <= 1.0 / 3 + DELTA);
+    }
+
+    @Test
+    public void testLinearObjective() {
+        // Maximizing x1 while beating two competitors needs x0 >= 2/3, so the optimum is x1 = 1/3
+        Formulation f = getSmall(2);
+        BranchAndBound b = new BranchAndBound(f);
+        b.setObjective(new LinearRow("obj", new int[] {1}, new double[] {1}, "free", 0));
+        assertEquals(BranchAndBound.OPTIMAL, b.solve(0));
+        assertEquals(1.0 / 3, b.getObjective(), DELTA);
+        assertArrayEquals(new double[] {2.0 / 3, 1.0 / 3}, b.getSolution(), DELTA);
+
+        // The relaxation is a valid upper bound of the optimum
+        double[] relaxed = new BranchAndBound(f, false).relax(0);
+        assertNotNull(relaxed);
+        assertTrue(relaxed[1] >= 1.0 / 3 - DELTA);
+    }
+
+    @Test
+    public void testDegenerate() {
+        // All rows meet at x0 = x1 = 1/2, where every competitor ties with the expected tuple
+        double[][] rows = new double[][] {{1, -1}, {-1, 1}, {2, -2}, {-3, 3}};
+        BranchAndBound b = new BranchAndBound(getModel(rows, new double[] {1, 1, 1, 1}, 4));
+        assertEquals(BranchAndBound.OPTIMAL, b.solve(0));
+        assertArrayEquals(new double[] {0.5, 0.5}, b.getSolution(), DELTA);
+
+        b.setCountObjective(0);
+        b.setCardinality(0, 0);
+        assertEquals(BranchAndBound.OPTIMAL, b.solve(0));
+        assertEquals(4, b.getObjective(), DELTA);
+    }
+
+    @Test
+    public void testPresolve() {
+        // A row which always holds and a row which never holds over the weight constraint are fixed up front
+        double[][] rows = new double[][] {{1, 1}, {-1, -1}, {1, -2}, {-2, 1}};
+        BranchAndBound b = new BranchAndBound(getModel(rows, new double[] {1, 1, 1, 1}, 0));
+        b.setCountObjective(0);
+        assertEquals(BranchAndBound.OPTIMAL, b.solve(0));
+        assertEquals(2, b.getObjective(), DELTA);
+        assertTrue(b.getNumIndicators() <= 2);
+    }
+
+    @Test
+    public void testRandom() {
+        // The optimum does not depend on the presolve, and is reached by the solution the engine returns
+        Random random = new Random(20230601L);
+        for (int n = 0; n < 20; n++) {
+            double[][] rows = new double[12][3];
+            double[] weights = new double[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                for (int j = 0; j < 3; j++) {
+                    rows[i][j] = Math.round((random.nextDouble() - 0.5) * 1000) / 1000.0;
+                }
+                weights[i] = 1 + random.nextInt(3);
+            }
+            Formulation f = getModel(rows, weights, 0);
+            BranchAndBound presolved = new BranchAndBound(f);
+            presolved.setCountObjective(0);
+            assertEquals(BranchAndBound.OPTIMAL, presolved.solve(0));
+            BranchAndBound plain = new BranchAndBound(f, false);
+            plain.setCountObjective(0);
+            assertEquals(BranchAndBound.OPTIMAL, plain.solve(0));
+            assertEquals(presolved.getObjective(), plain.getObjective(), DELTA);
+
+            double holding = 0;
+            for (int i = 0; i < rows.length; i++) {
+                if (f.indicators.get(i).evaluate(presolved.getSolution()) >= -DELTA) {
+                    holding += weights[i];
+                }
+            }
+            assertEquals(presolved.getObjective(), holding, DELTA);
+
+            // The optimum is the largest feasible right-hand side
+            BranchAndBound sat = new BranchAndBound(f);
+            sat.setCardinality(0, presolved.getObjective());
+            assertEquals(BranchAndBound.OPTIMAL, sat.solve(0));
+            sat.setCardinality(0, presolved.getObjective() + 1);
+            assertEquals(BranchAndBound.INFEASIBLE, sat.solve(0));
+        }
+    }
+
+    @Test
+    public void testInterrupt() {
+        BranchAndBound b = new BranchAndBound(getSmall(2));
+        b.interrupt();
+        assertEquals(BranchAndBound.INTERRUPTED, b.solve(0));
+        b.resume();
+        assertEquals(BranchAndBound.OPTIMAL, b.solve(0));
+    }
+}
\ No newline at end of file
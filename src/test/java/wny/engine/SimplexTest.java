@@ -0,0 +1,158 @@
+package wny.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests of the simplex method on small linear programs with known optima
+ * @author Zixuan Chen
+*/
+public class SimplexTest {
+    private static final double DELTA = 1e-6;
+    private static final double INF = Double.POSITIVE_INFINITY;
+
+    /**
+     * max 3x + 2y s.t. x + y <= 4, x + 3y <= 6, 0 <= x <= 3, y >= 0, whose optimum is x = 3, y = 1
+     * @return The linear program
+    */
+    private Simplex getSmall() {
+        Simplex lp = new Simplex();
+        lp.addVariable(0, 3);
+        lp.addVariable(0, INF);
+        lp.addRow(new int[] {0, 1}, new double[] {1, 1}, "<=", 4);
+        lp.addRow(new int[] {0, 1}, new double[] {1, 3}, "<=", 6);
+        lp.setObjective(new double[] {3, 2});
+        return lp;
+    }
+
+    @Test
+    public void testKnownOptimum() {
+        Simplex lp = getSmall();
+        assertEquals(Simplex.OPTIMAL, lp.solve());
+        assertEquals(11, lp.getObjective(), DELTA);
+        assertArrayEquals(new double[] {3, 1}, lp.getValues(), DELTA);
+    }
+
+    @Test
+    public void testEquality() {
+        // max x - y s.t. x + y = 1, x - y <= 0.5, whose optimum is x = 0.75, y = 0.25
+        Simplex lp = new Simplex();
+        lp.addVariable(0, 1);
+        lp.addVariable(0, 1);
+        lp.addRow(new int[] {0, 1}, new double[] {1, 1}, "=", 1);
+        lp.addRow(new int[] {0, 1}, new double[] {1, -1}, "<=", 0.5);
+        lp.setObjective(new double[] {1, -1});
+        assertEquals(Simplex.OPTIMAL, lp.solve());
+        assertArrayEquals(new double[] {0.75, 0.25}, lp.getValues(), DELTA);
+    }
+
+    @Test
+    public void testInfeasible() {
+        Simplex lp = new Simplex();
+        lp.addVariable(0, 2);
+        lp.addVariable(0, 2);
+        lp.addRow(new int[] {0, 1}, new double[] {1, 1}, ">=", 5);
+        lp.setObjective(new double[] {1, 1});
+        assertEquals(Simplex.INFEASIBLE, lp.solve());
+    }
+
+    @Test
+    public void testInfeasibleRows() {
+        // x - y >= 1 and y - x >= 1 contradict each other although each row is feasible alone
+        Simplex lp = new Simplex();
+        lp.addVariable(-10, 10);
+        lp.addVariable(-10, 10);
+        lp.addRow(new int[] {0, 1}, new double[] {1, -1}, ">=", 1);
+        lp.addRow(new int[] {0, 1}, new double[] {-1, 1}, ">=", 1);
+        assertEquals(Simplex.INFEASIBLE, lp.solve());
+    }
+
+    @Test
+    public void testUnbounded() {
+        Simplex lp = new Simplex();
+        lp.addVariable(0, INF);
+        lp.addVariable(0, INF);
+        lp.addRow(new int[] {0, 1}, new double[] {1, -1}, "<=", 1);
+        lp.setObjective(new double[] {1, 1});
+        assertEquals(Simplex.UNBOUNDED, lp.solve());
+    }
+
+    @Test
+    public void testDegenerate() {
+        // The example of Beale, which cycles under the textbook pivoting rule because every vertex on the way is degenerate
+        // min -3/4 x1 + 150 x2 - 1/50 x3 + 6 x4
+        // s.t. 1/4 x1 - 60 x2 - 1/25 x3 + 9 x4 <= 0, 1/2 x1 - 90 x2 - 1/50 x3 + 3 x4 <= 0, x3 <= 1
+        // whose optimum is -1/20 at x1 = 1/25, x3 = 1
+        Simplex lp = new Simplex();
+        for (int j = 0; j < 4; j++) {
+            lp.addVariable(0, INF);
+        }
+        int[] all = new int[] {0, 1, 2, 3};
+        lp.addRow(all, new double[] {0.25, -60, -0.04, 9}, "<=", 0);
+        lp.addRow(all, new double[] {0.5, -90, -0.02, 3}, "<=", 0);
+        lp.addRow(new int[] {2}, new double[] {1}, "<=", 1);
+        lp.setObjective(new double[] {0.75, -150, 0.02, -6});
+        assertEquals(Simplex.OPTIMAL, lp.solve());
+        assertEquals(0.05, lp.getObjective(), DELTA);
+        assertArrayEquals(new double[] {0.04, 0, 1, 0}, lp.getValues(), DELTA);
+    }
+
+    @Test
+    public void testDegenerateVertex() {
+        // Three rows meet at the optimal vertex (1, 1) of a two-dimensional program
+        Simplex lp = new Simplex();
+        lp.addVariable(0, INF);
+        lp.addVariable(0, INF);
+        lp.addRow(new int[] {0, 1}, new double[] {1, 1}, "<=", 2);
+        lp.addRow(new int[] {0, 1}, new double[] {1, -1}, "<=", 0);
+        lp.addRow(new int[] {0, 1}, new double[] {2, 1}, "<=", 3);
+        lp.setObjective(new double[] {1, 1});
+        assertEquals(Simplex.OPTIMAL, lp.solve());
+        assertEquals(2, lp.getObjective(), DELTA);
+        assertArrayEquals(new double[] {1, 1}, lp.getValues(), DELTA);
+    }
+
+    @Test
+    public void testWarmStart() {
+        Simplex lp = getSmall();
+        assertEquals(Simplex.OPTIMAL, lp.solve());
+
+        // Tightening a row keeps the basis dual feasible, so the dual simplex method repairs it
+        lp.setRhs(0, "<=", 3);
+        assertEquals(Simplex.OPTIMAL, lp.solve());
+        assertEquals(9, lp.getObjective(), DELTA);
+        assertArrayEquals(new double[] {3, 0}, lp.getValues(), DELTA);
+
+        // A changed objective needs the primal simplex method from the same basis
+        lp.setObjective(new double[] {1, 4});
+        assertEquals(Simplex.OPTIMAL, lp.solve());
+        assertEquals(8, lp.getObjective(), DELTA);
+
+        lp.setBounds(1, 0, 0.5);
+        assertEquals(Simplex.OPTIMAL, lp.solve());
+        assertArrayEquals(new double[] {2.5, 0.5}, lp.getValues(), DELTA);
+
+        // A row added after a solve
+        lp.addRow(new int[] {0}, new double[] {1}, "<=", 1);
+        assertEquals(Simplex.OPTIMAL, lp.solve());
+        assertArrayEquals(new double[] {1, 0.5}, lp.getValues(), DELTA);
+
+        lp.setRhs(2, ">=", 4);
+        assertEquals(Simplex.INFEASIBLE, lp.solve());
+        lp.setRhs(2, "free", 0);
+        assertEquals(Simplex.OPTIMAL, lp.solve());
+        assertArrayEquals(new double[] {2.5, 0.5}, lp.getValues(), DELTA);
+    }
+
+    @Test
+    public void testInterrupt() {
+        Simplex lp = getSmall();
+        lp.interrupt();
+        assertEquals(Simplex.INTERRUPTED, lp.solve());
+        lp.resume();
+        assertEquals(Simplex.OPTIMAL, lp.solve());
+        assertEquals(11, lp.getObjective(), DELTA);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,114 @@
+package wny.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of the log-linear histogram
+ * @author Zixuan Chen
+*/
+public class HistogramTest {
+    @Test
+    public void testEmpty() {
+        Histogram h = new Histogram(null);
+        assertEquals(0, h.getPercentile(50));
+        Histogram.Snapshot s = h.snapshot();
+        assertEquals(0, s.count);
+        assertEquals(0, s.max);
+        assertEquals(0, s.mean, 0.0);
+    }
+
+    @Test
+    public void testSmallValues() {
+        // The values below 32 have their own buckets, so their percentiles are exact
+        Histogram h = new Histogram(null);
+        for (int v = 1; v <= 20; v++) {
+            h.record(v);
+        }
+        assertEquals(10, h.getPercentile(50));
+        assertEquals(19, h.getPercentile(95));
+        assertEquals(20, h.getPercentile(100));
+        Histogram.Snapshot s = h.snapshot();
+        assertEquals(20, s.count);
+        assertEquals(1, s.min);
+        assertEquals(20, s.max);
+        assertEquals(10.5, s.mean, 1e-9);
+    }
+
+    @Test
+    public void testNegative() {
+        Histogram h = new Histogram(null);
+        h.record(-5);
+        assertEquals(0, h.snapshot().min);
+        assertEquals(0, h.getPercentile(50));
+    }
+
+    @Test
+    public void testPrecision() {
+        // Every percentile is within 1 / 16 of the exact value
+        Random random = new Random(20230601L);
+        long[] values = new long[10000];
+        Histogram h = new Histogram(null);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 30);
+            h.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double p : new double[] {1, 10, 50, 90, 95, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+            long value = h.getPercentile(p);
+            assertTrue(p + ": " + value + " for " + exact, Math.abs(value - exact) <= exact / 16.0 + 1);
+        }
+        assertEquals(values[0], h.snapshot().min);
+        assertEquals(values[values.length - 1], h.getPercentile(100));
+        assertEquals(Long.MAX_VALUE / 2, recordOne(Long.MAX_VALUE / 2), Long.MAX_VALUE / 32);
+    }
+
+    private long recordOne(long value) {
+        Histogram h = new Histogram(null);
+        h.record(value);
+        return h.getPercentile(50);
+    }
+
+    @Test
+    public void testParent() {
+        Histogram parent = new Histogram(null);
+        Histogram a = new Histogram(parent);
+        Histogram b = new Histogram(parent);
+        a.record(3);
+        b.record(5);
+        b.record(7);
+        assertEquals(1, a.snapshot().count);
+        assertEquals(3, parent.snapshot().count);
+        assertEquals(5.0, parent.snapshot().mean, 1e-9);
+    }
+
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        final Histogram h = new Histogram(null);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        h.record(i % 100 + offset);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        Histogram.Snapshot s = h.snapshot();
+        assertEquals(40000, s.count);
+        assertEquals(0, s.min);
+        assertEquals(102, s.max);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,144 @@
+package wny.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+/**
+ * Tests of the LP, MPS and SMT-LIB2 writers on a small model, whose names follow the gurobi and z3 encodings
+ * @author Zixuan Chen
+*/
+public class ModelWriterTest {
+    /**
+     * A BOX model over one attribute, where the expected tuple beats the competitors "constraint0" and "constraint1" 
+     * if 0.5 * lower - 0.25 * upper >= 0.1 and lower + upper >= 0.5
+     * @param questions The number of questions, which share the indicator rows
+     * @return The model
+    */
+    private Formulation getModel(int questions) {
+        Formulation f = new Formulation("cube", 1);
+        int lower = f.addVariable("x0lower", 0.0, 1.0);
+        int upper = f.addVariable("x0upper", 0.0, 1.0);
+        int[] indices = new int[] {lower, upper};
+        f.addRow(new LinearRow("lowerupper0", indices, new double[] {-1.0, 1.0}, ">=", 0.0));
+        for (int c = 0; c < questions; c++) {
+            int first = f.indicators.size();
+            f.addIndicator(new IndicatorRow("constraint0", indices, new double[] {0.5, -0.25}, 0.1, 1.0));
+            f.addIndicator(new IndicatorRow("constraint1", indices, new double[] {1.0, 1.0}, 0.5, 3.0));
+            f.addCardinality(new CardinalityRow("indicators", first, f.indicators.size(), 3.0));
+        }
+        f.perimeter = new LinearRow("perimeter", indices, new double[] {-1.0, 1.0}, "free", 0.0);
+        f.measure = 1;
+        return f;
+    }
+
+    private String write(ModelWriter writer, Formulation f) throws IOException {
+        StringWriter out = new StringWriter();
+        writer.write(f, out);
+        return out.toString();
+    }
+
+    @Test
+    public void testForFile() {
+        assertTrue(ModelWriter.forFile("model.lp") instanceof LpWriter);
+        assertTrue(ModelWriter.forFile("MODEL.MPS") instanceof MpsWriter);
+        assertTrue(ModelWriter.forFile("model.smt2") instanceof SmtWriter);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownFormat() {
+        ModelWriter.forFile("model.txt");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testVolume() throws IOException {
+        Formulation f = getModel(1);
+        f.measure = 0;
+        write(new LpWriter(), f);
+    }
+
+    @Test
+    public void testLp() throws IOException {
+        String lp = write(new LpWriter(), getModel(1));
+        assertEquals(
+            "\\ Why-not-yet model (cube)\n"
+            + "Maximize\n obj: - 1 x0lower + 1 x0upper\n"
+            + "Subject To\n"
+            + " lowerupper0: - 1 x0lower + 1 x0upper >= 0\n"
+            + " constraint0: indicator0 = 1 -> + 0.5 x0lower - 0.25 x0upper >= 0.1\n"
+            + " constraint1: indicator1 = 1 -> + 1 x0lower + 1 x0upper >= 0.5\n"
+            + " indicators: + 1 indicator0 + 3 indicator1 >= 3\n"
+            + "Bounds\n 0 <= x0lower <= 1\n 0 <= x0upper <= 1\n"
+            + "Binaries\n indicator0\n indicator1\n"
+            + "End\n", lp);
+    }
+
+    @Test
+    public void testSatisfiabilityLp() throws IOException {
+        // The SAT problem has an empty objective
+        Formulation f = getModel(1);
+        f.measure = -1;
+        assertTrue(write(new LpWriter(), f).contains("Maximize\n obj: 0 x0lower\n"));
+    }
+
+    @Test
+    public void testMps() throws IOException {
+        String mps = write(new MpsWriter(), getModel(1));
+        assertTrue(mps.startsWith("NAME wny_cube\nOBJSENSE\n    MAX\nROWS\n N  obj\n G  lowerupper0\n G  constraint0\n G  constraint1\n G  indicators\nCOLUMNS\n"));
+        assertTrue(mps.contains("    x0lower  obj  -1\n    x0lower  lowerupper0  -1\n    x0lower  constraint0  0.5\n    x0lower  constraint1  1\n"));
+        assertTrue(mps.contains("    MARKER  'MARKER'  'INTORG'\n    indicator0  indicators  1\n    indicator1  indicators  3\n    MARKER  'MARKER'  'INTEND'\n"));
+        // A right-hand side of 0 is left out
+        assertTrue(mps.contains("RHS\n    rhs  constraint0  0.1\n    rhs  constraint1  0.5\n    rhs  indicators  3\nBOUNDS\n"));
+        assertTrue(mps.contains(" BV bnd  indicator0\n BV bnd  indicator1\n"));
+        assertTrue(mps.endsWith("INDICATORS\n IF constraint0  indicator0  1\n IF constraint1  indicator1  1\nENDATA\n"));
+    }
+
+    @Test
+    public void testSmt() throws IOException {
+        String smt = write(new SmtWriter(), getModel(1));
+        assertTrue(smt.contains("(declare-fun x0lower () Real)\n(assert (and (>= x0lower 0.00000) (<= x0lower 1.00000)))\n"));
+        assertTrue(smt.contains("(assert (>= (+ 0.0 (* (- 1.00000) x0lower) (* 1.00000 x0upper)) 0.00000))\n"));
+        // A competitor may win if its row is below the right-hand side, as in the z3 solver
+        assertTrue(smt.contains("(define-fun indicator0 () Bool (<= (- (+ 0.0 (* 0.50000 x0lower) (* (- 0.25000) x0upper)) 0.00001) 0.10000))\n"));
+        // 4 competitors in total and at least 3 of them beaten, so the competitors who may win weigh at most 1
+        assertTrue(smt.contains("(assert (<= (+ 0 (ite indicator0 1.00000 0.0) (ite indicator1 3.00000 0.0)) 1.00000))\n"));
+        assertTrue(smt.endsWith("(maximize (+ 0.0 (* (- 1.00000) x0lower) (* 1.00000 x0upper)))\n(check-sat)\n(get-value ( x0lower x0upper))\n"));
+    }
+
+    @Test
+    public void testQuestions() throws IOException {
+        // The rows and binaries of several questions get the index of the question
+        Formulation f = getModel(2);
+        String lp = write(new LpWriter(), f);
+        assertTrue(lp.contains(" constraint0_1: indicator0_1 = 1 ->"));
+        assertTrue(lp.contains(" indicators_0: + 1 indicator0_0 + 3 indicator1_0 >= 3\n"));
+        assertTrue(lp.contains(" indicators_1: + 1 indicator0_1 + 3 indicator1_1 >= 3\n"));
+        String mps = write(new MpsWriter(), f);
+        assertTrue(mps.contains(" IF constraint1_1  indicator1_1  1\n"));
+        String smt = write(new SmtWriter(), f);
+        assertTrue(smt.contains("(define-fun indicator1_1 () Bool"));
+    }
+
+    @Test
+    public void testLineBreaks() throws IOException {
+        // Long rows are broken every TERMS_PER_LINE terms
+        Formulation f = new Formulation("satisfiability", 20);
+        int[] indices = new int[20];
+        double[] coefficients = new double[20];
+        for (int j = 0; j < 20; j++) {
+            indices[j] = f.addVariable("x" + j, 0.0, 1.0);
+            coefficients[j] = 1.0;
+        }
+        f.addRow(new LinearRow("one", indices, coefficients, "=", 1.0));
+        f.addCardinality(new CardinalityRow("indicators", 0, 0, 0.0));
+        String lp = write(new LpWriter(), f);
+        for (String line : lp.split("\n")) {
+            assertTrue(line, line.split(" x").length - 1 <= ModelWriter.TERMS_PER_LINE);
+        }
+        assertTrue(lp.contains(" indicators: 0 x0 >= 0\n"));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,193 @@
+package wny.solver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import wny.entities.Box;
+import wny.entities.Curve;
+import wny.entities.Tuple;
+import wny.metrics.Output;
+import wny.metrics.Sink;
+
+/**
+ * Tests of the java optimizer against the exact answers of small two-attribute fixtures
+ * With the weights (t, 1 - t), the score of every tuple is linear in t, so the ranking only changes where two scores cross,
+ * and the best ranking of the model is found by checking these crossings and the points between them
+ * @author Zixuan Chen
+*/
+public class JavaOptimizerTest {
+    private static final double TIE = 1e-9; // a competitor with the same score is not ranked higher, as in the indicator rows
+
+    private Sink sink;
+
+    @Before
+    public void setUp() {
+        sink = Output.getSink();
+        Output.setSink(Output.NONE);
+    }
+
+    @After
+    public void tearDown() {
+        Output.setSink(sink);
+    }
+
+    /**
+     * @param n The number of tuples
+     * @param seed The seed of the fixture
+     * @return Tuples with two attributes whose values are all distinct, so no two tuples tie on an attribute
+    */
+    private ArrayList<Tuple> getTuples(int n, long seed) {
+        ArrayList<Integer> values = new ArrayList<Integer>();
+        for (int v = 1; v < 1000; v++) {
+            values.add(v);
+        }
+        Collections.shuffle(values, new Random(seed));
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < n; i++) {
+            tuples.add(new Tuple(new String[] {String.valueOf(i), String.valueOf(values.get(2 * i) / 1000.0), String.valueOf(values.get(2 * i + 1) / 1000.0)}));
+        }
+        return tuples;
+    }
+
+    /**
+     * @param tuples The tuples
+     * @param e The expected tuple
+     * @param t The weight of the first attribute
+     * @return The ranking of the expected tuple with the weights (t, 1 - t)
+    */
+    private int getRanking(ArrayList<Tuple> tuples, Tuple e, double t) {
+        double score = getScore(e, t);
+        int ranking = 1;
+        for (Tuple other : tuples) {
+            if (other != e && getScore(other, t) > score + TIE) {
+                ranking++;
+            }
+        }
+        return ranking;
+    }
+
+    private double getScore(Tuple tuple, double t) {
+        return t * Double.parseDouble(tuple.values[1]) + (1 - t) * Double.parseDouble(tuple.values[2]);
+    }
+
+    /**
+     * @param tuples The tuples
+     * @param e The expected tuple
+     * @return The best ranking of the expected tuple over all weights
+    */
+    private int getBestRanking(ArrayList<Tuple> tuples, Tuple e) {
+        ArrayList<Double> points = new ArrayList<Double>();
+        points.add(0.0);
+        points.add(1.0);
+        double a = Double.parseDouble(e.values[1]);
+        double b = Double.parseDouble(e.values[2]);
+        for (Tuple other : tuples) {
+            // The scores cross where t * (a - a') + (1 - t) * (b - b') = 0
+            double da = a - Double.parseDouble(other.values[1]);
+            double db = b - Double.parseDouble(other.values[2]);
+            if (other != e && da != db) {
+                double t = db / (db - da);
+                if (t > 0 && t < 1) {
+                    points.add(t);
+                }
+            }
+        }
+        Collections.sort(points);
+        int best = tuples.size();
+        for (int i = 0; i < points.size(); i++) {
+            best = Math.min(best, getRanking(tuples, e, points.get(i)));
+            if (i + 1 < points.size()) {
+                best = Math.min(best, getRanking(tuples, e, (points.get(i) + points.get(i + 1)) / 2));
+            }
+        }
+        return best;
+    }
+
+    private JavaOptimizer getSolver(ArrayList<Tuple> tuples, Tuple e) throws Exception {
+        ArrayList<Tuple> expected_tuples = new ArrayList<Tuple>();
+        expected_tuples.add(e);
+        return new JavaOptimizer(tuples, expected_tuples);
+    }
+
+    @Test
+    public void testBest() throws Exception {
+        for (long seed = 1; seed <= 2; seed++) {
+            ArrayList<Tuple> tuples = getTuples(40, seed);
+            for (int i = 0; i < tuples.size(); i += 7) {
+                Tuple e = tuples.get(i);
+                JavaOptimizer s = getSolver(tuples, e);
+                int best = s.solve_best();
+                assertEquals("tuple " + i + " of fixture " + seed, getBestRanking(tuples, e), best);
+
+                // The witness reaches the best ranking
+                double[] w = s.getWitness();
+                assertNotNull(w);
+                assertTrue(getRanking(tuples, e, w[0] / (w[0] + w[1])) <= best);
+            }
+        }
+    }
+
+    @Test
+    public void testSatisfiability() throws Exception {
+        ArrayList<Tuple> tuples = getTuples(40, 3);
+        for (int i = 0; i < tuples.size(); i += 5) {
+            Tuple e = tuples.get(i);
+            int best = getBestRanking(tuples, e);
+            JavaOptimizer s = getSolver(tuples, e);
+            for (int k : new int[] {1, best - 1, best, best + 1, tuples.size()}) {
+                if (k >= 1) {
+                    assertEquals("tuple " + i + " with k = " + k, best <= k, s.solve_satisfiability(new int[] {k}));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBox() throws Exception {
+        // The exact model and the binary search over the perimeter agree within the tolerance of the search
+        ArrayList<Tuple> tuples = getTuples(30, 4);
+        for (int i = 0; i < tuples.size(); i += 6) {
+            Tuple e = tuples.get(i);
+            int k = getBestRanking(tuples, e) + 2;
+            Box precise = getSolver(tuples, e).optimize_box_cube(new int[] {k}, true, 1);
+            Box search = getSolver(tuples, e).optimize_box_cube(new int[] {k}, false, 1);
+            assertTrue(precise.valid() && search.valid());
+            assertEquals("tuple " + i, precise.getPerimeter(), search.getPerimeter(), 0.011);
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testVolume() throws Exception {
+        // The engine only maximizes the perimeter, so it does not answer a volume question with the box of the optimal perimeter
+        ArrayList<Tuple> tuples = getTuples(30, 4);
+        getSolver(tuples, tuples.get(0)).optimize_box_cube(new int[] {tuples.size()}, true, 0);
+    }
+
+    @Test
+    public void testSweep() throws Exception {
+        // The binary search of each k starts from the box of the previous k, but every k keeps its own box and bound
+        ArrayList<Tuple> tuples = getTuples(30, 5);
+        Tuple e = tuples.get(0);
+        int best = getBestRanking(tuples, e);
+        int[] ks = new int[] {best, best + 1, best + 2, best + 3, best + 4};
+        Curve curve = getSolver(tuples, e).sweep("cube", ks, false, 1);
+        for (int i = 0; i < curve.size(); i++) {
+            Box b = curve.getBox(i);
+            assertTrue(b.valid());
+            assertTrue(b.getBound() >= b.getPerimeter() - 1e-6);
+            for (int j = 0; j < i; j++) {
+                assertTrue(curve.getBox(j) != b);
+                assertTrue(curve.getBox(j).getBound() <= b.getBound() + 1e-6);
+            }
+        }
+    }
+}
\ No newline at end of file
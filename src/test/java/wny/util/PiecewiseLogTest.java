@@ -0,0 +1,103 @@
+package wny.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of the piecewise-linear log of the volume
+ * @author Zixuan Chen
+*/
+public class PiecewiseLogTest {
+    private static final double LOW = Math.pow(10, -5);
+
+    @Test
+    public void testBreakpoints() {
+        double[] b = PiecewiseLog.getBreakpoints(LOW, 1.0, 10, 0.0);
+        assertEquals(11, b.length);
+        assertEquals(LOW, b[0], 0.0);
+        assertEquals(1.0, b[b.length - 1], 0.0);
+        // Geometric, so every segment has the same ratio
+        for (int j = 2; j < b.length; j++) {
+            assertEquals(b[1] / b[0], b[j] / b[j - 1], 1e-9);
+        }
+    }
+
+    @Test
+    public void testRefinement() {
+        double[] coarse = PiecewiseLog.getBreakpoints(LOW, 1.0, 10, 0.0);
+        double[] refined = PiecewiseLog.getBreakpoints(LOW, 1.0, 10, 0.3);
+        assertEquals(LOW, refined[0], 0.0);
+        assertEquals(1.0, refined[refined.length - 1], 0.0);
+        for (int j = 1; j < refined.length; j++) {
+            assertTrue(refined[j] > refined[j - 1]);
+        }
+        // The segments around the center are ten times shorter, so the log is closer there
+        int inside = 0;
+        for (double p : refined) {
+            if (p >= 0.3 * coarse[0] / coarse[1] && p <= 0.3 * coarse[1] / coarse[0]) {
+                inside++;
+            }
+        }
+        assertTrue(inside >= 11);
+        assertTrue(PiecewiseLog.getGap(refined) <= PiecewiseLog.getGap(coarse));
+        // The refinement is clipped to the sides
+        double[] edge = PiecewiseLog.getBreakpoints(LOW, 1.0, 10, 1.0);
+        assertEquals(1.0, edge[edge.length - 1], 0.0);
+    }
+
+    @Test
+    public void testGap() {
+        // The closed form of the gap is the largest distance between the log and its chords
+        for (int segments : new int[] {1, 4, 10, 50}) {
+            double[] b = PiecewiseLog.getBreakpoints(LOW, 1.0, segments, 0.0);
+            double gap = 0.0;
+            for (int i = 0; i <= 1000000; i++) {
+                double x = LOW * Math.pow(1.0 / LOW, i / 1000000.0);
+                double d = Math.log(x) - PiecewiseLog.evaluate(b, x);
+                assertTrue(d >= -1e-9);
+                gap = Math.max(gap, d);
+            }
+            assertEquals(gap, PiecewiseLog.getGap(b), 1e-6);
+        }
+    }
+
+    @Test
+    public void testVolumeBound() {
+        // Maximize u1 * u2 subject to u1 + u2 <= 1, whose optimal volume is 0.25 at u1 = u2 = 0.5
+        for (int segments : new int[] {2, 5, 10, 20}) {
+            for (double center : new double[] {0.0, 0.5, 0.2}) {
+                double[] b = PiecewiseLog.getBreakpoints(LOW, 1.0, segments, center);
+                // The sum of the piecewise-linear logs on u1 + u2 = 1 is concave and piecewise linear in u1, so it is the largest at a breakpoint of either side
+                double best = Double.NEGATIVE_INFINITY;
+                for (double p : b) {
+                    if (1.0 - p >= LOW) {
+                        best = Math.max(best, PiecewiseLog.evaluate(b, p) + PiecewiseLog.evaluate(b, 1.0 - p));
+                    }
+                }
+                double bound = PiecewiseLog.getVolumeBound(best, new double[][] {b, b});
+                assertTrue(bound >= 0.25);
+                // Every feasible box is below the bound
+                Random random = new Random(segments);
+                for (int i = 0; i < 10000; i++) {
+                    double u1 = LOW + random.nextDouble() * (1.0 - 2 * LOW);
+                    double u2 = LOW + random.nextDouble() * (1.0 - LOW - u1);
+                    assertTrue(PiecewiseLog.evaluate(b, u1) + PiecewiseLog.evaluate(b, u2) <= best + 1e-12);
+                    assertTrue(u1 * u2 <= bound);
+                }
+            }
+        }
+        // With enough segments the bound is close to the optimal volume
+        double[] b = PiecewiseLog.getBreakpoints(LOW, 1.0, 200, 0.5);
+        double best = PiecewiseLog.evaluate(b, 0.5) * 2;
+        for (double p : b) {
+            if (1.0 - p >= LOW) {
+                best = Math.max(best, PiecewiseLog.evaluate(b, p) + PiecewiseLog.evaluate(b, 1.0 - p));
+            }
+        }
+        assertEquals(0.25, PiecewiseLog.getVolumeBound(best, new double[][] {b, b}), 0.01);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,68 @@
+package wny.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of the Sobol sequence
+ * @author Zixuan Chen
+*/
+public class SobolTest {
+    @Test
+    public void testFirstPoints() {
+        // The first points of the sequence with the direction numbers of Joe and Kuo
+        Sobol s = new Sobol(3);
+        double[][] expected = new double[][] {
+            {0.5, 0.5, 0.5}, {0.75, 0.25, 0.25}, {0.25, 0.75, 0.75}, {0.375, 0.375, 0.625},
+            {0.875, 0.875, 0.125}, {0.625, 0.125, 0.875}, {0.125, 0.625, 0.375}, {0.1875, 0.3125, 0.9375}
+        };
+        for (double[] point : expected) {
+            assertArrayEquals(point, s.next(), 0.0);
+        }
+    }
+
+    @Test
+    public void testStratified() {
+        // Every 2^b consecutive points from the start put exactly one point into each interval of width 1 / 2^b in every dimension
+        int bits = 8;
+        int n = 1 << bits;
+        Sobol s = new Sobol(Sobol.MAX_DIMENSIONS);
+        int[][] counts = new int[Sobol.MAX_DIMENSIONS][n];
+        for (int i = 0; i < n - 1; i++) {
+            double[] point = s.next();
+            for (int d = 0; d < point.length; d++) {
+                assertTrue(point[d] >= 0 && point[d] < 1);
+                counts[d][(int) (point[d] * n)]++;
+            }
+        }
+        // The sequence starts after the point 0, so the interval of 0 is the only empty one
+        for (int d = 0; d < Sobol.MAX_DIMENSIONS; d++) {
+            assertEquals(0, counts[d][0]);
+            for (int j = 1; j < n; j++) {
+                assertEquals("dimension " + d, 1, counts[d][j]);
+            }
+        }
+    }
+
+    @Test
+    public void testDeterministic() {
+        Sobol a = new Sobol(5);
+        Sobol b = new Sobol(5);
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(a.next(), b.next(), 0.0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyDimensions() {
+        new Sobol(Sobol.MAX_DIMENSIONS + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoDimension() {
+        new Sobol(0);
+    }
+}
\ No newline at end of file